@@ -0,0 +1,76 @@
+package com.example.rabbitmq.benchmark;
+
+import com.example.rabbitmq.codec.CompactBinaryMessageConverter;
+import com.example.rabbitmq.fixtures.MessageFixtures;
+import com.example.rabbitmq.model.LogEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+// Round trips as done by every publish and every listener invocation, per model class and codec
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageConverterBenchmark {
+
+    @Param({"Order", "SocialPost", "LogEntry", "IoTMessage", "ImageProcessingTask"})
+    private String type;
+
+    @Param({"json", "compact-binary"})
+    private String codec;
+
+    private MessageConverter converter;
+    private Object payload;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        converter = switch (codec) {
+            case "json" -> new Jackson2JsonMessageConverter();
+            case "compact-binary" -> new CompactBinaryMessageConverter();
+            default -> throw new IllegalArgumentException(codec);
+        };
+        payload = switch (type) {
+            case "Order" -> MessageFixtures.order(1);
+            case "SocialPost" -> MessageFixtures.socialPost(1);
+            case "LogEntry" -> MessageFixtures.logEntry(1, LogEntry.LogLevel.INFO,
+                    "Order created successfully for customer 42");
+            case "IoTMessage" -> MessageFixtures.temperature(1);
+            case "ImageProcessingTask" -> MessageFixtures.imageTask(1);
+            default -> throw new IllegalArgumentException(type);
+        };
+        message = converter.toMessage(payload, new MessageProperties());
+    }
+
+    @Benchmark
+    public Message serialize() {
+        return converter.toMessage(payload, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return converter.fromMessage(message);
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        return converter.fromMessage(converter.toMessage(payload, new MessageProperties()));
+    }
+}
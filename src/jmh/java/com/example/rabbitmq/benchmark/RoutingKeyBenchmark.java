@@ -0,0 +1,47 @@
+package com.example.rabbitmq.benchmark;
+
+import com.example.rabbitmq.fixtures.MessageFixtures;
+import com.example.rabbitmq.model.IoTMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Computed on every IoT publish to pick the topic routing key
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingKeyBenchmark {
+
+    private IoTMessage sensorReading;
+    private IoTMessage deviceEvent;
+
+    @Setup
+    public void setUp() {
+        sensorReading = MessageFixtures.temperature(1);
+        deviceEvent = new IoTMessage("msg-2", "lock-1", "smart_lock", "front_door", null, 15.0, "percent");
+        deviceEvent.setMetadata(Map.of("battery", 15));
+    }
+
+    @Benchmark
+    public String sensorRoutingKey() {
+        return sensorReading.getRoutingKey();
+    }
+
+    @Benchmark
+    public String deviceRoutingKey() {
+        return deviceEvent.getRoutingKey();
+    }
+}
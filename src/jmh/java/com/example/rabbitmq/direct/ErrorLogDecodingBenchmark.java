@@ -0,0 +1,68 @@
+package com.example.rabbitmq.direct;
+
+import com.example.rabbitmq.codec.RoutingMetadataConverter;
+import com.example.rabbitmq.fixtures.MessageFixtures;
+import com.example.rabbitmq.model.LogEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+// Error log delivery decoded as the full LogEntry versus the AlertService.ErrorLog projection; compare gc.alloc.rate.norm
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorLogDecodingBenchmark {
+
+    // No exception, a typical trace and a deep framework trace
+    @Param({"0", "40", "200"})
+    private int stackFrames;
+
+    @Param({"4", "64"})
+    private int metadataEntries;
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+    private final MessageConverter converter = new RoutingMetadataConverter(new Jackson2JsonMessageConverter(mapper), mapper);
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = converter.toMessage(MessageFixtures.errorLog(1, stackFrames, metadataEntries),
+                new MessageProperties()).getBody();
+    }
+
+    @Benchmark
+    public Object fullBinding() {
+        return converter.fromMessage(delivery(LogEntry.class));
+    }
+
+    @Benchmark
+    public Object projection() {
+        return converter.fromMessage(delivery(AlertService.ErrorLog.class));
+    }
+
+    // What the listener container hands the converter: the body plus the listener's declared payload type
+    private Message delivery(Class<?> payloadType) {
+        Message message = new Message(body);
+        message.getMessageProperties().setContentType("application/json");
+        message.getMessageProperties().setInferredArgumentType(payloadType);
+        return message;
+    }
+}
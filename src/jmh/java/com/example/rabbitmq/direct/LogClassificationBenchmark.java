@@ -0,0 +1,59 @@
+package com.example.rabbitmq.direct;
+
+import com.example.rabbitmq.alert.AlertDispatcher;
+import com.example.rabbitmq.classifier.MessageClassifier;
+import com.example.rabbitmq.classifier.MessageTags;
+import com.example.rabbitmq.config.MessagingProperties;
+import com.example.rabbitmq.fixtures.ConfigurationFixtures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Message classification run on every error and warning log; lives in this package for the package-private methods
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogClassificationBenchmark {
+
+    // First rule, last rule (MEMORY for errors, RESOURCE for warnings) and no match
+    @Param({
+            "Request timeout after 30000ms calling inventory-service",
+            "Heap memory usage at 92% of the configured limit on worker 7",
+            "Something went wrong"})
+    private String message;
+
+    private final MessagingProperties properties = ConfigurationFixtures.messagingProperties();
+    private final MessageClassifier classifier = new MessageClassifier(properties.getClassifier().getRules());
+    private final AlertService alertService = new AlertService(classifier, properties,
+            new AlertDispatcher(properties.getAlertDispatch(), new SimpleMeterRegistry()));
+    private final MonitoringService monitoringService = new MonitoringService(classifier, properties);
+
+    // The single pass a listener makes; every category is answered from the result
+    @Benchmark
+    public MessageTags classify() {
+        return classifier.classify(message);
+    }
+
+    @Benchmark
+    public String extractErrorType() {
+        return alertService.extractErrorType(message);
+    }
+
+    @Benchmark
+    public String extractWarningType() {
+        return monitoringService.extractWarningType(message);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.rabbitmq.pubsub;
+
+import com.example.rabbitmq.config.MessagingProperties;
+import com.example.rabbitmq.fixtures.MessageFixtures;
+import com.example.rabbitmq.model.SocialPost;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Listener bodies of the fanout subscribers, called directly without a broker
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SocialListenerBenchmark {
+
+    private static final int POSTS = 1024;
+
+    // Exact per-key maps against the fixed-size sketch behind app.messaging.bounded-counters
+    @Param({"false", "true"})
+    public boolean boundedCounters;
+
+    private SocialPost[] posts;
+    private TimelineService timelineService;
+    private SocialAnalyticsService socialAnalyticsService;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        posts = IntStream.range(0, POSTS).mapToObj(MessageFixtures::socialPost).toArray(SocialPost[]::new);
+        timelineService = new TimelineService();
+        MessagingProperties properties = new MessagingProperties();
+        properties.getBoundedCounters().setEnabled(boundedCounters);
+        socialAnalyticsService = new SocialAnalyticsService(properties);
+    }
+
+    @Benchmark
+    public void updateTimeline() {
+        timelineService.updateTimeline(nextPost());
+    }
+
+    @Benchmark
+    public void analyzePost() {
+        socialAnalyticsService.analyzePost(nextPost());
+    }
+
+    private SocialPost nextPost() {
+        return posts[next++ & (POSTS - 1)];
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.rabbitmq.alert;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Folds repeated alerts into digests. The first event for a key is let through, so the
+ * caller alerts at once; events for the same key after it are only counted, with a few kept
+ * as exemplars, until {@link #flush} hands each key's tally to the digest sink as one
+ * {@link Digest}. A key that stays quiet for a whole flush interval is forgotten, and its
+ * next event is let through again. Outbound notifications then scale with the number of
+ * distinct incidents per interval rather than with the number of events.
+ * <p>
+ * At most {@code maxKeys} keys are tracked; events for further keys share one overflow key,
+ * so a flood of distinct applications cannot grow the map or the notification count.
+ * <p>
+ * The coalescer has no thread of its own: the owner calls {@link #flush} on its schedule.
+ * {@link #offer} and {@link #flush} are safe to call from any thread.
+ */
+public class AlertCoalescer<E> {
+
+    public static final String OVERFLOW_KEY = "(other)";
+
+    private static final Logger logger = LoggerFactory.getLogger(AlertCoalescer.class);
+
+    private final String name;
+    private final int maxExemplars;
+    private final int maxKeys;
+    private final Consumer<Digest<E>> digestSink;
+    private final ConcurrentHashMap<String, Window<E>> windows = new ConcurrentHashMap<>();
+
+    public AlertCoalescer(String name, int maxExemplars, int maxKeys, Consumer<Digest<E>> digestSink) {
+        if (maxExemplars < 0 || maxKeys < 1) {
+            throw new IllegalArgumentException("Exemplars must not be negative and max keys must be positive: "
+                    + maxExemplars + ", " + maxKeys);
+        }
+        this.name = name;
+        this.maxExemplars = maxExemplars;
+        this.maxKeys = maxKeys;
+        this.digestSink = digestSink;
+    }
+
+    // True when the event is the first for its key and should be sent now; otherwise it was folded into the next digest
+    public boolean offer(String key, E event) {
+        Instant now = Instant.now();
+        if (windows.size() >= maxKeys && !windows.containsKey(key)) {
+            key = OVERFLOW_KEY;
+        }
+        boolean[] first = new boolean[1];
+        // compute holds the key's bin lock, which is what makes first-or-fold and flush's drain atomic per key
+        windows.compute(key, (k, window) -> {
+            if (window == null) {
+                first[0] = true;
+                Window<E> created = new Window<>();
+                created.seen = true;
+                return created;
+            }
+            window.seen = true;
+            window.fold(event, now, maxExemplars);
+            return window;
+        });
+        return first[0];
+    }
+
+    // Hands every key that folded events since the last flush to the digest sink, and forgets the keys that saw no
+    // event at all since then. A key first seen just before a flush is kept, so its repeats right after are folded
+    public void flush() {
+        for (String key : windows.keySet()) {
+            List<Digest<E>> drained = new ArrayList<>(1);
+            windows.computeIfPresent(key, (k, window) -> {
+                if (!window.seen) {
+                    return null;
+                }
+                window.seen = false;
+                if (window.count > 0) {
+                    drained.add(window.drain(k));
+                }
+                return window;
+            });
+            for (Digest<E> digest : drained) {
+                try {
+                    digestSink.accept(digest);
+                } catch (RuntimeException e) {
+                    logger.error("Failed to send {} digest for {}: {}", name, digest.key(), e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    public int trackedKeys() {
+        return windows.size();
+    }
+
+    // Events folded for one key over one interval: the most recent one, and a uniform sample as exemplars
+    public record Digest<E>(String key, long count, Instant firstSeen, Instant lastSeen, E last, List<E> exemplars) {
+    }
+
+    private static final class Window<E> {
+        // Any event since the last flush, the one let through included
+        private boolean seen;
+        private long count;
+        private Instant firstSeen;
+        private Instant lastSeen;
+        private E last;
+        private List<E> exemplars = new ArrayList<>();
+
+        void fold(E event, Instant now, int maxExemplars) {
+            count++;
+            if (firstSeen == null) {
+                firstSeen = now;
+            }
+            lastSeen = now;
+            last = event;
+            // Reservoir sampling keeps every event equally likely to be shown, however long the interval
+            if (exemplars.size() < maxExemplars) {
+                exemplars.add(event);
+            } else if (maxExemplars > 0) {
+                long slot = ThreadLocalRandom.current().nextLong(count);
+                if (slot < maxExemplars) {
+                    exemplars.set((int) slot, event);
+                }
+            }
+        }
+
+        Digest<E> drain(String key) {
+            Digest<E> digest = new Digest<>(key, count, firstSeen, lastSeen, last, List.copyOf(exemplars));
+            count = 0;
+            firstSeen = null;
+            lastSeen = null;
+            last = null;
+            exemplars = new ArrayList<>();
+            return digest;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.rabbitmq.alert;
+
+import com.example.rabbitmq.config.MessagingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Sends notifications off the listener thread. Each channel (Slack, email, ...) gets a
+ * bounded queue and a pool of worker threads of its own, so a slow integration backs up
+ * its own queue rather than the listener that raised the alert, or the other channels.
+ * <p>
+ * Workers hand the channel's sender up to {@code batch-size} notifications at a time,
+ * critical ones first. A full queue makes room per the channel's {@link OverflowPolicy};
+ * critical notifications are dropped only when the queue holds nothing else.
+ * <p>
+ * Per channel, tagged {@code channel}: {@code messaging.alerts.queue.depth},
+ * {@code messaging.alerts.dispatch.latency} from enqueue to sent, and the counters
+ * {@code messaging.alerts.coalesced}, {@code messaging.alerts.dropped} and
+ * {@code messaging.alerts.failed}.
+ * <p>
+ * Disabled, every notification is sent on the caller's thread as it is raised.
+ */
+public class AlertDispatcher implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlertDispatcher.class);
+
+    public enum OverflowPolicy {
+        // A full queue drops its oldest notification to take the new one
+        DROP_OLDEST,
+        // A notification whose key is still queued is merged into it; a full queue then drops its oldest
+        COALESCE
+    }
+
+    private final MessagingProperties.AlertDispatch settings;
+    private final MeterRegistry meterRegistry;
+    private final List<Runnable> closers = new CopyOnWriteArrayList<>();
+    private final List<Thread> workers = new CopyOnWriteArrayList<>();
+
+    public AlertDispatcher(MessagingProperties.AlertDispatch settings, MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Opens a channel whose workers pass batches of notifications to sender
+    public <T> Channel<T> channel(String name, Consumer<List<Notification<T>>> sender) {
+        Timer latency = Timer.builder("messaging.alerts.dispatch.latency")
+                .description("Time from raising a notification to its channel having sent it")
+                .tag("channel", name)
+                .register(meterRegistry);
+        Counter failed = Counter.builder("messaging.alerts.failed")
+                .description("Notifications whose send threw")
+                .tag("channel", name)
+                .register(meterRegistry);
+        if (!settings.isEnabled()) {
+            return (key, critical, payload) -> {
+                long raised = System.nanoTime();
+                send(name, sender, List.of(new Notification<>(key, critical, payload, 1)), failed);
+                latency.record(System.nanoTime() - raised, TimeUnit.NANOSECONDS);
+            };
+        }
+
+        MessagingProperties.AlertDispatch.Channel config = settings.getChannels()
+                .getOrDefault(name, new MessagingProperties.AlertDispatch.Channel());
+        DispatchQueue<T> queue = new DispatchQueue<>(config.getCapacity(), config.getOverflowPolicy());
+        Gauge.builder("messaging.alerts.queue.depth", queue, DispatchQueue::depth)
+                .description("Notifications waiting to be sent")
+                .tag("channel", name)
+                .register(meterRegistry);
+        Counter coalesced = Counter.builder("messaging.alerts.coalesced")
+                .description("Notifications merged into one already queued with the same key")
+                .tag("channel", name)
+                .register(meterRegistry);
+        Counter dropped = Counter.builder("messaging.alerts.dropped")
+                .description("Notifications dropped because the channel's queue was full")
+                .tag("channel", name)
+                .register(meterRegistry);
+
+        for (int i = 0; i < config.getWorkers(); i++) {
+            Thread worker = new Thread(() -> drain(name, queue, config.getBatchSize(), sender, latency, failed),
+                    "alert-" + name + "-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        closers.add(queue::close);
+
+        return (key, critical, payload) -> {
+            switch (queue.offer(key, critical, payload)) {
+                case COALESCED -> coalesced.increment();
+                // Counted rather than logged: during the incidents that fill the queue, a line per drop would flood the log
+                case DROPPED_OLDEST, REJECTED -> dropped.increment();
+                case QUEUED -> { }
+            }
+        };
+    }
+
+    private <T> void drain(String name, DispatchQueue<T> queue, int batchSize, Consumer<List<Notification<T>>> sender,
+                           Timer latency, Counter failed) {
+        try {
+            while (true) {
+                List<DispatchQueue.Pending<T>> batch = queue.take(batchSize);
+                if (batch.isEmpty()) {
+                    return;
+                }
+                List<Notification<T>> notifications = new ArrayList<>(batch.size());
+                for (DispatchQueue.Pending<T> pending : batch) {
+                    notifications.add(new Notification<>(pending.key, pending.critical, pending.payload, pending.occurrences));
+                }
+                send(name, sender, notifications, failed);
+                long sent = System.nanoTime();
+                for (DispatchQueue.Pending<T> pending : batch) {
+                    latency.record(sent - pending.enqueuedNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> void send(String name, Consumer<List<Notification<T>>> sender, List<Notification<T>> notifications,
+                          Counter failed) {
+        try {
+            sender.accept(notifications);
+        } catch (RuntimeException e) {
+            failed.increment(notifications.size());
+            logger.error("Failed to send {} {} notification(s): {}", notifications.size(), name, e.getMessage(), e);
+        }
+    }
+
+    // Queued notifications are still sent on shutdown, for up to shutdown-timeout
+    @Override
+    public void destroy() throws InterruptedException {
+        closers.forEach(Runnable::run);
+        long deadline = System.nanoTime() + settings.getShutdownTimeout().toNanos();
+        for (Thread worker : workers) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining > 0) {
+                worker.join(remaining);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Channel<T> {
+
+        // Queues the notification and returns; key identifies repeats for the COALESCE policy
+        void send(String key, boolean critical, T payload);
+    }
+
+    // One notification as the sender gets it; occurrences counts the ones coalesced into it
+    public record Notification<T>(String key, boolean critical, T payload, int occurrences) {
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.rabbitmq.alert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded queue of one channel, in two lanes: critical notifications are taken before normal ones and are the last to
+// be dropped. With COALESCE a notification whose key is still queued is merged into it instead of taking a place, and a
+// critical one moves a normal entry it merges into to the critical lane
+final class DispatchQueue<T> {
+
+    enum Outcome { QUEUED, COALESCED, DROPPED_OLDEST, REJECTED }
+
+    private final int capacity;
+    private final boolean coalesce;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<Pending<T>> critical = new ArrayDeque<>();
+    private final ArrayDeque<Pending<T>> normal = new ArrayDeque<>();
+    private final Map<String, Pending<T>> queuedByKey = new HashMap<>();
+    private boolean closed;
+
+    DispatchQueue(int capacity, AlertDispatcher.OverflowPolicy overflowPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        this.coalesce = overflowPolicy == AlertDispatcher.OverflowPolicy.COALESCE;
+    }
+
+    Outcome offer(String key, boolean isCritical, T payload) {
+        lock.lock();
+        try {
+            if (coalesce) {
+                Pending<T> queued = queuedByKey.get(key);
+                if (queued != null) {
+                    // The queued notification goes out with the latest payload and the number it stands for
+                    queued.payload = payload;
+                    queued.occurrences++;
+                    if (isCritical && !queued.critical) {
+                        normal.removeFirstOccurrence(queued);
+                        queued.critical = true;
+                        critical.addLast(queued);
+                    }
+                    return Outcome.COALESCED;
+                }
+            }
+            Outcome outcome = Outcome.QUEUED;
+            if (size() >= capacity) {
+                Pending<T> victim = !normal.isEmpty() ? normal.pollFirst() : isCritical ? critical.pollFirst() : null;
+                if (victim == null) {
+                    // Full of critical notifications: a normal one is the one to go
+                    return Outcome.REJECTED;
+                }
+                if (coalesce) {
+                    queuedByKey.remove(victim.key);
+                }
+                outcome = Outcome.DROPPED_OLDEST;
+            }
+            Pending<T> pending = new Pending<>(key, isCritical, payload, System.nanoTime());
+            (isCritical ? critical : normal).addLast(pending);
+            if (coalesce) {
+                queuedByKey.put(key, pending);
+            }
+            notEmpty.signal();
+            return outcome;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Up to max notifications, critical first; waits while the queue is empty and open, returns empty once closed and drained
+    List<Pending<T>> take(int max) throws InterruptedException {
+        lock.lock();
+        try {
+            // offer() signals each new notification and close() wakes every waiting worker
+            while (size() == 0 && !closed) {
+                notEmpty.await();
+            }
+            List<Pending<T>> batch = new ArrayList<>(Math.min(max, size()));
+            while (batch.size() < max && (!critical.isEmpty() || !normal.isEmpty())) {
+                Pending<T> pending = !critical.isEmpty() ? critical.pollFirst() : normal.pollFirst();
+                if (coalesce) {
+                    queuedByKey.remove(pending.key);
+                }
+                batch.add(pending);
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int depth() {
+        lock.lock();
+        try {
+            return size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int size() {
+        return critical.size() + normal.size();
+    }
+
+    static final class Pending<T> {
+        final String key;
+        final long enqueuedNanos;
+        boolean critical;
+        T payload;
+        int occurrences = 1;
+
+        Pending(String key, boolean critical, T payload, long enqueuedNanos) {
+            this.key = key;
+            this.critical = critical;
+            this.payload = payload;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.rabbitmq.classifier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeSet;
+
+// Aho-Corasick matcher compiled to a dense DFA: one table lookup per character, whatever the number of keywords.
+// Characters are folded with Character.toLowerCase as they are read, so the text is never copied. Characters that
+// occur in no keyword share column 0, which always leads back to the root
+final class KeywordAutomaton {
+
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final int[] asciiColumns = new int[128];
+    private final char[] wideChars;
+    private final int[] wideColumns;
+    private final int width;
+    private final int[] transitions;
+    private final int[][] outputs;
+
+    // keywords.get(i) is reported as output keywordOutputs[i]; several keywords may share an output
+    KeywordAutomaton(List<String> keywords, int[] keywordOutputs) {
+        TreeSet<Character> wide = new TreeSet<>();
+        int columns = 1;
+        for (String keyword : keywords) {
+            if (keyword == null || keyword.isBlank()) {
+                throw new IllegalArgumentException("Blank keyword in classifier rules");
+            }
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = Character.toLowerCase(keyword.charAt(i));
+                if (c < 128) {
+                    if (asciiColumns[c] == 0) {
+                        asciiColumns[c] = columns++;
+                    }
+                } else {
+                    wide.add(c);
+                }
+            }
+        }
+        wideChars = new char[wide.size()];
+        wideColumns = new int[wide.size()];
+        int index = 0;
+        for (char c : wide) {
+            wideChars[index] = c;
+            wideColumns[index++] = columns++;
+        }
+        width = columns;
+
+        // Trie first, then failure links breadth-first, filling in the missing transitions as we go
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> matches = new ArrayList<>();
+        trie.add(new int[width]);
+        matches.add(new ArrayList<>());
+        for (int k = 0; k < keywords.size(); k++) {
+            String keyword = keywords.get(k);
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int column = column(Character.toLowerCase(keyword.charAt(i)));
+                if (trie.get(state)[column] == 0) {
+                    trie.get(state)[column] = trie.size();
+                    trie.add(new int[width]);
+                    matches.add(new ArrayList<>());
+                }
+                state = trie.get(state)[column];
+            }
+            matches.get(state).add(keywordOutputs[k]);
+        }
+
+        int states = trie.size();
+        transitions = new int[states * width];
+        outputs = new int[states][];
+        int[] failure = new int[states];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int column = 1; column < width; column++) {
+            int child = trie.get(0)[column];
+            transitions[column] = child;
+            if (child != 0) {
+                queue.add(child);
+            }
+        }
+        outputs[0] = NO_OUTPUT;
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            TreeSet<Integer> merged = new TreeSet<>(matches.get(state));
+            for (int output : outputs[failure[state]]) {
+                merged.add(output);
+            }
+            outputs[state] = merged.isEmpty() ? NO_OUTPUT : merged.stream().mapToInt(Integer::intValue).toArray();
+            for (int column = 1; column < width; column++) {
+                int child = trie.get(state)[column];
+                if (child != 0) {
+                    failure[child] = transitions[failure[state] * width + column];
+                    transitions[state * width + column] = child;
+                    queue.add(child);
+                } else {
+                    transitions[state * width + column] = transitions[failure[state] * width + column];
+                }
+            }
+        }
+    }
+
+    // Sets the bit of every output whose keyword occurs in text
+    void scan(CharSequence text, long[] hits) {
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = transitions[state * width + column(Character.toLowerCase(text.charAt(i)))];
+            for (int output : outputs[state]) {
+                hits[output >>> 6] |= 1L << output;
+            }
+        }
+    }
+
+    int states() {
+        return outputs.length;
+    }
+
+    private int column(char c) {
+        if (c < 128) {
+            return asciiColumns[c];
+        }
+        int index = Arrays.binarySearch(wideChars, c);
+        return index >= 0 ? wideColumns[index] : 0;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.rabbitmq.classifier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tags log messages by keyword. Rules are grouped into categories, each an ordered map of
+ * tag to keywords:
+ * <pre>
+ * error-type:
+ *   TIMEOUT: timeout
+ *   CONNECTION: connection
+ * </pre>
+ * A tag applies when any of its keywords occurs in the message, ignoring case. All keywords
+ * of all categories are compiled into one automaton, so {@link #classify} reads the message
+ * once however many rules there are; listeners classify each entry once and pass the
+ * resulting {@link MessageTags} on instead of scanning the text again.
+ * <p>
+ * Immutable and safe to share between listener threads.
+ */
+public class MessageClassifier {
+
+    private final KeywordAutomaton automaton;
+    private final String[] tagNames;
+    private final Map<String, int[]> categories = new HashMap<>();
+
+    public MessageClassifier(Map<String, ? extends Map<String, ? extends List<String>>> rules) {
+        List<String> names = new ArrayList<>();
+        List<String> keywords = new ArrayList<>();
+        List<Integer> keywordTags = new ArrayList<>();
+        rules.forEach((category, tags) -> {
+            int[] ids = new int[tags.size()];
+            int position = 0;
+            for (Map.Entry<String, ? extends List<String>> tag : tags.entrySet()) {
+                int id = names.size();
+                names.add(tag.getKey());
+                ids[position++] = id;
+                for (String keyword : tag.getValue()) {
+                    keywords.add(keyword);
+                    keywordTags.add(id);
+                }
+            }
+            categories.put(category, ids);
+        });
+        this.tagNames = names.toArray(new String[0]);
+        this.automaton = new KeywordAutomaton(keywords, keywordTags.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public MessageTags classify(CharSequence message) {
+        long[] hits = new long[(tagNames.length + 63) >>> 6];
+        if (message != null) {
+            automaton.scan(message, hits);
+        }
+        return new MessageTags(this, hits);
+    }
+
+    int[] tagIds(String category) {
+        return categories.get(category);
+    }
+
+    String tagName(int id) {
+        return tagNames[id];
+    }
+}
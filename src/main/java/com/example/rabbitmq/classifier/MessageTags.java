@@ -0,0 +1,52 @@
+package com.example.rabbitmq.classifier;
+
+// The tags one message matched. Category lookups walk that category's few tag ids; the text is not consulted again
+public final class MessageTags {
+
+    private static final int[] NONE = new int[0];
+
+    private final MessageClassifier classifier;
+    private final long[] hits;
+
+    MessageTags(MessageClassifier classifier, long[] hits) {
+        this.classifier = classifier;
+        this.hits = hits;
+    }
+
+    public boolean has(String category, String tag) {
+        for (int id : ids(category)) {
+            if (matched(id) && classifier.tagName(id).equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean any(String category) {
+        for (int id : ids(category)) {
+            if (matched(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The matched tag listed first in the category, or the fallback when none matched
+    public String first(String category, String fallback) {
+        for (int id : ids(category)) {
+            if (matched(id)) {
+                return classifier.tagName(id);
+            }
+        }
+        return fallback;
+    }
+
+    private int[] ids(String category) {
+        int[] ids = classifier.tagIds(category);
+        return ids != null ? ids : NONE;
+    }
+
+    private boolean matched(int id) {
+        return (hits[id >>> 6] & (1L << id)) != 0;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.rabbitmq.codec;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Mirror of BinaryWriter
+class BinaryReader {
+
+    private final byte[] buffer;
+    private int position;
+
+    BinaryReader(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    int readByte() {
+        if (position >= buffer.length) {
+            throw new IllegalStateException("Unexpected end of binary message at offset " + position);
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    long readVarLong() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint at offset " + position);
+    }
+
+    long readZigZag() {
+        long raw = readVarLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    double readDouble() {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits |= (long) readByte() << (i * 8);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    float readFloat() {
+        int bits = 0;
+        for (int i = 0; i < 4; i++) {
+            bits |= readByte() << (i * 8);
+        }
+        return Float.intBitsToFloat(bits);
+    }
+
+    String readString() {
+        int length = readLength();
+        if (length < 0) {
+            return null;
+        }
+        checkAvailable(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    <E extends Enum<E>> E readEnum(E[] dictionary) {
+        int index = (int) readVarLong();
+        if (index == 0) {
+            return null;
+        }
+        if (index > dictionary.length) {
+            throw new IllegalStateException("Unknown dictionary index " + index + " for " + Arrays.toString(dictionary));
+        }
+        return dictionary[index - 1];
+    }
+
+    LocalDateTime readTimestamp() {
+        if (readByte() == 0) {
+            return null;
+        }
+        long seconds = readZigZag();
+        int nanos = (int) readVarLong();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    BigDecimal readDecimal() {
+        int length = readLength();
+        if (length < 0) {
+            return null;
+        }
+        checkAvailable(length);
+        BigInteger unscaled = new BigInteger(buffer, position, length);
+        position += length;
+        return new BigDecimal(unscaled, (int) readZigZag());
+    }
+
+    List<String> readStringList() {
+        int size = readLength();
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString());
+        }
+        return values;
+    }
+
+    Map<String, Object> readMap() {
+        int size = readLength();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            values.put(readString(), readValue());
+        }
+        return values;
+    }
+
+    Object readValue() {
+        int tag = readByte();
+        return switch (tag) {
+            case BinaryWriter.VALUE_NULL -> null;
+            case BinaryWriter.VALUE_STRING -> readString();
+            case BinaryWriter.VALUE_TRUE -> Boolean.TRUE;
+            case BinaryWriter.VALUE_FALSE -> Boolean.FALSE;
+            case BinaryWriter.VALUE_INT -> (int) readZigZag();
+            case BinaryWriter.VALUE_LONG -> readZigZag();
+            case BinaryWriter.VALUE_DOUBLE -> readDouble();
+            case BinaryWriter.VALUE_FLOAT -> readFloat();
+            case BinaryWriter.VALUE_DECIMAL -> readDecimal();
+            case BinaryWriter.VALUE_MAP -> readMap();
+            case BinaryWriter.VALUE_LIST -> {
+                int size = (int) readVarLong();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue());
+                }
+                yield list;
+            }
+            default -> throw new IllegalStateException("Unknown value tag " + tag + " at offset " + (position - 1));
+        };
+    }
+
+    // Lengths and counts are stored +1 so that 0 means null; returns -1 for null
+    private int readLength() {
+        return (int) readVarLong() - 1;
+    }
+
+    private void checkAvailable(int length) {
+        if (length > buffer.length - position) {
+            throw new IllegalStateException("Length " + length + " exceeds remaining " + (buffer.length - position) + " bytes");
+        }
+    }
+}
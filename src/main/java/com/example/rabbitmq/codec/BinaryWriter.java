@@ -0,0 +1,196 @@
+package com.example.rabbitmq.codec;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Growable little buffer with varint/zigzag primitives - no per-field allocation beyond String encoding
+class BinaryWriter {
+
+    static final int VALUE_NULL = 0;
+    static final int VALUE_STRING = 1;
+    static final int VALUE_TRUE = 2;
+    static final int VALUE_FALSE = 3;
+    static final int VALUE_INT = 4;
+    static final int VALUE_LONG = 5;
+    static final int VALUE_DOUBLE = 6;
+    static final int VALUE_MAP = 7;
+    static final int VALUE_LIST = 8;
+    static final int VALUE_FLOAT = 9;
+    static final int VALUE_DECIMAL = 10;
+
+    private byte[] buffer;
+    private int position;
+
+    BinaryWriter(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeZigZag(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[position++] = (byte) (bits >>> (i * 8));
+        }
+    }
+
+    void writeFloat(float value) {
+        int bits = Float.floatToIntBits(value);
+        ensureCapacity(4);
+        for (int i = 0; i < 4; i++) {
+            buffer[position++] = (byte) (bits >>> (i * 8));
+        }
+    }
+
+    // Length is stored +1 so that 0 can mean null
+    void writeString(String value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length + 1L);
+        writeBytes(bytes);
+    }
+
+    void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    // Dictionary-encoded enum: index into the codec's fixed table, +1 so that 0 means null
+    <E extends Enum<E>> void writeEnum(E value, E[] dictionary) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        for (int i = 0; i < dictionary.length; i++) {
+            if (dictionary[i] == value) {
+                writeVarLong(i + 1L);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("No dictionary entry for " + value + " in " + Arrays.toString(dictionary));
+    }
+
+    // Epoch seconds + nanos; LocalDateTime carries no zone so UTC keeps the round trip lossless
+    void writeTimestamp(LocalDateTime value) {
+        if (value == null) {
+            writeByte(0);
+            return;
+        }
+        writeByte(1);
+        writeZigZag(value.toEpochSecond(ZoneOffset.UTC));
+        writeVarLong(value.getNano());
+    }
+
+    void writeDecimal(BigDecimal value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        writeVarLong(unscaled.length + 1L);
+        writeBytes(unscaled);
+        writeZigZag(value.scale());
+    }
+
+    void writeStringList(List<String> values) {
+        if (values == null) {
+            writeVarLong(0);
+            return;
+        }
+        writeVarLong(values.size() + 1L);
+        for (String value : values) {
+            writeString(value);
+        }
+    }
+
+    void writeMap(Map<?, ?> values) {
+        if (values == null) {
+            writeVarLong(0);
+            return;
+        }
+        writeVarLong(values.size() + 1L);
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            if (!(entry.getKey() instanceof String key)) {
+                throw new IllegalArgumentException("Metadata keys must be strings: " + entry.getKey());
+            }
+            writeString(key);
+            writeValue(entry.getValue());
+        }
+    }
+
+    // Tagged encoding for free-form metadata values. Each type reads back as itself; anything else is refused
+    // rather than degraded to a string the consumer can't tell apart from a real one
+    void writeValue(Object value) {
+        if (value == null) {
+            writeByte(VALUE_NULL);
+        } else if (value instanceof String s) {
+            writeByte(VALUE_STRING);
+            writeString(s);
+        } else if (value instanceof Boolean b) {
+            writeByte(b ? VALUE_TRUE : VALUE_FALSE);
+        } else if (value instanceof Integer i) {
+            writeByte(VALUE_INT);
+            writeZigZag(i);
+        } else if (value instanceof Long l) {
+            writeByte(VALUE_LONG);
+            writeZigZag(l);
+        } else if (value instanceof Double d) {
+            writeByte(VALUE_DOUBLE);
+            writeDouble(d);
+        } else if (value instanceof Float f) {
+            writeByte(VALUE_FLOAT);
+            writeFloat(f);
+        } else if (value instanceof BigDecimal decimal) {
+            writeByte(VALUE_DECIMAL);
+            writeDecimal(decimal);
+        } else if (value instanceof Map<?, ?> map) {
+            writeByte(VALUE_MAP);
+            writeMap(map);
+        } else if (value instanceof List<?> list) {
+            writeByte(VALUE_LIST);
+            writeVarLong(list.size());
+            for (Object element : list) {
+                writeValue(element);
+            }
+        } else {
+            throw new IllegalArgumentException("Compact binary codec cannot encode a metadata value of type "
+                    + value.getClass().getName());
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.rabbitmq.codec;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.lang.reflect.Type;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Message converter that picks a codec by content type. Outbound messages use the
+ * configured publish content type when that codec supports the payload; inbound
+ * messages are decoded by whatever codec their {@code content_type} header names,
+ * so producers and consumers can switch codecs independently.
+ */
+public class CodecRegistry implements MessageConverter {
+
+    private final Map<String, Codec> codecs = new ConcurrentHashMap<>();
+    private final Codec defaultCodec;
+    private volatile String publishContentType;
+
+    public CodecRegistry(String defaultContentType, MessageConverter defaultConverter) {
+        this.defaultCodec = new Codec(defaultConverter, type -> true);
+        this.codecs.put(normalize(defaultContentType), defaultCodec);
+        this.publishContentType = defaultContentType;
+    }
+
+    public CodecRegistry register(String contentType, MessageConverter converter, Predicate<Class<?>> supportedTypes) {
+        codecs.put(normalize(contentType), new Codec(converter, supportedTypes));
+        return this;
+    }
+
+    public void setPublishContentType(String publishContentType) {
+        if (!codecs.containsKey(normalize(publishContentType))) {
+            throw new IllegalArgumentException("No codec registered for content type: " + publishContentType);
+        }
+        this.publishContentType = publishContentType;
+    }
+
+    public String getPublishContentType() {
+        return publishContentType;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        return toMessage(object, messageProperties, null);
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties, Type genericType)
+            throws MessageConversionException {
+        applyType(object, messageProperties);
+        Codec codec = outboundCodec(object);
+        if (codec == defaultCodec) {
+            return defaultCodec.converter.toMessage(object, messageProperties, genericType);
+        }
+        try {
+            return codec.converter.toMessage(object, messageProperties, genericType);
+        } catch (MessageConversionException e) {
+            // A supported type whose contents the preferred codec can't represent, e.g. exotic metadata values
+            return defaultCodec.converter.toMessage(object, messageProperties, genericType);
+        }
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        return inboundCodec(message.getMessageProperties().getContentType()).converter.fromMessage(message);
+    }
+
+    // The AMQP type property names the payload independently of the codec (used e.g. to pick compression dictionaries)
+    private static void applyType(Object object, MessageProperties messageProperties) {
+        if (messageProperties.getType() == null) {
+            messageProperties.setType(object.getClass().getSimpleName());
+        }
+    }
+
+    private Codec outboundCodec(Object object) {
+        Codec codec = codecs.getOrDefault(normalize(publishContentType), defaultCodec);
+        // Types the preferred codec can't encode (e.g. ad-hoc DTOs) fall back to the default codec
+        return codec.supportedTypes.test(object.getClass()) ? codec : defaultCodec;
+    }
+
+    private Codec inboundCodec(String contentType) {
+        if (contentType == null) {
+            return defaultCodec;
+        }
+        return codecs.getOrDefault(normalize(contentType), defaultCodec);
+    }
+
+    // "application/json;charset=UTF-8" and "application/json" select the same codec
+    private static String normalize(String contentType) {
+        int parameters = contentType.indexOf(';');
+        String base = parameters >= 0 ? contentType.substring(0, parameters) : contentType;
+        return base.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private record Codec(MessageConverter converter, Predicate<Class<?>> supportedTypes) {
+    }
+}
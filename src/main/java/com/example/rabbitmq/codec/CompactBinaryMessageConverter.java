@@ -0,0 +1,264 @@
+package com.example.rabbitmq.codec;
+
+import com.example.rabbitmq.model.ImageProcessingTask;
+import com.example.rabbitmq.model.IoTMessage;
+import com.example.rabbitmq.model.LogEntry;
+import com.example.rabbitmq.model.Order;
+import com.example.rabbitmq.model.SocialPost;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding for the five model classes: positional fields, varints,
+ * epoch-based timestamps and dictionary-encoded enums. A one-byte type tag makes
+ * the body self-describing, so consumers don't need a {@code __TypeId__} header.
+ * <p>
+ * Free-form metadata values keep their type: strings, booleans, ints, longs, floats,
+ * doubles, {@code BigDecimal}s and nested maps and lists of them. A payload holding
+ * anything else is refused with a {@link MessageConversionException}, and
+ * {@link CodecRegistry} sends it as JSON instead.
+ */
+public class CompactBinaryMessageConverter extends AbstractMessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-compact-binary";
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int TYPE_LOG_ENTRY = 1;
+    private static final int TYPE_IOT_MESSAGE = 2;
+    private static final int TYPE_SOCIAL_POST = 3;
+    private static final int TYPE_ORDER = 4;
+    private static final int TYPE_IMAGE_TASK = 5;
+
+    // Wire dictionaries - append only, never reorder, so old messages stay decodable
+    private static final LogEntry.LogLevel[] LOG_LEVELS = {
+            LogEntry.LogLevel.ERROR, LogEntry.LogLevel.WARNING, LogEntry.LogLevel.INFO, LogEntry.LogLevel.DEBUG
+    };
+    private static final SocialPost.PostType[] POST_TYPES = {
+            SocialPost.PostType.TEXT, SocialPost.PostType.IMAGE, SocialPost.PostType.VIDEO, SocialPost.PostType.STORY
+    };
+    private static final Order.OrderStatus[] ORDER_STATUSES = {
+            Order.OrderStatus.PENDING, Order.OrderStatus.PROCESSING, Order.OrderStatus.PAID,
+            Order.OrderStatus.SHIPPED, Order.OrderStatus.DELIVERED, Order.OrderStatus.CANCELLED
+    };
+    private static final ImageProcessingTask.TaskStatus[] TASK_STATUSES = {
+            ImageProcessingTask.TaskStatus.PENDING, ImageProcessingTask.TaskStatus.PROCESSING,
+            ImageProcessingTask.TaskStatus.COMPLETED, ImageProcessingTask.TaskStatus.FAILED
+    };
+
+    public boolean supports(Class<?> type) {
+        return type == LogEntry.class || type == IoTMessage.class || type == SocialPost.class
+                || type == Order.class || type == ImageProcessingTask.class;
+    }
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        BinaryWriter writer = new BinaryWriter(256);
+        writer.writeByte(FORMAT_VERSION);
+        try {
+            write(writer, object);
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException("Cannot encode " + object.getClass().getSimpleName() + " as compact binary", e);
+        }
+
+        byte[] body = writer.toByteArray();
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    private void write(BinaryWriter writer, Object object) {
+        if (object instanceof LogEntry logEntry) {
+            writer.writeByte(TYPE_LOG_ENTRY);
+            writeLogEntry(writer, logEntry);
+        } else if (object instanceof IoTMessage iotMessage) {
+            writer.writeByte(TYPE_IOT_MESSAGE);
+            writeIoTMessage(writer, iotMessage);
+        } else if (object instanceof SocialPost post) {
+            writer.writeByte(TYPE_SOCIAL_POST);
+            writeSocialPost(writer, post);
+        } else if (object instanceof Order order) {
+            writer.writeByte(TYPE_ORDER);
+            writeOrder(writer, order);
+        } else if (object instanceof ImageProcessingTask task) {
+            writer.writeByte(TYPE_IMAGE_TASK);
+            writeImageTask(writer, task);
+        } else {
+            throw new IllegalArgumentException("Compact binary codec does not support " + object.getClass().getName());
+        }
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        try {
+            BinaryReader reader = new BinaryReader(message.getBody());
+            int version = reader.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new MessageConversionException("Unsupported compact binary format version " + version);
+            }
+            int type = reader.readByte();
+            return switch (type) {
+                case TYPE_LOG_ENTRY -> readLogEntry(reader);
+                case TYPE_IOT_MESSAGE -> readIoTMessage(reader);
+                case TYPE_SOCIAL_POST -> readSocialPost(reader);
+                case TYPE_ORDER -> readOrder(reader);
+                case TYPE_IMAGE_TASK -> readImageTask(reader);
+                default -> throw new MessageConversionException("Unknown compact binary type tag " + type);
+            };
+        } catch (IllegalStateException e) {
+            throw new MessageConversionException("Malformed compact binary message", e);
+        }
+    }
+
+    private void writeLogEntry(BinaryWriter writer, LogEntry logEntry) {
+        writer.writeString(logEntry.getLogId());
+        writer.writeString(logEntry.getApplicationName());
+        writer.writeEnum(logEntry.getLevel(), LOG_LEVELS);
+        writer.writeString(logEntry.getMessage());
+        writer.writeTimestamp(logEntry.getTimestamp());
+        writer.writeString(logEntry.getSource());
+        writer.writeString(logEntry.getThread());
+        writer.writeString(logEntry.getException());
+        writer.writeMap(logEntry.getMetadata());
+    }
+
+    private LogEntry readLogEntry(BinaryReader reader) {
+        LogEntry logEntry = new LogEntry();
+        logEntry.setLogId(reader.readString());
+        logEntry.setApplicationName(reader.readString());
+        logEntry.setLevel(reader.readEnum(LOG_LEVELS));
+        logEntry.setMessage(reader.readString());
+        logEntry.setTimestamp(reader.readTimestamp());
+        logEntry.setSource(reader.readString());
+        logEntry.setThread(reader.readString());
+        logEntry.setException(reader.readString());
+        logEntry.setMetadata(reader.readMap());
+        return logEntry;
+    }
+
+    private void writeIoTMessage(BinaryWriter writer, IoTMessage message) {
+        writer.writeString(message.getMessageId());
+        writer.writeString(message.getDeviceId());
+        writer.writeString(message.getDeviceType());
+        writer.writeString(message.getLocation());
+        writer.writeString(message.getSensorType());
+        writer.writeDouble(message.getValue());
+        writer.writeString(message.getUnit());
+        writer.writeTimestamp(message.getTimestamp());
+        writer.writeMap(message.getMetadata());
+    }
+
+    private IoTMessage readIoTMessage(BinaryReader reader) {
+        IoTMessage message = new IoTMessage();
+        message.setMessageId(reader.readString());
+        message.setDeviceId(reader.readString());
+        message.setDeviceType(reader.readString());
+        message.setLocation(reader.readString());
+        message.setSensorType(reader.readString());
+        message.setValue(reader.readDouble());
+        message.setUnit(reader.readString());
+        message.setTimestamp(reader.readTimestamp());
+        message.setMetadata(reader.readMap());
+        return message;
+    }
+
+    private void writeSocialPost(BinaryWriter writer, SocialPost post) {
+        writer.writeString(post.getPostId());
+        writer.writeString(post.getUserId());
+        writer.writeString(post.getUsername());
+        writer.writeString(post.getContent());
+        writer.writeStringList(post.getImageUrls());
+        writer.writeStringList(post.getHashtags());
+        writer.writeStringList(post.getMentions());
+        writer.writeTimestamp(post.getTimestamp());
+        writer.writeEnum(post.getPostType(), POST_TYPES);
+    }
+
+    private SocialPost readSocialPost(BinaryReader reader) {
+        SocialPost post = new SocialPost();
+        post.setPostId(reader.readString());
+        post.setUserId(reader.readString());
+        post.setUsername(reader.readString());
+        post.setContent(reader.readString());
+        post.setImageUrls(reader.readStringList());
+        post.setHashtags(reader.readStringList());
+        post.setMentions(reader.readStringList());
+        post.setTimestamp(reader.readTimestamp());
+        post.setPostType(reader.readEnum(POST_TYPES));
+        return post;
+    }
+
+    private void writeOrder(BinaryWriter writer, Order order) {
+        writer.writeString(order.getOrderId());
+        writer.writeString(order.getCustomerId());
+        writer.writeString(order.getCustomerEmail());
+        List<Order.OrderItem> items = order.getItems();
+        writer.writeVarLong(items == null ? 0 : items.size() + 1L);
+        if (items != null) {
+            for (Order.OrderItem item : items) {
+                writer.writeString(item.getProductId());
+                writer.writeString(item.getProductName());
+                writer.writeZigZag(item.getQuantity());
+                writer.writeDecimal(item.getPrice());
+            }
+        }
+        writer.writeDecimal(order.getTotalAmount());
+        writer.writeTimestamp(order.getOrderDate());
+        writer.writeEnum(order.getStatus(), ORDER_STATUSES);
+    }
+
+    private Order readOrder(BinaryReader reader) {
+        Order order = new Order();
+        order.setOrderId(reader.readString());
+        order.setCustomerId(reader.readString());
+        order.setCustomerEmail(reader.readString());
+        int itemCount = (int) reader.readVarLong() - 1;
+        if (itemCount >= 0) {
+            List<Order.OrderItem> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                Order.OrderItem item = new Order.OrderItem();
+                item.setProductId(reader.readString());
+                item.setProductName(reader.readString());
+                item.setQuantity((int) reader.readZigZag());
+                item.setPrice(reader.readDecimal());
+                items.add(item);
+            }
+            order.setItems(items);
+        }
+        order.setTotalAmount(reader.readDecimal());
+        order.setOrderDate(reader.readTimestamp());
+        order.setStatus(reader.readEnum(ORDER_STATUSES));
+        return order;
+    }
+
+    private void writeImageTask(BinaryWriter writer, ImageProcessingTask task) {
+        writer.writeString(task.getTaskId());
+        writer.writeString(task.getImageUrl());
+        writer.writeString(task.getUserId());
+        writer.writeStringList(task.getOperations());
+        writer.writeEnum(task.getStatus(), TASK_STATUSES);
+        writer.writeTimestamp(task.getCreatedAt());
+        writer.writeTimestamp(task.getProcessedAt());
+        writer.writeString(task.getWorkerNode());
+        writer.writeZigZag(task.getProcessingTimeMs());
+    }
+
+    private ImageProcessingTask readImageTask(BinaryReader reader) {
+        ImageProcessingTask task = new ImageProcessingTask();
+        task.setTaskId(reader.readString());
+        task.setImageUrl(reader.readString());
+        task.setUserId(reader.readString());
+        task.setOperations(reader.readStringList());
+        task.setStatus(reader.readEnum(TASK_STATUSES));
+        task.setCreatedAt(reader.readTimestamp());
+        task.setProcessedAt(reader.readTimestamp());
+        task.setWorkerNode(reader.readString());
+        task.setProcessingTimeMs(reader.readZigZag());
+        return task;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.rabbitmq.codec;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times serialization and deserialization of the wrapped converter per message type
+ * ({@code messaging.serialization.time}, tagged by operation and type).
+ */
+public class InstrumentedMessageConverter implements MessageConverter {
+
+    private final MessageConverter delegate;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public InstrumentedMessageConverter(MessageConverter delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        long start = System.nanoTime();
+        Message message = delegate.toMessage(object, messageProperties);
+        timer("serialize", object.getClass().getSimpleName()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return message;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties, Type genericType)
+            throws MessageConversionException {
+        long start = System.nanoTime();
+        Message message = delegate.toMessage(object, messageProperties, genericType);
+        timer("serialize", object.getClass().getSimpleName()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return message;
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        long start = System.nanoTime();
+        Object object = delegate.fromMessage(message);
+        String type = object != null ? object.getClass().getSimpleName() : "null";
+        timer("deserialize", type).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return object;
+    }
+
+    private Timer timer(String operation, String type) {
+        return timers.computeIfAbsent(operation + ':' + type, key -> Timer.builder("messaging.serialization.time")
+                .description("Time spent converting payloads to and from message bodies")
+                .tag("operation", operation)
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.rabbitmq.codec;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.lang.reflect.Type;
+
+/**
+ * Listener parameter type whose body is decoded on first {@link #get()} rather than
+ * before the listener is called. Declare {@code LazyPayload<IoTMessage>} in place of
+ * {@code IoTMessage} and read what you can from {@code @Header} parameters (see
+ * {@link RoutingHeaders}); a delivery the listener answers from headers alone is
+ * never deserialized.
+ * <p>
+ * Bound to the delivery it came with and meant for the listener thread only.
+ */
+public final class LazyPayload<T> {
+
+    private final Message message;
+    private final MessageConverter converter;
+    private final Type type;
+    private T value;
+    private boolean decoded;
+
+    LazyPayload(Message message, MessageConverter converter, Type type) {
+        this.message = message;
+        this.converter = converter;
+        this.type = type;
+    }
+
+    // Already decoded, e.g. for callers that hold the model rather than a delivery
+    public static <T> LazyPayload<T> of(T value) {
+        LazyPayload<T> payload = new LazyPayload<>(null, null, null);
+        payload.value = value;
+        payload.decoded = true;
+        return payload;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get() {
+        if (!decoded) {
+            message.getMessageProperties().setInferredArgumentType(type);
+            value = (T) converter.fromMessage(message);
+            decoded = true;
+        }
+        return value;
+    }
+
+    public boolean isDecoded() {
+        return decoded;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.rabbitmq.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a record as a field projection of a message model, for use as a listener's
+ * payload type. Each component is filled from the top-level JSON field of the same name;
+ * every other field is skipped by the streaming parser without being decoded. A
+ * {@link Present} component records whether a field is there and non-null without reading
+ * it, and a {@code LazyPayload<T>} component gives the listener the full model on demand.
+ * <pre>
+ * &#64;Projection(LogEntry.class)
+ * public record ErrorLog(String applicationName, String message,
+ *                        &#64;Projection.Present("exception") boolean hasException,
+ *                        LazyPayload&lt;LogEntry&gt; entry) { }
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Projection {
+
+    // The model the projection reads from; bodies in a non-JSON codec are decoded as this and projected after
+    Class<?> value();
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.RECORD_COMPONENT)
+    @interface Present {
+        String value();
+    }
+}
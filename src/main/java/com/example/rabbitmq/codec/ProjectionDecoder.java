@@ -0,0 +1,173 @@
+package com.example.rabbitmq.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Builds @Projection records straight from the JSON token stream. Skipped values are never turned into Strings or
+// maps: Jackson leaves a string token undecoded until asked and skipChildren() walks objects and arrays in place.
+// Parsing stops as soon as every component has been resolved, so trailing fields are not even scanned
+final class ProjectionDecoder {
+
+    private final ObjectMapper mapper;
+    private final Map<Class<?>, Plan> plans = new ConcurrentHashMap<>();
+
+    // The JSON codec's own mapper, so a projected field decodes exactly as it would in the full model
+    ProjectionDecoder(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    static boolean isProjection(Type type) {
+        return type instanceof Class<?> cls && cls.isRecord() && cls.isAnnotationPresent(Projection.class);
+    }
+
+    Object decode(Message message, Class<?> type, MessageConverter delegate) {
+        Plan plan = plans.computeIfAbsent(type, this::plan);
+        Object[] values = plan.initialValues();
+        try {
+            Object full = null;
+            JsonParser parser;
+            if (isJson(message.getMessageProperties().getContentType())) {
+                parser = mapper.getFactory().createParser(message.getBody());
+            } else {
+                // Other codecs have no token stream to skip through; decode the model and project from its tree
+                message.getMessageProperties().setInferredArgumentType(plan.source);
+                full = delegate.fromMessage(message);
+                parser = mapper.valueToTree(full).traverse(mapper);
+            }
+            try (parser) {
+                read(parser, plan, values);
+            }
+            for (int slot : plan.lazySlots) {
+                values[slot] = full != null ? LazyPayload.of(full) : new LazyPayload<>(message, delegate, plan.types[slot]);
+            }
+            return plan.constructor.newInstance(values);
+        } catch (IOException e) {
+            throw new MessageConversionException("Cannot project message onto " + type.getSimpleName(), e);
+        } catch (ReflectiveOperationException e) {
+            throw new MessageConversionException("Cannot create " + type.getSimpleName(), e);
+        }
+    }
+
+    private void read(JsonParser parser, Plan plan, Object[] values) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new MessageConversionException("Expected a JSON object for " + plan.source.getSimpleName());
+        }
+        int unresolved = plan.resolvable;
+        // A repeated field name must not count twice, or parsing would stop before the remaining fields
+        boolean[] resolved = new boolean[values.length];
+        while (unresolved > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+            // Field names come from Jackson's symbol table, so the lookups don't allocate
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            Integer presence = plan.presence.get(name);
+            if (presence != null) {
+                values[presence] = token != JsonToken.VALUE_NULL;
+                if (!resolved[presence]) {
+                    resolved[presence] = true;
+                    unresolved--;
+                }
+            }
+            Integer slot = plan.fields.get(name);
+            if (slot != null) {
+                if (token != JsonToken.VALUE_NULL) {
+                    values[slot] = mapper.readValue(parser, plan.javaTypes[slot]);
+                }
+                if (!resolved[slot]) {
+                    resolved[slot] = true;
+                    unresolved--;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static boolean isJson(String contentType) {
+        return contentType == null || contentType.contains("json");
+    }
+
+    private Plan plan(Class<?> type) {
+        RecordComponent[] components = type.getRecordComponents();
+        Plan plan = new Plan(type.getAnnotation(Projection.class).value(), components.length);
+        Class<?>[] parameterTypes = new Class<?>[components.length];
+        for (int slot = 0; slot < components.length; slot++) {
+            RecordComponent component = components[slot];
+            parameterTypes[slot] = component.getType();
+            Projection.Present present = component.getAnnotation(Projection.Present.class);
+            if (present != null) {
+                plan.presence.put(present.value(), slot);
+            } else if (component.getType() == LazyPayload.class) {
+                plan.lazy(slot, ((ParameterizedType) component.getGenericType()).getActualTypeArguments()[0]);
+            } else {
+                plan.fields.put(component.getName(), slot);
+                plan.javaTypes[slot] = mapper.constructType(component.getGenericType());
+            }
+            if (component.getType().isPrimitive()) {
+                plan.defaults[slot] = primitiveDefault(component.getType());
+            }
+        }
+        plan.resolvable = plan.fields.size() + plan.presence.size();
+        try {
+            plan.constructor = type.getDeclaredConstructor(parameterTypes);
+            plan.constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("No canonical constructor on " + type, e);
+        }
+        return plan;
+    }
+
+    private static Object primitiveDefault(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == char.class) return '\0';
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == float.class) return 0f;
+        return 0d;
+    }
+
+    private static final class Plan {
+        private final Class<?> source;
+        private final Map<String, Integer> fields = new HashMap<>();
+        private final Map<String, Integer> presence = new HashMap<>();
+        private final JavaType[] javaTypes;
+        private final Type[] types;
+        private final Object[] defaults;
+        private int[] lazySlots = new int[0];
+        private int resolvable;
+        private Constructor<?> constructor;
+
+        Plan(Class<?> source, int components) {
+            this.source = source;
+            this.javaTypes = new JavaType[components];
+            this.types = new Type[components];
+            this.defaults = new Object[components];
+        }
+
+        void lazy(int slot, Type type) {
+            types[slot] = type;
+            lazySlots = Arrays.copyOf(lazySlots, lazySlots.length + 1);
+            lazySlots[lazySlots.length - 1] = slot;
+        }
+
+        Object[] initialValues() {
+            return defaults.clone();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.rabbitmq.codec;
+
+import com.example.rabbitmq.model.IoTMessage;
+import com.example.rabbitmq.model.LogEntry;
+import com.example.rabbitmq.model.SocialPost;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.Set;
+
+// Key fields copied into AMQP headers on publish, so listeners and broker-side filters can read them without
+// decoding the body. Keep them small: every header travels with every message and counts against frame_max
+public final class RoutingHeaders {
+
+    public static final String APPLICATION_NAME = "x-application-name";
+    public static final String LOG_LEVEL = "x-log-level";
+
+    public static final String DEVICE_ID = "x-device-id";
+    public static final String LOCATION = "x-location";
+    public static final String SENSOR_TYPE = "x-sensor-type";
+    public static final String VALUE = "x-value";
+
+    public static final String USER_ID = "x-user-id";
+    public static final String POST_TYPE = "x-post-type";
+    public static final String HASHTAGS = "x-hashtags";
+
+    public static final Set<String> ALL = Set.of(APPLICATION_NAME, LOG_LEVEL, DEVICE_ID, LOCATION, SENSOR_TYPE, VALUE,
+            USER_ID, POST_TYPE, HASHTAGS);
+
+    private RoutingHeaders() {
+    }
+
+    static void promote(Object payload, MessageProperties properties) {
+        if (payload instanceof LogEntry entry) {
+            put(properties, APPLICATION_NAME, entry.getApplicationName());
+            put(properties, LOG_LEVEL, entry.getLevel() != null ? entry.getLevel().name() : null);
+        } else if (payload instanceof IoTMessage message) {
+            put(properties, DEVICE_ID, message.getDeviceId());
+            put(properties, LOCATION, message.getLocation());
+            put(properties, SENSOR_TYPE, message.getSensorType());
+            properties.setHeader(VALUE, message.getValue());
+        } else if (payload instanceof SocialPost post) {
+            put(properties, USER_ID, post.getUserId());
+            put(properties, POST_TYPE, post.getPostType() != null ? post.getPostType().name() : null);
+            if (post.getHashtags() != null) {
+                properties.setHeader(HASHTAGS, String.join(",", post.getHashtags()));
+            }
+        }
+    }
+
+    private static void put(MessageProperties properties, String name, String value) {
+        if (value != null) {
+            properties.setHeader(name, value);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.rabbitmq.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * Outermost message converter. On the way out it copies the payload's key fields into
+ * headers ({@link RoutingHeaders}) before the body is encoded. On the way in, a listener
+ * whose payload parameter is a {@link LazyPayload} gets one wrapping the raw message, and
+ * the delegate only runs if the listener asks for the body; one whose payload parameter is
+ * a {@link Projection} record gets just the fields it declares, read from the token stream.
+ * The listener container puts the declared parameter type in {@code inferredArgumentType},
+ * which is how both are spotted.
+ * Projections are read with the same {@link ObjectMapper} the JSON codec uses.
+ */
+public class RoutingMetadataConverter implements MessageConverter {
+
+    private final MessageConverter delegate;
+    private final ProjectionDecoder projections;
+
+    public RoutingMetadataConverter(MessageConverter delegate, ObjectMapper mapper) {
+        this.delegate = delegate;
+        this.projections = new ProjectionDecoder(mapper);
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        RoutingHeaders.promote(object, messageProperties);
+        return delegate.toMessage(object, messageProperties);
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties, Type genericType)
+            throws MessageConversionException {
+        RoutingHeaders.promote(object, messageProperties);
+        return delegate.toMessage(object, messageProperties, genericType);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        Type inferred = message.getMessageProperties().getInferredArgumentType();
+        if (inferred instanceof ParameterizedType parameterized && parameterized.getRawType() == LazyPayload.class) {
+            return new LazyPayload<>(message, delegate, parameterized.getActualTypeArguments()[0]);
+        }
+        if (ProjectionDecoder.isProjection(inferred)) {
+            return projections.decode(message, (Class<?>) inferred, delegate);
+        }
+        return delegate.fromMessage(message);
+    }
+}
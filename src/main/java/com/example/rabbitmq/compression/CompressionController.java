@@ -0,0 +1,34 @@
+package com.example.rabbitmq.compression;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/compression")
+@Tag(name = "Compression", description = "Preset dictionary training from sampled traffic")
+public class CompressionController {
+
+    private final CompressionDictionaries dictionaries;
+
+    public CompressionController(CompressionDictionaries dictionaries) {
+        this.dictionaries = dictionaries;
+    }
+
+    @PostMapping(value = "/dictionaries/{type}/train", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @Operation(summary = "Train a deflate dictionary from sampled bodies of a message type")
+    public ResponseEntity<byte[]> train(@PathVariable String type,
+                                        @RequestParam(defaultValue = "16384") int maxSize) {
+        byte[] dictionary = dictionaries.train(type, maxSize);
+        if (dictionary == null) {
+            return ResponseEntity.notFound().build();
+        }
+        // Save the file and reference it under app.messaging.compression.dictionaries on every instance
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + type + ".dict\"")
+                .body(dictionary);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.rabbitmq.compression;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.Adler32;
+
+/**
+ * Preset deflate dictionaries per message type. Publishers look dictionaries up by
+ * message type; consumers look them up by the Adler-32 id that zlib embeds in every
+ * stream compressed with a dictionary, so no extra header is needed.
+ * <p>
+ * When sampling is enabled, a bounded reservoir of bodies per type is kept so a
+ * dictionary can be trained from live traffic and then shipped to every instance.
+ */
+public class CompressionDictionaries {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressionDictionaries.class);
+    private static final int RESERVOIR_SIZE = 500;
+
+    private final Map<String, byte[]> byType = new ConcurrentHashMap<>();
+    private final Map<Integer, byte[]> byId = new ConcurrentHashMap<>();
+    private final Map<String, Reservoir> samples = new ConcurrentHashMap<>();
+    private final boolean sampling;
+
+    public CompressionDictionaries(Map<String, String> locations, boolean sampling) {
+        this.sampling = sampling;
+        ResourceLoader resourceLoader = new DefaultResourceLoader();
+        locations.forEach((type, location) -> {
+            Resource resource = resourceLoader.getResource(location);
+            try (InputStream in = resource.getInputStream()) {
+                register(type, in.readAllBytes());
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot load compression dictionary for " + type + " from " + location, e);
+            }
+        });
+    }
+
+    public void register(String type, byte[] dictionary) {
+        byType.put(type, dictionary);
+        byId.put(idOf(dictionary), dictionary);
+        logger.info("Registered {} byte compression dictionary for {} (id {})",
+                dictionary.length, type, Integer.toHexString(idOf(dictionary)));
+    }
+
+    public byte[] forType(String type) {
+        return type == null ? null : byType.get(type);
+    }
+
+    public byte[] forId(int adler) {
+        return byId.get(adler);
+    }
+
+    public void sample(String type, byte[] body) {
+        if (sampling && type != null) {
+            samples.computeIfAbsent(type, k -> new Reservoir()).offer(body);
+        }
+    }
+
+    public byte[] train(String type, int maxSize) {
+        Reservoir reservoir = samples.get(type);
+        if (reservoir == null) {
+            return null;
+        }
+        return DictionaryTrainer.train(reservoir.snapshot(), maxSize);
+    }
+
+    static int idOf(byte[] dictionary) {
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        return (int) adler.getValue();
+    }
+
+    // Classic reservoir sampling keeps a uniform sample of the whole stream in fixed memory
+    private static class Reservoir {
+        private final List<byte[]> items = new ArrayList<>(RESERVOIR_SIZE);
+        private long seen;
+
+        synchronized void offer(byte[] body) {
+            seen++;
+            if (items.size() < RESERVOIR_SIZE) {
+                items.add(body);
+            } else {
+                long slot = ThreadLocalRandom.current().nextLong(seen);
+                if (slot < RESERVOIR_SIZE) {
+                    items.set((int) slot, body);
+                }
+            }
+        }
+
+        synchronized List<byte[]> snapshot() {
+            return new ArrayList<>(items);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.rabbitmq.compression;
+
+import com.example.rabbitmq.messaging.MessagingPatterns;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.amqp.core.Correlation;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Publisher stage that deflates bodies above a size threshold and marks them with
+ * {@code content-encoding: deflate}. Output is standard zlib, so any consumer with a
+ * deflate post processor can read it; dictionary-primed streams carry the dictionary
+ * id in the zlib header.
+ * <p>
+ * Compression is skipped when it doesn't save at least {@code minSaving}, and after
+ * a run of such misses a destination is only probed occasionally.
+ */
+public class CompressionPostProcessor implements MessagePostProcessor {
+
+    public static final String ENCODING = "deflate";
+    public static final String UNCOMPRESSED_LENGTH_HEADER = "x-uncompressed-length";
+
+    private static final int NO_GAIN_STREAK_LIMIT = 8;
+    private static final int PROBE_INTERVAL = 64;
+
+    private final int threshold;
+    private final int level;
+    private final double minSaving;
+    private final CompressionDictionaries dictionaries;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Destination> destinations = new ConcurrentHashMap<>();
+
+    public CompressionPostProcessor(int threshold, int level, double minSaving,
+                                    CompressionDictionaries dictionaries, MeterRegistry meterRegistry) {
+        this.threshold = threshold;
+        this.level = level;
+        this.minSaving = minSaving;
+        this.dictionaries = dictionaries;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Message postProcessMessage(Message message) {
+        return postProcessMessage(message, null, "", "");
+    }
+
+    @Override
+    public Message postProcessMessage(Message message, Correlation correlation, String exchange, String routingKey) {
+        MessageProperties properties = message.getMessageProperties();
+        byte[] body = message.getBody();
+        if (properties.getContentEncoding() != null || body.length < threshold) {
+            return message;
+        }
+
+        String destination = MessagingPatterns.destination(exchange, routingKey);
+        Destination stats = destinations.computeIfAbsent(destination, Destination::new);
+        if (stats.shouldSkip()) {
+            return message;
+        }
+
+        String type = properties.getType();
+        dictionaries.sample(type, body);
+
+        long start = System.nanoTime();
+        byte[] compressed = deflate(body, dictionaries.forType(type));
+        stats.compressTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        double ratio = (double) compressed.length / body.length;
+        stats.ratio.record(ratio);
+        if (ratio > 1.0 - minSaving) {
+            stats.noGain();
+            return message;
+        }
+        stats.gain(body.length - compressed.length);
+
+        // Copy the properties - the original message may be re-sent (e.g. after a nack) and must stay intact
+        return MessageBuilder.withBody(compressed)
+                .copyProperties(properties)
+                .setContentEncoding(ENCODING)
+                .setHeader(UNCOMPRESSED_LENGTH_HEADER, body.length)
+                .build();
+    }
+
+    private byte[] deflate(byte[] body, byte[] dictionary) {
+        Deflater deflater = new Deflater(level);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(body);
+            deflater.finish();
+            byte[] buffer = new byte[body.length + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private class Destination {
+        private final DistributionSummary ratio;
+        private final Timer compressTime;
+        private final Counter bytesSaved;
+        private final AtomicInteger noGainStreak = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        Destination(String name) {
+            this.ratio = DistributionSummary.builder("messaging.compression.ratio")
+                    .description("Compressed size / original size")
+                    .tag("destination", name)
+                    .tag("side", "publish")
+                    .register(meterRegistry);
+            this.compressTime = Timer.builder("messaging.compression.time")
+                    .description("CPU time spent (de)compressing message bodies")
+                    .tag("destination", name)
+                    .tag("operation", "compress")
+                    .register(meterRegistry);
+            this.bytesSaved = Counter.builder("messaging.compression.bytes.saved")
+                    .description("Bytes kept off the wire by compression")
+                    .baseUnit("bytes")
+                    .tag("destination", name)
+                    .register(meterRegistry);
+        }
+
+        boolean shouldSkip() {
+            // Incompressible traffic (already compressed, tiny entropy-rich payloads) is only probed now and then
+            return noGainStreak.get() >= NO_GAIN_STREAK_LIMIT && skipped.incrementAndGet() % PROBE_INTERVAL != 0;
+        }
+
+        void noGain() {
+            noGainStreak.incrementAndGet();
+        }
+
+        void gain(long saved) {
+            noGainStreak.set(0);
+            bytesSaved.increment(saved);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.rabbitmq.compression;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Consumer stage that inflates {@code content-encoding: deflate} bodies before they
+ * reach the message converter. Always installed, so consumers keep working whether or
+ * not the publishers have compression switched on.
+ * <p>
+ * Neither the {@code x-uncompressed-length} header nor the compression ratio is trusted:
+ * a body that would inflate beyond {@code maxUncompressedSize} is rejected without being
+ * requeued, before more than that much memory is allocated for it.
+ */
+public class DecompressionPostProcessor implements MessagePostProcessor {
+
+    private final CompressionDictionaries dictionaries;
+    private final int maxUncompressedSize;
+    private final MeterRegistry meterRegistry;
+
+    public DecompressionPostProcessor(CompressionDictionaries dictionaries, int maxUncompressedSize,
+                                      MeterRegistry meterRegistry) {
+        this.dictionaries = dictionaries;
+        this.maxUncompressedSize = maxUncompressedSize;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Message postProcessMessage(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        if (!CompressionPostProcessor.ENCODING.equals(properties.getContentEncoding())) {
+            return message;
+        }
+
+        String queue = properties.getConsumerQueue() != null ? properties.getConsumerQueue() : "unknown";
+        byte[] compressed = message.getBody();
+
+        int expectedLength = expectedLength(properties);
+        if (expectedLength > maxUncompressedSize) {
+            throw new AmqpRejectAndDontRequeueException("Uncompressed length " + expectedLength
+                    + " exceeds the " + maxUncompressedSize + " byte limit");
+        }
+
+        long start = System.nanoTime();
+        byte[] body = inflate(compressed, expectedLength);
+        Timer.builder("messaging.compression.time")
+                .description("CPU time spent (de)compressing message bodies")
+                .tag("destination", queue)
+                .tag("operation", "decompress")
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("messaging.compression.ratio")
+                .description("Compressed size / original size")
+                .tag("destination", queue)
+                .tag("side", "consume")
+                .register(meterRegistry)
+                .record((double) compressed.length / Math.max(body.length, 1));
+
+        return MessageBuilder.withBody(body)
+                .copyProperties(properties)
+                .setContentEncoding(null)
+                .removeHeader(CompressionPostProcessor.UNCOMPRESSED_LENGTH_HEADER)
+                .build();
+    }
+
+    private byte[] inflate(byte[] compressed, int expectedLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            // The header is only a sizing hint: the buffer never grows past the limit plus the one byte that
+            // shows a body overran it, whatever the stream turns out to hold
+            long capacity = maxUncompressedSize + 1L;
+            byte[] buffer = new byte[(int) Math.min(Math.max(expectedLength, compressed.length * 4L), capacity)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length > maxUncompressedSize) {
+                    throw new AmqpRejectAndDontRequeueException("Inflated body exceeds the "
+                            + maxUncompressedSize + " byte limit");
+                }
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, capacity));
+                }
+                int inflated = inflater.inflate(buffer, length, buffer.length - length);
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    byte[] dictionary = dictionaries.forId(inflater.getAdler());
+                    if (dictionary == null) {
+                        throw new AmqpRejectAndDontRequeueException("Unknown compression dictionary "
+                                + Integer.toHexString(inflater.getAdler()));
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (inflated == 0 && inflater.needsInput()) {
+                    throw new AmqpRejectAndDontRequeueException("Truncated deflate body");
+                }
+                length += inflated;
+            }
+            if (length > maxUncompressedSize) {
+                throw new AmqpRejectAndDontRequeueException("Inflated body exceeds the "
+                        + maxUncompressedSize + " byte limit");
+            }
+            return Arrays.copyOf(buffer, length);
+        } catch (DataFormatException e) {
+            // A corrupt body will never decode - don't let it bounce between requeues
+            throw new AmqpRejectAndDontRequeueException("Cannot inflate message body", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int expectedLength(MessageProperties properties) {
+        Object header = properties.getHeaders().get(CompressionPostProcessor.UNCOMPRESSED_LENGTH_HEADER);
+        return header instanceof Number number ? number.intValue() : 0;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.rabbitmq.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a deflate preset dictionary from sample message bodies. Byte segments that
+ * recur across many samples (field names, enum values, common URLs, stack frame
+ * prefixes) are the ones worth priming the compressor with.
+ * <p>
+ * Deflate references are cheaper the closer they are to the data, so the most
+ * valuable segments are placed at the end of the dictionary.
+ */
+public final class DictionaryTrainer {
+
+    private static final int SEGMENT_LENGTH = 16;
+
+    private DictionaryTrainer() {
+    }
+
+    public static byte[] train(List<byte[]> samples, int maxSize) {
+        // Count in how many distinct samples each segment appears, not raw frequency,
+        // so one huge repetitive sample can't dominate the dictionary
+        Map<ByteBuffer, Integer> documentFrequency = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<ByteBuffer> seenInSample = new HashSet<>();
+            for (int offset = 0; offset + SEGMENT_LENGTH <= sample.length; offset++) {
+                ByteBuffer segment = ByteBuffer.wrap(sample, offset, SEGMENT_LENGTH).slice();
+                if (seenInSample.add(segment)) {
+                    documentFrequency.merge(segment, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Map.Entry<ByteBuffer, Integer>> ranked = new ArrayList<>(documentFrequency.entrySet());
+        ranked.removeIf(entry -> entry.getValue() < 2);
+        ranked.sort(Map.Entry.<ByteBuffer, Integer>comparingByValue().reversed());
+
+        // Skip segments that are a one-byte shift of one already chosen - they add almost nothing
+        Set<ByteBuffer> chosenHeads = new HashSet<>();
+        Set<ByteBuffer> chosenTails = new HashSet<>();
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<ByteBuffer, Integer> entry : ranked) {
+            if (size + SEGMENT_LENGTH > maxSize) {
+                break;
+            }
+            byte[] segment = new byte[SEGMENT_LENGTH];
+            entry.getKey().duplicate().get(segment);
+            ByteBuffer head = ByteBuffer.wrap(segment, 0, SEGMENT_LENGTH - 1).slice();
+            ByteBuffer tail = ByteBuffer.wrap(segment, 1, SEGMENT_LENGTH - 1).slice();
+            if (chosenTails.contains(head) || chosenHeads.contains(tail)) {
+                continue;
+            }
+            chosenHeads.add(head);
+            chosenTails.add(tail);
+            chosen.add(segment);
+            size += SEGMENT_LENGTH;
+        }
+
+        // Least valuable first, most valuable last
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            dictionary.writeBytes(chosen.get(i));
+        }
+        return dictionary.toByteArray();
+    }
+}
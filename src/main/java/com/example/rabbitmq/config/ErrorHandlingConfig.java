@@ -14,8 +14,6 @@ import org.springframework.amqp.rabbit.retry.RepublishMessageRecoverer;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.retry.policy.SimpleRetryPolicy;
-import org.springframework.retry.support.RetryTemplate;
 import org.springframework.util.ErrorHandler;
 
 @Configuration
@@ -33,13 +31,6 @@ public class ErrorHandlingConfig implements RabbitListenerConfigurer {
         return new CustomFatalExceptionStrategy();
     }
 
-    @Bean
-    public RetryTemplate retryTemplate() {
-        RetryTemplate retryTemplate = new RetryTemplate();
-        retryTemplate.setRetryPolicy(new SimpleRetryPolicy(3));
-        return retryTemplate;
-    }
-
     @Bean
     public MessageRecoverer messageRecoverer(RabbitTemplate rabbitTemplate) {
         return new RepublishMessageRecoverer(rabbitTemplate, RabbitConfig.DLX_EXCHANGE, "dlx");
@@ -55,12 +46,18 @@ public class ErrorHandlingConfig implements RabbitListenerConfigurer {
 
         @Override
         public boolean isFatal(Throwable t) {
-            logger.error("Evaluating if exception is fatal: {}", t.getClass().getSimpleName());
+            logger.debug("Evaluating if exception is fatal: {}", t.getClass().getSimpleName());
             
-            // Don't retry for these fatal exceptions
-            return t instanceof IllegalArgumentException || 
-                   t instanceof SecurityException ||
-                   t instanceof ClassCastException;
+            // Don't retry for these fatal exceptions. The error handler passes the container's
+            // ListenerExecutionFailedException, so the listener's own exception is one of its causes
+            for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IllegalArgumentException || 
+                    cause instanceof SecurityException ||
+                    cause instanceof ClassCastException) {
+                    return true;
+                }
+            }
+            return false;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,621 @@
+package com.example.rabbitmq.config;
+
+import com.example.rabbitmq.alert.AlertDispatcher;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "app.messaging")
+public class MessagingProperties {
+
+    private final Batching batching = new Batching();
+    private final Codec codec = new Codec();
+    private final Compression compression = new Compression();
+    private final Confirms confirms = new Confirms();
+    private final Listener listener = new Listener();
+    private final Streams streams = new Streams();
+    private final Partitioning partitioning = new Partitioning();
+    private final Outbox outbox = new Outbox();
+    private final Retry retry = new Retry();
+    private final Quarantine quarantine = new Quarantine();
+    private final Idempotency idempotency = new Idempotency();
+    private final DeadLetters deadLetters = new DeadLetters();
+    private final Classifier classifier = new Classifier();
+    private final LogRates logRates = new LogRates();
+    private final BoundedCounters boundedCounters = new BoundedCounters();
+    private final AlertCoalescing alertCoalescing = new AlertCoalescing();
+    private final AlertDispatch alertDispatch = new AlertDispatch();
+
+    public Batching getBatching() { return batching; }
+    public Codec getCodec() { return codec; }
+    public Compression getCompression() { return compression; }
+    public Confirms getConfirms() { return confirms; }
+    public Listener getListener() { return listener; }
+    public Streams getStreams() { return streams; }
+    public Partitioning getPartitioning() { return partitioning; }
+    public Outbox getOutbox() { return outbox; }
+    public Retry getRetry() { return retry; }
+    public Quarantine getQuarantine() { return quarantine; }
+    public Idempotency getIdempotency() { return idempotency; }
+    public DeadLetters getDeadLetters() { return deadLetters; }
+    public Classifier getClassifier() { return classifier; }
+    public LogRates getLogRates() { return logRates; }
+    public BoundedCounters getBoundedCounters() { return boundedCounters; }
+    public AlertCoalescing getAlertCoalescing() { return alertCoalescing; }
+    public AlertDispatch getAlertDispatch() { return alertDispatch; }
+
+    // Opt-in publisher batching: many small messages per exchange/routing key are packed into one AMQP frame
+    public static class Batching {
+        private boolean enabled = false;
+        private List<String> exchanges = new ArrayList<>(List.of(
+                RabbitConfig.LOG_DIRECT_EXCHANGE,
+                RabbitConfig.IOT_TOPIC_EXCHANGE,
+                RabbitConfig.SOCIAL_FANOUT_EXCHANGE));
+        private int batchSize = 100;
+        private DataSize bufferLimit = DataSize.ofKilobytes(64);
+        private Duration linger = Duration.ofMillis(10);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public List<String> getExchanges() { return exchanges; }
+        public void setExchanges(List<String> exchanges) { this.exchanges = exchanges; }
+
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+        public DataSize getBufferLimit() { return bufferLimit; }
+        public void setBufferLimit(DataSize bufferLimit) { this.bufferLimit = bufferLimit; }
+
+        public Duration getLinger() { return linger; }
+        public void setLinger(Duration linger) { this.linger = linger; }
+    }
+
+    // Content type used for outbound messages; inbound messages are decoded by their own content_type header
+    public static class Codec {
+        private String publishContentType = "application/json";
+
+        public String getPublishContentType() { return publishContentType; }
+        public void setPublishContentType(String publishContentType) { this.publishContentType = publishContentType; }
+    }
+
+    // Opt-in deflate of large bodies; consumers always inflate, so publishers can be switched independently
+    public static class Compression {
+        private boolean enabled = false;
+        private DataSize threshold = DataSize.ofKilobytes(1);
+        private int level = 1;
+        private double minSaving = 0.1;
+        private Map<String, String> dictionaries = new LinkedHashMap<>();
+        private boolean sampleForTraining = false;
+        private DataSize maxUncompressedSize = DataSize.ofMegabytes(16);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public DataSize getThreshold() { return threshold; }
+        public void setThreshold(DataSize threshold) { this.threshold = threshold; }
+
+        public int getLevel() { return level; }
+        public void setLevel(int level) { this.level = level; }
+
+        public double getMinSaving() { return minSaving; }
+        public void setMinSaving(double minSaving) { this.minSaving = minSaving; }
+
+        public Map<String, String> getDictionaries() { return dictionaries; }
+        public void setDictionaries(Map<String, String> dictionaries) { this.dictionaries = dictionaries; }
+
+        public boolean isSampleForTraining() { return sampleForTraining; }
+        public void setSampleForTraining(boolean sampleForTraining) { this.sampleForTraining = sampleForTraining; }
+
+        public DataSize getMaxUncompressedSize() { return maxUncompressedSize; }
+        public void setMaxUncompressedSize(DataSize maxUncompressedSize) { this.maxUncompressedSize = maxUncompressedSize; }
+    }
+
+    // Window for publishes that wait for broker confirms; beyond max-in-flight + max-waiting callers get a 503
+    public static class Confirms {
+        private int maxInFlight = 256;
+        private int maxWaiting = 1024;
+        private int maxRetries = 2;
+        private Duration timeout = Duration.ofSeconds(5);
+
+        public int getMaxInFlight() { return maxInFlight; }
+        public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+
+        public int getMaxWaiting() { return maxWaiting; }
+        public void setMaxWaiting(int maxWaiting) { this.maxWaiting = maxWaiting; }
+
+        public int getMaxRetries() { return maxRetries; }
+        public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
+
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+    }
+
+    // Listeners pick their factory via app.messaging.listener.factory.<listener>; these tune the direct factory
+    public static class Listener {
+        private final Direct direct = new Direct();
+        private final VirtualThreads virtualThreads = new VirtualThreads();
+        private final ConsumerBatch consumerBatch = new ConsumerBatch();
+        private final AdaptivePrefetch adaptivePrefetch = new AdaptivePrefetch();
+
+        public Direct getDirect() { return direct; }
+        public VirtualThreads getVirtualThreads() { return virtualThreads; }
+        public ConsumerBatch getConsumerBatch() { return consumerBatch; }
+        public AdaptivePrefetch getAdaptivePrefetch() { return adaptivePrefetch; }
+
+        public static class Direct {
+            private int consumersPerQueue = 1;
+            private int prefetch = 250;
+
+            public int getConsumersPerQueue() { return consumersPerQueue; }
+            public void setConsumersPerQueue(int consumersPerQueue) { this.consumersPerQueue = consumersPerQueue; }
+
+            public int getPrefetch() { return prefetch; }
+            public void setPrefetch(int prefetch) { this.prefetch = prefetch; }
+        }
+
+        // In-flight deliveries per queue on the virtual-thread factory; the semaphore, not a thread count, is the limit
+        public static class VirtualThreads {
+            private int defaultLimit = 500;
+            private Map<String, Integer> limits = new LinkedHashMap<>();
+
+            public int getDefaultLimit() { return defaultLimit; }
+            public void setDefaultLimit(int defaultLimit) { this.defaultLimit = defaultLimit; }
+
+            public Map<String, Integer> getLimits() { return limits; }
+            public void setLimits(Map<String, Integer> limits) { this.limits = limits; }
+        }
+
+        // A batch is delivered when batch-size messages arrived or receive-timeout passed without a new one;
+        // listeners switch to their batch variant via consumer-batch.enabled.<listener>
+        public static class ConsumerBatch {
+            private int batchSize = 100;
+            private Duration receiveTimeout = Duration.ofMillis(200);
+            private Map<String, Boolean> enabled = new LinkedHashMap<>();
+
+            public int getBatchSize() { return batchSize; }
+            public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+            public Duration getReceiveTimeout() { return receiveTimeout; }
+            public void setReceiveTimeout(Duration receiveTimeout) { this.receiveTimeout = receiveTimeout; }
+
+            public Map<String, Boolean> getEnabled() { return enabled; }
+            public void setEnabled(Map<String, Boolean> enabled) { this.enabled = enabled; }
+        }
+
+        // Opt-in: prefetch per queue follows the listener's measured time per message, within min..max
+        public static class AdaptivePrefetch {
+            private boolean enabled = false;
+            private int min = 1;
+            private int max = 500;
+            private int initial = 10;
+            private Duration targetLatency = Duration.ofMillis(200);
+            private double smoothing = 0.5;
+            private Duration interval = Duration.ofSeconds(10);
+
+            public boolean isEnabled() { return enabled; }
+            public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+            public int getMin() { return min; }
+            public void setMin(int min) { this.min = min; }
+
+            public int getMax() { return max; }
+            public void setMax(int max) { this.max = max; }
+
+            public int getInitial() { return initial; }
+            public void setInitial(int initial) { this.initial = initial; }
+
+            public Duration getTargetLatency() { return targetLatency; }
+            public void setTargetLatency(Duration targetLatency) { this.targetLatency = targetLatency; }
+
+            public double getSmoothing() { return smoothing; }
+            public void setSmoothing(double smoothing) { this.smoothing = smoothing; }
+
+            public Duration getInterval() { return interval; }
+            public void setInterval(Duration interval) { this.interval = interval; }
+        }
+    }
+
+    // Opt-in: the listed queues are declared as append-only streams that consumers can replay from an offset
+    public static class Streams {
+        private boolean enabled = false;
+        private List<String> queues = new ArrayList<>(List.of(
+                RabbitConfig.INFO_LOG_QUEUE,
+                RabbitConfig.ANALYTICS_QUEUE,
+                RabbitConfig.IOT_ANALYTICS_QUEUE));
+        private DataSize maxLength = DataSize.ofGigabytes(5);
+        private Duration maxAge = Duration.ofDays(7);
+        private DataSize maxSegmentSize = DataSize.ofMegabytes(100);
+        private String defaultOffset = "next";
+        private Map<String, String> offsets = new LinkedHashMap<>();
+        private boolean resumeFromCheckpoint = true;
+        private String checkpointFile = "data/stream-offsets.properties";
+        private Duration checkpointInterval = Duration.ofSeconds(5);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public List<String> getQueues() { return queues; }
+        public void setQueues(List<String> queues) { this.queues = queues; }
+
+        public DataSize getMaxLength() { return maxLength; }
+        public void setMaxLength(DataSize maxLength) { this.maxLength = maxLength; }
+
+        public Duration getMaxAge() { return maxAge; }
+        public void setMaxAge(Duration maxAge) { this.maxAge = maxAge; }
+
+        public DataSize getMaxSegmentSize() { return maxSegmentSize; }
+        public void setMaxSegmentSize(DataSize maxSegmentSize) { this.maxSegmentSize = maxSegmentSize; }
+
+        public String getDefaultOffset() { return defaultOffset; }
+        public void setDefaultOffset(String defaultOffset) { this.defaultOffset = defaultOffset; }
+
+        public Map<String, String> getOffsets() { return offsets; }
+        public void setOffsets(Map<String, String> offsets) { this.offsets = offsets; }
+
+        public boolean isResumeFromCheckpoint() { return resumeFromCheckpoint; }
+        public void setResumeFromCheckpoint(boolean resumeFromCheckpoint) { this.resumeFromCheckpoint = resumeFromCheckpoint; }
+
+        public String getCheckpointFile() { return checkpointFile; }
+        public void setCheckpointFile(String checkpointFile) { this.checkpointFile = checkpointFile; }
+
+        public Duration getCheckpointInterval() { return checkpointInterval; }
+        public void setCheckpointInterval(Duration checkpointInterval) { this.checkpointInterval = checkpointInterval; }
+    }
+
+    // Opt-in: image tasks are hashed over N partition queues, which running workers share between them
+    public static class Partitioning {
+        private boolean enabled = false;
+        private int partitions = 4;
+        private String key = "userId";
+        private Duration heartbeatInterval = Duration.ofSeconds(2);
+        private Duration memberTimeout = Duration.ofSeconds(6);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getPartitions() { return partitions; }
+        public void setPartitions(int partitions) { this.partitions = partitions; }
+
+        public String getKey() { return key; }
+        public void setKey(String key) { this.key = key; }
+
+        public Duration getHeartbeatInterval() { return heartbeatInterval; }
+        public void setHeartbeatInterval(Duration heartbeatInterval) { this.heartbeatInterval = heartbeatInterval; }
+
+        public Duration getMemberTimeout() { return memberTimeout; }
+        public void setMemberTimeout(Duration memberTimeout) { this.memberTimeout = memberTimeout; }
+    }
+
+    // Opt-in: fire-and-forget publishes are appended to a local log and relayed to the broker in the background
+    public static class Outbox {
+        private boolean enabled = false;
+        private String directory = "data/outbox";
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+        private int maxSegments = 64;
+        private boolean awaitFlush = true;
+        private Duration flushTimeout = Duration.ofSeconds(5);
+        private int maxInFlight = 256;
+        private Duration confirmTimeout = Duration.ofSeconds(5);
+        private Duration retryBackoff = Duration.ofSeconds(1);
+        private Duration checkpointInterval = Duration.ofSeconds(1);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+
+        public DataSize getSegmentSize() { return segmentSize; }
+        public void setSegmentSize(DataSize segmentSize) { this.segmentSize = segmentSize; }
+
+        public int getMaxSegments() { return maxSegments; }
+        public void setMaxSegments(int maxSegments) { this.maxSegments = maxSegments; }
+
+        public boolean isAwaitFlush() { return awaitFlush; }
+        public void setAwaitFlush(boolean awaitFlush) { this.awaitFlush = awaitFlush; }
+
+        public Duration getFlushTimeout() { return flushTimeout; }
+        public void setFlushTimeout(Duration flushTimeout) { this.flushTimeout = flushTimeout; }
+
+        public int getMaxInFlight() { return maxInFlight; }
+        public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+
+        public Duration getConfirmTimeout() { return confirmTimeout; }
+        public void setConfirmTimeout(Duration confirmTimeout) { this.confirmTimeout = confirmTimeout; }
+
+        public Duration getRetryBackoff() { return retryBackoff; }
+        public void setRetryBackoff(Duration retryBackoff) { this.retryBackoff = retryBackoff; }
+
+        public Duration getCheckpointInterval() { return checkpointInterval; }
+        public void setCheckpointInterval(Duration checkpointInterval) { this.checkpointInterval = checkpointInterval; }
+    }
+
+    // Failed deliveries on the listed queues wait out a delay queue per attempt instead of blocking the consumer
+    public static class Retry {
+        private boolean enabled = true;
+        private List<Duration> tiers = new ArrayList<>(List.of(
+                Duration.ofSeconds(1),
+                Duration.ofSeconds(10),
+                Duration.ofSeconds(60)));
+        private List<String> queues = new ArrayList<>(List.of(
+                RabbitConfig.ORDER_QUEUE,
+                RabbitConfig.ERROR_LOG_QUEUE));
+        private Duration confirmTimeout = Duration.ofSeconds(5);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public List<Duration> getTiers() { return tiers; }
+        public void setTiers(List<Duration> tiers) { this.tiers = tiers; }
+
+        public List<String> getQueues() { return queues; }
+        public void setQueues(List<String> queues) { this.queues = queues; }
+
+        public Duration getConfirmTimeout() { return confirmTimeout; }
+        public void setConfirmTimeout(Duration confirmTimeout) { this.confirmTimeout = confirmTimeout; }
+    }
+
+    // Messages that fail this many times, across requeues and retries, are moved to quarantine.queue
+    public static class Quarantine {
+        private boolean enabled = true;
+        private int threshold = 5;
+        private Map<String, Integer> thresholds = new LinkedHashMap<>();
+        private List<String> excludedQueues = new ArrayList<>(List.of(
+                RabbitConfig.DLX_QUEUE,
+                RabbitConfig.QUARANTINE_QUEUE));
+        private int capacity = 65_536;
+        private Duration confirmTimeout = Duration.ofSeconds(5);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getThreshold() { return threshold; }
+        public void setThreshold(int threshold) { this.threshold = threshold; }
+
+        public Map<String, Integer> getThresholds() { return thresholds; }
+        public void setThresholds(Map<String, Integer> thresholds) { this.thresholds = thresholds; }
+
+        public List<String> getExcludedQueues() { return excludedQueues; }
+        public void setExcludedQueues(List<String> excludedQueues) { this.excludedQueues = excludedQueues; }
+
+        public int getCapacity() { return capacity; }
+        public void setCapacity(int capacity) { this.capacity = capacity; }
+
+        public Duration getConfirmTimeout() { return confirmTimeout; }
+        public void setConfirmTimeout(Duration confirmTimeout) { this.confirmTimeout = confirmTimeout; }
+    }
+
+    // Keyed listeners (payments by orderId) skip keys completed within the ttl; snapshot-file keeps them over a restart
+    public static class Idempotency {
+        private boolean enabled = true;
+        private Duration ttl = Duration.ofHours(24);
+        private int maxEntries = 100_000;
+        private double falsePositiveRate = 0.01;
+        private String snapshotFile = "";
+        private Duration flushInterval = Duration.ofSeconds(5);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+
+        public double getFalsePositiveRate() { return falsePositiveRate; }
+        public void setFalsePositiveRate(double falsePositiveRate) { this.falsePositiveRate = falsePositiveRate; }
+
+        public String getSnapshotFile() { return snapshotFile; }
+        public void setSnapshotFile(String snapshotFile) { this.snapshotFile = snapshotFile; }
+
+        public Duration getFlushInterval() { return flushInterval; }
+        public void setFlushInterval(Duration flushInterval) { this.flushInterval = flushInterval; }
+    }
+
+    // Opt-in: dlx.queue is drained into a local indexed store that can be queried and replayed over REST
+    public static class DeadLetters {
+        private boolean enabled = false;
+        private String directory = "data/dead-letters";
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+        private int maxSegments = 256;
+        private int maxEntries = 500_000;
+        private int maxHeaderLength = 16_384;
+        private Duration bucket = Duration.ofHours(1);
+        private Duration fullBackoff = Duration.ofSeconds(5);
+        private final Replay replay = new Replay();
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+
+        public DataSize getSegmentSize() { return segmentSize; }
+        public void setSegmentSize(DataSize segmentSize) { this.segmentSize = segmentSize; }
+
+        public int getMaxSegments() { return maxSegments; }
+        public void setMaxSegments(int maxSegments) { this.maxSegments = maxSegments; }
+
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+
+        public int getMaxHeaderLength() { return maxHeaderLength; }
+        public void setMaxHeaderLength(int maxHeaderLength) { this.maxHeaderLength = maxHeaderLength; }
+
+        public Duration getBucket() { return bucket; }
+        public void setBucket(Duration bucket) { this.bucket = bucket; }
+
+        public Duration getFullBackoff() { return fullBackoff; }
+        public void setFullBackoff(Duration fullBackoff) { this.fullBackoff = fullBackoff; }
+
+        public Replay getReplay() { return replay; }
+
+        public static class Replay {
+            private double rate = 100;
+            private int maxInFlight = 64;
+            private int maxQueueDepth = 1000;
+            private Duration depthCheckInterval = Duration.ofSeconds(1);
+            private Duration confirmTimeout = Duration.ofSeconds(5);
+
+            public double getRate() { return rate; }
+            public void setRate(double rate) { this.rate = rate; }
+
+            public int getMaxInFlight() { return maxInFlight; }
+            public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+
+            public int getMaxQueueDepth() { return maxQueueDepth; }
+            public void setMaxQueueDepth(int maxQueueDepth) { this.maxQueueDepth = maxQueueDepth; }
+
+            public Duration getDepthCheckInterval() { return depthCheckInterval; }
+            public void setDepthCheckInterval(Duration depthCheckInterval) { this.depthCheckInterval = depthCheckInterval; }
+
+            public Duration getConfirmTimeout() { return confirmTimeout; }
+            public void setConfirmTimeout(Duration confirmTimeout) { this.confirmTimeout = confirmTimeout; }
+        }
+    }
+
+    // Keyword rules for the log services: category -> tag -> keywords, tags listed in priority order.
+    // The shipped rules are in application.yml; without configuration nothing is tagged
+    public static class Classifier {
+        private Map<String, Map<String, List<String>>> rules = new LinkedHashMap<>();
+
+        public Map<String, Map<String, List<String>>> getRules() { return rules; }
+        public void setRules(Map<String, Map<String, List<String>>> rules) { this.rules = rules; }
+    }
+
+    // Error and warning counters per application and type, bucketed by second over the horizon. Escalation
+    // thresholds apply to the count within their window rather than to the total since startup
+    public static class LogRates {
+        private Duration horizon = Duration.ofHours(1);
+        private Duration escalationWindow = Duration.ofMinutes(1);
+        private int escalationThreshold = 5;
+        private Duration warningWindow = Duration.ofMinutes(5);
+        private int warningPatternThreshold = 10;
+        private int preventiveAlertThreshold = 20;
+
+        public Duration getHorizon() { return horizon; }
+        public void setHorizon(Duration horizon) { this.horizon = horizon; }
+
+        public Duration getEscalationWindow() { return escalationWindow; }
+        public void setEscalationWindow(Duration escalationWindow) { this.escalationWindow = escalationWindow; }
+
+        public int getEscalationThreshold() { return escalationThreshold; }
+        public void setEscalationThreshold(int escalationThreshold) { this.escalationThreshold = escalationThreshold; }
+
+        public Duration getWarningWindow() { return warningWindow; }
+        public void setWarningWindow(Duration warningWindow) { this.warningWindow = warningWindow; }
+
+        public int getWarningPatternThreshold() { return warningPatternThreshold; }
+        public void setWarningPatternThreshold(int warningPatternThreshold) { this.warningPatternThreshold = warningPatternThreshold; }
+
+        public int getPreventiveAlertThreshold() { return preventiveAlertThreshold; }
+        public void setPreventiveAlertThreshold(int preventiveAlertThreshold) { this.preventiveAlertThreshold = preventiveAlertThreshold; }
+    }
+
+    // Opt-in: per-key counters (errors, warnings, service logs, users, hashtags) count in a fixed-size sketch and track
+    // only the heaviest keys individually, instead of keeping an entry for every key ever seen
+    public static class BoundedCounters {
+        private boolean enabled = false;
+        private int topKeys = 1000;
+        private int windowedKeys = 100;
+        private double epsilon = 0.001;
+        private double confidence = 0.99;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getTopKeys() { return topKeys; }
+        public void setTopKeys(int topKeys) { this.topKeys = topKeys; }
+
+        public int getWindowedKeys() { return windowedKeys; }
+        public void setWindowedKeys(int windowedKeys) { this.windowedKeys = windowedKeys; }
+
+        public double getEpsilon() { return epsilon; }
+        public void setEpsilon(double epsilon) { this.epsilon = epsilon; }
+
+        public double getConfidence() { return confidence; }
+        public void setConfidence(double confidence) { this.confidence = confidence; }
+    }
+
+    // On by default: the first error alert per application and error type goes out at once, repeats within the
+    // interval are folded into one digest per key with a count and a few exemplars
+    public static class AlertCoalescing {
+        private boolean enabled = true;
+        private Duration digestInterval = Duration.ofMinutes(1);
+        private int exemplars = 3;
+        private int maxKeys = 1000;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Duration getDigestInterval() { return digestInterval; }
+        public void setDigestInterval(Duration digestInterval) { this.digestInterval = digestInterval; }
+
+        public int getExemplars() { return exemplars; }
+        public void setExemplars(int exemplars) { this.exemplars = exemplars; }
+
+        public int getMaxKeys() { return maxKeys; }
+        public void setMaxKeys(int maxKeys) { this.maxKeys = maxKeys; }
+    }
+
+    // On by default: alert notifications are queued per channel and sent by the channel's own workers, so the error
+    // listener only enqueues; disabled, they are sent on the listener thread
+    public static class AlertDispatch {
+        private boolean enabled = true;
+        private Duration shutdownTimeout = Duration.ofSeconds(5);
+        private Map<String, Channel> channels = new LinkedHashMap<>();
+
+        public AlertDispatch() {
+            channels.put("slack", new Channel(2, 1000, 20, AlertDispatcher.OverflowPolicy.COALESCE));
+            channels.put("email", new Channel(2, 1000, 50, AlertDispatcher.OverflowPolicy.COALESCE));
+            channels.put("security", new Channel(1, 500, 10, AlertDispatcher.OverflowPolicy.COALESCE));
+            channels.put("incident", new Channel(1, 500, 1, AlertDispatcher.OverflowPolicy.COALESCE));
+            channels.put("remediation", new Channel(1, 100, 1, AlertDispatcher.OverflowPolicy.DROP_OLDEST));
+        }
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Duration getShutdownTimeout() { return shutdownTimeout; }
+        public void setShutdownTimeout(Duration shutdownTimeout) { this.shutdownTimeout = shutdownTimeout; }
+
+        public Map<String, Channel> getChannels() { return channels; }
+        public void setChannels(Map<String, Channel> channels) { this.channels = channels; }
+
+        public static class Channel {
+            private int workers = 1;
+            private int capacity = 1000;
+            private int batchSize = 1;
+            private AlertDispatcher.OverflowPolicy overflowPolicy = AlertDispatcher.OverflowPolicy.DROP_OLDEST;
+
+            public Channel() {
+            }
+
+            Channel(int workers, int capacity, int batchSize, AlertDispatcher.OverflowPolicy overflowPolicy) {
+                this.workers = workers;
+                this.capacity = capacity;
+                this.batchSize = batchSize;
+                this.overflowPolicy = overflowPolicy;
+            }
+
+            public int getWorkers() { return workers; }
+            public void setWorkers(int workers) { this.workers = workers; }
+
+            public int getCapacity() { return capacity; }
+            public void setCapacity(int capacity) { this.capacity = capacity; }
+
+            public int getBatchSize() { return batchSize; }
+            public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+            public AlertDispatcher.OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+            public void setOverflowPolicy(AlertDispatcher.OverflowPolicy overflowPolicy) { this.overflowPolicy = overflowPolicy; }
+        }
+    }
+}
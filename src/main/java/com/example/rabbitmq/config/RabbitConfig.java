@@ -1,39 +1,475 @@
 package com.example.rabbitmq.config;
 
+import com.example.rabbitmq.alert.AlertDispatcher;
+import com.example.rabbitmq.classifier.MessageClassifier;
+import com.example.rabbitmq.codec.CodecRegistry;
+import com.example.rabbitmq.codec.CompactBinaryMessageConverter;
+import com.example.rabbitmq.codec.InstrumentedMessageConverter;
+import com.example.rabbitmq.codec.RoutingMetadataConverter;
+import com.example.rabbitmq.compression.CompressionDictionaries;
+import com.example.rabbitmq.compression.CompressionPostProcessor;
+import com.example.rabbitmq.compression.DecompressionPostProcessor;
+import com.example.rabbitmq.deadletter.DeadLetterReplayer;
+import com.example.rabbitmq.deadletter.DeadLetterStore;
+import com.example.rabbitmq.idempotency.DuplicateInProgressException;
+import com.example.rabbitmq.idempotency.IdempotencyGuard;
+import com.example.rabbitmq.listener.AdaptivePrefetchAdvice;
+import com.example.rabbitmq.listener.DelayedRetryAdvice;
+import com.example.rabbitmq.listener.ListenerMetricsAdvice;
+import com.example.rabbitmq.listener.PoisonMessageAdvice;
+import com.example.rabbitmq.listener.VirtualThreadDispatchAdvice;
+import com.example.rabbitmq.messaging.BatchingPublisher;
+import com.example.rabbitmq.messaging.ConfirmingPublisher;
+import com.example.rabbitmq.messaging.KeyedBatchingStrategy;
+import com.example.rabbitmq.messaging.PublishFailedException;
+import com.example.rabbitmq.messaging.PublishMetricsPostProcessor;
+import com.example.rabbitmq.outbox.Outbox;
+import com.example.rabbitmq.outbox.OutboxLog;
+import com.example.rabbitmq.stream.StreamCheckpointAdvice;
+import com.example.rabbitmq.stream.StreamConsumers;
+import com.example.rabbitmq.stream.StreamOffsetStore;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.aop.Advice;
+import org.springframework.amqp.AmqpConnectException;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
+import org.springframework.amqp.rabbit.config.AbstractRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.DirectRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.ConditionalRejectingErrorHandler;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.ErrorHandler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
 
 @Configuration
 @EnableRabbit
+@EnableConfigurationProperties(MessagingProperties.class)
 public class RabbitConfig {
 
+    private final MessagingProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public RabbitConfig(MessagingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // JSON stays the default; consumers decode whichever codec the content_type header names. Routing metadata
+    // sits outside the timing, so a LazyPayload that is never read doesn't show up as a deserialization
     @Bean
     public MessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+        // One mapper for the JSON codec and the projection decoder, so both read a payload the same way
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        CompactBinaryMessageConverter binary = new CompactBinaryMessageConverter();
+        CodecRegistry registry = new CodecRegistry(MessageProperties.CONTENT_TYPE_JSON, new Jackson2JsonMessageConverter(mapper))
+                .register(CompactBinaryMessageConverter.CONTENT_TYPE, binary, binary::supports);
+        registry.setPublishContentType(properties.getCodec().getPublishContentType());
+        return new RoutingMetadataConverter(new InstrumentedMessageConverter(registry, meterRegistry), mapper);
     }
 
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        configureTemplate(template);
+        return template;
+    }
+
+    // Opt-in: trades a few ms of linger for far fewer frames and channel checkouts
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.batching", name = "enabled", havingValue = "true")
+    public BatchingPublisher batchingPublisher(ConnectionFactory connectionFactory) {
+        MessagingProperties.Batching batching = properties.getBatching();
+
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("batch-publisher-");
+        scheduler.initialize();
+
+        KeyedBatchingStrategy strategy = new KeyedBatchingStrategy(
+                batching.getBatchSize(),
+                (int) batching.getBufferLimit().toBytes(),
+                batching.getLinger().toMillis(),
+                meterRegistry);
+
+        BatchingRabbitTemplate template = new BatchingRabbitTemplate(connectionFactory, strategy, scheduler);
+        configureTemplate(template);
+        return new BatchingPublisher(template, scheduler, Set.copyOf(batching.getExchanges()));
+    }
+
+    // Own template: a RabbitTemplate takes a single returns callback, and the publisher installs one
+    @Bean
+    public ConfirmingPublisher confirmingPublisher(ConnectionFactory connectionFactory) {
+        MessagingProperties.Confirms confirms = properties.getConfirms();
+        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        configureTemplate(template);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("publish-confirm-");
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.initialize();
+
+        return new ConfirmingPublisher(template, executor,
+                confirms.getMaxInFlight(),
+                confirms.getMaxWaiting(),
+                confirms.getMaxRetries(),
+                confirms.getTimeout(),
+                meterRegistry);
+    }
+
+    // Opt-in: publish latency becomes a local append and broker outages stop failing the caller
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.outbox", name = "enabled", havingValue = "true")
+    public Outbox outbox(RabbitTemplate rabbitTemplate) {
+        MessagingProperties.Outbox outbox = properties.getOutbox();
+        OutboxLog log = new OutboxLog(Path.of(outbox.getDirectory()),
+                (int) outbox.getSegmentSize().toBytes(),
+                outbox.getMaxSegments(),
+                meterRegistry);
+        return new Outbox(log, rabbitTemplate,
+                outbox.isAwaitFlush(),
+                outbox.getFlushTimeout(),
+                outbox.getMaxInFlight(),
+                outbox.getConfirmTimeout(),
+                outbox.getRetryBackoff(),
+                outbox.getCheckpointInterval(),
+                meterRegistry);
+    }
+
+    // Opt-in: dlx.queue is drained into this store (see DeadLetterConsumer)
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.dead-letters", name = "enabled", havingValue = "true")
+    public DeadLetterStore deadLetterStore() {
+        MessagingProperties.DeadLetters deadLetters = properties.getDeadLetters();
+        OutboxLog log = new OutboxLog("dead.letters.log", Path.of(deadLetters.getDirectory()),
+                (int) deadLetters.getSegmentSize().toBytes(),
+                deadLetters.getMaxSegments(),
+                meterRegistry);
+        return new DeadLetterStore(log, deadLetters.getMaxEntries(), deadLetters.getMaxHeaderLength(),
+                deadLetters.getBucket(), meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.dead-letters", name = "enabled", havingValue = "true")
+    public DeadLetterReplayer deadLetterReplayer(RabbitTemplate rabbitTemplate, AmqpAdmin amqpAdmin) {
+        MessagingProperties.DeadLetters.Replay replay = properties.getDeadLetters().getReplay();
+        return new DeadLetterReplayer(deadLetterStore(), rabbitTemplate, amqpAdmin,
+                replay.getMaxInFlight(),
+                replay.getMaxQueueDepth(),
+                replay.getDepthCheckInterval(),
+                replay.getConfirmTimeout(),
+                meterRegistry);
+    }
+
+    private void configureTemplate(RabbitTemplate template) {
         template.setMessageConverter(messageConverter());
         template.setMandatory(true);
-        return template;
+        MessagingProperties.Compression compression = properties.getCompression();
+        if (compression.isEnabled()) {
+            template.addBeforePublishPostProcessors(new CompressionPostProcessor(
+                    (int) compression.getThreshold().toBytes(),
+                    compression.getLevel(),
+                    compression.getMinSaving(),
+                    compressionDictionaries(),
+                    meterRegistry));
+        }
+        // Added last so the recorded size is what actually goes on the wire
+        template.addBeforePublishPostProcessors(new PublishMetricsPostProcessor(meterRegistry));
+    }
+
+    @Bean
+    public CompressionDictionaries compressionDictionaries() {
+        MessagingProperties.Compression compression = properties.getCompression();
+        return new CompressionDictionaries(compression.getDictionaries(), compression.isSampleForTraining());
     }
 
     @Bean
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configureListenerFactory(factory, connectionFactory);
+        return factory;
+    }
+
+    // Listeners run directly on the connection's consumer threads - no hand-off queue and no thread per consumer.
+    // Selected per listener with app.messaging.listener.factory.<listener>=directRabbitListenerContainerFactory
+    @Bean
+    public DirectRabbitListenerContainerFactory directRabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
+        MessagingProperties.Listener.Direct direct = properties.getListener().getDirect();
+        DirectRabbitListenerContainerFactory factory = new DirectRabbitListenerContainerFactory();
+        configureListenerFactory(factory, connectionFactory);
+        factory.setConsumersPerQueue(direct.getConsumersPerQueue());
+        factory.setPrefetchCount(direct.getPrefetch());
+        return factory;
+    }
+
+    // For slow, I/O-bound listeners (payments, image jobs): every delivery gets its own virtual thread and is
+    // acked when it completes. Selected per listener with app.messaging.listener.factory.<listener>
+    @Bean
+    public SimpleRabbitListenerContainerFactory virtualThreadRabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
+        MessagingProperties.Listener.VirtualThreads virtualThreads = properties.getListener().getVirtualThreads();
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configureListenerFactory(factory, connectionFactory);
+
+        SimpleAsyncTaskExecutor consumerExecutor = new SimpleAsyncTaskExecutor("vt-consumer-");
+        consumerExecutor.setVirtualThreads(true);
+        factory.setTaskExecutor(consumerExecutor);
+
+        // Acks are sent by the dispatch advice once the listener has finished
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        // Failures on the virtual threads go through the same handler as the container's own
+        factory.setErrorHandler(listenerErrorHandler());
+        // Each container's prefetch is its own queue's limit, so a queue never has more unacked deliveries
+        // than it may process; with one prefetch for all, a consumer blocked on a small limit would sit on the rest
+        VirtualThreadDispatchAdvice dispatchAdvice = virtualThreadDispatchAdvice();
+        factory.setPrefetchCount(virtualThreads.getDefaultLimit());
+        factory.setContainerCustomizer(container -> {
+            if (properties.getStreams().isEnabled()) {
+                streamConsumers().attach(container);
+            }
+            Arrays.stream(container.getQueueNames())
+                    .mapToInt(dispatchAdvice::limit)
+                    .max()
+                    .ifPresent(container::setPrefetchCount);
+        });
+        // Metrics go after the dispatch so they time the listener on its virtual thread
+        List<Advice> adviceChain = new ArrayList<>();
+        StreamCheckpointAdvice checkpoints = properties.getStreams().isEnabled()
+                ? new StreamCheckpointAdvice(streamOffsetStore())
+                : null;
+        if (checkpoints != null) {
+            // Deliveries finish out of order here; offsets are noted in delivery order before they are handed over
+            adviceChain.add(checkpoints.dispatchTracker());
+        }
+        adviceChain.add(dispatchAdvice);
+        if (properties.getRetry().isEnabled()) {
+            adviceChain.add(delayedRetryAdvice(connectionFactory));
+        }
+        if (properties.getQuarantine().isEnabled()) {
+            adviceChain.add(poisonMessageAdvice(connectionFactory));
+        }
+        adviceChain.add(listenerMetricsAdvice());
+        if (checkpoints != null) {
+            adviceChain.add(checkpoints);
+        }
+        factory.setAdviceChain(adviceChain.toArray(Advice[]::new));
+        return factory;
+    }
+
+    // Consumer-side batching for the analytics-style listeners: List<Message<T>> per delivery, acked by the
+    // listener with one multiple-ack (see ConsumerBatches)
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
+        MessagingProperties.Listener.ConsumerBatch consumerBatch = properties.getListener().getConsumerBatch();
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configureListenerFactory(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(consumerBatch.getBatchSize());
+        factory.setReceiveTimeout(consumerBatch.getReceiveTimeout().toMillis());
+        // Room for the next batch to arrive while the current one is processed
+        factory.setPrefetchCount(consumerBatch.getBatchSize() * 2);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
+
+    @Bean
+    public ListenerMetricsAdvice listenerMetricsAdvice() {
+        return new ListenerMetricsAdvice(meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.listener.adaptive-prefetch", name = "enabled", havingValue = "true")
+    public AdaptivePrefetchAdvice adaptivePrefetchAdvice() {
+        MessagingProperties.Listener.AdaptivePrefetch adaptive = properties.getListener().getAdaptivePrefetch();
+        return new AdaptivePrefetchAdvice(adaptive.getMin(), adaptive.getMax(), adaptive.getInitial(),
+                adaptive.getTargetLatency(), adaptive.getSmoothing(), adaptive.getInterval(), meterRegistry);
+    }
+
+    // On by default: a failing message waits in a delay queue, not on the consumer thread
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.retry", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public DelayedRetryAdvice delayedRetryAdvice(ConnectionFactory connectionFactory) {
+        MessagingProperties.Retry retry = properties.getRetry();
+        // Own template: copies are sent as they were received, and an unroutable one must come back as a return
+        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        template.setMandatory(true);
+        return new DelayedRetryAdvice(template, retry.getConfirmTimeout(), retry.getTiers(), Set.copyOf(retry.getQueues()),
+                DLX_EXCHANGE, "dlx", new ErrorHandlingConfig.CustomFatalExceptionStrategy(), meterRegistry);
+    }
+
+    // On by default: a message that keeps failing is parked instead of being redelivered forever
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.quarantine", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public PoisonMessageAdvice poisonMessageAdvice(ConnectionFactory connectionFactory) {
+        MessagingProperties.Quarantine quarantine = properties.getQuarantine();
+        Set<String> excludedQueues = new HashSet<>(quarantine.getExcludedQueues());
+        MessagingProperties.Retry retry = properties.getRetry();
+        if (retry.isEnabled()) {
+            // Delayed retry dead-letters these after its last tier; a quarantine there would only cut the tiers short
+            excludedQueues.addAll(retry.getQueues());
+            retry.getTiers().forEach(tier -> excludedQueues.add(DelayedRetryAdvice.delayQueue(tier)));
+        }
+        // Outages and in-flight duplicates fail healthy messages too, so they never count towards the threshold
+        List<Class<? extends Throwable>> transientFailures = List.of(IOException.class, TimeoutException.class,
+                AmqpConnectException.class, PublishFailedException.class, DuplicateInProgressException.class);
+        // Own template, like the retry copies: an unroutable quarantine copy must come back as a return
+        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        template.setMandatory(true);
+        return new PoisonMessageAdvice(template, quarantine.getConfirmTimeout(), quarantine.getCapacity(),
+                quarantine.getThreshold(), quarantine.getThresholds(), excludedQueues, transientFailures,
+                QUARANTINE_QUEUE, meterRegistry);
+    }
+
+    // On by default; an empty snapshot-file keeps the keys in memory only
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.idempotency", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public IdempotencyGuard idempotencyGuard() {
+        MessagingProperties.Idempotency idempotency = properties.getIdempotency();
+        String snapshotFile = idempotency.getSnapshotFile();
+        return new IdempotencyGuard(idempotency.getTtl(),
+                idempotency.getMaxEntries(),
+                idempotency.getFalsePositiveRate(),
+                snapshotFile == null || snapshotFile.isBlank() ? null : Path.of(snapshotFile),
+                idempotency.getFlushInterval(),
+                meterRegistry);
+    }
+
+    // Keyword rules for the log listeners, compiled into one automaton at startup
+    @Bean
+    public MessageClassifier messageClassifier() {
+        return new MessageClassifier(properties.getClassifier().getRules());
+    }
+
+    // Per-channel queues and workers for alert notifications; disabled, notifications are sent on the caller's thread
+    @Bean
+    public AlertDispatcher alertDispatcher() {
+        return new AlertDispatcher(properties.getAlertDispatch(), meterRegistry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public VirtualThreadDispatchAdvice virtualThreadDispatchAdvice() {
+        MessagingProperties.Listener.VirtualThreads virtualThreads = properties.getListener().getVirtualThreads();
+        return new VirtualThreadDispatchAdvice(virtualThreads.getLimits(), virtualThreads.getDefaultLimit(),
+                listenerErrorHandler(), meterRegistry);
+    }
+
+    // What the container does with a failed delivery: requeue, or dead-letter when the failure is fatal
+    private static ErrorHandler listenerErrorHandler() {
+        return new ConditionalRejectingErrorHandler(new ErrorHandlingConfig.CustomFatalExceptionStrategy());
+    }
+
+    // Where stream listeners attach, plus their checkpoints; only present when streams are enabled
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.streams", name = "enabled", havingValue = "true")
+    public StreamConsumers streamConsumers() {
+        MessagingProperties.Streams streams = properties.getStreams();
+        return new StreamConsumers(streamOffsetStore(),
+                Set.copyOf(streams.getQueues()),
+                streams.getOffsets(),
+                streams.getDefaultOffset(),
+                streams.isResumeFromCheckpoint(),
+                streams.getCheckpointInterval());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.streams", name = "enabled", havingValue = "true")
+    public StreamOffsetStore streamOffsetStore() {
+        return new StreamOffsetStore(Path.of(properties.getStreams().getCheckpointFile()));
+    }
+
+    private <C extends AbstractMessageListenerContainer> void configureListenerFactory(
+            AbstractRabbitListenerContainerFactory<C> factory, ConnectionFactory connectionFactory) {
         factory.setConnectionFactory(connectionFactory);
         factory.setMessageConverter(messageConverter());
-        factory.setAcknowledgeMode(org.springframework.amqp.core.AcknowledgeMode.AUTO);
-        return factory;
+        // Inflation is always on so consumers read compressed and plain messages alike
+        factory.setAfterReceivePostProcessors(new DecompressionPostProcessor(compressionDictionaries(),
+                (int) properties.getCompression().getMaxUncompressedSize().toBytes(), meterRegistry));
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        List<Advice> adviceChain = new ArrayList<>();
+        if (properties.getRetry().isEnabled()) {
+            // Outermost, so the failure still shows up in the metrics and prefetch timings before it's handled
+            adviceChain.add(delayedRetryAdvice(connectionFactory));
+        }
+        if (properties.getQuarantine().isEnabled()) {
+            // Inside the retry, so a message it quarantines isn't also sent to a delay tier
+            adviceChain.add(poisonMessageAdvice(connectionFactory));
+        }
+        adviceChain.add(listenerMetricsAdvice());
+        boolean adaptivePrefetch = properties.getListener().getAdaptivePrefetch().isEnabled();
+        boolean streams = properties.getStreams().isEnabled();
+        if (adaptivePrefetch) {
+            // Containers start at the initial value and the controller moves them within min..max;
+            // the direct factory sets its own starting point, batch containers are left alone
+            factory.setPrefetchCount(properties.getListener().getAdaptivePrefetch().getInitial());
+            adviceChain.add(adaptivePrefetchAdvice());
+        }
+        if (streams) {
+            // Processed offsets on stream queues are checkpointed by the advice
+            adviceChain.add(new StreamCheckpointAdvice(streamOffsetStore()));
+        }
+        if (adaptivePrefetch || streams) {
+            factory.setContainerCustomizer(container -> {
+                if (streams) {
+                    // Containers on stream queues get their start offset
+                    streamConsumers().attach(container);
+                }
+                if (adaptivePrefetch) {
+                    adaptivePrefetchAdvice().manage(container);
+                }
+            });
+        }
+        factory.setAdviceChain(adviceChain.toArray(Advice[]::new));
+    }
+
+    // Plain durable queue, or an append-only stream with retention limits when listed under app.messaging.streams
+    private Queue durableQueue(String name) {
+        MessagingProperties.Streams streams = properties.getStreams();
+        if (!streams.isEnabled() || !streams.getQueues().contains(name)) {
+            return QueueBuilder.durable(name).build();
+        }
+        return QueueBuilder.durable(name)
+                .stream()
+                .withArgument("x-max-length-bytes", streams.getMaxLength().toBytes())
+                .withArgument("x-max-age", maxAge(streams.getMaxAge()))
+                .withArgument("x-stream-max-segment-size-bytes", streams.getMaxSegmentSize().toBytes())
+                .build();
+    }
+
+    // RabbitMQ expects x-max-age as a number with a single unit: 7D, 12h, 30m, 90s
+    private static String maxAge(Duration maxAge) {
+        if (maxAge.toSeconds() % 86400 == 0) {
+            return maxAge.toDays() + "D";
+        }
+        if (maxAge.toSeconds() % 3600 == 0) {
+            return maxAge.toHours() + "h";
+        }
+        if (maxAge.toSeconds() % 60 == 0) {
+            return maxAge.toMinutes() + "m";
+        }
+        return maxAge.toSeconds() + "s";
     }
 
     // Point-to-Point Pattern - Order Processing
@@ -59,17 +495,17 @@ public class RabbitConfig {
 
     @Bean
     public Queue timelineQueue() {
-        return QueueBuilder.durable(TIMELINE_QUEUE).build();
+        return durableQueue(TIMELINE_QUEUE);
     }
 
     @Bean
     public Queue notificationQueue() {
-        return QueueBuilder.durable(NOTIFICATION_QUEUE).build();
+        return durableQueue(NOTIFICATION_QUEUE);
     }
 
     @Bean
     public Queue analyticsQueue() {
-        return QueueBuilder.durable(ANALYTICS_QUEUE).build();
+        return durableQueue(ANALYTICS_QUEUE);
     }
 
     @Bean
@@ -100,17 +536,17 @@ public class RabbitConfig {
 
     @Bean
     public Queue errorLogQueue() {
-        return QueueBuilder.durable(ERROR_LOG_QUEUE).build();
+        return durableQueue(ERROR_LOG_QUEUE);
     }
 
     @Bean
     public Queue warningLogQueue() {
-        return QueueBuilder.durable(WARNING_LOG_QUEUE).build();
+        return durableQueue(WARNING_LOG_QUEUE);
     }
 
     @Bean
     public Queue infoLogQueue() {
-        return QueueBuilder.durable(INFO_LOG_QUEUE).build();
+        return durableQueue(INFO_LOG_QUEUE);
     }
 
     @Bean
@@ -142,22 +578,22 @@ public class RabbitConfig {
 
     @Bean
     public Queue hvacQueue() {
-        return QueueBuilder.durable(HVAC_QUEUE).build();
+        return durableQueue(HVAC_QUEUE);
     }
 
     @Bean
     public Queue securityQueue() {
-        return QueueBuilder.durable(SECURITY_QUEUE).build();
+        return durableQueue(SECURITY_QUEUE);
     }
 
     @Bean
     public Queue batteryQueue() {
-        return QueueBuilder.durable(BATTERY_QUEUE).build();
+        return durableQueue(BATTERY_QUEUE);
     }
 
     @Bean
     public Queue iotAnalyticsQueue() {
-        return QueueBuilder.durable(IOT_ANALYTICS_QUEUE).build();
+        return durableQueue(IOT_ANALYTICS_QUEUE);
     }
 
     @Bean
@@ -191,6 +627,63 @@ public class RabbitConfig {
                 .build();
     }
 
+    // Partitioned work queue: a consistent-hash exchange spreads tasks over image.processing.queue.<n>
+    public static final String IMAGE_PARTITION_EXCHANGE = "image.processing.hash.exchange";
+    public static final String IMAGE_WORKERS_EXCHANGE = "image.processing.workers.exchange";
+    // Points on the hash ring per partition; more points give a more even spread of keys
+    private static final String PARTITION_WEIGHT = "20";
+
+    public static String imagePartitionQueue(int partition) {
+        return IMAGE_PROCESSING_QUEUE + "." + partition;
+    }
+
+    // Needs the rabbitmq_consistent_hash_exchange plugin
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.partitioning", name = "enabled", havingValue = "true")
+    public Declarables imageProcessingPartitions() {
+        Exchange exchange = new CustomExchange(IMAGE_PARTITION_EXCHANGE, "x-consistent-hash", true, false);
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(exchange);
+        for (int partition = 0; partition < properties.getPartitioning().getPartitions(); partition++) {
+            Queue queue = QueueBuilder.durable(imagePartitionQueue(partition))
+                    .withArgument("x-dead-letter-exchange", "dlx.exchange")
+                    .withArgument("x-message-ttl", 300000) // 5 minutes TTL
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange).with(PARTITION_WEIGHT).noargs());
+        }
+        return new Declarables(declarables);
+    }
+
+    // Worker heartbeats: every instance binds its own auto-delete queue to this fanout
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.partitioning", name = "enabled", havingValue = "true")
+    public FanoutExchange imageWorkersExchange() {
+        return new FanoutExchange(IMAGE_WORKERS_EXCHANGE);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.partitioning", name = "enabled", havingValue = "true")
+    public AnonymousQueue imageWorkersQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.partitioning", name = "enabled", havingValue = "true")
+    public Binding imageWorkersBinding() {
+        return BindingBuilder.bind(imageWorkersQueue()).to(imageWorkersExchange());
+    }
+
+    // Heartbeats are bookkeeping, not work: no delay tiers, quarantine or stream checkpoints around them
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.partitioning", name = "enabled", havingValue = "true")
+    public SimpleRabbitListenerContainerFactory coordinationRabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        return factory;
+    }
+
     // Dead Letter Exchange for error handling
     public static final String DLX_EXCHANGE = "dlx.exchange";
     public static final String DLX_QUEUE = "dlx.queue";
@@ -209,4 +702,33 @@ public class RabbitConfig {
     public Binding dlxBinding() {
         return BindingBuilder.bind(dlxQueue()).to(dlxExchange()).with("dlx");
     }
+
+    // Messages taken out of circulation by PoisonMessageAdvice; published through the default exchange
+    public static final String QUARANTINE_QUEUE = "quarantine.queue";
+
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.quarantine", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public Queue quarantineQueue() {
+        return QueueBuilder.durable(QUARANTINE_QUEUE).build();
+    }
+
+    // Delayed retry: a fanout exchange and queue per tier. All messages in a tier share its TTL, so they expire
+    // in arrival order, and dead-lettering to the default exchange sends each back to its origin queue
+    @Bean
+    @ConditionalOnProperty(prefix = "app.messaging.retry", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public Declarables retryTiers() {
+        List<Declarable> declarables = new ArrayList<>();
+        for (Duration delay : properties.getRetry().getTiers()) {
+            String name = DelayedRetryAdvice.delayQueue(delay);
+            FanoutExchange exchange = new FanoutExchange(name);
+            Queue queue = QueueBuilder.durable(name)
+                    .withArgument("x-message-ttl", delay.toMillis())
+                    .withArgument("x-dead-letter-exchange", "")
+                    .build();
+            declarables.add(exchange);
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange));
+        }
+        return new Declarables(declarables);
+    }
 }
\ No newline at end of file
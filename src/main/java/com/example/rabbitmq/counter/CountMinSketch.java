@@ -0,0 +1,78 @@
+package com.example.rabbitmq.counter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Count-Min sketch over string keys: depth rows of width counters, a key adds to one counter per row and its estimate
+// is the smallest of them. Estimates never fall below the true count and exceed it by at most epsilon * total with
+// the given confidence, for width = e / epsilon and depth = ln(1 / (1 - confidence)). The hash is seeded per instance
+// so keys that collide cannot be worked out in advance to inflate someone else's count. Each row remixes the key's hash
+// on its own: with double hashing, as in the Bloom filter, two keys that agree on both halves modulo the width collide
+// in every row at once, and across a long tail a heavy key's count would now and then land on a key never seen twice
+final class CountMinSketch {
+
+    private static final long K1 = 0x9E3779B97F4A7C15L;
+    private static final long K2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final AtomicLongArray counters;
+    private final int width;
+    private final int depth;
+    private final long seed = ThreadLocalRandom.current().nextLong();
+
+    CountMinSketch(double epsilon, double confidence) {
+        if (epsilon <= 0 || epsilon >= 1 || confidence <= 0 || confidence >= 1) {
+            throw new IllegalArgumentException("Epsilon and confidence must be between 0 and 1: " + epsilon + ", " + confidence);
+        }
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = (int) Math.ceil(Math.log(1 / (1 - confidence)));
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    // Adds count to key and returns its estimate afterwards
+    long add(String key, long count) {
+        long hash = hash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.addAndGet(index(row, hash), count));
+        }
+        return estimate;
+    }
+
+    long estimate(String key) {
+        long hash = hash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, hash)));
+        }
+        return estimate;
+    }
+
+    int width() {
+        return width;
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    private int index(int row, long hash) {
+        long h = hash + (row + 1) * K1;
+        h ^= h >>> 33;
+        h *= K2;
+        h ^= h >>> 29;
+        // The high 32 bits scaled to the width, which spares a division per row
+        return row * width + (int) (((h >>> 32) * width) >>> 32);
+    }
+
+    private long hash(String key) {
+        long hash = K1 ^ seed;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash = Long.rotateLeft(hash ^ (b & 0xFF) * K2, 31) * K1;
+        }
+        hash ^= hash >>> 33;
+        hash *= K2;
+        hash ^= hash >>> 29;
+        return hash;
+    }
+}
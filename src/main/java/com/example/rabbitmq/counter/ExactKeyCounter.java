@@ -0,0 +1,32 @@
+package com.example.rabbitmq.counter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One counter per key, kept for as long as the application runs
+final class ExactKeyCounter implements KeyCounter {
+
+    private final ConcurrentHashMap<String, AtomicLong> counts = new ConcurrentHashMap<>();
+
+    @Override
+    public long add(String key, long count) {
+        return counts.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(count);
+    }
+
+    @Override
+    public long get(String key) {
+        AtomicLong count = counts.get(key);
+        return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, AtomicLong>comparingByValue((a, b) -> Long.compare(b.get(), a.get())))
+                .forEach(entry -> snapshot.put(entry.getKey(), entry.getValue().get()));
+        return snapshot;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.rabbitmq.counter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link KeyCounter} in fixed memory: a Count-Min sketch counts every key, and the
+ * {@code capacity} heaviest keys are also counted individually (Space-Saving top-K).
+ * <p>
+ * Error bounds, with {@code N} the sum of everything added:
+ * <ul>
+ *   <li>{@link #get} never undercounts, and overcounts by at most {@code epsilon * N} with
+ *       probability {@code confidence}.</li>
+ *   <li>A tracked key starts from its sketch estimate when it is admitted and is counted
+ *       exactly from then on, so the same bound holds for it.</li>
+ *   <li>A key is admitted as soon as its estimate exceeds the smallest tracked count, which it
+ *       then replaces; {@link #snapshot} lists the tracked keys only.</li>
+ * </ul>
+ * Memory is {@code ceil(e / epsilon) * ceil(ln(1 / (1 - confidence)))} longs for the sketch
+ * plus {@code capacity} map entries: about 110 KB and 1000 entries for the defaults
+ * (0.001, 0.99, 1000), whether the stream holds ten distinct keys or ten million.
+ */
+public class HeavyHitters implements KeyCounter {
+
+    private final TopKeys<AtomicLong> topKeys;
+
+    public HeavyHitters(int capacity, double epsilon, double confidence) {
+        this.topKeys = new TopKeys<>(capacity, epsilon, confidence,
+                (key, before, recentBefore) -> new AtomicLong(before), AtomicLong::get);
+    }
+
+    @Override
+    public long add(String key, long count) {
+        AtomicLong slot = topKeys.acquire(key, count);
+        return slot != null ? slot.addAndGet(count) : topKeys.estimate(key);
+    }
+
+    @Override
+    public long get(String key) {
+        return topKeys.estimate(key);
+    }
+
+    @Override
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        topKeys.slots().entrySet().stream()
+                .sorted(Map.Entry.<String, AtomicLong>comparingByValue((a, b) -> Long.compare(b.get(), a.get())))
+                .forEach(entry -> snapshot.put(entry.getKey(), entry.getValue().get()));
+        return snapshot;
+    }
+}
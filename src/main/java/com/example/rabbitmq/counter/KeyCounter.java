@@ -0,0 +1,23 @@
+package com.example.rabbitmq.counter;
+
+import java.util.Map;
+
+/**
+ * Event counts per key. {@link #exact()} keeps one counter for every key it is given;
+ * {@link HeavyHitters} keeps a fixed amount of memory however many distinct keys arrive and
+ * counts approximately, within the bounds documented there.
+ */
+public interface KeyCounter {
+
+    // Adds count events for key and returns the key's count afterwards
+    long add(String key, long count);
+
+    long get(String key);
+
+    // The counted keys, largest count first; for a bounded counter only the keys it tracks individually
+    Map<String, Long> snapshot();
+
+    static KeyCounter exact() {
+        return new ExactKeyCounter();
+    }
+}
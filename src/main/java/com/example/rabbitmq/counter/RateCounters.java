@@ -0,0 +1,140 @@
+package com.example.rabbitmq.counter;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-key event counters bucketed by second over a fixed horizon. Besides a lifetime total,
+ * each key answers "how many in the last N seconds" for any N up to the horizon, which is
+ * what escalation thresholds are checked against: a burst escalates, an error that trickles
+ * in once an hour does not, however many have been seen since startup.
+ * <p>
+ * Increments and window queries are lock-free. Each key holds one {@code long} per second of
+ * horizon (28 KB for an hour).
+ * <p>
+ * Built with a capacity, only the heaviest keys get a window, the way {@link HeavyHitters}
+ * tracks them; the rest are counted in its sketch, so {@link #total} stays within the same
+ * bounds for every key, while {@link #add} and {@link #count} report 0 for a key until it is
+ * frequent enough to be admitted. Memory then no longer grows with the number of keys.
+ * Keys are ranked by their events over the last one to two half-horizons rather than by
+ * their totals, so a new burst displaces a key that has gone quiet and can escalate: the
+ * window of a newly admitted key starts from the sketch's estimate of those recent events,
+ * booked to the current second. Like the sketch, that errs on the high side.
+ */
+public class RateCounters {
+
+    private final ConcurrentHashMap<String, SlidingWindowCounter> counters;
+    private final TopKeys<SlidingWindowCounter> topKeys;
+    private final int horizonSeconds;
+    private final LongSupplier clock;
+
+    public RateCounters(Duration horizon) {
+        this(horizon, System::currentTimeMillis);
+    }
+
+    // Keeps windows for the capacity heaviest keys only, see HeavyHitters for epsilon and confidence
+    public RateCounters(Duration horizon, int capacity, double epsilon, double confidence) {
+        this(horizon, capacity, epsilon, confidence, System::currentTimeMillis);
+    }
+
+    RateCounters(Duration horizon, LongSupplier clock) {
+        this.horizonSeconds = horizonSeconds(horizon);
+        this.clock = clock;
+        this.topKeys = null;
+        this.counters = new ConcurrentHashMap<>();
+    }
+
+    RateCounters(Duration horizon, int capacity, double epsilon, double confidence, LongSupplier clock) {
+        this.horizonSeconds = horizonSeconds(horizon);
+        this.clock = clock;
+        int generationSeconds = Math.max(horizonSeconds / 2, 1);
+        this.topKeys = new TopKeys<>(capacity, epsilon, confidence,
+                (key, before, recentBefore) -> new SlidingWindowCounter(horizonSeconds, before, generationSeconds,
+                        nowSecond(), recentBefore),
+                counter -> counter.recent(nowSecond()),
+                () -> nowSecond() / generationSeconds);
+        this.counters = topKeys.slots();
+    }
+
+    // Adds count events for key and returns how many key has seen within window, these included
+    public long add(String key, long count, Duration window) {
+        int seconds = windowSeconds(window);
+        long now = nowSecond();
+        SlidingWindowCounter counter = topKeys == null
+                ? counters.computeIfAbsent(key, k -> new SlidingWindowCounter(horizonSeconds))
+                : topKeys.acquire(key, count);
+        if (counter == null) {
+            // Not among the heaviest keys: counted in the sketch, without a window
+            return 0;
+        }
+        counter.add(now, count);
+        return counter.sum(now, seconds);
+    }
+
+    public long count(String key, Duration window) {
+        int seconds = windowSeconds(window);
+        SlidingWindowCounter counter = counters.get(key);
+        return counter == null ? 0 : counter.sum(nowSecond(), seconds);
+    }
+
+    public long total(String key) {
+        // Tracked keys are ranked by recent counts, so their total comes from the counter rather than the ranking
+        SlidingWindowCounter counter = counters.get(key);
+        if (counter != null) {
+            return counter.total();
+        }
+        return topKeys == null ? 0 : topKeys.estimate(key);
+    }
+
+    // Lifetime totals of every key, or of the tracked ones only when bounded
+    public Map<String, Long> totals() {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        counters.forEach((key, counter) -> totals.put(key, counter.total()));
+        return totals;
+    }
+
+    // Keys starting with prefix that saw events within window, read straight off the live map
+    public Map<String, Rate> rates(String prefix, Duration window) {
+        long now = nowSecond();
+        int seconds = windowSeconds(window);
+        Map<String, Rate> rates = new LinkedHashMap<>();
+        counters.forEach((key, counter) -> {
+            if (prefix == null || key.startsWith(prefix)) {
+                long count = counter.sum(now, seconds);
+                if (count > 0) {
+                    rates.put(key, new Rate(count, (double) count / seconds));
+                }
+            }
+        });
+        return rates;
+    }
+
+    public Duration getHorizon() {
+        return Duration.ofSeconds(horizonSeconds);
+    }
+
+    private static int horizonSeconds(Duration horizon) {
+        if (horizon.toSeconds() < 1 || horizon.toSeconds() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Horizon must be between 1s and " + Integer.MAX_VALUE + "s: " + horizon);
+        }
+        return (int) horizon.toSeconds();
+    }
+
+    private long nowSecond() {
+        return clock.getAsLong() / 1000;
+    }
+
+    private int windowSeconds(Duration window) {
+        long seconds = window.toSeconds();
+        if (seconds < 1 || seconds > horizonSeconds) {
+            throw new IllegalArgumentException("Window must be between 1s and the " + horizonSeconds + "s horizon: " + window);
+        }
+        return (int) seconds;
+    }
+
+    public record Rate(long count, double perSecond) {
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.rabbitmq.counter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Event counts per second over a fixed horizon. Each bucket of the ring packs (epoch second << 32 | count) into one
+// long, so a bucket left over from an earlier lap is recognised by its stamp and restarted by the first increment that
+// lands on it. Writers CAS a single slot, readers skip stale stamps, and nothing ever sweeps expired buckets.
+// A ranked counter also keeps its count per generation of generationSeconds, packed the same way in a ring of two, so
+// recent() - what TopKeys evicts by - costs two reads rather than a pass over the horizon
+final class SlidingWindowCounter {
+
+    private static final long COUNT_MASK = 0xFFFF_FFFFL;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder total = new LongAdder();
+    private final int generationSeconds;
+    private final AtomicLongArray generations;
+
+    SlidingWindowCounter(int horizonSeconds) {
+        this(horizonSeconds, 0);
+    }
+
+    // A counter that takes over from an estimate of the total so far, with no per-second history behind it
+    SlidingWindowCounter(int horizonSeconds, long initialTotal) {
+        this.buckets = new AtomicLongArray(horizonSeconds);
+        this.total.add(initialTotal);
+        this.generationSeconds = 0;
+        this.generations = null;
+    }
+
+    // Ranked as well; the estimate of recent events is booked to the generation of second and to second itself, so the
+    // window of a key admitted mid-burst includes the events that got it admitted
+    SlidingWindowCounter(int horizonSeconds, long initialTotal, int generationSeconds, long second, long initialRecent) {
+        this.buckets = new AtomicLongArray(horizonSeconds);
+        this.total.add(initialTotal);
+        this.generationSeconds = generationSeconds;
+        this.generations = new AtomicLongArray(2);
+        stamp(generations, second / generationSeconds, initialRecent);
+        stamp(buckets, second, initialRecent);
+    }
+
+    void add(long second, long count) {
+        stamp(buckets, second, count);
+        if (generations != null) {
+            stamp(generations, second / generationSeconds, count);
+        }
+        total.add(count);
+    }
+
+    // Events in the last seconds seconds, the current one included
+    long sum(long nowSecond, int seconds) {
+        int span = Math.min(seconds, buckets.length());
+        long sum = 0;
+        for (long second = nowSecond - span + 1; second <= nowSecond; second++) {
+            long bucket = buckets.get((int) (second % buckets.length()));
+            if (bucket >>> 32 == second) {
+                sum += bucket & COUNT_MASK;
+            }
+        }
+        return sum;
+    }
+
+    long total() {
+        return total.sum();
+    }
+
+    // Events in the current and the previous generation
+    long recent(long nowSecond) {
+        long generation = nowSecond / generationSeconds;
+        long recent = 0;
+        for (int index = 0; index < generations.length(); index++) {
+            long slot = generations.get(index);
+            long stamp = slot >>> 32;
+            if (stamp == generation || stamp == generation - 1) {
+                recent += slot & COUNT_MASK;
+            }
+        }
+        return recent;
+    }
+
+    // Adds count to the ring's slot for stamp, restarting the slot if it still holds an earlier lap
+    private static void stamp(AtomicLongArray ring, long stamp, long count) {
+        int index = (int) (stamp % ring.length());
+        while (true) {
+            long current = ring.get(index);
+            long lap = current >>> 32;
+            if (lap > stamp) {
+                // The slot already belongs to a later lap: the event is older than the ring
+                break;
+            }
+            long next = lap == stamp
+                    ? (stamp << 32) | Math.min((current & COUNT_MASK) + count, COUNT_MASK)
+                    : (stamp << 32) | Math.min(count, COUNT_MASK);
+            if (ring.compareAndSet(index, current, next)) {
+                break;
+            }
+        }
+    }
+}
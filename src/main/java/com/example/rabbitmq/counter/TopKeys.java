@@ -0,0 +1,156 @@
+package com.example.rabbitmq.counter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+// The heaviest keys of a stream, each with a slot of its own, in front of a Count-Min sketch that counts everything.
+// A new key gets a slot while there is room, and once full only when its sketch estimate beats the smallest tracked
+// count, whose slot it takes over (Space-Saving, with the sketch estimate instead of the evicted count as the starting
+// point). The smallest tracked count is cached as a floor so the keys of a long tail are turned away with one sketch
+// update and a comparison; only a key that clears the floor takes the admission lock and scans the slots.
+// With a generation clock, keys are ranked by recent counts instead of lifetime ones: a second pair of sketches counts
+// the current and the previous generation, slots report their own count over the same two, and the floor only holds
+// for the generation it was taken in. A burst then displaces keys that have gone quiet, however much they saw before
+final class TopKeys<S> {
+
+    // before: the sketch's estimate of what the key had seen before the count being added now; recentBefore: the same
+    // over the current and previous generation, or before again when ranking by lifetime counts
+    interface SlotFactory<S> {
+        S create(String key, long before, long recentBefore);
+    }
+
+    private final CountMinSketch sketch;
+    private final ConcurrentHashMap<String, S> slots = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final double epsilon;
+    private final double confidence;
+    private final SlotFactory<S> slotFactory;
+    private final ToLongFunction<S> slotCount;
+    private final LongSupplier generation;
+    private final AtomicReference<Generations> generations;
+    private final ReentrantLock admission = new ReentrantLock();
+    private volatile Floor floor = new Floor(0, 0);
+
+    private record Generations(long number, CountMinSketch current, CountMinSketch previous) {
+        long add(String key, long count) {
+            return current.add(key, count) + previous.estimate(key);
+        }
+    }
+
+    private record Floor(long count, long generation) {
+    }
+
+    // Ranks keys by their lifetime counts
+    TopKeys(int capacity, double epsilon, double confidence, SlotFactory<S> slotFactory, ToLongFunction<S> slotCount) {
+        this(capacity, epsilon, confidence, slotFactory, slotCount, null);
+    }
+
+    // Ranks keys by their counts over the current and previous generation; slotCount must report the same span
+    TopKeys(int capacity, double epsilon, double confidence, SlotFactory<S> slotFactory, ToLongFunction<S> slotCount,
+            LongSupplier generation) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.sketch = new CountMinSketch(epsilon, confidence);
+        this.capacity = capacity;
+        this.epsilon = epsilon;
+        this.confidence = confidence;
+        this.slotFactory = slotFactory;
+        this.slotCount = slotCount;
+        this.generation = generation;
+        this.generations = generation == null ? null : new AtomicReference<>(new Generations(generation.getAsLong(),
+                new CountMinSketch(epsilon, confidence), new CountMinSketch(epsilon, confidence)));
+    }
+
+    // Counts count events for key in the sketch and returns the key's slot for the caller to add them to, or null when
+    // the key is not among the heaviest
+    S acquire(String key, long count) {
+        long estimate = sketch.add(key, count);
+        long current = generation == null ? 0 : generation.getAsLong();
+        long rank = generation == null ? estimate : generations(current).add(key, count);
+        S slot = slots.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        Floor cached = floor;
+        if (slots.size() >= capacity && cached.generation() == current && rank <= cached.count()) {
+            return null;
+        }
+        // Blocking rather than skipping: an increment racing the admission of its own key then lands in the new slot
+        admission.lock();
+        try {
+            return admit(key, estimate, rank, count, current);
+        } finally {
+            admission.unlock();
+        }
+    }
+
+    S get(String key) {
+        return slots.get(key);
+    }
+
+    // The slot's count for tracked keys, the sketch estimate for the rest
+    long estimate(String key) {
+        S slot = slots.get(key);
+        return slot != null ? slotCount.applyAsLong(slot) : sketch.estimate(key);
+    }
+
+    ConcurrentHashMap<String, S> slots() {
+        return slots;
+    }
+
+    private S admit(String key, long estimate, long rank, long count, long current) {
+        S slot = slots.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        long before = estimate - count;
+        long recentBefore = rank - count;
+        if (slots.size() >= capacity) {
+            // One pass finds the slot to evict and the count that becomes the floor once it is gone
+            String victim = null;
+            long smallest = Long.MAX_VALUE;
+            long runnerUp = Long.MAX_VALUE;
+            for (Map.Entry<String, S> entry : slots.entrySet()) {
+                long tracked = slotCount.applyAsLong(entry.getValue());
+                if (tracked < smallest) {
+                    runnerUp = smallest;
+                    smallest = tracked;
+                    victim = entry.getKey();
+                } else if (tracked < runnerUp) {
+                    runnerUp = tracked;
+                }
+            }
+            if (rank <= smallest) {
+                // The tracked counts grew since the floor was cached, or it was cached in an earlier generation
+                floor = new Floor(smallest, current);
+                return null;
+            }
+            slots.remove(victim);
+            floor = new Floor(Math.min(runnerUp, recentBefore), current);
+        }
+        slot = slotFactory.create(key, before, recentBefore);
+        slots.put(key, slot);
+        return slot;
+    }
+
+    // Moves on to the given generation, keeping the one before it if that is the one being left
+    private Generations generations(long number) {
+        while (true) {
+            Generations generations = this.generations.get();
+            if (generations.number() >= number) {
+                return generations;
+            }
+            CountMinSketch previous = generations.number() == number - 1
+                    ? generations.current() : new CountMinSketch(epsilon, confidence);
+            Generations next = new Generations(number, new CountMinSketch(epsilon, confidence), previous);
+            if (this.generations.compareAndSet(generations, next)) {
+                return next;
+            }
+        }
+    }
+}
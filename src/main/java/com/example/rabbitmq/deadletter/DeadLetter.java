@@ -0,0 +1,8 @@
+package com.example.rabbitmq.deadletter;
+
+import java.time.Instant;
+
+// What the store indexes about a dead letter; the message itself stays on disk until it's read or replayed
+public record DeadLetter(long id, String originQueue, String exceptionClass, String exceptionMessage,
+                         Instant deadLetteredAt, String messageId, int size) {
+}
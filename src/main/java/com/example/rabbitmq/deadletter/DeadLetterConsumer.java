@@ -0,0 +1,42 @@
+package com.example.rabbitmq.deadletter;
+
+import com.example.rabbitmq.config.MessagingProperties;
+import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.messaging.PublishFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// Drains dlx.queue into the dead-letter store; a message is acked only once the store has it on disk
+@Component
+@ConditionalOnProperty(prefix = "app.messaging.dead-letters", name = "enabled", havingValue = "true")
+public class DeadLetterConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterConsumer.class);
+
+    private final DeadLetterStore store;
+    private final long fullBackoffMillis;
+
+    public DeadLetterConsumer(DeadLetterStore store, MessagingProperties properties) {
+        this.store = store;
+        this.fullBackoffMillis = properties.getDeadLetters().getFullBackoff().toMillis();
+    }
+
+    @RabbitListener(queues = RabbitConfig.DLX_QUEUE,
+            containerFactory = "${app.messaging.listener.factory.dead-letters:rabbitListenerContainerFactory}")
+    public void store(Message message) throws InterruptedException {
+        try {
+            DeadLetter deadLetter = store.add(message);
+            logger.debug("Stored dead letter {} from {} ({})",
+                    deadLetter.id(), deadLetter.originQueue(), deadLetter.exceptionClass());
+        } catch (PublishFailedException e) {
+            // The message stays on dlx.queue; pausing before the requeue keeps this consumer from spinning on it
+            logger.warn("Dead letter not stored, retrying in {}ms: {}", fullBackoffMillis, e.getMessage());
+            Thread.sleep(fullBackoffMillis);
+            throw e;
+        }
+    }
+}
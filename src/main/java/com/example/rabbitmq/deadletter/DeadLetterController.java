@@ -0,0 +1,127 @@
+package com.example.rabbitmq.deadletter;
+
+import com.example.rabbitmq.config.MessagingProperties;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.amqp.core.Message;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/dead-letters")
+@ConditionalOnProperty(prefix = "app.messaging.dead-letters", name = "enabled", havingValue = "true")
+@Tag(name = "Dead Letters", description = "Inspection and rate-limited replay of messages from dlx.queue")
+public class DeadLetterController {
+
+    private static final int MAX_PAGE = 1000;
+
+    private final DeadLetterStore store;
+    private final DeadLetterReplayer replayer;
+    private final double defaultRate;
+
+    public DeadLetterController(DeadLetterStore store, DeadLetterReplayer replayer, MessagingProperties properties) {
+        this.store = store;
+        this.replayer = replayer;
+        this.defaultRate = properties.getDeadLetters().getReplay().getRate();
+    }
+
+    @GetMapping
+    @Operation(summary = "List stored dead letters",
+               description = "Filters by origin queue, exception class and time range; page with after=<last id>")
+    public ResponseEntity<List<DeadLetter>> list(@RequestParam(required = false) String queue,
+                                                 @RequestParam(required = false) String exception,
+                                                 @RequestParam(required = false) Instant from,
+                                                 @RequestParam(required = false) Instant to,
+                                                 @RequestParam(defaultValue = "0") long after,
+                                                 @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(store.query(
+                new DeadLetterQuery(queue, exception, from, to, after, Math.min(limit, MAX_PAGE))));
+    }
+
+    @GetMapping("/summary")
+    @Operation(summary = "Count dead letters per origin queue, exception class and time bucket")
+    public ResponseEntity<List<DeadLetterStore.GroupCount>> summary(@RequestParam(required = false) String queue,
+                                                                    @RequestParam(required = false) String exception,
+                                                                    @RequestParam(required = false) Instant from,
+                                                                    @RequestParam(required = false) Instant to) {
+        return ResponseEntity.ok(store.summary(new DeadLetterQuery(queue, exception, from, to, 0, Integer.MAX_VALUE)));
+    }
+
+    @GetMapping("/{id}")
+    @Operation(summary = "Show one dead letter with its headers and body")
+    public ResponseEntity<Map<String, Object>> get(@PathVariable long id) {
+        DeadLetter deadLetter = store.get(id);
+        Message message = null;
+        if (deadLetter != null) {
+            try (DeadLetterStore.Reader reader = store.reader()) {
+                message = reader.read(id);
+            }
+        }
+        if (message == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(Map.of(
+                "deadLetter", deadLetter,
+                "headers", message.getMessageProperties().getHeaders(),
+                "body", new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+
+    @DeleteMapping
+    @Operation(summary = "Purge dead letters", description = "Removes every dead letter matching the filters")
+    public ResponseEntity<Map<String, Integer>> purge(@RequestParam(required = false) String queue,
+                                                      @RequestParam(required = false) String exception,
+                                                      @RequestParam(required = false) Instant from,
+                                                      @RequestParam(required = false) Instant to) {
+        List<Long> ids = store.query(new DeadLetterQuery(queue, exception, from, to, 0, Integer.MAX_VALUE)).stream()
+                .map(DeadLetter::id)
+                .toList();
+        return ResponseEntity.ok(Map.of("removed", store.remove(ids)));
+    }
+
+    @PostMapping("/replay")
+    @Operation(summary = "Replay dead letters to their origin queues",
+               description = "Runs in the background at up to rate messages/s, pausing while an origin queue is backed up")
+    public ResponseEntity<DeadLetterReplayer.ReplayJob> replay(@RequestParam(required = false) String queue,
+                                                               @RequestParam(required = false) String exception,
+                                                               @RequestParam(required = false) Instant from,
+                                                               @RequestParam(required = false) Instant to,
+                                                               @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int limit,
+                                                               @RequestParam(required = false) Double rate) {
+        double replayRate = rate == null ? defaultRate : rate;
+        if (!(replayRate > 0)) {
+            return ResponseEntity.badRequest().build();
+        }
+        DeadLetterQuery query = new DeadLetterQuery(queue, exception, from, to, 0, limit);
+        return ResponseEntity.accepted().body(replayer.replay(query, replayRate));
+    }
+
+    @GetMapping("/replay")
+    @Operation(summary = "List recent replay jobs")
+    public ResponseEntity<List<DeadLetterReplayer.ReplayJob>> replays() {
+        return ResponseEntity.ok(replayer.jobs());
+    }
+
+    @GetMapping("/replay/{jobId}")
+    @Operation(summary = "Show the progress of a replay job")
+    public ResponseEntity<DeadLetterReplayer.ReplayJob> replayJob(@PathVariable String jobId) {
+        DeadLetterReplayer.ReplayJob job = replayer.job(jobId);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    @DeleteMapping("/replay/{jobId}")
+    @Operation(summary = "Cancel a replay job", description = "Messages already confirmed stay replayed; the rest stay stored")
+    public ResponseEntity<DeadLetterReplayer.ReplayJob> cancelReplay(@PathVariable String jobId) {
+        DeadLetterReplayer.ReplayJob job = replayer.job(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        job.cancel();
+        return ResponseEntity.ok(job);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.rabbitmq.deadletter;
+
+import java.time.Instant;
+
+// Selects dead letters by origin queue, exception class and time range; null matches anything.
+// Results are in id order, starting after afterId, at most limit of them
+public record DeadLetterQuery(String originQueue, String exceptionClass, Instant from, Instant to,
+                              long afterId, int limit) {
+
+    boolean matches(DeadLetter deadLetter) {
+        return (originQueue == null || originQueue.equals(deadLetter.originQueue()))
+                && (exceptionClass == null || exceptionClass.equals(deadLetter.exceptionClass()))
+                && (from == null || !deadLetter.deadLetteredAt().isBefore(from))
+                && (to == null || deadLetter.deadLetteredAt().isBefore(to));
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.rabbitmq.deadletter;
+
+import com.example.rabbitmq.listener.DelayedRetryAdvice;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays stored dead letters to their origin queues without flooding the consumers.
+ * Each job sends the selected messages in id order through the default exchange at no more
+ * than its rate, keeps at most {@code maxInFlight} of them awaiting broker confirms, and
+ * pauses whenever an origin queue holds {@code maxQueueDepth} messages or more - counting
+ * what it has sent since the last depth check - until the consumers have worked it down.
+ * <p>
+ * A message leaves the store only once the broker has confirmed it; nacked, returned or
+ * timed-out ones stay for a later replay. Jobs run one at a time, in the order submitted.
+ */
+public class DeadLetterReplayer implements DisposableBean {
+
+    public static final String REPLAY_COUNT_HEADER = "x-replay-count";
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterReplayer.class);
+    private static final int REMOVE_BATCH = 256;
+    private static final int RETAINED_JOBS = 100;
+    // Headers describing the failure; the replayed message starts its retries afresh
+    private static final List<String> FAILURE_HEADERS = List.of(
+            DelayedRetryAdvice.ATTEMPT_HEADER,
+            DelayedRetryAdvice.ORIGINAL_QUEUE_HEADER,
+            DelayedRetryAdvice.EXCEPTION_HEADER,
+            DeadLetterStore.DEAD_LETTERED_AT_HEADER,
+            "x-exception-stacktrace",
+            "x-original-exchange",
+            "x-original-routingKey",
+            "x-death",
+            "x-first-death-queue",
+            "x-first-death-reason",
+            "x-first-death-exchange",
+            "x-last-death-queue",
+            "x-last-death-reason",
+            "x-last-death-exchange");
+
+    private final DeadLetterStore store;
+    private final RabbitTemplate template;
+    private final AmqpAdmin admin;
+    private final int maxInFlight;
+    private final int maxQueueDepth;
+    private final long depthCheckNanos;
+    private final Duration confirmTimeout;
+    private final Map<String, ReplayJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dead-letter-replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter confirmed;
+    private final Counter failed;
+    private final Timer throttled;
+
+    public DeadLetterReplayer(DeadLetterStore store, RabbitTemplate template, AmqpAdmin admin, int maxInFlight,
+                              int maxQueueDepth, Duration depthCheckInterval, Duration confirmTimeout, MeterRegistry meterRegistry) {
+        this.store = store;
+        this.template = template;
+        this.admin = admin;
+        this.maxInFlight = maxInFlight;
+        this.maxQueueDepth = maxQueueDepth;
+        this.depthCheckNanos = depthCheckInterval.toNanos();
+        this.confirmTimeout = confirmTimeout;
+
+        this.confirmed = Counter.builder("messaging.dead.letters.replayed")
+                .description("Dead letters replayed to their origin queue")
+                .tag("outcome", "confirmed")
+                .register(meterRegistry);
+        this.failed = Counter.builder("messaging.dead.letters.replayed")
+                .description("Dead letters replayed to their origin queue")
+                .tag("outcome", "failed")
+                .register(meterRegistry);
+        this.throttled = Timer.builder("messaging.dead.letters.replay.throttled")
+                .description("Time replays spent waiting for an origin queue to drain")
+                .register(meterRegistry);
+    }
+
+    public ReplayJob replay(DeadLetterQuery query, double rate) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("Replay rate must be positive: " + rate);
+        }
+        ReplayJob job = new ReplayJob(UUID.randomUUID().toString(), query, rate);
+        forgetFinishedJobs();
+        jobs.put(job.getId(), job);
+        executor.execute(() -> run(job));
+        return job;
+    }
+
+    public ReplayJob job(String id) {
+        return jobs.get(id);
+    }
+
+    public List<ReplayJob> jobs() {
+        return jobs.values().stream().sorted(Comparator.comparing(ReplayJob::getSubmittedAt)).toList();
+    }
+
+    @Override
+    public void destroy() {
+        jobs.values().forEach(ReplayJob::cancel);
+        executor.shutdownNow();
+    }
+
+    private void run(ReplayJob job) {
+        if (job.cancelled) {
+            job.finish(Status.CANCELLED, null);
+            return;
+        }
+        List<DeadLetter> selected = store.query(job.query);
+        job.start(selected.size());
+        logger.info("Replaying {} dead letters at {}/s (job {})", selected.size(), job.rate, job.getId());
+
+        Semaphore window = new Semaphore(maxInFlight);
+        List<Long> confirmedIds = new ArrayList<>();
+        Map<String, QueueDepth> depths = new HashMap<>();
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / job.rate);
+        long nextSend = System.nanoTime();
+        try (DeadLetterStore.Reader reader = store.reader()) {
+            for (DeadLetter deadLetter : selected) {
+                if (job.cancelled) {
+                    break;
+                }
+                awaitDepth(job, depths.computeIfAbsent(deadLetter.originQueue(), QueueDepth::new));
+                if (job.cancelled) {
+                    break;
+                }
+                long wait = nextSend - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                // From now, not from the schedule, so a pause isn't followed by a burst to catch up
+                nextSend = Math.max(nextSend, System.nanoTime()) + intervalNanos;
+
+                Message message = reader.read(deadLetter.id());
+                if (message == null) {
+                    // Purged since the job selected it
+                    job.skipped.incrementAndGet();
+                    continue;
+                }
+                window.acquire();
+                send(job, deadLetter, prepare(message), window, confirmedIds);
+                removeConfirmed(confirmedIds, REMOVE_BATCH);
+            }
+            // Confirm timeouts guarantee every outstanding send settles
+            window.acquire(maxInFlight);
+            removeConfirmed(confirmedIds, 1);
+            job.finish(job.cancelled ? Status.CANCELLED : Status.COMPLETED, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            removeConfirmed(confirmedIds, 1);
+            job.finish(Status.CANCELLED, null);
+        } catch (RuntimeException e) {
+            logger.error("Dead-letter replay {} failed: {}", job.getId(), e.getMessage(), e);
+            removeConfirmed(confirmedIds, 1);
+            job.finish(Status.FAILED, e.getMessage());
+        }
+        logger.info("Dead-letter replay {} {}: {} confirmed, {} failed", job.getId(),
+                job.getStatus().name().toLowerCase(), job.confirmed.get(), job.failed.get());
+    }
+
+    private void send(ReplayJob job, DeadLetter deadLetter, Message message, Semaphore window, List<Long> confirmedIds) {
+        job.sent.incrementAndGet();
+        CorrelationData correlation = new CorrelationData();
+        try {
+            template.send("", deadLetter.originQueue(), message, correlation);
+        } catch (AmqpException e) {
+            settle(job, deadLetter, false, "send failed: " + e.getMessage(), window, confirmedIds);
+            return;
+        }
+        correlation.getFuture()
+                .orTimeout(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((confirm, ex) -> {
+                    if (ex != null) {
+                        settle(job, deadLetter, false, "no confirm within " + confirmTimeout.toMillis() + "ms", window, confirmedIds);
+                    } else if (!confirm.isAck()) {
+                        settle(job, deadLetter, false, "nacked: " + confirm.getReason(), window, confirmedIds);
+                    } else if (correlation.getReturned() != null) {
+                        settle(job, deadLetter, false, "returned: " + correlation.getReturned().getReplyText(), window, confirmedIds);
+                    } else {
+                        settle(job, deadLetter, true, null, window, confirmedIds);
+                    }
+                });
+    }
+
+    private void settle(ReplayJob job, DeadLetter deadLetter, boolean ok, String failure, Semaphore window, List<Long> confirmedIds) {
+        if (ok) {
+            synchronized (confirmedIds) {
+                confirmedIds.add(deadLetter.id());
+            }
+            job.confirmed.incrementAndGet();
+            confirmed.increment();
+        } else {
+            if (job.failed.getAndIncrement() == 0) {
+                logger.warn("Replay of dead letter {} to {} failed ({}); it stays in the store",
+                        deadLetter.id(), deadLetter.originQueue(), failure);
+            }
+            failed.increment();
+        }
+        window.release();
+    }
+
+    private void removeConfirmed(List<Long> confirmedIds, int atLeast) {
+        List<Long> ids;
+        synchronized (confirmedIds) {
+            if (confirmedIds.isEmpty() || confirmedIds.size() < atLeast) {
+                return;
+            }
+            ids = new ArrayList<>(confirmedIds);
+            confirmedIds.clear();
+        }
+        store.remove(ids);
+    }
+
+    // Waits while the origin queue is at maxQueueDepth; between checks every send counts as one more message
+    private void awaitDepth(ReplayJob job, QueueDepth depth) throws InterruptedException {
+        long pausedAt = 0;
+        while (true) {
+            if (System.nanoTime() - depth.checkedAt >= depthCheckNanos) {
+                depth.refresh();
+            }
+            if (depth.depth < maxQueueDepth) {
+                depth.depth++;
+                if (pausedAt != 0) {
+                    throttled.record(System.nanoTime() - pausedAt, TimeUnit.NANOSECONDS);
+                    job.status = Status.RUNNING;
+                }
+                return;
+            }
+            if (pausedAt == 0) {
+                pausedAt = System.nanoTime();
+                job.status = Status.THROTTLED;
+            }
+            if (job.cancelled) {
+                return;
+            }
+            TimeUnit.NANOSECONDS.sleep(depthCheckNanos);
+        }
+    }
+
+    private static Message prepare(Message message) {
+        Map<String, Object> headers = message.getMessageProperties().getHeaders();
+        int replays = headers.get(REPLAY_COUNT_HEADER) instanceof Number count ? count.intValue() : 0;
+        FAILURE_HEADERS.forEach(headers::remove);
+        headers.put(REPLAY_COUNT_HEADER, replays + 1);
+        return message;
+    }
+
+    private void forgetFinishedJobs() {
+        List<ReplayJob> finished = jobs().stream().filter(job -> job.getFinishedAt() != null).toList();
+        for (int i = 0; i < finished.size() - RETAINED_JOBS + 1; i++) {
+            jobs.remove(finished.get(i).getId());
+        }
+    }
+
+    private class QueueDepth {
+        private final String queue;
+        private long depth;
+        private long checkedAt;
+
+        QueueDepth(String queue) {
+            this.queue = queue;
+        }
+
+        void refresh() {
+            QueueInformation information = admin.getQueueInfo(queue);
+            // A missing queue has no consumers to protect; the sends come back as returns instead
+            depth = information == null ? 0 : information.getMessageCount();
+            checkedAt = System.nanoTime();
+        }
+    }
+
+    public enum Status { QUEUED, RUNNING, THROTTLED, COMPLETED, CANCELLED, FAILED }
+
+    // Progress of one replay, as returned by the REST endpoints
+    public static class ReplayJob {
+        private final String id;
+        private final DeadLetterQuery query;
+        private final double rate;
+        private final Instant submittedAt = Instant.now();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong confirmed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private volatile Status status = Status.QUEUED;
+        private volatile int selected;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String error;
+        private volatile boolean cancelled;
+
+        ReplayJob(String id, DeadLetterQuery query, double rate) {
+            this.id = id;
+            this.query = query;
+            this.rate = rate;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        void start(int selected) {
+            this.selected = selected;
+            this.startedAt = Instant.now();
+            this.status = Status.RUNNING;
+        }
+
+        void finish(Status status, String error) {
+            this.error = error;
+            this.finishedAt = Instant.now();
+            this.status = status;
+        }
+
+        public String getId() { return id; }
+        public DeadLetterQuery getQuery() { return query; }
+        public double getRate() { return rate; }
+        public Status getStatus() { return status; }
+        public int getSelected() { return selected; }
+        public long getSent() { return sent.get(); }
+        public long getConfirmed() { return confirmed.get(); }
+        public long getFailed() { return failed.get(); }
+        public long getSkipped() { return skipped.get(); }
+        public Instant getSubmittedAt() { return submittedAt; }
+        public Instant getStartedAt() { return startedAt; }
+        public Instant getFinishedAt() { return finishedAt; }
+        public String getError() { return error; }
+    }
+}
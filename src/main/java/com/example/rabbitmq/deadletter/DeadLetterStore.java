@@ -0,0 +1,381 @@
+package com.example.rabbitmq.deadletter;
+
+import com.example.rabbitmq.listener.DelayedRetryAdvice;
+import com.example.rabbitmq.messaging.PublishFailedException;
+import com.example.rabbitmq.outbox.OutboxLog;
+import com.example.rabbitmq.outbox.OutboxRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Local store for dead letters, indexed by origin queue, exception class and time bucket.
+ * Messages are written to an {@link OutboxLog} and only their {@link DeadLetter} summary
+ * is kept in memory, so a backlog of hundreds of thousands stays cheap to query. Removing
+ * messages - after a replay or a purge - appends a tombstone record; the log is released
+ * up to the oldest message still stored, and a restart rebuilds the index from what is left.
+ * <p>
+ * String headers longer than the configured length are truncated, and a message whose
+ * headers still can't be encoded is stored with only the headers the index reads.
+ * {@link #add} returns once the message is on disk, so the consumer can ack it from the
+ * dead-letter queue. Replays read messages back in id order through a {@link Reader}.
+ */
+public class DeadLetterStore implements AutoCloseable {
+
+    public static final String DEAD_LETTERED_AT_HEADER = "x-dead-lettered-at";
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterStore.class);
+    // Stored messages are written with an empty exchange; tombstones carry this one and the removed ids as body
+    private static final String TOMBSTONE = "x-removed";
+    private static final String UNKNOWN = "unknown";
+    private static final String STACKTRACE_HEADER = "x-exception-stacktrace";
+    // What describe() and originQueue() read; kept when the other headers have to go
+    private static final Set<String> INDEXED_HEADERS = Set.of(DEAD_LETTERED_AT_HEADER, STACKTRACE_HEADER,
+            DelayedRetryAdvice.EXCEPTION_HEADER, DelayedRetryAdvice.ORIGINAL_QUEUE_HEADER,
+            "x-first-death-queue", "x-first-death-reason", "x-original-routingKey");
+
+    private final OutboxLog log;
+    private final int maxEntries;
+    private final int maxHeaderLength;
+    private final long bucketMillis;
+    private final MeterRegistry meterRegistry;
+
+    // Guarded by this
+    private final NavigableMap<Long, DeadLetter> entries = new TreeMap<>();
+    private final Map<Group, NavigableSet<Long>> groups = new HashMap<>();
+    private final NavigableSet<Long> appending = new TreeSet<>();
+    private int openReaders;
+
+    public record Group(String originQueue, String exceptionClass, Instant bucket) {
+    }
+
+    public record GroupCount(String originQueue, String exceptionClass, Instant bucket, int count) {
+    }
+
+    public DeadLetterStore(OutboxLog log, int maxEntries, int maxHeaderLength, Duration bucket, MeterRegistry meterRegistry) {
+        this.log = log;
+        this.maxEntries = maxEntries;
+        this.maxHeaderLength = maxHeaderLength;
+        this.bucketMillis = bucket.toMillis();
+        this.meterRegistry = meterRegistry;
+        recover();
+
+        Gauge.builder("messaging.dead.letters.stored", this, DeadLetterStore::size)
+                .description("Dead letters held in the local store")
+                .register(meterRegistry);
+    }
+
+    // Writes the message to disk and indexes it; fails fast when the store is full
+    public DeadLetter add(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        properties.setHeader(DEAD_LETTERED_AT_HEADER, System.currentTimeMillis());
+        // Received messages only carry the received delivery mode; replays should keep it
+        properties.setDeliveryMode(properties.getReceivedDeliveryMode() == null
+                ? MessageDeliveryMode.PERSISTENT : properties.getReceivedDeliveryMode());
+        truncateHeaders(properties);
+        String originQueue = originQueue(properties);
+        byte[] record = encode(originQueue, message);
+        long id;
+        synchronized (this) {
+            // The last segment is kept for tombstones, so a full store can still be replayed or purged
+            if (entries.size() + appending.size() >= maxEntries || log.freeSegments() <= 1) {
+                throw new PublishFailedException("Dead-letter store full: " + entries.size() + " messages");
+            }
+            id = log.append(record);
+            // Not indexed until it's durable, but must hold back releases of the log until then
+            appending.add(id);
+        }
+        try {
+            log.awaitDurable(id);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                appending.remove(id);
+            }
+            throw e;
+        }
+        DeadLetter deadLetter = describe(id, originQueue, message);
+        synchronized (this) {
+            appending.remove(id);
+            index(deadLetter);
+        }
+        Counter.builder("messaging.dead.letters.received")
+                .description("Dead letters taken off the dead-letter queue into the store")
+                .tag("queue", originQueue)
+                .register(meterRegistry)
+                .increment();
+        return deadLetter;
+    }
+
+    public synchronized DeadLetter get(long id) {
+        return entries.get(id);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized List<DeadLetter> query(DeadLetterQuery query) {
+        NavigableSet<Long> ids = new TreeSet<>();
+        for (Map.Entry<Group, NavigableSet<Long>> group : groups.entrySet()) {
+            if (matches(group.getKey(), query)) {
+                ids.addAll(group.getValue().tailSet(query.afterId(), false));
+            }
+        }
+        List<DeadLetter> result = new ArrayList<>();
+        for (long id : ids) {
+            if (result.size() >= query.limit()) {
+                break;
+            }
+            DeadLetter deadLetter = entries.get(id);
+            if (query.matches(deadLetter)) {
+                result.add(deadLetter);
+            }
+        }
+        return result;
+    }
+
+    // Counts per origin queue, exception class and time bucket; from and to are rounded out to whole buckets
+    public synchronized List<GroupCount> summary(DeadLetterQuery query) {
+        return groups.entrySet().stream()
+                .filter(group -> matches(group.getKey(), query))
+                .map(group -> new GroupCount(group.getKey().originQueue(), group.getKey().exceptionClass(),
+                        group.getKey().bucket(), group.getValue().size()))
+                .sorted(Comparator.comparing(GroupCount::bucket)
+                        .thenComparing(GroupCount::originQueue)
+                        .thenComparing(GroupCount::exceptionClass))
+                .toList();
+    }
+
+    // Removes the messages that are still stored and returns how many that were
+    public int remove(Collection<Long> ids) {
+        List<Long> removed = new ArrayList<>();
+        long tombstone;
+        synchronized (this) {
+            for (long id : ids) {
+                if (entries.containsKey(id)) {
+                    removed.add(id);
+                }
+            }
+            if (removed.isEmpty()) {
+                return 0;
+            }
+            tombstone = log.append(OutboxRecord.encode(TOMBSTONE, "", new Message(encodeIds(removed), new MessageProperties())));
+            removed.forEach(id -> unindex(entries.remove(id)));
+        }
+        log.awaitDurable(tombstone);
+        releaseRemoved();
+        return removed.size();
+    }
+
+    // Reads stored messages back; releases of the log wait until every open reader is closed
+    public Reader reader() {
+        synchronized (this) {
+            openReaders++;
+        }
+        return new Reader();
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+
+    // Everything before the oldest message still stored - or still being appended - can go
+    private void releaseRemoved() {
+        long releasable;
+        synchronized (this) {
+            if (openReaders > 0) {
+                return;
+            }
+            long oldest = Long.MAX_VALUE;
+            if (!entries.isEmpty()) {
+                oldest = entries.firstKey();
+            }
+            if (!appending.isEmpty()) {
+                oldest = Math.min(oldest, appending.first());
+            }
+            releasable = oldest == Long.MAX_VALUE ? log.appendedSequence() : oldest - 1;
+        }
+        log.release(releasable);
+    }
+
+    private void recover() {
+        OutboxLog.Cursor cursor = log.cursor(log.releasedSequence() + 1);
+        int tombstones = 0;
+        for (OutboxRecord record = cursor.next(); record != null; record = cursor.next()) {
+            if (TOMBSTONE.equals(record.exchange())) {
+                ByteBuffer ids = ByteBuffer.wrap(record.message().getBody());
+                while (ids.hasRemaining()) {
+                    DeadLetter deadLetter = entries.remove(ids.getLong());
+                    if (deadLetter != null) {
+                        unindex(deadLetter);
+                    }
+                }
+                tombstones++;
+            } else {
+                index(describe(record.sequence(), record.routingKey(), record.message()));
+            }
+        }
+        if (!entries.isEmpty()) {
+            logger.info("Dead-letter store holds {} messages ({} tombstones replayed)", entries.size(), tombstones);
+        }
+    }
+
+    private void index(DeadLetter deadLetter) {
+        entries.put(deadLetter.id(), deadLetter);
+        groups.computeIfAbsent(group(deadLetter), group -> new TreeSet<>()).add(deadLetter.id());
+    }
+
+    private void unindex(DeadLetter deadLetter) {
+        Group group = group(deadLetter);
+        NavigableSet<Long> ids = groups.get(group);
+        ids.remove(deadLetter.id());
+        if (ids.isEmpty()) {
+            groups.remove(group);
+        }
+    }
+
+    private Group group(DeadLetter deadLetter) {
+        long time = deadLetter.deadLetteredAt().toEpochMilli();
+        return new Group(deadLetter.originQueue(), deadLetter.exceptionClass(),
+                Instant.ofEpochMilli(time - Math.floorMod(time, bucketMillis)));
+    }
+
+    private boolean matches(Group group, DeadLetterQuery query) {
+        return (query.originQueue() == null || query.originQueue().equals(group.originQueue()))
+                && (query.exceptionClass() == null || query.exceptionClass().equals(group.exceptionClass()))
+                && (query.from() == null || group.bucket().toEpochMilli() + bucketMillis > query.from().toEpochMilli())
+                && (query.to() == null || group.bucket().isBefore(query.to()));
+    }
+
+    // Stack traces can run to megabytes; the index only reads their first line
+    private void truncateHeaders(MessageProperties properties) {
+        properties.getHeaders().replaceAll((name, value) -> value instanceof String text && text.length() > maxHeaderLength
+                ? text.substring(0, maxHeaderLength) + "... [" + (text.length() - maxHeaderLength) + " chars truncated]"
+                : value);
+    }
+
+    // A header that can't be encoded fails the same way on every redelivery, so the message is kept without it
+    private static byte[] encode(String originQueue, Message message) {
+        try {
+            return OutboxRecord.encode("", originQueue, message);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            MessageProperties properties = message.getMessageProperties();
+            logger.warn("Dead letter {} from {} stored without its headers, they could not be encoded: {}",
+                    properties.getMessageId(), originQueue, e.toString());
+            properties.getHeaders().keySet().retainAll(INDEXED_HEADERS);
+            return OutboxRecord.encode("", originQueue, message);
+        }
+    }
+
+    private static DeadLetter describe(long id, String originQueue, Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        String exceptionClass = UNKNOWN;
+        String exceptionMessage = null;
+        String stackTrace = header(properties, STACKTRACE_HEADER);
+        String failure = header(properties, DelayedRetryAdvice.EXCEPTION_HEADER);
+        if (stackTrace != null) {
+            // RepublishMessageRecoverer: the first line of the trace is "class: message"
+            String firstLine = stackTrace.lines().findFirst().orElse("");
+            exceptionClass = className(firstLine);
+            exceptionMessage = failure;
+        } else if (failure != null) {
+            // DelayedRetryAdvice: "class: message"
+            exceptionClass = className(failure);
+            exceptionMessage = failure.startsWith(exceptionClass + ": ") ? failure.substring(exceptionClass.length() + 2) : failure;
+        } else if (header(properties, "x-first-death-reason") != null) {
+            // Dead-lettered by the broker: rejected, expired, maxlen or delivery_limit
+            exceptionClass = header(properties, "x-first-death-reason");
+        }
+        Instant deadLetteredAt = properties.getHeader(DEAD_LETTERED_AT_HEADER) instanceof Number millis
+                ? Instant.ofEpochMilli(millis.longValue()) : Instant.now();
+        return new DeadLetter(id, originQueue, exceptionClass, exceptionMessage, deadLetteredAt,
+                properties.getMessageId(), message.getBody().length);
+    }
+
+    private static String originQueue(MessageProperties properties) {
+        for (String header : List.of(DelayedRetryAdvice.ORIGINAL_QUEUE_HEADER, "x-first-death-queue", "x-original-routingKey")) {
+            String queue = header(properties, header);
+            if (queue != null && !queue.isEmpty()) {
+                return queue;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static String className(String failure) {
+        int colon = failure.indexOf(": ");
+        String candidate = (colon < 0 ? failure : failure.substring(0, colon)).trim();
+        return !candidate.isEmpty() && candidate.chars().noneMatch(Character::isWhitespace) ? candidate : UNKNOWN;
+    }
+
+    private static String header(MessageProperties properties, String name) {
+        Object value = properties.getHeader(name);
+        return value == null ? null : value.toString();
+    }
+
+    private static byte[] encodeIds(List<Long> ids) {
+        ByteBuffer buffer = ByteBuffer.allocate(ids.size() * Long.BYTES);
+        ids.forEach(buffer::putLong);
+        return buffer.array();
+    }
+
+    // Reads stored messages in ascending id order; owned by a single thread
+    public class Reader implements AutoCloseable {
+        private OutboxLog.Cursor cursor;
+        private boolean closed;
+
+        // The stored message, or null if it has been removed
+        public Message read(long id) {
+            synchronized (DeadLetterStore.this) {
+                if (!entries.containsKey(id)) {
+                    return null;
+                }
+            }
+            if (cursor == null || id < cursor.nextSequence()) {
+                cursor = log.cursor(id);
+            }
+            OutboxRecord record = cursor.next();
+            while (record != null && record.sequence() < id) {
+                record = cursor.next();
+            }
+            return record == null ? null : record.message();
+        }
+
+        @Override
+        public void close() {
+            boolean last;
+            synchronized (DeadLetterStore.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                last = --openReaders == 0;
+            }
+            if (last) {
+                releaseRemoved();
+            }
+        }
+    }
+}
@@ -1,67 +1,167 @@
 package com.example.rabbitmq.direct;
 
+import com.example.rabbitmq.alert.AlertCoalescer;
+import com.example.rabbitmq.alert.AlertDispatcher;
+import com.example.rabbitmq.classifier.MessageClassifier;
+import com.example.rabbitmq.codec.LazyPayload;
+import com.example.rabbitmq.codec.Projection;
+import com.example.rabbitmq.config.MessagingProperties;
 import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.counter.RateCounters;
 import com.example.rabbitmq.model.LogEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Service
-public class AlertService {
+public class AlertService implements DisposableBean {
     
     private static final Logger logger = LoggerFactory.getLogger(AlertService.class);
+    private static final String ERROR_TYPE = "error-type";
     
     // Track error frequencies for intelligent alerting
-    private final ConcurrentHashMap<String, AtomicInteger> errorCounts = new ConcurrentHashMap<>();
+    private final RateCounters errorCounts;
+    private final Duration escalationWindow;
+    private final int escalationThreshold;
+    private final MessageClassifier classifier;
+    // Repeats of an alert, an escalation or an incident ticket for the same key are folded into periodic digests;
+    // all null when coalescing is disabled
+    private final AlertCoalescer<ErrorLog> alerts;
+    private final AlertCoalescer<ErrorLog> escalations;
+    private final AlertCoalescer<ErrorLog> tickets;
+    private final ScheduledExecutorService digestScheduler;
+    // Outbound notifications, queued per channel so a slow integration does not hold up the listener
+    private final AlertDispatcher.Channel<SlackMessage> slack;
+    private final AlertDispatcher.Channel<EmailMessage> email;
+    private final AlertDispatcher.Channel<ErrorLog> security;
+    private final AlertDispatcher.Channel<IncidentTicket> incidents;
+    private final AlertDispatcher.Channel<ErrorLog> remediation;
 
-    @RabbitListener(queues = RabbitConfig.ERROR_LOG_QUEUE)
-    public void processErrorLog(LogEntry logEntry) {
+    public AlertService(MessageClassifier classifier, MessagingProperties properties, AlertDispatcher dispatcher) {
+        MessagingProperties.LogRates logRates = properties.getLogRates();
+        this.classifier = classifier;
+        MessagingProperties.BoundedCounters bounded = properties.getBoundedCounters();
+        this.errorCounts = bounded.isEnabled()
+                ? new RateCounters(logRates.getHorizon(), bounded.getWindowedKeys(), bounded.getEpsilon(), bounded.getConfidence())
+                : new RateCounters(logRates.getHorizon());
+        this.escalationWindow = logRates.getEscalationWindow();
+        this.escalationThreshold = logRates.getEscalationThreshold();
+        this.slack = dispatcher.channel("slack", this::postToSlack);
+        this.email = dispatcher.channel("email", this::sendEmails);
+        this.security = dispatcher.channel("security", this::notifySecurityTeam);
+        this.incidents = dispatcher.channel("incident", this::openIncidentTickets);
+        this.remediation = dispatcher.channel("remediation", this::runAutoRemediation);
+        MessagingProperties.AlertCoalescing coalescing = properties.getAlertCoalescing();
+        if (coalescing.isEnabled()) {
+            this.alerts = new AlertCoalescer<>("alert", coalescing.getExemplars(), coalescing.getMaxKeys(), this::sendDigest);
+            this.escalations = new AlertCoalescer<>("escalation", coalescing.getExemplars(), coalescing.getMaxKeys(), this::sendEscalationDigest);
+            this.tickets = new AlertCoalescer<>("incident", coalescing.getExemplars(), coalescing.getMaxKeys(), this::updateIncidentTicket);
+            this.digestScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "alert-digests");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = coalescing.getDigestInterval().toMillis();
+            digestScheduler.scheduleAtFixedRate(this::flushDigests, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.alerts = null;
+            this.escalations = null;
+            this.tickets = null;
+            this.digestScheduler = null;
+        }
+    }
+
+    // The fields an alert is built from. The stack trace and metadata of an error log can run to kilobytes and are
+    // skipped unread; the full entry is decoded only when an incident ticket needs the exception text
+    @Projection(LogEntry.class)
+    public record ErrorLog(String logId,
+                           String applicationName,
+                           String message,
+                           String source,
+                           LocalDateTime timestamp,
+                           @Projection.Present("exception") boolean hasException,
+                           LazyPayload<LogEntry> entry) {
+
+        public static ErrorLog of(LogEntry logEntry) {
+            return new ErrorLog(logEntry.getLogId(), logEntry.getApplicationName(), logEntry.getMessage(),
+                    logEntry.getSource(), logEntry.getTimestamp(), logEntry.getException() != null,
+                    LazyPayload.of(logEntry));
+        }
+    }
+
+    // A digest carries the latest error of its key and a sample of the ones it folded; immediate alerts have none
+    private record SlackMessage(String alertType, ErrorLog logEntry, List<ErrorLog> exemplars) {
+    }
+
+    private record EmailMessage(String recipient, ErrorLog logEntry, List<ErrorLog> exemplars) {
+    }
+
+    // The exception text is read on the listener thread, which the lazily decoded entry belongs to
+    private record IncidentTicket(ErrorLog logEntry, String exception) {
+    }
+
+    @RabbitListener(queues = RabbitConfig.ERROR_LOG_QUEUE,
+            containerFactory = "${app.messaging.listener.factory.alert:rabbitListenerContainerFactory}")
+    public void processErrorLog(ErrorLog logEntry) {
         try {
             logger.error("🚨 CRITICAL ERROR DETECTED - App: {}, Message: {}", 
-                        logEntry.getApplicationName(), logEntry.getMessage());
+                        logEntry.applicationName(), logEntry.message());
             
-            // Track error frequency
-            String errorKey = logEntry.getApplicationName() + ":" + extractErrorType(logEntry.getMessage());
-            int errorCount = errorCounts.computeIfAbsent(errorKey, k -> new AtomicInteger(0))
-                                      .incrementAndGet();
+            // Track error frequency within the escalation window
+            String errorKey = logEntry.applicationName() + ":" + extractErrorType(logEntry.message());
+            long errorCount = errorCounts.add(errorKey, 1, escalationWindow);
             
-            // Send immediate alert for critical errors
-            sendImmediateAlert(logEntry);
+            // Send immediate alert for the first error of its kind; repeats go out in the next digest
+            if (alerts == null || alerts.offer(errorKey, logEntry)) {
+                sendImmediateAlert(errorKey, logEntry);
+            }
             
-            // Check for error patterns that require escalation
-            if (errorCount >= 5) {
-                sendEscalationAlert(logEntry, errorCount);
+            // Escalate on a burst of the same error, not on the total since startup
+            if (errorCount >= escalationThreshold && (escalations == null || escalations.offer(errorKey, logEntry))) {
+                sendEscalationAlert(errorKey, logEntry, errorCount);
             }
             
-            // Create incident ticket for errors with exceptions
-            if (logEntry.getException() != null) {
-                createIncidentTicket(logEntry);
+            // Create incident ticket for errors with exceptions, one per incident rather than per error
+            if (logEntry.hasException() && (tickets == null || tickets.offer(errorKey, logEntry))) {
+                createIncidentTicket(errorKey, logEntry);
             }
             
             // Update monitoring dashboard
             updateErrorDashboard(logEntry);
             
-            logger.info("Error alert processed for log: {} (Error #{} for this type)", 
-                       logEntry.getLogId(), errorCount);
+            logger.info("Error alert processed for log: {} (Error #{} for this type within {})", 
+                       logEntry.logId(), errorCount, escalationWindow);
             
             
         } catch (Exception e) {
             logger.error("Error processing error log alert: {} - Error: {}", 
-                        logEntry.getLogId(), e.getMessage());
+                        logEntry.logId(), e.getMessage());
             // Critical that error alerts are processed - throw to trigger retry
-            throw new RuntimeException("Failed to process error log alert: " + logEntry.getLogId(), e);
+            throw new RuntimeException("Failed to process error log alert: " + logEntry.logId(), e);
         }
     }
 
-    private void sendImmediateAlert(LogEntry logEntry) {
-        logger.error("📧 SENDING IMMEDIATE ALERT - Service: {}", logEntry.getApplicationName());
-        logger.error("   Error: {}", logEntry.getMessage());
-        logger.error("   Source: {}", logEntry.getSource());
-        logger.error("   Time: {}", logEntry.getTimestamp());
+    public void processErrorLog(LogEntry logEntry) {
+        processErrorLog(ErrorLog.of(logEntry));
+    }
+
+    private void sendImmediateAlert(String errorKey, ErrorLog logEntry) {
+        logger.error("📧 SENDING IMMEDIATE ALERT - Service: {}", logEntry.applicationName());
+        logger.error("   Error: {}", logEntry.message());
+        logger.error("   Source: {}", logEntry.source());
+        logger.error("   Time: {}", logEntry.timestamp());
         
         // In production, this would:
         // 1. Send email to on-call engineers
@@ -70,64 +170,165 @@ public class AlertService {
         // 4. Send to Slack #alerts channel
         // 5. Update status page if customer-facing
         
-        sendSlackAlert(logEntry, "🚨 CRITICAL ERROR ALERT");
-        sendEmailAlert("oncall@company.com", logEntry);
+        sendSlackAlert(errorKey, logEntry, "🚨 CRITICAL ERROR ALERT");
+        sendEmailAlert(errorKey, "oncall@company.com", logEntry);
         
         // For payment/security related errors, send to security team
-        if (isCriticalService(logEntry.getApplicationName())) {
-            sendSecurityAlert(logEntry);
+        if (isCriticalService(logEntry.applicationName())) {
+            sendSecurityAlert(errorKey, logEntry);
         }
     }
 
-    private void sendEscalationAlert(LogEntry logEntry, int errorCount) {
-        logger.error("⚠️ ERROR PATTERN DETECTED - {} errors of same type", errorCount);
+    private void sendEscalationAlert(String errorKey, ErrorLog logEntry, long errorCount) {
+        logger.error("⚠️ ERROR PATTERN DETECTED - {} errors of same type within {}", errorCount, escalationWindow);
         
-        sendSlackAlert(logEntry, String.format("🔄 ESCALATION: %d similar errors detected", errorCount));
-        sendEmailAlert("engineering-leads@company.com", logEntry);
+        sendSlackAlert(errorKey + "#escalation", logEntry, String.format("🔄 ESCALATION: %d similar errors detected", errorCount));
+        sendEmailAlert(errorKey, "engineering-leads@company.com", logEntry);
         
         // Auto-scale or circuit breaker activation might be triggered here
-        triggerAutoRemediation(logEntry);
+        triggerAutoRemediation(errorKey, logEntry);
     }
 
-    private void createIncidentTicket(LogEntry logEntry) {
-        logger.info("🎫 Creating incident ticket for error: {}", logEntry.getLogId());
+    private void sendDigest(AlertCoalescer.Digest<ErrorLog> digest) {
+        ErrorLog latest = digest.last();
+        logger.error("📦 ALERT DIGEST - {} more errors for {} between {} and {}",
+                    digest.count(), digest.key(), digest.firstSeen(), digest.lastSeen());
         
-        // Integration with ticketing systems like Jira, ServiceNow, etc.
-        String ticketId = "INC-" + System.currentTimeMillis();
+        sendSlackAlert(digest.key() + "#digest", latest, String.format("📦 DIGEST: %d more %s errors", digest.count(), digest.key()),
+                digest.exemplars());
+        sendEmailAlert(digest.key(), "oncall@company.com", latest, digest.exemplars());
         
-        logger.info("   Ticket ID: {}", ticketId);
-        logger.info("   Priority: HIGH");
-        logger.info("   Application: {}", logEntry.getApplicationName());
-        logger.info("   Exception: {}", logEntry.getException());
+        if (isCriticalService(latest.applicationName())) {
+            sendSecurityAlert(digest.key(), latest);
+        }
+    }
+
+    private void sendEscalationDigest(AlertCoalescer.Digest<ErrorLog> digest) {
+        ErrorLog latest = digest.last();
+        logger.error("⚠️ ESCALATION DIGEST - {} still above threshold: {} more errors within {}",
+                    digest.key(), digest.count(), escalationWindow);
+        
+        sendSlackAlert(digest.key() + "#escalation", latest, String.format("🔄 ESCALATION ONGOING: %d more %s errors", digest.count(), digest.key()),
+                digest.exemplars());
+        sendEmailAlert(digest.key(), "engineering-leads@company.com", latest, digest.exemplars());
+    }
+
+    private void updateIncidentTicket(AlertCoalescer.Digest<ErrorLog> digest) {
+        logger.info("🎫 Updating incident ticket for {}: {} more errors with exceptions, last at {}",
+                   digest.key(), digest.count(), digest.lastSeen());
+    }
+
+    private void flushDigests() {
+        alerts.flush();
+        escalations.flush();
+        tickets.flush();
+    }
+
+    // Pending digests are sent on shutdown rather than dropped
+    @Override
+    public void destroy() {
+        if (digestScheduler != null) {
+            digestScheduler.shutdown();
+            flushDigests();
+        }
+    }
+
+    private void createIncidentTicket(String errorKey, ErrorLog logEntry) {
+        incidents.send(errorKey, isCriticalService(logEntry.applicationName()),
+                new IncidentTicket(logEntry, logEntry.entry().get().getException()));
+    }
+
+    private void openIncidentTickets(List<AlertDispatcher.Notification<IncidentTicket>> notifications) {
+        for (AlertDispatcher.Notification<IncidentTicket> notification : notifications) {
+            IncidentTicket ticket = notification.payload();
+            logger.info("🎫 Creating incident ticket for error: {}", ticket.logEntry().logId());
+            
+            // Integration with ticketing systems like Jira, ServiceNow, etc.
+            String ticketId = "INC-" + System.currentTimeMillis();
+            
+            logger.info("   Ticket ID: {}", ticketId);
+            logger.info("   Priority: HIGH");
+            logger.info("   Application: {}", ticket.logEntry().applicationName());
+            logger.info("   Exception: {}", ticket.exception());
+        }
     }
 
-    private void updateErrorDashboard(LogEntry logEntry) {
+    private void updateErrorDashboard(ErrorLog logEntry) {
         // Integration with monitoring systems like Grafana, DataDog, New Relic
         logger.debug("📊 Updating error dashboard with new error from: {}", 
-                    logEntry.getApplicationName());
+                    logEntry.applicationName());
+    }
+
+    private void sendSlackAlert(String key, ErrorLog logEntry, String alertType) {
+        sendSlackAlert(key, logEntry, alertType, List.of());
     }
 
-    private void sendSlackAlert(LogEntry logEntry, String alertType) {
-        logger.info("💬 SLACK ALERT: {}", alertType);
+    private void sendSlackAlert(String key, ErrorLog logEntry, String alertType, List<ErrorLog> exemplars) {
+        slack.send(key, isCriticalService(logEntry.applicationName()), new SlackMessage(alertType, logEntry, exemplars));
+    }
+
+    // Batched: one post to #alerts carries every message the worker took from the queue
+    private void postToSlack(List<AlertDispatcher.Notification<SlackMessage>> notifications) {
+        logger.info("💬 SLACK ALERT: {} message(s)", notifications.size());
         logger.info("   Channel: #alerts");
-        logger.info("   App: {}", logEntry.getApplicationName());
-        logger.info("   Message: {}", truncateMessage(logEntry.getMessage(), 100));
+        for (AlertDispatcher.Notification<SlackMessage> notification : notifications) {
+            SlackMessage message = notification.payload();
+            logger.info("   {} - App: {}, Message: {}{}", message.alertType(), message.logEntry().applicationName(),
+                       truncateMessage(message.logEntry().message(), 100),
+                       notification.occurrences() > 1 ? " (x" + notification.occurrences() + ")" : "");
+            for (ErrorLog exemplar : message.exemplars()) {
+                logger.info("     Exemplar {}: {}", exemplar.logId(), truncateMessage(exemplar.message(), 100));
+            }
+        }
+    }
+
+    private void sendEmailAlert(String key, String recipient, ErrorLog logEntry) {
+        sendEmailAlert(key, recipient, logEntry, List.of());
+    }
+
+    private void sendEmailAlert(String key, String recipient, ErrorLog logEntry, List<ErrorLog> exemplars) {
+        email.send(key + "|" + recipient, isCriticalService(logEntry.applicationName()), new EmailMessage(recipient, logEntry, exemplars));
+    }
+
+    // Batched per recipient: one email lists every alert queued for them
+    private void sendEmails(List<AlertDispatcher.Notification<EmailMessage>> notifications) {
+        Map<String, List<AlertDispatcher.Notification<EmailMessage>>> byRecipient = notifications.stream()
+                .collect(Collectors.groupingBy(notification -> notification.payload().recipient(), LinkedHashMap::new, Collectors.toList()));
+        byRecipient.forEach((recipient, emails) -> {
+            logger.info("📧 EMAIL ALERT to: {}", recipient);
+            logger.info("   Subject: Critical Error - {}", emails.stream()
+                    .map(notification -> notification.payload().logEntry().applicationName())
+                    .distinct()
+                    .collect(Collectors.joining(", ")));
+            logger.info("   Priority: High");
+            logger.info("   Alerts: {}", emails.stream().mapToInt(AlertDispatcher.Notification::occurrences).sum());
+            emails.stream()
+                    .flatMap(notification -> notification.payload().exemplars().stream())
+                    .forEach(exemplar -> logger.info("   Exemplar {} ({}): {}", exemplar.logId(),
+                            exemplar.applicationName(), truncateMessage(exemplar.message(), 100)));
+        });
     }
 
-    private void sendEmailAlert(String recipient, LogEntry logEntry) {
-        logger.info("📧 EMAIL ALERT to: {}", recipient);
-        logger.info("   Subject: Critical Error - {}", logEntry.getApplicationName());
-        logger.info("   Priority: High");
+    private void sendSecurityAlert(String key, ErrorLog logEntry) {
+        security.send(key, true, logEntry);
     }
 
-    private void sendSecurityAlert(LogEntry logEntry) {
-        logger.warn("🔒 SECURITY ALERT - Critical service error: {}", 
-                   logEntry.getApplicationName());
+    private void notifySecurityTeam(List<AlertDispatcher.Notification<ErrorLog>> notifications) {
+        for (AlertDispatcher.Notification<ErrorLog> notification : notifications) {
+            logger.warn("🔒 SECURITY ALERT - Critical service error: {}", 
+                       notification.payload().applicationName());
+        }
         // Additional security team notifications
     }
 
-    private void triggerAutoRemediation(LogEntry logEntry) {
-        logger.info("🔧 Triggering auto-remediation for: {}", logEntry.getApplicationName());
+    private void triggerAutoRemediation(String key, ErrorLog logEntry) {
+        remediation.send(key, isCriticalService(logEntry.applicationName()), logEntry);
+    }
+
+    private void runAutoRemediation(List<AlertDispatcher.Notification<ErrorLog>> notifications) {
+        for (AlertDispatcher.Notification<ErrorLog> notification : notifications) {
+            logger.info("🔧 Triggering auto-remediation for: {}", notification.payload().applicationName());
+        }
         
         // Examples of auto-remediation:
         // 1. Restart unhealthy service instances
@@ -143,13 +344,9 @@ public class AlertService {
                applicationName.contains("security");
     }
 
-    private String extractErrorType(String message) {
-        // Simple error classification
-        if (message.toLowerCase().contains("timeout")) return "TIMEOUT";
-        if (message.toLowerCase().contains("connection")) return "CONNECTION";
-        if (message.toLowerCase().contains("database")) return "DATABASE";
-        if (message.toLowerCase().contains("memory")) return "MEMORY";
-        return "GENERAL";
+    // Package-private for the JMH benchmarks
+    String extractErrorType(String message) {
+        return classifier.classify(message).first(ERROR_TYPE, "GENERAL");
     }
 
     private String truncateMessage(String message, int maxLength) {
@@ -158,8 +355,12 @@ public class AlertService {
             : message;
     }
 
-    // Public method to get error statistics
-    public ConcurrentHashMap<String, AtomicInteger> getErrorCounts() {
-        return new ConcurrentHashMap<>(errorCounts);
+    // Public methods to get error statistics: totals since startup, and counts within a recent window
+    public Map<String, Long> getErrorCounts() {
+        return errorCounts.totals();
+    }
+
+    public Map<String, RateCounters.Rate> getErrorRates(String applicationName, Duration window) {
+        return errorCounts.rates(applicationName == null ? null : applicationName + ":", window);
     }
 }
\ No newline at end of file
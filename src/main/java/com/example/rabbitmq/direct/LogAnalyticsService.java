@@ -1,46 +1,58 @@
 package com.example.rabbitmq.direct;
 
+import com.example.rabbitmq.classifier.MessageClassifier;
+import com.example.rabbitmq.classifier.MessageTags;
+import com.example.rabbitmq.config.MessagingProperties;
 import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.counter.HeavyHitters;
+import com.example.rabbitmq.counter.KeyCounter;
+import com.example.rabbitmq.listener.ConsumerBatches;
 import com.example.rabbitmq.model.LogEntry;
+import com.rabbitmq.client.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class LogAnalyticsService {
     
     private static final Logger logger = LoggerFactory.getLogger(LogAnalyticsService.class);
+    private static final String BUSINESS_EVENT = "business-event";
+    private static final String PERFORMANCE_METRIC = "performance-metric";
+    private static final String OPTIMIZATION = "optimization";
     
-    private final ConcurrentHashMap<String, AtomicLong> serviceLogs = new ConcurrentHashMap<>();
+    private final KeyCounter serviceLogs;
     private final AtomicLong totalInfoLogs = new AtomicLong(0);
+    private final MessageClassifier classifier;
 
-    @RabbitListener(queues = RabbitConfig.INFO_LOG_QUEUE)
+    public LogAnalyticsService(MessageClassifier classifier, MessagingProperties properties) {
+        MessagingProperties.BoundedCounters bounded = properties.getBoundedCounters();
+        this.classifier = classifier;
+        this.serviceLogs = bounded.isEnabled()
+                ? new HeavyHitters(bounded.getTopKeys(), bounded.getEpsilon(), bounded.getConfidence())
+                : KeyCounter.exact();
+    }
+
+    @RabbitListener(queues = RabbitConfig.INFO_LOG_QUEUE,
+            containerFactory = "${app.messaging.listener.factory.log-analytics:rabbitListenerContainerFactory}",
+            autoStartup = "#{!${app.messaging.listener.consumer-batch.enabled.log-analytics:false}}")
     public void processInfoLog(LogEntry logEntry) {
         try {
             logger.info("ℹ️ INFO LOG - App: {}, Message: {}", 
                        logEntry.getApplicationName(), logEntry.getMessage());
             
-            // Track info logs by service
-            serviceLogs.computeIfAbsent(logEntry.getApplicationName(), k -> new AtomicLong(0))
-                      .incrementAndGet();
-            
-            totalInfoLogs.incrementAndGet();
-            
-            // Store for analytics and reporting
-            storeForAnalytics(logEntry);
+            analyzeLogEntry(logEntry, classifier.classify(logEntry.getMessage()));
             
-            // Extract business metrics from info logs
-            extractBusinessMetrics(logEntry);
-            
-            // Build usage patterns
-            analyzeUsagePatterns(logEntry);
-            
-            // Generate insights
-            generateInsights(logEntry);
+            // Track info logs by service
+            recordServiceCounts(Map.of(logEntry.getApplicationName(), 1L));
             
             logger.debug("Info log processed: {} - Total info logs: {}", 
                         logEntry.getLogId(), totalInfoLogs.get());
@@ -53,6 +65,62 @@ public class LogAnalyticsService {
         }
     }
 
+    // Consumer-batch variant: counters are aggregated per batch and the batch is acked with one multiple-ack
+    @RabbitListener(queues = RabbitConfig.INFO_LOG_QUEUE,
+            containerFactory = "batchRabbitListenerContainerFactory",
+            autoStartup = "${app.messaging.listener.consumer-batch.enabled.log-analytics:false}")
+    public void processInfoLogs(List<Message<LogEntry>> messages, Channel channel) {
+        ConsumerBatches.process(messages, channel, this::prepareInfoLogBatch, this::processInfoLog);
+    }
+
+    // Classifies and counts the batch; nothing is stored or recorded until the returned step runs
+    private Runnable prepareInfoLogBatch(List<LogEntry> logEntries) {
+        List<MessageTags> tags = new ArrayList<>(logEntries.size());
+        Map<String, Long> batchCounts = new HashMap<>();
+        for (LogEntry logEntry : logEntries) {
+            tags.add(classifier.classify(logEntry.getMessage()));
+            batchCounts.merge(logEntry.getApplicationName(), 1L, Long::sum);
+        }
+        
+        return () -> {
+            for (int i = 0; i < logEntries.size(); i++) {
+                analyzeLogEntry(logEntries.get(i), tags.get(i));
+            }
+            
+            // Shared counters are touched once per service, after the whole batch went through
+            recordServiceCounts(batchCounts);
+            
+            logger.info("ℹ️ INFO LOG BATCH - {} logs from {} services - Total info logs: {}", 
+                       logEntries.size(), batchCounts.size(), totalInfoLogs.get());
+        };
+    }
+
+    // The message has been scanned once already; the checks below only look at its tags
+    private void analyzeLogEntry(LogEntry logEntry, MessageTags tags) {
+        // Store for analytics and reporting
+        storeForAnalytics(logEntry);
+        
+        // Extract business metrics from info logs
+        extractBusinessMetrics(logEntry, tags);
+        
+        // Spot optimization hints in the message text
+        identifyOptimizationOpportunities(logEntry, tags);
+    }
+
+    private void recordServiceCounts(Map<String, Long> counts) {
+        counts.forEach((service, count) -> {
+            long current = serviceLogs.add(service, count);
+            
+            // Build usage patterns
+            analyzeUsagePatterns(service, current - count, current);
+            
+            // Generate insights
+            analyzeServiceHealth(service, current);
+            detectAnomalies(service, current - count, current);
+        });
+        totalInfoLogs.addAndGet(counts.values().stream().mapToLong(Long::longValue).sum());
+    }
+
     private void storeForAnalytics(LogEntry logEntry) {
         logger.debug("💾 Storing log for analytics: {}", logEntry.getLogId());
         
@@ -66,26 +134,19 @@ public class LogAnalyticsService {
         sendToDataWarehouse(logEntry);
     }
 
-    private void extractBusinessMetrics(LogEntry logEntry) {
-        String message = logEntry.getMessage().toLowerCase();
-        
-        // Extract business events from info logs
-        if (message.contains("order created")) {
-            recordBusinessEvent("order.created", logEntry);
-        } else if (message.contains("user registered")) {
-            recordBusinessEvent("user.registered", logEntry);
-        } else if (message.contains("payment processed")) {
-            recordBusinessEvent("payment.processed", logEntry);
-        } else if (message.contains("login successful")) {
-            recordBusinessEvent("user.login", logEntry);
+    private void extractBusinessMetrics(LogEntry logEntry, MessageTags tags) {
+        // Extract business events from info logs; the event types are the business-event tags in configuration
+        String eventType = tags.first(BUSINESS_EVENT, null);
+        if (eventType != null) {
+            recordBusinessEvent(eventType, logEntry);
         }
         
         // Extract performance metrics
-        extractPerformanceMetrics(logEntry);
+        extractPerformanceMetrics(logEntry, tags);
     }
 
-    private void analyzeUsagePatterns(LogEntry logEntry) {
-        logger.debug("📊 Analyzing usage patterns from: {}", logEntry.getApplicationName());
+    private void analyzeUsagePatterns(String service, long previousCount, long logCount) {
+        logger.debug("📊 Analyzing usage patterns from: {}", service);
         
         // Analyze patterns like:
         // - Peak usage times
@@ -93,22 +154,14 @@ public class LogAnalyticsService {
         // - User behavior patterns
         // - Feature usage analytics
         
-        String service = logEntry.getApplicationName();
-        long logCount = serviceLogs.get(service).get();
-        
-        if (logCount % 100 == 0) {
-            logger.info("📈 Usage milestone: {} has processed {} operations", service, logCount);
-            generateUsageReport(service, logCount);
+        // A batch can jump over a milestone, so check whether one was crossed rather than hit exactly
+        if (logCount / 100 > previousCount / 100) {
+            long milestone = logCount / 100 * 100;
+            logger.info("📈 Usage milestone: {} has processed {} operations", service, milestone);
+            generateUsageReport(service, milestone);
         }
     }
 
-    private void generateInsights(LogEntry logEntry) {
-        // Generate actionable insights from log patterns
-        analyzeServiceHealth(logEntry);
-        identifyOptimizationOpportunities(logEntry);
-        detectAnomalies(logEntry);
-    }
-
     private void recordBusinessEvent(String eventType, LogEntry logEntry) {
         logger.info("📊 BUSINESS EVENT: {} from {}", eventType, logEntry.getApplicationName());
         
@@ -121,28 +174,23 @@ public class LogAnalyticsService {
         sendToBusinessIntelligence(eventType, logEntry);
     }
 
-    private void extractPerformanceMetrics(LogEntry logEntry) {
+    private void extractPerformanceMetrics(LogEntry logEntry, MessageTags tags) {
         // Look for performance indicators in info logs
-        String message = logEntry.getMessage();
-        
-        if (message.contains("completed in") || message.contains("took")) {
+        if (tags.has(PERFORMANCE_METRIC, "TIMING")) {
             logger.debug("⏱️ Performance metric detected in: {}", logEntry.getApplicationName());
             
             // Extract timing information
             // Parse and send to monitoring systems
         }
         
-        if (message.contains("processed") && message.contains("records")) {
+        if (tags.has(PERFORMANCE_METRIC, "PROCESSED") && tags.has(PERFORMANCE_METRIC, "RECORDS")) {
             logger.debug("📊 Throughput metric detected in: {}", logEntry.getApplicationName());
             
             // Extract throughput information
         }
     }
 
-    private void analyzeServiceHealth(LogEntry logEntry) {
-        String service = logEntry.getApplicationName();
-        long logCount = serviceLogs.get(service).get();
-        
+    private void analyzeServiceHealth(String service, long logCount) {
         // Simple health indicator based on log volume
         if (logCount > 1000) {
             logger.info("✅ Service {} shows high activity - {} info logs", service, logCount);
@@ -151,28 +199,23 @@ public class LogAnalyticsService {
         }
     }
 
-    private void identifyOptimizationOpportunities(LogEntry logEntry) {
+    private void identifyOptimizationOpportunities(LogEntry logEntry, MessageTags tags) {
         // Identify potential optimizations from log patterns
-        String message = logEntry.getMessage().toLowerCase();
-        
-        if (message.contains("cache miss")) {
+        if (tags.has(OPTIMIZATION, "CACHE_MISS")) {
             logger.info("💡 OPTIMIZATION OPPORTUNITY: Consider cache warming for {}", 
                        logEntry.getApplicationName());
         }
         
-        if (message.contains("slow query") || message.contains("database query took")) {
+        if (tags.has(OPTIMIZATION, "SLOW_QUERY")) {
             logger.info("💡 OPTIMIZATION OPPORTUNITY: Database query optimization needed in {}", 
                        logEntry.getApplicationName());
         }
     }
 
-    private void detectAnomalies(LogEntry logEntry) {
+    private void detectAnomalies(String service, long previousCount, long currentCount) {
         // Simple anomaly detection based on patterns
-        String service = logEntry.getApplicationName();
-        long currentCount = serviceLogs.get(service).get();
-        
         // This is a simple example - production systems would use more sophisticated methods
-        if (currentCount > 0 && currentCount % 500 == 0) {
+        if (currentCount / 500 > previousCount / 500) {
             logger.info("🔍 ANOMALY CHECK: {} has unusual high activity - {} logs", 
                        service, currentCount);
         }
@@ -206,10 +249,10 @@ public class LogAnalyticsService {
     }
 
     public long getLogsForService(String service) {
-        return serviceLogs.getOrDefault(service, new AtomicLong(0)).get();
+        return serviceLogs.get(service);
     }
 
-    public ConcurrentHashMap<String, AtomicLong> getAllServiceLogs() {
-        return new ConcurrentHashMap<>(serviceLogs);
+    public Map<String, Long> getAllServiceLogs() {
+        return serviceLogs.snapshot();
     }
 }
\ No newline at end of file
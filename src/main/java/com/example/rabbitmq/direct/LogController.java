@@ -1,14 +1,16 @@
 package com.example.rabbitmq.direct;
 
+import com.example.rabbitmq.counter.RateCounters;
 import com.example.rabbitmq.model.LogEntry;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/logs")
@@ -31,58 +33,63 @@ public class LogController {
     @PostMapping("/error")
     @Operation(summary = "Log an error", 
                description = "Creates an error log entry that will be routed to the alert service")
-    public ResponseEntity<LogEntry> logError(@RequestBody ErrorLogRequest request) {
-        LogEntry logEntry = logService.logError(
+    public CompletableFuture<ResponseEntity<LogEntry>> logError(@RequestBody ErrorLogRequest request,
+            @RequestParam(defaultValue = "false") boolean awaitConfirm) {
+        return logService.logError(
                 request.getApplicationName(),
                 request.getMessage(),
                 request.getSource(),
-                request.getException()
-        );
-        return ResponseEntity.ok(logEntry);
+                request.getException(),
+                awaitConfirm
+        ).thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/warning")
     @Operation(summary = "Log a warning", 
                description = "Creates a warning log entry that will be routed to the monitoring service")
-    public ResponseEntity<LogEntry> logWarning(@RequestBody WarningLogRequest request) {
-        LogEntry logEntry = logService.logWarning(
+    public CompletableFuture<ResponseEntity<LogEntry>> logWarning(@RequestBody WarningLogRequest request,
+            @RequestParam(defaultValue = "false") boolean awaitConfirm) {
+        return logService.logWarning(
                 request.getApplicationName(),
                 request.getMessage(),
-                request.getSource()
-        );
-        return ResponseEntity.ok(logEntry);
+                request.getSource(),
+                awaitConfirm
+        ).thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/info")
     @Operation(summary = "Log information", 
                description = "Creates an info log entry that will be routed to the analytics service")
-    public ResponseEntity<LogEntry> logInfo(@RequestBody InfoLogRequest request) {
-        LogEntry logEntry = logService.logInfo(
+    public CompletableFuture<ResponseEntity<LogEntry>> logInfo(@RequestBody InfoLogRequest request,
+            @RequestParam(defaultValue = "false") boolean awaitConfirm) {
+        return logService.logInfo(
                 request.getApplicationName(),
                 request.getMessage(),
-                request.getSource()
-        );
-        return ResponseEntity.ok(logEntry);
+                request.getSource(),
+                awaitConfirm
+        ).thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/debug")
     @Operation(summary = "Log debug information", 
                description = "Creates a debug log entry for development purposes")
-    public ResponseEntity<LogEntry> logDebug(@RequestBody DebugLogRequest request) {
-        LogEntry logEntry = logService.logDebug(
+    public CompletableFuture<ResponseEntity<LogEntry>> logDebug(@RequestBody DebugLogRequest request,
+            @RequestParam(defaultValue = "false") boolean awaitConfirm) {
+        return logService.logDebug(
                 request.getApplicationName(),
                 request.getMessage(),
-                request.getSource()
-        );
-        return ResponseEntity.ok(logEntry);
+                request.getSource(),
+                awaitConfirm
+        ).thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/sample-logs")
     @Operation(summary = "Generate sample logs", 
                description = "Generates sample logs of all levels for demonstration")
-    public ResponseEntity<String> generateSampleLogs() {
-        logService.generateSampleLogs();
-        return ResponseEntity.ok("Sample logs generated successfully");
+    public CompletableFuture<ResponseEntity<String>> generateSampleLogs(
+            @RequestParam(defaultValue = "false") boolean awaitConfirm) {
+        return logService.generateSampleLogs(awaitConfirm)
+                .thenApply(entries -> ResponseEntity.ok("Sample logs generated successfully"));
     }
 
     @GetMapping("/analytics/summary")
@@ -109,12 +116,12 @@ public class LogController {
         // Count errors and warnings for this service
         long errorCount = alertService.getErrorCounts().entrySet().stream()
                 .filter(entry -> entry.getKey().startsWith(serviceName + ":"))
-                .mapToInt(entry -> entry.getValue().get())
+                .mapToLong(Map.Entry::getValue)
                 .sum();
         
         long warningCount = monitoringService.getWarningCounts().entrySet().stream()
                 .filter(entry -> entry.getKey().startsWith(serviceName + ":"))
-                .mapToInt(entry -> entry.getValue().get())
+                .mapToLong(Map.Entry::getValue)
                 .sum();
         
         analytics.setErrorCount(errorCount);
@@ -123,6 +130,23 @@ public class LogController {
         return ResponseEntity.ok(analytics);
     }
 
+    @GetMapping("/analytics/rates")
+    @Operation(summary = "Get recent error and warning rates",
+               description = "Counts per application and type within the window (1m, 5m, 1h, ...), up to the counter horizon")
+    public ResponseEntity<LogRates> getRates(@RequestParam(defaultValue = "1m") String window,
+                                             @RequestParam(required = false) String service) {
+        try {
+            Duration duration = DurationStyle.detectAndParse(window);
+            LogRates rates = new LogRates();
+            rates.setWindow(duration);
+            rates.setErrors(alertService.getErrorRates(service, duration));
+            rates.setWarnings(monitoringService.getWarningRates(service, duration));
+            return ResponseEntity.ok(rates);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     // Request DTOs
     public static class ErrorLogRequest {
         private String applicationName;
@@ -191,21 +215,21 @@ public class LogController {
     // Response DTOs
     public static class LogAnalyticsSummary {
         private long totalInfoLogs;
-        private Map<String, AtomicInteger> errorCounts;
-        private Map<String, AtomicInteger> warningCounts;
-        private Map<String, AtomicLong> serviceLogs;
+        private Map<String, Long> errorCounts;
+        private Map<String, Long> warningCounts;
+        private Map<String, Long> serviceLogs;
 
         public long getTotalInfoLogs() { return totalInfoLogs; }
         public void setTotalInfoLogs(long totalInfoLogs) { this.totalInfoLogs = totalInfoLogs; }
 
-        public Map<String, AtomicInteger> getErrorCounts() { return errorCounts; }
-        public void setErrorCounts(Map<String, AtomicInteger> errorCounts) { this.errorCounts = errorCounts; }
+        public Map<String, Long> getErrorCounts() { return errorCounts; }
+        public void setErrorCounts(Map<String, Long> errorCounts) { this.errorCounts = errorCounts; }
 
-        public Map<String, AtomicInteger> getWarningCounts() { return warningCounts; }
-        public void setWarningCounts(Map<String, AtomicInteger> warningCounts) { this.warningCounts = warningCounts; }
+        public Map<String, Long> getWarningCounts() { return warningCounts; }
+        public void setWarningCounts(Map<String, Long> warningCounts) { this.warningCounts = warningCounts; }
 
-        public Map<String, AtomicLong> getServiceLogs() { return serviceLogs; }
-        public void setServiceLogs(Map<String, AtomicLong> serviceLogs) { this.serviceLogs = serviceLogs; }
+        public Map<String, Long> getServiceLogs() { return serviceLogs; }
+        public void setServiceLogs(Map<String, Long> serviceLogs) { this.serviceLogs = serviceLogs; }
     }
 
     public static class ServiceAnalytics {
@@ -226,4 +250,19 @@ public class LogController {
         public long getWarningCount() { return warningCount; }
         public void setWarningCount(long warningCount) { this.warningCount = warningCount; }
     }
-}
\ No newline at end of file
+
+    public static class LogRates {
+        private Duration window;
+        private Map<String, RateCounters.Rate> errors;
+        private Map<String, RateCounters.Rate> warnings;
+
+        public Duration getWindow() { return window; }
+        public void setWindow(Duration window) { this.window = window; }
+
+        public Map<String, RateCounters.Rate> getErrors() { return errors; }
+        public void setErrors(Map<String, RateCounters.Rate> errors) { this.errors = errors; }
+
+        public Map<String, RateCounters.Rate> getWarnings() { return warnings; }
+        public void setWarnings(Map<String, RateCounters.Rate> warnings) { this.warnings = warnings; }
+    }
+}
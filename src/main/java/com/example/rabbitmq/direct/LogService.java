@@ -1,29 +1,32 @@
 package com.example.rabbitmq.direct;
 
 import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.messaging.MessagePublisher;
+import com.example.rabbitmq.messaging.PublishFailedException;
 import com.example.rabbitmq.model.LogEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class LogService {
     
     private static final Logger logger = LoggerFactory.getLogger(LogService.class);
     
-    private final RabbitTemplate rabbitTemplate;
+    private final MessagePublisher messagePublisher;
 
-    public LogService(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    public LogService(MessagePublisher messagePublisher) {
+        this.messagePublisher = messagePublisher;
     }
 
-    public LogEntry logEntry(String applicationName, LogEntry.LogLevel level, String message, 
+    public CompletableFuture<LogEntry> logEntry(String applicationName, LogEntry.LogLevel level, String message,
                            String source, String thread, String exception, 
-                           Map<String, Object> metadata) {
+                           Map<String, Object> metadata, boolean awaitConfirm) {
         
         LogEntry logEntry = new LogEntry(
                 UUID.randomUUID().toString(),
@@ -41,61 +44,64 @@ public class LogService {
 
         try {
             // Send to direct exchange with routing key based on log level
-            rabbitTemplate.convertAndSend(
+            return messagePublisher.publish(
                 RabbitConfig.LOG_DIRECT_EXCHANGE,
                 level.getRoutingKey(),  // Routing key determines which queue receives the message
-                logEntry
-            );
-            
-            logger.debug("Log entry {} sent to exchange with routing key: {}", 
-                        logEntry.getLogId(), level.getRoutingKey());
-                        
+                logEntry,
+                awaitConfirm
+            ).thenApply(sent -> {
+                logger.debug("Log entry {} sent to exchange with routing key: {}", 
+                            logEntry.getLogId(), level.getRoutingKey());
+                return logEntry;
+            });
         } catch (Exception e) {
             logger.error("Failed to send log entry to exchange: {}", e.getMessage());
-            throw new RuntimeException("Failed to send log entry", e);
+            // A 503 rather than a 500: the entry can be resubmitted once the broker or outbox has room
+            throw new PublishFailedException("Failed to send log entry", e);
         }
-
-        return logEntry;
     }
 
     // Convenience methods for different log levels
-    public LogEntry logError(String applicationName, String message, String source, 
-                           String exception) {
+    public CompletableFuture<LogEntry> logError(String applicationName, String message, String source,
+                                                String exception, boolean awaitConfirm) {
         return logEntry(applicationName, LogEntry.LogLevel.ERROR, message, source, 
                        Thread.currentThread().getName(), exception, 
-                       Map.of("severity", "high", "requiresAttention", true));
+                       Map.of("severity", "high", "requiresAttention", true), awaitConfirm);
     }
 
-    public LogEntry logWarning(String applicationName, String message, String source) {
+    public CompletableFuture<LogEntry> logWarning(String applicationName, String message, String source,
+                                                  boolean awaitConfirm) {
         return logEntry(applicationName, LogEntry.LogLevel.WARNING, message, source,
                        Thread.currentThread().getName(), null,
-                       Map.of("severity", "medium", "monitoringRequired", true));
+                       Map.of("severity", "medium", "monitoringRequired", true), awaitConfirm);
     }
 
-    public LogEntry logInfo(String applicationName, String message, String source) {
+    public CompletableFuture<LogEntry> logInfo(String applicationName, String message, String source,
+                                                  boolean awaitConfirm) {
         return logEntry(applicationName, LogEntry.LogLevel.INFO, message, source,
                        Thread.currentThread().getName(), null,
-                       Map.of("severity", "low", "informational", true));
+                       Map.of("severity", "low", "informational", true), awaitConfirm);
     }
 
-    public LogEntry logDebug(String applicationName, String message, String source) {
+    public CompletableFuture<LogEntry> logDebug(String applicationName, String message, String source,
+                                                  boolean awaitConfirm) {
         return logEntry(applicationName, LogEntry.LogLevel.DEBUG, message, source,
                        Thread.currentThread().getName(), null,
-                       Map.of("severity", "trace", "debugOnly", true));
+                       Map.of("severity", "trace", "debugOnly", true), awaitConfirm);
     }
 
-    // Sample log entries for demonstration
-    public void generateSampleLogs() {
-        logError("payment-service", "Payment processing failed for order #12345", 
-                "PaymentProcessor.java:142", "java.net.ConnectException: Connection timeout");
-        
-        logWarning("user-service", "User authentication took longer than expected", 
-                  "AuthController.java:89");
-        
-        logInfo("order-service", "New order created successfully", 
-               "OrderController.java:56");
-        
-        logDebug("inventory-service", "Checking stock levels for product SKU-789", 
-                "InventoryManager.java:201");
+    // Sample log entries for demonstration; completes once all four are sent, or confirmed with awaitConfirm
+    public CompletableFuture<List<LogEntry>> generateSampleLogs(boolean awaitConfirm) {
+        List<CompletableFuture<LogEntry>> entries = List.of(
+                logError("payment-service", "Payment processing failed for order #12345",
+                        "PaymentProcessor.java:142", "java.net.ConnectException: Connection timeout", awaitConfirm),
+                logWarning("user-service", "User authentication took longer than expected",
+                        "AuthController.java:89", awaitConfirm),
+                logInfo("order-service", "New order created successfully",
+                        "OrderController.java:56", awaitConfirm),
+                logDebug("inventory-service", "Checking stock levels for product SKU-789",
+                        "InventoryManager.java:201", awaitConfirm));
+        return CompletableFuture.allOf(entries.toArray(CompletableFuture[]::new))
+                .thenApply(done -> entries.stream().map(CompletableFuture::join).toList());
     }
-}
\ No newline at end of file
+}
@@ -1,49 +1,83 @@
 package com.example.rabbitmq.direct;
 
+import com.example.rabbitmq.classifier.MessageClassifier;
+import com.example.rabbitmq.classifier.MessageTags;
+import com.example.rabbitmq.config.MessagingProperties;
 import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.counter.RateCounters;
+import com.example.rabbitmq.listener.ConsumerBatches;
 import com.example.rabbitmq.model.LogEntry;
+import com.rabbitmq.client.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 public class MonitoringService {
     
     private static final Logger logger = LoggerFactory.getLogger(MonitoringService.class);
+    private static final String WARNING_TYPE = "warning-type";
+    private static final String PERFORMANCE = "performance";
     
-    private final ConcurrentHashMap<String, AtomicInteger> warningCounts = new ConcurrentHashMap<>();
+    private final RateCounters warningCounts;
+    private final Duration warningWindow;
+    private final int patternThreshold;
+    private final int preventiveAlertThreshold;
+    private final MessageClassifier classifier;
 
-    @RabbitListener(queues = RabbitConfig.WARNING_LOG_QUEUE)
+    public MonitoringService(MessageClassifier classifier, MessagingProperties properties) {
+        MessagingProperties.LogRates logRates = properties.getLogRates();
+        this.classifier = classifier;
+        MessagingProperties.BoundedCounters bounded = properties.getBoundedCounters();
+        this.warningCounts = bounded.isEnabled()
+                ? new RateCounters(logRates.getHorizon(), bounded.getWindowedKeys(), bounded.getEpsilon(), bounded.getConfidence())
+                : new RateCounters(logRates.getHorizon());
+        this.warningWindow = logRates.getWarningWindow();
+        this.patternThreshold = logRates.getWarningPatternThreshold();
+        this.preventiveAlertThreshold = logRates.getPreventiveAlertThreshold();
+    }
+
+    @RabbitListener(queues = RabbitConfig.WARNING_LOG_QUEUE,
+            containerFactory = "${app.messaging.listener.factory.monitoring:rabbitListenerContainerFactory}",
+            autoStartup = "#{!${app.messaging.listener.consumer-batch.enabled.monitoring:false}}")
     public void processWarningLog(LogEntry logEntry) {
         try {
             logger.warn("⚠️ WARNING DETECTED - App: {}, Message: {}", 
                        logEntry.getApplicationName(), logEntry.getMessage());
             
-            // Track warning frequency
-            String warningKey = logEntry.getApplicationName() + ":" + extractWarningType(logEntry.getMessage());
-            int warningCount = warningCounts.computeIfAbsent(warningKey, k -> new AtomicInteger(0))
-                                           .incrementAndGet();
+            // One pass over the message yields every tag the checks below need
+            MessageTags tags = classifier.classify(logEntry.getMessage());
+            String warningType = tags.first(WARNING_TYPE, "GENERAL");
+            
+            // Track warning frequency within the warning window
+            String warningKey = warningKey(logEntry, warningType);
+            long warningCount = warningCounts.add(warningKey, 1, warningWindow);
             
             // Update monitoring metrics
-            updateMonitoringMetrics(logEntry);
+            updateMonitoringMetrics(logEntry.getApplicationName(), warningType, 1);
             
             // Check for warning patterns that might indicate problems
             analyzeWarningPatterns(logEntry, warningCount);
             
             // Send to monitoring dashboard
-            sendToMonitoringDashboard(logEntry);
+            sendToMonitoringDashboard(logEntry.getApplicationName());
             
             // For performance-related warnings, check thresholds
-            if (isPerformanceWarning(logEntry)) {
-                checkPerformanceThresholds(logEntry);
+            if (tags.any(PERFORMANCE)) {
+                checkPerformanceThresholds(logEntry, tags);
             }
             
-            logger.info("Warning processed for log: {} (Warning #{} for this type)", 
-                       logEntry.getLogId(), warningCount);
+            logger.info("Warning processed for log: {} (Warning #{} for this type within {})", 
+                       logEntry.getLogId(), warningCount, warningWindow);
             
             
         } catch (Exception e) {
@@ -53,8 +87,62 @@ public class MonitoringService {
         }
     }
 
-    private void updateMonitoringMetrics(LogEntry logEntry) {
-        logger.debug("📈 Updating monitoring metrics for: {}", logEntry.getApplicationName());
+    // Consumer-batch variant: warning counts and metrics are aggregated per batch, one multiple-ack per batch
+    @RabbitListener(queues = RabbitConfig.WARNING_LOG_QUEUE,
+            containerFactory = "batchRabbitListenerContainerFactory",
+            autoStartup = "${app.messaging.listener.consumer-batch.enabled.monitoring:false}")
+    public void processWarningLogs(List<Message<LogEntry>> messages, Channel channel) {
+        ConsumerBatches.process(messages, channel, this::prepareWarningLogBatch, this::processWarningLog);
+    }
+
+    // Classifies and groups the batch; nothing is counted or sent until the returned step runs
+    private Runnable prepareWarningLogBatch(List<LogEntry> logEntries) {
+        Map<String, List<LogEntry>> entriesByKey = new LinkedHashMap<>();
+        Map<String, String> warningTypes = new HashMap<>();
+        List<PerformanceWarning> performanceWarnings = new ArrayList<>();
+        for (LogEntry logEntry : logEntries) {
+            MessageTags tags = classifier.classify(logEntry.getMessage());
+            String warningType = tags.first(WARNING_TYPE, "GENERAL");
+            String warningKey = warningKey(logEntry, warningType);
+            entriesByKey.computeIfAbsent(warningKey, key -> new ArrayList<>()).add(logEntry);
+            warningTypes.put(warningKey, warningType);
+            if (tags.any(PERFORMANCE)) {
+                performanceWarnings.add(new PerformanceWarning(logEntry, tags));
+            }
+        }
+        
+        return () -> {
+            performanceWarnings.forEach(warning -> checkPerformanceThresholds(warning.logEntry(), warning.tags()));
+            
+            // Shared counters are touched once per warning type; every entry is then analyzed with the
+            // count it brought its type to, as the single-message path does
+            entriesByKey.forEach((warningKey, entries) -> {
+                long warningCount = warningCounts.add(warningKey, entries.size(), warningWindow);
+                updateMonitoringMetrics(entries.get(0).getApplicationName(), warningTypes.get(warningKey), entries.size());
+                long countBefore = warningCount - entries.size();
+                for (int i = 0; i < entries.size(); i++) {
+                    analyzeWarningPatterns(entries.get(i), countBefore + i + 1);
+                }
+            });
+            entriesByKey.values().stream()
+                    .map(entries -> entries.get(0).getApplicationName())
+                    .distinct()
+                    .forEach(this::sendToMonitoringDashboard);
+            
+            logger.warn("⚠️ WARNING BATCH - {} warnings across {} warning types", 
+                       logEntries.size(), entriesByKey.size());
+        };
+    }
+
+    private record PerformanceWarning(LogEntry logEntry, MessageTags tags) {
+    }
+
+    private String warningKey(LogEntry logEntry, String warningType) {
+        return logEntry.getApplicationName() + ":" + warningType;
+    }
+
+    private void updateMonitoringMetrics(String applicationName, String warningType, int count) {
+        logger.debug("📈 Updating monitoring metrics for: {}", applicationName);
         
         // In production, this would send metrics to:
         // - Prometheus
@@ -63,18 +151,17 @@ public class MonitoringService {
         // - New Relic
         // - Grafana
         
-        recordMetric("warnings.total", 1, logEntry.getApplicationName());
-        recordMetric("warnings.by_type." + extractWarningType(logEntry.getMessage()), 1, 
-                    logEntry.getApplicationName());
+        recordMetric("warnings.total", count, applicationName);
+        recordMetric("warnings.by_type." + warningType, count, applicationName);
     }
 
-    private void analyzeWarningPatterns(LogEntry logEntry, int warningCount) {
-        if (warningCount >= 10) {
-            logger.warn("🔍 WARNING PATTERN DETECTED: {} similar warnings for {}", 
-                       warningCount, logEntry.getApplicationName());
+    private void analyzeWarningPatterns(LogEntry logEntry, long warningCount) {
+        if (warningCount >= patternThreshold) {
+            logger.warn("🔍 WARNING PATTERN DETECTED: {} similar warnings for {} within {}", 
+                       warningCount, logEntry.getApplicationName(), warningWindow);
             
             // This could escalate to alert if pattern indicates degrading performance
-            if (warningCount >= 20) {
+            if (warningCount >= preventiveAlertThreshold) {
                 sendPreventiveAlert(logEntry, warningCount);
             }
         }
@@ -83,8 +170,8 @@ public class MonitoringService {
         analyzeTimeBasedPatterns(logEntry);
     }
 
-    private void sendToMonitoringDashboard(LogEntry logEntry) {
-        logger.info("📊 Sending warning to monitoring dashboard: {}", logEntry.getApplicationName());
+    private void sendToMonitoringDashboard(String applicationName) {
+        logger.info("📊 Sending warning to monitoring dashboard: {}", applicationName);
         
         // Dashboard widgets that would be updated:
         // - Warning count by service
@@ -97,27 +184,27 @@ public class MonitoringService {
         logger.debug("   Dashboard Widget: top-warning-sources");
     }
 
-    private void checkPerformanceThresholds(LogEntry logEntry) {
+    private void checkPerformanceThresholds(LogEntry logEntry, MessageTags tags) {
         logger.info("⏱️ Checking performance thresholds for: {}", logEntry.getApplicationName());
         
         // Extract performance metrics from log message
-        if (logEntry.getMessage().toLowerCase().contains("slow")) {
+        if (tags.has(PERFORMANCE, "SLOW")) {
             logger.warn("   Performance degradation detected");
             sendPerformanceAlert(logEntry);
         }
         
-        if (logEntry.getMessage().toLowerCase().contains("timeout")) {
+        if (tags.has(PERFORMANCE, "TIMEOUT")) {
             logger.warn("   Timeout issues detected");
             checkTimeoutPatterns(logEntry);
         }
         
-        if (logEntry.getMessage().toLowerCase().contains("memory")) {
+        if (tags.has(PERFORMANCE, "MEMORY")) {
             logger.warn("   Memory pressure detected");
             checkMemoryUsage(logEntry);
         }
     }
 
-    private void sendPreventiveAlert(LogEntry logEntry, int warningCount) {
+    private void sendPreventiveAlert(LogEntry logEntry, long warningCount) {
         logger.warn("🛡️ PREVENTIVE ALERT: {} warnings may indicate developing issue", warningCount);
         
         // Send to operations team before it becomes critical
@@ -164,7 +251,7 @@ public class MonitoringService {
         // - Auto-scaling decisions
     }
 
-    private void suggestPreventiveActions(LogEntry logEntry, int warningCount) {
+    private void suggestPreventiveActions(LogEntry logEntry, long warningCount) {
         logger.info("💡 Suggested preventive actions:");
         logger.info("   1. Scale up {} if needed", logEntry.getApplicationName());
         logger.info("   2. Check downstream dependencies");
@@ -178,26 +265,16 @@ public class MonitoringService {
         // In production, this would send to metrics collection systems
     }
 
-    private boolean isPerformanceWarning(LogEntry logEntry) {
-        String message = logEntry.getMessage().toLowerCase();
-        return message.contains("slow") || 
-               message.contains("timeout") || 
-               message.contains("latency") ||
-               message.contains("memory") ||
-               message.contains("cpu");
+    // Package-private for the JMH benchmarks
+    String extractWarningType(String message) {
+        return classifier.classify(message).first(WARNING_TYPE, "GENERAL");
     }
 
-    private String extractWarningType(String message) {
-        String lowerMessage = message.toLowerCase();
-        if (lowerMessage.contains("performance") || lowerMessage.contains("slow")) return "PERFORMANCE";
-        if (lowerMessage.contains("authentication") || lowerMessage.contains("auth")) return "AUTH";
-        if (lowerMessage.contains("database") || lowerMessage.contains("db")) return "DATABASE";
-        if (lowerMessage.contains("network") || lowerMessage.contains("connection")) return "NETWORK";
-        if (lowerMessage.contains("memory") || lowerMessage.contains("cpu")) return "RESOURCE";
-        return "GENERAL";
+    public Map<String, Long> getWarningCounts() {
+        return warningCounts.totals();
     }
 
-    public ConcurrentHashMap<String, AtomicInteger> getWarningCounts() {
-        return new ConcurrentHashMap<>(warningCounts);
+    public Map<String, RateCounters.Rate> getWarningRates(String applicationName, Duration window) {
+        return warningCounts.rates(applicationName == null ? null : applicationName + ":", window);
     }
 }
\ No newline at end of file
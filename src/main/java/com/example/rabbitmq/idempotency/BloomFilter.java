@@ -0,0 +1,65 @@
+package com.example.rabbitmq.idempotency;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free Bloom filter over string keys. Sized for an expected number of keys and false-positive rate; the
+// k probe positions come from one 64-bit hash by double hashing. Bits are only ever set, so readers never block
+final class BloomFilter {
+
+    private static final long K1 = 0x9E3779B97F4A7C15L;
+    private static final long K2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+
+    BloomFilter(int expectedKeys, double falsePositiveRate) {
+        double ln2 = Math.log(2);
+        long size = (long) Math.ceil(-Math.max(expectedKeys, 1) * Math.log(falsePositiveRate) / (ln2 * ln2));
+        int wordCount = (int) Math.max((size + 63) / 64, 1);
+        this.words = new AtomicLongArray(wordCount);
+        this.bits = wordCount * 64L;
+        this.hashes = Math.max((int) Math.round(size / (double) Math.max(expectedKeys, 1) * ln2), 1);
+    }
+
+    void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            // Skip the write when the bit is set already, which it mostly is for the later probes of a repeat
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(String key) {
+        long hash = K1;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash = Long.rotateLeft(hash ^ (b & 0xFF) * K2, 31) * K1;
+        }
+        hash ^= hash >>> 33;
+        hash *= K2;
+        hash ^= hash >>> 29;
+        return hash;
+    }
+}
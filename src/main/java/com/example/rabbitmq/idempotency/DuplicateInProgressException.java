@@ -0,0 +1,10 @@
+package com.example.rabbitmq.idempotency;
+
+// Another delivery with the same key is still being processed; failing this one sends it round the retry tiers
+// until the first has either completed (this one is then a duplicate) or failed (this one does the work)
+public class DuplicateInProgressException extends RuntimeException {
+
+    public DuplicateInProgressException(String message) {
+        super(message);
+    }
+}
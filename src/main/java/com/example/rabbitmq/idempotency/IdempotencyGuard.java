@@ -0,0 +1,271 @@
+package com.example.rabbitmq.idempotency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a piece of listener work at most once per key, so a redelivered or re-published
+ * message is acked without repeating it. Keys are scoped per listener, e.g.
+ * {@code runOnce("payment", orderId, work)}; any listener can share the guard.
+ * <p>
+ * Completed keys are kept in an exact store for {@code ttl}, bounded to {@code maxEntries}
+ * with the oldest going first. A Bloom filter sits in front of it: most keys are new, and
+ * for those the filter answers without taking the store's lock. The filter cannot forget
+ * keys, so there are two generations, each started fresh every {@code ttl}; a key is
+ * always in one of them for at least as long as the store keeps it.
+ * <p>
+ * Keys being processed are claimed in a concurrent map first, so two deliveries of the
+ * same key never run side by side; the second gets a {@link DuplicateInProgressException}.
+ * A claim is released when the work fails, leaving the key free for the retry.
+ * <p>
+ * With a snapshot file the store is written out every {@code flushInterval} and on
+ * shutdown, and read back at startup, so a restart does not forget recent keys. Keys
+ * completed after the last snapshot are lost in a crash.
+ */
+public class IdempotencyGuard implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyGuard.class);
+    private static final int SNAPSHOT_VERSION = 1;
+    // writeUTF takes at most 65535 bytes, and a char encodes to at most three
+    private static final int MAX_SNAPSHOT_KEY_LENGTH = 65_535 / 3;
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final double falsePositiveRate;
+    private final Path snapshotFile;
+    private final MeterRegistry meterRegistry;
+    // Completed keys and when they expire; insertion order is expiry order, since the ttl is fixed
+    private final LinkedHashMap<String, Long> completed = new LinkedHashMap<>();
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+    private final Map<String, ScopeMeters> meters = new ConcurrentHashMap<>();
+    private final Counter falsePositives;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "idempotency");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile BloomFilter current;
+    private volatile BloomFilter previous;
+
+    public IdempotencyGuard(Duration ttl, int maxEntries, double falsePositiveRate, Path snapshotFile,
+                            Duration flushInterval, MeterRegistry meterRegistry) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.snapshotFile = snapshotFile;
+        this.meterRegistry = meterRegistry;
+        this.current = new BloomFilter(maxEntries, falsePositiveRate);
+        this.previous = new BloomFilter(maxEntries, falsePositiveRate);
+        this.falsePositives = Counter.builder("messaging.idempotency.bloom.false.positives")
+                .description("Keys the Bloom filter reported as seen that the exact store did not hold")
+                .register(meterRegistry);
+        Gauge.builder("messaging.idempotency.keys", this, IdempotencyGuard::size)
+                .description("Completed keys held by the idempotency store")
+                .register(meterRegistry);
+        if (snapshotFile != null) {
+            load();
+            long interval = flushInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleAtFixedRate(this::rotate, ttlMillis, ttlMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Runs the work unless the key was completed before; returns whether it ran
+    public boolean runOnce(String scope, String key, Runnable work) {
+        String scopedKey = scope + ':' + key;
+        ScopeMeters scopeMeters = meters(scope);
+        // Claim first, then look: a delivery that completes in between has published its key before its
+        // claim goes, so it is never missed
+        if (!inProgress.add(scopedKey)) {
+            scopeMeters.inProgress.increment();
+            throw new DuplicateInProgressException(scope + " " + key + " is already being processed");
+        }
+        boolean completedOk = false;
+        try {
+            if (seen(scopedKey)) {
+                scopeMeters.duplicates.increment();
+                logger.info("Skipping duplicate {} {}", scope, key);
+                return false;
+            }
+            scopeMeters.processed.increment();
+            work.run();
+            completedOk = true;
+            return true;
+        } finally {
+            if (completedOk) {
+                complete(scopedKey);
+            }
+            inProgress.remove(scopedKey);
+        }
+    }
+
+    public synchronized int size() {
+        return completed.size();
+    }
+
+    // Bloom first; only a possible hit takes the lock
+    private boolean seen(String scopedKey) {
+        if (!current.mightContain(scopedKey) && !previous.mightContain(scopedKey)) {
+            return false;
+        }
+        synchronized (this) {
+            expire(System.currentTimeMillis());
+            if (completed.containsKey(scopedKey)) {
+                return true;
+            }
+        }
+        falsePositives.increment();
+        return false;
+    }
+
+    private void complete(String scopedKey) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            expire(now);
+            completed.put(scopedKey, now + ttlMillis);
+            if (completed.size() > maxEntries) {
+                Iterator<String> oldest = completed.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        }
+        current.add(scopedKey);
+    }
+
+    private void expire(long now) {
+        Iterator<Long> expiries = completed.values().iterator();
+        while (expiries.hasNext() && expiries.next() <= now) {
+            expiries.remove();
+        }
+    }
+
+    // Keys added to the old current stay visible through previous for another ttl
+    private void rotate() {
+        previous = current;
+        current = new BloomFilter(maxEntries, falsePositiveRate);
+        synchronized (this) {
+            expire(System.currentTimeMillis());
+        }
+    }
+
+    public void flush() {
+        List<Map.Entry<String, Long>> entries;
+        synchronized (this) {
+            expire(System.currentTimeMillis());
+            entries = new ArrayList<>(completed.size());
+            completed.forEach((key, expiresAt) -> {
+                // A longer key is still honoured, it just isn't kept over a restart
+                if (key.length() <= MAX_SNAPSHOT_KEY_LENGTH) {
+                    entries.add(Map.entry(key, expiresAt));
+                }
+            });
+        }
+        try {
+            Path parent = snapshotFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            // Write-then-rename so a crash mid-write never leaves a truncated snapshot
+            Path temp = Files.createTempFile(parent, snapshotFile.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Long> entry : entries) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Keep going; the next flush retries and at worst a restart forgets the newest keys
+            logger.warn("Could not write idempotency snapshot to {}: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IllegalStateException("Unsupported idempotency snapshot version " + version + " in " + snapshotFile);
+            }
+            int count = in.readInt();
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    String key = in.readUTF();
+                    long expiresAt = in.readLong();
+                    if (expiresAt > now) {
+                        completed.put(key, expiresAt);
+                        current.add(key);
+                        loaded++;
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            logger.warn("Idempotency snapshot {} is truncated, kept the first {} keys", snapshotFile, loaded);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read idempotency snapshot from " + snapshotFile, e);
+        }
+        logger.info("Loaded {} idempotency keys from {}", loaded, snapshotFile);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+        if (snapshotFile != null) {
+            flush();
+        }
+    }
+
+    private ScopeMeters meters(String scope) {
+        return meters.computeIfAbsent(scope, ScopeMeters::new);
+    }
+
+    private class ScopeMeters {
+        private final Counter processed;
+        private final Counter duplicates;
+        private final Counter inProgress;
+
+        ScopeMeters(String scope) {
+            this.processed = checks(scope, "processed");
+            this.duplicates = checks(scope, "duplicate");
+            this.inProgress = checks(scope, "in_progress");
+        }
+
+        private Counter checks(String scope, String result) {
+            return Counter.builder("messaging.idempotency.checks")
+                    .description("Keyed listener invocations by whether the work ran")
+                    .tag("scope", scope)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.rabbitmq.listener;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener advice that sizes each queue's prefetch from how fast its listener actually
+ * is. Every delivery's processing time is recorded per queue; each interval the
+ * smoothed time per message gives the prefetch that keeps a consumer's local backlog
+ * within the target latency ({@code prefetch = targetLatency / timePerMessage}),
+ * clamped to the configured bounds. Sub-millisecond listeners end up at the maximum,
+ * multi-second ones at the minimum, so they stop hoarding messages their siblings
+ * could be working on.
+ * <p>
+ * Containers start at the initial prefetch and are handed to the advice with
+ * {@link #manage}. A per-consumer {@code basic.qos} only reaches consumers started after
+ * it, so a container whose value changed gets it as its prefetch count and is restarted;
+ * classic and quorum queues honour it alike. A container consuming several queues gets
+ * the largest of their values. Batch containers keep the prefetch sized for their
+ * batches, and stream deliveries are left alone, since a restarted stream consumer would
+ * start again from its original offset.
+ */
+public class AdaptivePrefetchAdvice implements MethodInterceptor, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptivePrefetchAdvice.class);
+    // Ignore changes smaller than this so the prefetch doesn't flap between neighbouring values
+    private static final double HYSTERESIS = 0.2;
+
+    private final int min;
+    private final int max;
+    private final int initial;
+    private final long targetLatencyNanos;
+    private final double smoothing;
+    private final double intervalSeconds;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, QueueStats> queues = new ConcurrentHashMap<>();
+    // Prefetch each managed container was last restarted with, -1 until the first one
+    private final Map<AbstractMessageListenerContainer, Integer> containers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "adaptive-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AdaptivePrefetchAdvice(int min, int max, int initial, Duration targetLatency, double smoothing,
+                                  Duration interval, MeterRegistry meterRegistry) {
+        this.min = min;
+        this.max = max;
+        this.initial = Math.max(min, Math.min(max, initial));
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.smoothing = smoothing;
+        this.intervalSeconds = interval.toMillis() / 1000.0;
+        this.meterRegistry = meterRegistry;
+        scheduler.scheduleWithFixedDelay(this::tick, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        if (arguments.length < 2 || !(arguments[0] instanceof Channel)) {
+            return invocation.proceed();
+        }
+        Message first;
+        int count;
+        if (arguments[1] instanceof Message message) {
+            first = message;
+            count = 1;
+        } else if (arguments[1] instanceof List<?> batch && !batch.isEmpty() && batch.get(0) instanceof Message message) {
+            first = message;
+            count = batch.size();
+        } else {
+            return invocation.proceed();
+        }
+        if (first.getMessageProperties().getHeader("x-stream-offset") != null) {
+            // Streams keep the container's prefetch: see the class comment
+            return invocation.proceed();
+        }
+
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            record(first.getMessageProperties().getConsumerQueue(), count, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Puts the container's prefetch under the controller. Called for each container the
+     * factory creates; batch containers are skipped.
+     */
+    public void manage(AbstractMessageListenerContainer container) {
+        if (!container.isConsumerBatchEnabled()) {
+            containers.putIfAbsent(container, -1);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+    }
+
+    void record(String queue, int deliveries, long busyNanos) {
+        QueueStats stats = queues.computeIfAbsent(queue, this::newStats);
+        stats.deliveries.add(deliveries);
+        stats.busyNanos.add(busyNanos);
+    }
+
+    int prefetch(String queue) {
+        QueueStats stats = queues.get(queue);
+        return stats == null ? initial : stats.prefetch;
+    }
+
+    private void tick() {
+        try {
+            adjust();
+            containers.keySet().forEach(this::apply);
+        } catch (RuntimeException e) {
+            logger.warn("Adaptive prefetch update failed: {}", e.getMessage());
+        }
+    }
+
+    void adjust() {
+        queues.values().forEach(stats -> {
+            long deliveries = stats.deliveries.sumThenReset();
+            long busyNanos = stats.busyNanos.sumThenReset();
+            stats.ackRate = deliveries / intervalSeconds;
+            if (deliveries == 0) {
+                // Idle: nothing measured, keep the current value
+                return;
+            }
+            double nanosPerMessage = (double) busyNanos / deliveries;
+            stats.nanosPerMessage = stats.nanosPerMessage == 0
+                    ? nanosPerMessage
+                    : smoothing * nanosPerMessage + (1 - smoothing) * stats.nanosPerMessage;
+
+            long target = Math.round(targetLatencyNanos / Math.max(stats.nanosPerMessage, 1));
+            int prefetch = (int) Math.max(min, Math.min(max, target));
+            if (Math.abs(prefetch - stats.prefetch) > Math.max(1, stats.prefetch * HYSTERESIS)
+                    || (prefetch != stats.prefetch && (prefetch == min || prefetch == max))) {
+                logger.info("Prefetch for {} {} -> {} ({} ms/message, {} msg/s)", stats.queue, stats.prefetch, prefetch,
+                        String.format("%.3f", stats.nanosPerMessage / 1e6), String.format("%.1f", stats.ackRate));
+                stats.prefetch = prefetch;
+            }
+        });
+    }
+
+    // Stopping lets in-flight deliveries finish and requeues the prefetched rest, so nothing is lost on a restart
+    private void apply(AbstractMessageListenerContainer container) {
+        if (!container.isRunning()) {
+            return;
+        }
+        OptionalInt prefetch = Arrays.stream(container.getQueueNames())
+                .map(queues::get)
+                .filter(Objects::nonNull)
+                .mapToInt(stats -> stats.prefetch)
+                .max();
+        if (prefetch.isEmpty() || prefetch.getAsInt() == containers.get(container)) {
+            return;
+        }
+        container.setPrefetchCount(prefetch.getAsInt());
+        container.stop();
+        container.start();
+        containers.put(container, prefetch.getAsInt());
+    }
+
+    private QueueStats newStats(String queue) {
+        QueueStats stats = new QueueStats(queue, initial);
+        Gauge.builder("messaging.listener.prefetch", stats, s -> s.prefetch)
+                .description("Prefetch chosen by the adaptive controller")
+                .tag("queue", queue)
+                .register(meterRegistry);
+        Gauge.builder("messaging.listener.ack.rate", stats, s -> s.ackRate)
+                .description("Deliveries processed per second over the last interval")
+                .tag("queue", queue)
+                .baseUnit("messages/s")
+                .register(meterRegistry);
+        return stats;
+    }
+
+    private static class QueueStats {
+        private final String queue;
+        private final LongAdder deliveries = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private volatile int prefetch;
+        private volatile double nanosPerMessage;
+        private volatile double ackRate;
+
+        QueueStats(String queue, int prefetch) {
+            this.queue = queue;
+            this.prefetch = prefetch;
+        }
+    }
+}
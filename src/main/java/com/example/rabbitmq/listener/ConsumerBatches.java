@@ -0,0 +1,91 @@
+package com.example.rabbitmq.listener;
+
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.Message;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Acknowledgement helper for consumer-batch listeners running with MANUAL acks.
+ * A batch goes through in two steps. The batch handler first prepares it - decoding,
+ * classifying and aggregating - without touching shared state or calling out, and returns
+ * the step that applies the result; the whole batch is then acked with a single multiple-ack.
+ * <p>
+ * If preparing fails, nothing has been applied yet, so every message is retried on its own
+ * with the single-message handler and acked or nacked individually, and one bad message
+ * can't take the rest of the batch down with it. Once the apply step has started the batch
+ * is acked whatever happens: part of it may already be applied, and running it again - whole
+ * or message by message - would apply that part twice.
+ */
+public final class ConsumerBatches {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConsumerBatches.class);
+
+    private ConsumerBatches() {
+    }
+
+    public static <T> void process(List<Message<T>> batch, Channel channel,
+                                   Function<List<T>, Runnable> batchHandler, Consumer<T> singleHandler) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<T> payloads = batch.stream().map(Message::getPayload).toList();
+        Runnable apply;
+        try {
+            apply = batchHandler.apply(payloads);
+        } catch (RuntimeException e) {
+            logger.warn("Batch of {} messages failed ({}), falling back to per-message processing",
+                    batch.size(), e.getMessage());
+            processIndividually(batch, channel, singleHandler);
+            return;
+        }
+        try {
+            apply.run();
+        } catch (RuntimeException e) {
+            logger.error("Batch of {} messages failed part-way through being applied and is acked as it stands: {}",
+                    batch.size(), e.getMessage(), e);
+        }
+        try {
+            // Delivery tags are ascending on a channel, so acking the last one with multiple=true covers the batch
+            channel.basicAck(deliveryTag(batch.get(batch.size() - 1)), true);
+        } catch (IOException e) {
+            throw new AmqpIOException(e);
+        }
+    }
+
+    private static <T> void processIndividually(List<Message<T>> batch, Channel channel, Consumer<T> singleHandler) {
+        for (Message<T> message : batch) {
+            long deliveryTag = deliveryTag(message);
+            try {
+                singleHandler.accept(message.getPayload());
+                channel.basicAck(deliveryTag, false);
+            } catch (IOException e) {
+                throw new AmqpIOException(e);
+            } catch (RuntimeException e) {
+                boolean requeue = !(e instanceof AmqpRejectAndDontRequeueException);
+                logger.error("Message {} of batch failed (requeue: {}): {}", deliveryTag, requeue, e.getMessage());
+                try {
+                    channel.basicNack(deliveryTag, false, requeue);
+                } catch (IOException nackFailure) {
+                    throw new AmqpIOException(nackFailure);
+                }
+            }
+        }
+    }
+
+    private static long deliveryTag(Message<?> message) {
+        Long deliveryTag = message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+        if (deliveryTag == null) {
+            throw new IllegalStateException("Batch message has no delivery tag header");
+        }
+        return deliveryTag;
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.rabbitmq.listener;
+
+import com.rabbitmq.client.Channel;
+import com.example.rabbitmq.messaging.PublishFailedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.FatalExceptionStrategy;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Listener advice that retries failed deliveries through a ladder of delay queues instead
+ * of on the consumer thread. A failure republishes the message to the delay tier for its
+ * attempt - a fanout exchange in front of a queue with a fixed {@code x-message-ttl} that
+ * dead-letters to the default exchange - with the origin queue as routing key, so it comes
+ * back to that queue once the delay has passed. The delivery itself then completes normally
+ * and is acked, freeing the consumer for the next message straight away.
+ * <p>
+ * The attempt count travels in the {@code x-retry-attempt} header. When every tier has been
+ * tried, or the failure is one a retry cannot fix, the message goes to the dead-letter
+ * exchange with the failure in its headers. Only the configured queues are retried; the
+ * rest keep the container's requeue behaviour.
+ * <p>
+ * Republishes are mandatory and go through a template on a confirming connection. The
+ * consumer waits for the broker's confirm before the delivery is acked; a nack, a return
+ * or no confirm within the timeout leaves the delivery to the container, which requeues it.
+ */
+public class DelayedRetryAdvice implements MethodInterceptor {
+
+    public static final String ATTEMPT_HEADER = "x-retry-attempt";
+    public static final String ORIGINAL_QUEUE_HEADER = "x-original-queue";
+    public static final String EXCEPTION_HEADER = "x-exception-message";
+
+    private static final Logger logger = LoggerFactory.getLogger(DelayedRetryAdvice.class);
+
+    private final RabbitTemplate template;
+    private final Duration confirmTimeout;
+    private final List<Duration> tiers;
+    private final Set<String> queues;
+    private final String deadLetterExchange;
+    private final String deadLetterRoutingKey;
+    private final FatalExceptionStrategy fatalExceptionStrategy;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, QueueMeters> meters = new ConcurrentHashMap<>();
+
+    public DelayedRetryAdvice(RabbitTemplate template, Duration confirmTimeout, List<Duration> tiers, Set<String> queues,
+                              String deadLetterExchange, String deadLetterRoutingKey,
+                              FatalExceptionStrategy fatalExceptionStrategy, MeterRegistry meterRegistry) {
+        this.template = template;
+        this.confirmTimeout = confirmTimeout;
+        this.tiers = List.copyOf(tiers);
+        this.queues = queues;
+        this.deadLetterExchange = deadLetterExchange;
+        this.deadLetterRoutingKey = deadLetterRoutingKey;
+        this.fatalExceptionStrategy = fatalExceptionStrategy;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Exchange and queue name of a tier, e.g. retry.delay.10s
+    public static String delayQueue(Duration delay) {
+        long millis = delay.toMillis();
+        return "retry.delay." + (millis % 1000 == 0 ? millis / 1000 + "s" : millis + "ms");
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        if (arguments.length < 2 || !(arguments[0] instanceof Channel) || !(arguments[1] instanceof Message message)
+                || !queues.contains(message.getMessageProperties().getConsumerQueue())) {
+            // Batch deliveries and queues without delay tiers fail the usual way
+            return invocation.proceed();
+        }
+
+        try {
+            return invocation.proceed();
+        } catch (Throwable e) {
+            String queue = message.getMessageProperties().getConsumerQueue();
+            int attempt = attempt(message);
+            try {
+                if (attempt < tiers.size() && !isFatal(e)) {
+                    scheduleRetry(message, queue, attempt);
+                } else {
+                    deadLetter(message, queue, attempt, e);
+                }
+            } catch (PublishFailedException publishFailure) {
+                // The broker hasn't taken the copy, so let the container requeue the delivery as before
+                logger.error("Could not move failed message from {} out of the queue: {}", queue, publishFailure.getMessage());
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    private void scheduleRetry(Message message, String queue, int attempt) {
+        Duration delay = tiers.get(attempt);
+        // Expiry dead-letters to the default exchange under the routing key used here: the origin queue
+        republish(delayQueue(delay), queue, copy(message, Map.of(ATTEMPT_HEADER, attempt + 1)));
+        meters(queue).scheduled(attempt).increment();
+        logger.debug("Message {} from {} failed, retry {} of {} in {}ms",
+                message.getMessageProperties().getMessageId(), queue, attempt + 1, tiers.size(), delay.toMillis());
+    }
+
+    private void deadLetter(Message message, String queue, int attempt, Throwable failure) {
+        Throwable cause = rootCause(failure);
+        republish(deadLetterExchange, deadLetterRoutingKey, copy(message, Map.of(
+                ORIGINAL_QUEUE_HEADER, queue,
+                EXCEPTION_HEADER, cause.getClass().getName() + ": " + cause.getMessage())));
+        boolean exhausted = attempt >= tiers.size();
+        (exhausted ? meters(queue).exhausted : meters(queue).fatal).increment();
+        logger.warn("Message {} from {} dead-lettered after {} retries ({}): {}",
+                message.getMessageProperties().getMessageId(), queue, attempt,
+                exhausted ? "retries exhausted" : "not retryable", cause.getMessage());
+    }
+
+    private void republish(String exchange, String routingKey, Message copy) {
+        CorrelationData correlation = new CorrelationData();
+        try {
+            template.send(exchange, routingKey, copy, correlation);
+            CorrelationData.Confirm confirm = correlation.getFuture().get(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (!confirm.isAck()) {
+                throw new PublishFailedException("nacked: " + confirm.getReason());
+            }
+            if (correlation.getReturned() != null) {
+                throw new PublishFailedException("returned as unroutable from " + exchange + ": "
+                        + correlation.getReturned().getReplyText());
+            }
+        } catch (AmqpException | ExecutionException e) {
+            throw new PublishFailedException("Failed to republish to " + exchange, e);
+        } catch (TimeoutException e) {
+            throw new PublishFailedException("no confirm within " + confirmTimeout.toMillis() + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PublishFailedException("interrupted waiting for the confirm");
+        }
+    }
+
+    // Received messages carry no delivery mode of their own; the copies must survive a broker restart
+    private static Message copy(Message message, Map<String, Object> headers) {
+        Message copy = MessageBuilder.fromClonedMessage(message)
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .setExpiration(null)
+                .build();
+        headers.forEach(copy.getMessageProperties()::setHeader);
+        return copy;
+    }
+
+    private static int attempt(Message message) {
+        return message.getMessageProperties().getHeader(ATTEMPT_HEADER) instanceof Number number ? number.intValue() : 0;
+    }
+
+    // Bad payloads and explicit rejections fail the same way on every attempt
+    private boolean isFatal(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MessageConversionException || cause instanceof AmqpRejectAndDontRequeueException
+                    || fatalExceptionStrategy.isFatal(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Throwable rootCause(Throwable failure) {
+        Throwable cause = failure;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private QueueMeters meters(String queue) {
+        return meters.computeIfAbsent(queue, QueueMeters::new);
+    }
+
+    private class QueueMeters {
+        private final Counter[] scheduled;
+        private final Counter exhausted;
+        private final Counter fatal;
+
+        QueueMeters(String queue) {
+            this.scheduled = new Counter[tiers.size()];
+            for (int tier = 0; tier < tiers.size(); tier++) {
+                scheduled[tier] = Counter.builder("messaging.retry.scheduled")
+                        .description("Failed deliveries sent to a delay tier for another attempt")
+                        .tag("queue", queue)
+                        .tag("tier", delayQueue(tiers.get(tier)))
+                        .register(meterRegistry);
+            }
+            this.exhausted = deadLettered(queue, "exhausted");
+            this.fatal = deadLettered(queue, "fatal");
+        }
+
+        Counter scheduled(int attempt) {
+            return scheduled[attempt];
+        }
+
+        private Counter deadLettered(String queue, String reason) {
+            return Counter.builder("messaging.retry.dead.lettered")
+                    .description("Failed deliveries sent to the dead-letter exchange instead of being retried")
+                    .tag("queue", queue)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.rabbitmq.listener;
+
+import org.springframework.amqp.core.Message;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Failure counts per message fingerprint in a fixed block of slots, 4-way set associative. Each slot packs the
+// fingerprint's upper 56 bits with an 8-bit count and is updated by CAS, so lookups take no lock and allocate
+// nothing. A full set gives up its lowest count, which keeps repeat offenders over one-off failures.
+final class FingerprintCache {
+
+    static final int MAX_COUNT = 0xFF;
+
+    private static final int WAYS = 4;
+    private static final long COUNT_MASK = 0xFFL;
+    private static final long TAG_MASK = ~COUNT_MASK;
+    private static final long K1 = 0x9E3779B97F4A7C15L;
+    private static final long K2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final AtomicLongArray slots;
+    private final int setMask;
+    private final AtomicInteger size = new AtomicInteger();
+
+    FingerprintCache(int capacity) {
+        int sets = Integer.highestOneBit(Math.max(capacity / WAYS, 1));
+        this.slots = new AtomicLongArray(sets * WAYS);
+        this.setMask = sets - 1;
+    }
+
+    // Body hash mixed with the message id when the publisher set one
+    static long fingerprint(Message message) {
+        long hash = hash(K1, message.getBody());
+        String messageId = message.getMessageProperties().getMessageId();
+        if (messageId != null) {
+            hash = hash(hash, messageId.getBytes(StandardCharsets.UTF_8));
+        }
+        return finish(hash);
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    int failures(long fingerprint) {
+        long tag = tag(fingerprint);
+        int base = base(fingerprint);
+        for (int way = 0; way < WAYS; way++) {
+            long slot = slots.get(base + way);
+            if ((slot & TAG_MASK) == tag) {
+                return (int) (slot & COUNT_MASK);
+            }
+        }
+        return 0;
+    }
+
+    // Adds a failure and returns the new count
+    int recordFailure(long fingerprint) {
+        long tag = tag(fingerprint);
+        int base = base(fingerprint);
+        while (true) {
+            int empty = -1;
+            int victim = -1;
+            long victimSlot = 0;
+            boolean raced = false;
+            for (int way = 0; way < WAYS && !raced; way++) {
+                int index = base + way;
+                long slot = slots.get(index);
+                if ((slot & TAG_MASK) == tag) {
+                    int count = (int) Math.min(slot & COUNT_MASK, MAX_COUNT - 1) + 1;
+                    if (slots.compareAndSet(index, slot, tag | count)) {
+                        return count;
+                    }
+                    raced = true;
+                } else if (slot == 0) {
+                    if (empty < 0) {
+                        empty = index;
+                    }
+                } else if (victim < 0 || (slot & COUNT_MASK) < (victimSlot & COUNT_MASK)) {
+                    victim = index;
+                    victimSlot = slot;
+                }
+            }
+            if (raced) {
+                continue;
+            }
+            if (empty >= 0) {
+                if (slots.compareAndSet(empty, 0, tag | 1)) {
+                    size.incrementAndGet();
+                    return 1;
+                }
+            } else if (slots.compareAndSet(victim, victimSlot, tag | 1)) {
+                return 1;
+            }
+        }
+    }
+
+    void clear(long fingerprint) {
+        long tag = tag(fingerprint);
+        int base = base(fingerprint);
+        for (int way = 0; way < WAYS; way++) {
+            int index = base + way;
+            for (long slot = slots.get(index); (slot & TAG_MASK) == tag; slot = slots.get(index)) {
+                if (slots.compareAndSet(index, slot, 0)) {
+                    size.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Zero marks an empty slot, so a fingerprint whose tag bits are all zero borrows one
+    private static long tag(long fingerprint) {
+        long tag = fingerprint & TAG_MASK;
+        return tag == 0 ? COUNT_MASK + 1 : tag;
+    }
+
+    // The set comes from the high bits; the tag is compared in full, so the two overlapping doesn't matter
+    private int base(long fingerprint) {
+        return ((int) (fingerprint >>> 32) & setMask) * WAYS;
+    }
+
+    private static long hash(long seed, byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        long hash = seed ^ bytes.length;
+        int i = 0;
+        for (; i + Long.BYTES <= bytes.length; i += Long.BYTES) {
+            hash = mix(hash, buffer.getLong(i));
+        }
+        long tail = 0;
+        for (int shift = 0; i < bytes.length; i++, shift += 8) {
+            tail |= (bytes[i] & 0xFFL) << shift;
+        }
+        return mix(hash, tail);
+    }
+
+    private static long mix(long hash, long value) {
+        return Long.rotateLeft(hash ^ value * K2, 31) * K1;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= K2;
+        hash ^= hash >>> 29;
+        return hash;
+    }
+}
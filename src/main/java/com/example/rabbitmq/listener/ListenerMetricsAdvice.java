@@ -0,0 +1,130 @@
+package com.example.rabbitmq.listener;
+
+import com.example.rabbitmq.messaging.MessagingPatterns;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener advice that instruments every {@code @RabbitListener} per queue, tagged with
+ * the queue and its communication pattern:
+ * <ul>
+ *   <li>{@code messaging.listener.process} - listener time, by outcome</li>
+ *   <li>{@code messaging.listener.queue.latency} - publish timestamp to start of processing</li>
+ *   <li>{@code messaging.listener.redelivered} - deliveries flagged as redelivered</li>
+ *   <li>{@code messaging.message.size} - body size as received</li>
+ * </ul>
+ * Batch deliveries record one processing sample per batch and the other meters per message.
+ */
+public class ListenerMetricsAdvice implements MethodInterceptor {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, QueueMeters> queues = new ConcurrentHashMap<>();
+
+    public ListenerMetricsAdvice(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        if (arguments.length < 2) {
+            return invocation.proceed();
+        }
+        QueueMeters meters = null;
+        if (arguments[1] instanceof Message message) {
+            meters = meters(message);
+            meters.received(message);
+        } else if (arguments[1] instanceof List<?> batch && !batch.isEmpty() && batch.get(0) instanceof Message first) {
+            meters = meters(first);
+            for (Object message : batch) {
+                meters.received((Message) message);
+            }
+        }
+        if (meters == null) {
+            return invocation.proceed();
+        }
+
+        long start = System.nanoTime();
+        try {
+            Object result = invocation.proceed();
+            meters.success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            meters.failure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private QueueMeters meters(Message message) {
+        String queue = message.getMessageProperties().getConsumerQueue();
+        return queues.computeIfAbsent(queue == null ? "unknown" : queue, QueueMeters::new);
+    }
+
+    private class QueueMeters {
+        private final Timer success;
+        private final Timer failure;
+        private final Timer queueLatency;
+        private final Counter redelivered;
+        private final DistributionSummary size;
+
+        QueueMeters(String queue) {
+            String pattern = MessagingPatterns.of(queue);
+            this.success = processTimer(queue, pattern, "success");
+            this.failure = processTimer(queue, pattern, "failure");
+            this.queueLatency = Timer.builder("messaging.listener.queue.latency")
+                    .description("Time from publish to the start of processing")
+                    .tag("queue", queue)
+                    .tag("pattern", pattern)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.redelivered = Counter.builder("messaging.listener.redelivered")
+                    .description("Deliveries the broker flagged as redelivered")
+                    .tag("queue", queue)
+                    .tag("pattern", pattern)
+                    .register(meterRegistry);
+            this.size = DistributionSummary.builder("messaging.message.size")
+                    .description("Message body size on the wire")
+                    .baseUnit("bytes")
+                    .tag("direction", "consume")
+                    .tag("destination", queue)
+                    .tag("pattern", pattern)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        void received(Message message) {
+            MessageProperties properties = message.getMessageProperties();
+            size.record(message.getBody().length);
+            if (Boolean.TRUE.equals(properties.getRedelivered())) {
+                redelivered.increment();
+            }
+            Date timestamp = properties.getTimestamp();
+            if (timestamp != null) {
+                // Millisecond timestamps from another host's clock: clamp skew instead of recording negatives
+                queueLatency.record(Math.max(0, System.currentTimeMillis() - timestamp.getTime()), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private Timer processTimer(String queue, String pattern, String outcome) {
+            return Timer.builder("messaging.listener.process")
+                    .description("Time spent in the listener")
+                    .tag("queue", queue)
+                    .tag("pattern", pattern)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.rabbitmq.listener;
+
+import com.example.rabbitmq.messaging.PublishFailedException;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Listener advice that takes messages which keep failing out of circulation. Each failed
+ * delivery is counted against the message's fingerprint - a hash of its body and message
+ * id - in a bounded {@link FingerprintCache}, so the count survives requeues and
+ * redeliveries. The delivery that reaches the threshold is published to the quarantine
+ * queue and acked, and its count starts again, so a copy replayed from quarantine reaches
+ * the listener. A later success clears the count.
+ * <p>
+ * Failures caused by one of the transient exception types - an outage rather than the
+ * message - are not counted. The threshold can be set per queue, and excluded queues
+ * (the dead-letter and quarantine queues, which have their own handling) pass straight
+ * through. While nothing is being tracked a delivery is not even hashed, so the healthy
+ * path only pays for a size check. Sits inside {@link DelayedRetryAdvice}, which sees a
+ * quarantined delivery as a success.
+ * <p>
+ * Like the retry copies, the quarantine copy is mandatory and goes through a template on
+ * a confirming connection. The delivery is only acked once the broker confirms the copy;
+ * a nack, a return or no confirm within the timeout rethrows the listener's failure, so
+ * the message is requeued rather than lost.
+ */
+public class PoisonMessageAdvice implements MethodInterceptor {
+
+    public static final String FAILURES_HEADER = "x-quarantine-failures";
+
+    private static final Logger logger = LoggerFactory.getLogger(PoisonMessageAdvice.class);
+
+    private final RabbitTemplate template;
+    private final Duration confirmTimeout;
+    private final FingerprintCache cache;
+    private final int threshold;
+    private final Map<String, Integer> thresholds;
+    private final Set<String> excludedQueues;
+    private final List<Class<? extends Throwable>> transientFailures;
+    private final String quarantineQueue;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, QueueMeters> meters = new ConcurrentHashMap<>();
+
+    public PoisonMessageAdvice(RabbitTemplate template, Duration confirmTimeout, int capacity, int threshold,
+                               Map<String, Integer> thresholds, Set<String> excludedQueues,
+                               List<Class<? extends Throwable>> transientFailures, String quarantineQueue,
+                               MeterRegistry meterRegistry) {
+        checkThreshold(threshold);
+        thresholds.values().forEach(PoisonMessageAdvice::checkThreshold);
+        this.template = template;
+        this.confirmTimeout = confirmTimeout;
+        this.cache = new FingerprintCache(capacity);
+        this.threshold = threshold;
+        this.thresholds = Map.copyOf(thresholds);
+        this.excludedQueues = Set.copyOf(excludedQueues);
+        this.transientFailures = List.copyOf(transientFailures);
+        this.quarantineQueue = quarantineQueue;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("messaging.quarantine.tracked", cache, FingerprintCache::size)
+                .description("Message fingerprints with failures being counted")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        if (arguments.length < 2 || !(arguments[0] instanceof Channel) || !(arguments[1] instanceof Message message)) {
+            // Batch deliveries have no single message to quarantine
+            return invocation.proceed();
+        }
+
+        String queue = message.getMessageProperties().getConsumerQueue();
+        if (excludedQueues.contains(queue)) {
+            return invocation.proceed();
+        }
+        int threshold = thresholds.getOrDefault(queue, this.threshold);
+        QueueMeters queueMeters = meters(queue);
+        long fingerprint = 0;
+        int failures = 0;
+        if (cache.size() > 0) {
+            fingerprint = FingerprintCache.fingerprint(message);
+            failures = cache.failures(fingerprint);
+        }
+        (failures == 0 ? queueMeters.misses : queueMeters.hits).increment();
+
+        try {
+            Object result = invocation.proceed();
+            if (failures > 0) {
+                cache.clear(fingerprint);
+            }
+            return result;
+        } catch (Throwable e) {
+            if (isTransient(e)) {
+                // An outage fails every message alike; counting it would quarantine healthy ones
+                throw e;
+            }
+            if (failures == 0) {
+                fingerprint = FingerprintCache.fingerprint(message);
+            }
+            failures = cache.recordFailure(fingerprint);
+            if (failures < threshold) {
+                throw e;
+            }
+            try {
+                quarantine(message, queue, failures, e);
+            } catch (PublishFailedException publishFailure) {
+                // The broker hasn't taken the copy, so the delivery fails as it would have and is requeued
+                logger.error("Could not quarantine message from {}: {}", queue, publishFailure.getMessage());
+                throw e;
+            }
+            cache.clear(fingerprint);
+            return null;
+        }
+    }
+
+    private void quarantine(Message message, String queue, int failures, Throwable failure) {
+        // Received messages carry no delivery mode of their own; the copy must survive a broker restart
+        Message copy = MessageBuilder.fromClonedMessage(message)
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .setExpiration(null)
+                .setHeader(DelayedRetryAdvice.ORIGINAL_QUEUE_HEADER, queue)
+                .setHeader(FAILURES_HEADER, failures)
+                .setHeader(DelayedRetryAdvice.EXCEPTION_HEADER, failure.getClass().getName() + ": " + failure.getMessage())
+                .build();
+        CorrelationData correlation = new CorrelationData();
+        try {
+            template.send("", quarantineQueue, copy, correlation);
+            CorrelationData.Confirm confirm = correlation.getFuture().get(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (!confirm.isAck()) {
+                throw new PublishFailedException("nacked: " + confirm.getReason());
+            }
+            if (correlation.getReturned() != null) {
+                throw new PublishFailedException("returned as unroutable to " + quarantineQueue + ": "
+                        + correlation.getReturned().getReplyText());
+            }
+        } catch (AmqpException | ExecutionException e) {
+            throw new PublishFailedException("Failed to publish to " + quarantineQueue, e);
+        } catch (TimeoutException e) {
+            throw new PublishFailedException("no confirm within " + confirmTimeout.toMillis() + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PublishFailedException("interrupted waiting for the confirm");
+        }
+        meters(queue).quarantined.increment();
+        logger.warn("Message {} from {} quarantined after {} failures",
+                message.getMessageProperties().getMessageId(), queue, failures);
+    }
+
+    // The container wraps the listener's exception, so the whole cause chain is checked
+    private boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            for (Class<? extends Throwable> type : transientFailures) {
+                if (type.isInstance(cause)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void checkThreshold(int threshold) {
+        if (threshold < 1 || threshold > FingerprintCache.MAX_COUNT) {
+            throw new IllegalArgumentException("Quarantine threshold must be between 1 and " + FingerprintCache.MAX_COUNT);
+        }
+    }
+
+    private QueueMeters meters(String queue) {
+        return meters.computeIfAbsent(queue, QueueMeters::new);
+    }
+
+    private class QueueMeters {
+        private final Counter hits;
+        private final Counter misses;
+        private final Counter quarantined;
+
+        QueueMeters(String queue) {
+            this.hits = lookups(queue, "hit");
+            this.misses = lookups(queue, "miss");
+            this.quarantined = Counter.builder("messaging.quarantine.quarantined")
+                    .description("Messages moved to the quarantine queue after repeated failures")
+                    .tag("queue", queue)
+                    .register(meterRegistry);
+        }
+
+        private Counter lookups(String queue, String result) {
+            return Counter.builder("messaging.quarantine.lookups")
+                    .description("Deliveries checked against the failure fingerprints")
+                    .tag("queue", queue)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+    }
+}
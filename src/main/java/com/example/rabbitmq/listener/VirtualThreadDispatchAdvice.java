@@ -0,0 +1,166 @@
+package com.example.rabbitmq.listener;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.ImmediateAcknowledgeAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.util.ErrorHandler;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Listener advice that hands each delivery to its own virtual thread and acks it when
+ * the listener finishes. The number of deliveries in flight per queue is capped by a
+ * semaphore; once a queue is at its limit the consumer thread waits for a permit, so
+ * the prefetch window - not a thread pool - is what bounds the backlog.
+ * <p>
+ * Must be the first advice in the chain (and the container must use MANUAL acks) so
+ * the remaining advices and the listener itself run on the virtual thread. They continue
+ * on a clone of the invocation, and see a view of the consumer channel that serializes
+ * every call, so their publishes and this advice's acks never interleave on the wire.
+ * A failure goes through the container's {@link ErrorHandler} before the delivery is
+ * nacked, so fatal exceptions are dead-lettered rather than requeued.
+ */
+public class VirtualThreadDispatchAdvice implements MethodInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadDispatchAdvice.class);
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("vt-listener-", 0).factory());
+    private final Map<String, Semaphore> limits = new ConcurrentHashMap<>();
+    private final Map<String, Integer> configuredLimits;
+    private final int defaultLimit;
+    private final ErrorHandler errorHandler;
+    private final MeterRegistry meterRegistry;
+
+    public VirtualThreadDispatchAdvice(Map<String, Integer> configuredLimits, int defaultLimit, ErrorHandler errorHandler,
+                                       MeterRegistry meterRegistry) {
+        this.configuredLimits = configuredLimits;
+        this.defaultLimit = defaultLimit;
+        this.errorHandler = errorHandler;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        if (arguments.length < 2 || !(arguments[0] instanceof Channel channel) || !(arguments[1] instanceof Message message)
+                || !(invocation instanceof ProxyMethodInvocation proxyInvocation)) {
+            // Batch deliveries and anything unexpected run inline
+            return invocation.proceed();
+        }
+
+        String queue = message.getMessageProperties().getConsumerQueue();
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        Semaphore permits = limits.computeIfAbsent(queue, this::newLimit);
+        permits.acquire();
+
+        Channel serialized = serialized(channel);
+        Object[] dispatchedArguments = arguments.clone();
+        dispatchedArguments[0] = serialized;
+        // The original invocation is finished once this method returns; a clone carries on from this advice
+        MethodInvocation dispatched = proxyInvocation.invocableClone(dispatchedArguments);
+        try {
+            executor.execute(() -> {
+                try {
+                    dispatched.proceed();
+                    serialized.basicAck(deliveryTag, false);
+                } catch (Throwable e) {
+                    settle(serialized, deliveryTag, queue, message, e);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return null;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // In-flight limit of a queue; also the prefetch its container is given
+    public int limit(String queue) {
+        return configuredLimits.getOrDefault(queue, defaultLimit);
+    }
+
+    private Semaphore newLimit(String queue) {
+        int limit = limit(queue);
+        Semaphore semaphore = new Semaphore(limit);
+        Gauge.builder("messaging.listener.in.flight", semaphore, s -> limit - s.availablePermits())
+                .description("Deliveries being processed on virtual threads")
+                .tag("queue", queue)
+                .register(meterRegistry);
+        logger.info("Virtual-thread dispatch for queue {} limited to {} in-flight deliveries", queue, limit);
+        return semaphore;
+    }
+
+    // Same contract as the AUTO-ack containers: the error handler decides, and the delivery is requeued unless
+    // it (or the listener) asked for dead-lettering
+    private void settle(Channel channel, long deliveryTag, String queue, Message message, Throwable failure) {
+        Throwable handled = failure;
+        try {
+            errorHandler.handleError(failure instanceof ListenerExecutionFailedException ? failure
+                    : new ListenerExecutionFailedException("Listener threw exception", failure, message));
+        } catch (ImmediateAcknowledgeAmqpException e) {
+            try {
+                channel.basicAck(deliveryTag, false);
+            } catch (IOException ackFailure) {
+                logger.warn("Could not ack delivery {} on {}: {}", deliveryTag, queue, ackFailure.getMessage());
+            }
+            return;
+        } catch (RuntimeException e) {
+            handled = e;
+        }
+        boolean requeue = !causedBy(handled, AmqpRejectAndDontRequeueException.class);
+        logger.error("Listener on {} failed (requeue: {}): {}", queue, requeue, failure.getMessage());
+        try {
+            channel.basicNack(deliveryTag, false, requeue);
+        } catch (IOException e) {
+            // The channel is gone; the broker redelivers the message to another consumer
+            logger.warn("Could not nack delivery {} on {}: {}", deliveryTag, queue, e.getMessage());
+        }
+    }
+
+    // Deliveries of one consumer complete on many virtual threads at once; one call at a time keeps the frames of a
+    // publish from interleaving with another thread's publish or ack
+    private static Channel serialized(Channel channel) {
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] {Channel.class},
+                (proxy, method, args) -> {
+                    synchronized (channel) {
+                        try {
+                            return method.invoke(channel, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+    private static boolean causedBy(Throwable failure, Class<? extends Throwable> type) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.rabbitmq.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.Set;
+
+public class BatchingPublisher implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingPublisher.class);
+
+    private final BatchingRabbitTemplate template;
+    private final ThreadPoolTaskScheduler scheduler;
+    private final Set<String> exchanges;
+
+    public BatchingPublisher(BatchingRabbitTemplate template, ThreadPoolTaskScheduler scheduler, Set<String> exchanges) {
+        this.template = template;
+        this.scheduler = scheduler;
+        this.exchanges = exchanges;
+    }
+
+    public boolean handles(String exchange) {
+        return exchanges.contains(exchange);
+    }
+
+    public void publish(String exchange, String routingKey, Object payload) {
+        template.convertAndSend(exchange, routingKey, payload);
+    }
+
+    public void flush() {
+        template.flush();
+    }
+
+    @Override
+    public void destroy() {
+        // Don't lose messages still lingering in open batches on shutdown
+        logger.info("Flushing pending publisher batches before shutdown");
+        template.flush();
+        scheduler.shutdown();
+    }
+}
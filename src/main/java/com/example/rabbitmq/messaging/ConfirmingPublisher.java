@@ -0,0 +1,245 @@
+package com.example.rabbitmq.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publisher that tracks broker confirms per message. At most {@code maxInFlight}
+ * messages are unconfirmed at any time; further messages wait in a bounded queue and
+ * are sent as confirms free up the window. When that queue is full the publish fails
+ * fast instead of blocking the caller.
+ * <p>
+ * The returned future completes when the broker acks the message, and exceptionally
+ * when it is returned as unroutable or still nacked after {@code maxRetries} resends.
+ * <p>
+ * Takes over the template's returns callback, so give it a template of its own rather
+ * than the application's shared one.
+ * <p>
+ * On shutdown, waiting messages are failed and sent ones get one confirm timeout to
+ * settle, without resends; whatever is still unconfirmed then is failed too, so no
+ * caller is left with a future that never completes.
+ */
+public class ConfirmingPublisher implements RabbitTemplate.ReturnsCallback, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfirmingPublisher.class);
+
+    private final RabbitTemplate template;
+    private final ThreadPoolTaskExecutor executor;
+    private final Semaphore window;
+    private final BlockingQueue<Outstanding> waiting;
+    private final Set<Outstanding> inFlight = ConcurrentHashMap.newKeySet();
+    private final int maxRetries;
+    private final Duration timeout;
+
+    private final Timer ackLatency;
+    private final Timer nackLatency;
+    private final Counter returned;
+    private final Counter retried;
+    private final Counter rejected;
+
+    private volatile boolean closed;
+
+    public ConfirmingPublisher(RabbitTemplate template, ThreadPoolTaskExecutor executor, int maxInFlight,
+                               int maxWaiting, int maxRetries, Duration timeout, MeterRegistry meterRegistry) {
+        this.template = template;
+        this.executor = executor;
+        this.window = new Semaphore(maxInFlight);
+        this.waiting = new ArrayBlockingQueue<>(maxWaiting);
+        this.maxRetries = maxRetries;
+        this.timeout = timeout;
+
+        // The template allows a single returns callback, so it must be one this publisher owns
+        template.setReturnsCallback(this);
+
+        this.ackLatency = confirmTimer("ack", meterRegistry);
+        this.nackLatency = confirmTimer("nack", meterRegistry);
+        this.returned = Counter.builder("messaging.publish.returned")
+                .description("Messages returned by the broker as unroutable")
+                .register(meterRegistry);
+        this.retried = Counter.builder("messaging.publish.retried")
+                .description("Messages resent after a nack or confirm timeout")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("messaging.publish.rejected")
+                .description("Messages refused because the confirm window and wait queue were full")
+                .register(meterRegistry);
+        Gauge.builder("messaging.publish.confirm.in.flight", window, w -> maxInFlight - w.availablePermits())
+                .description("Messages sent and awaiting a broker confirm")
+                .register(meterRegistry);
+        Gauge.builder("messaging.publish.confirm.waiting", waiting, BlockingQueue::size)
+                .description("Messages queued for a free slot in the confirm window")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<Void> publish(String exchange, String routingKey, Object payload) {
+        // Convert once up front so a resend after a nack carries exactly the same bytes
+        Message message = template.getMessageConverter().toMessage(payload, new MessageProperties());
+        Outstanding outstanding = new Outstanding(exchange, routingKey, message);
+        if (closed) {
+            outstanding.result.completeExceptionally(new PublishFailedException("Publisher is shut down"));
+            return outstanding.result;
+        }
+        if (!waiting.offer(outstanding)) {
+            rejected.increment();
+            outstanding.result.completeExceptionally(
+                    new PublishFailedException("Confirm window full, try again later"));
+            return outstanding.result;
+        }
+        drain();
+        return outstanding.result;
+    }
+
+    @Override
+    public void returnedMessage(ReturnedMessage returnedMessage) {
+        returned.increment();
+        logger.warn("Message returned by broker - exchange: {}, routing key: {}, reply: {} {}",
+                returnedMessage.getExchange(), returnedMessage.getRoutingKey(),
+                returnedMessage.getReplyCode(), returnedMessage.getReplyText());
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        closed = true;
+        failWaiting();
+
+        // Confirm callbacks run on the executor, so it has to outlive the messages still in flight
+        CompletableFuture<?>[] pending = inFlight.stream().map(o -> o.result).toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(pending).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // Failed ones were already reported to their callers; the rest are failed below
+        }
+        for (Outstanding outstanding : inFlight) {
+            outstanding.result.completeExceptionally(
+                    new PublishFailedException("Publisher shut down before the broker confirmed the message"));
+        }
+        executor.shutdown();
+    }
+
+    // Whoever enqueues or frees a slot drains, so a waiting message can never be stranded
+    private void drain() {
+        if (closed) {
+            // A publish that raced with destroy() may have slipped past its sweep
+            failWaiting();
+            return;
+        }
+        while (!waiting.isEmpty() && window.tryAcquire()) {
+            Outstanding next = waiting.poll();
+            if (next == null) {
+                window.release();
+                return;
+            }
+            inFlight.add(next);
+            send(next);
+        }
+    }
+
+    private void failWaiting() {
+        Outstanding next;
+        while ((next = waiting.poll()) != null) {
+            next.result.completeExceptionally(new PublishFailedException("Publisher shut down before the message was sent"));
+        }
+    }
+
+    private void send(Outstanding outstanding) {
+        outstanding.attempts++;
+        CorrelationData correlation = new CorrelationData(outstanding.id);
+        long start = System.nanoTime();
+        try {
+            template.send(outstanding.exchange, outstanding.routingKey, outstanding.message, correlation);
+        } catch (AmqpException e) {
+            complete(outstanding, new PublishFailedException("Failed to publish message", e));
+            return;
+        }
+        // Confirms arrive on the connection thread; resends and waiting publishes must not run there
+        correlation.getFuture()
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenCompleteAsync((confirm, ex) -> onConfirm(outstanding, correlation, confirm, ex, start), executor);
+    }
+
+    private void onConfirm(Outstanding outstanding, CorrelationData correlation, CorrelationData.Confirm confirm,
+                           Throwable ex, long start) {
+        long latency = System.nanoTime() - start;
+        if (ex == null && confirm.isAck()) {
+            ackLatency.record(latency, TimeUnit.NANOSECONDS);
+            if (correlation.getReturned() != null) {
+                // A returned message is still acked; retrying won't make it routable
+                complete(outstanding, new PublishFailedException("Message returned as unroutable: "
+                        + correlation.getReturned().getReplyText()));
+            } else {
+                complete(outstanding, null);
+            }
+            return;
+        }
+
+        nackLatency.record(latency, TimeUnit.NANOSECONDS);
+        String reason = ex != null ? "no confirm within " + timeout.toMillis() + "ms" : confirm.getReason();
+        if (outstanding.attempts <= maxRetries && !closed) {
+            retried.increment();
+            logger.warn("Message {} not confirmed ({}), resending - attempt {}",
+                    outstanding.id, reason, outstanding.attempts + 1);
+            // Keeps its slot in the window while being resent
+            send(outstanding);
+        } else {
+            complete(outstanding, new PublishFailedException("Message not confirmed by broker: " + reason));
+        }
+    }
+
+    private void complete(Outstanding outstanding, PublishFailedException failure) {
+        inFlight.remove(outstanding);
+        window.release();
+        if (failure == null) {
+            outstanding.result.complete(null);
+        } else {
+            logger.error("Publish of message {} failed: {}", outstanding.id, failure.getMessage());
+            outstanding.result.completeExceptionally(failure);
+        }
+        drain();
+    }
+
+    private static Timer confirmTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("messaging.publish.confirm.latency")
+                .description("Time from send to broker confirm")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static class Outstanding {
+        private final String id = UUID.randomUUID().toString();
+        private final String exchange;
+        private final String routingKey;
+        private final Message message;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private int attempts;
+
+        Outstanding(String exchange, String routingKey, Message message) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.rabbitmq.messaging;
+
+import com.example.rabbitmq.codec.RoutingHeaders;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.batch.BatchingStrategy;
+import org.springframework.amqp.rabbit.batch.MessageBatch;
+import org.springframework.amqp.rabbit.batch.SimpleBatchingStrategy;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Batching strategy that keeps one open batch per exchange/routing key instead of
+ * releasing whenever the key changes (as {@link SimpleBatchingStrategy} does), so
+ * interleaved error/warning/info logs still batch well.
+ * <p>
+ * Batches use the same length-prefixed wire format as {@link SimpleBatchingStrategy},
+ * so listener containers de-batch them transparently.
+ * <p>
+ * The format carries bodies only: every fragment of a batch is delivered with the
+ * properties of the batch. Messages therefore share a batch only when their properties
+ * and headers are equal, and a message with its own identity (message id, correlation id
+ * or timestamp) is sent as a batch of one rather than have it silently replaced.
+ * <p>
+ * {@link RoutingHeaders} are the exception: they are copies of body fields, different for
+ * nearly every message, so they are left out of that comparison and dropped from a batch of
+ * more than one. Listeners then read the fields from the body, as they do for messages
+ * published without the headers.
+ */
+public class KeyedBatchingStrategy implements BatchingStrategy {
+
+    private final int batchSize;
+    private final int bufferLimit;
+    private final long lingerMillis;
+    private final MeterRegistry meterRegistry;
+
+    // Only used for consumer-side de-batching, which is format-compatible
+    private final SimpleBatchingStrategy debatcher = new SimpleBatchingStrategy(0, 0, 0L);
+
+    // Insertion order keeps batches released in the order they were opened
+    private final Map<BatchKey, PendingBatch> pending = new LinkedHashMap<>();
+
+    public KeyedBatchingStrategy(int batchSize, int bufferLimit, long lingerMillis, MeterRegistry meterRegistry) {
+        this.batchSize = batchSize;
+        this.bufferLimit = bufferLimit;
+        this.lingerMillis = lingerMillis;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public synchronized MessageBatch addToBatch(String exchange, String routingKey, Message message) {
+        int bufferUse = Integer.BYTES + message.getBody().length;
+        if (hasIdentity(message.getMessageProperties())) {
+            PendingBatch single = new PendingBatch(exchange, routingKey, System.currentTimeMillis());
+            single.add(message, bufferUse);
+            return release(single, "identity");
+        }
+        BatchKey key = BatchKey.of(exchange, routingKey, message.getMessageProperties());
+
+        MessageBatch released = null;
+        PendingBatch batch = pending.get(key);
+        if (batch != null && batch.bytes + bufferUse > bufferLimit) {
+            // Adding this message would overflow the byte budget - ship what we have first
+            released = release(pending.remove(key), "bytes");
+            batch = null;
+        }
+        if (batch == null) {
+            batch = new PendingBatch(exchange, routingKey, System.currentTimeMillis() + lingerMillis);
+            pending.put(key, batch);
+        }
+        batch.add(message, bufferUse);
+
+        if (batch.messages.size() >= batchSize || batch.bytes >= bufferLimit) {
+            if (released == null) {
+                String trigger = batch.messages.size() >= batchSize ? "size" : "bytes";
+                released = release(pending.remove(key), trigger);
+            } else {
+                // Only one batch can be returned per call: the new one is due at once and goes with the next release
+                batch.deadline = System.currentTimeMillis();
+            }
+        }
+        return released;
+    }
+
+    @Override
+    public synchronized Date nextRelease() {
+        long earliest = Long.MAX_VALUE;
+        for (PendingBatch batch : pending.values()) {
+            earliest = Math.min(earliest, batch.deadline);
+        }
+        return earliest == Long.MAX_VALUE ? null : new Date(earliest);
+    }
+
+    @Override
+    public synchronized Collection<MessageBatch> releaseBatches() {
+        List<MessageBatch> batches = new ArrayList<>(pending.size());
+        Iterator<PendingBatch> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            batches.add(release(iterator.next(), "linger"));
+            iterator.remove();
+        }
+        return batches;
+    }
+
+    @Override
+    public boolean canDebatch(MessageProperties properties) {
+        return debatcher.canDebatch(properties);
+    }
+
+    @Override
+    public void deBatch(Message message, Consumer<Message> fragmentConsumer) {
+        debatcher.deBatch(message, fragmentConsumer);
+    }
+
+    private MessageBatch release(PendingBatch batch, String trigger) {
+        ByteBuffer buffer = ByteBuffer.allocate(batch.bytes);
+        for (Message message : batch.messages) {
+            buffer.putInt(message.getBody().length);
+            buffer.put(message.getBody());
+        }
+
+        // Every message of the batch has equal properties (see BatchKey), so the first one's stand for all
+        MessageProperties properties = batch.messages.get(0).getMessageProperties();
+        if (batch.messages.size() > 1) {
+            // Only the routing headers may differ, and the first message's would be wrong for the rest
+            properties.getHeaders().keySet().removeAll(RoutingHeaders.ALL);
+        }
+        properties.setHeader(MessageProperties.SPRING_BATCH_FORMAT, MessageProperties.BATCH_FORMAT_LENGTH_HEADER4);
+
+        String exchange = batch.exchange == null || batch.exchange.isEmpty() ? "default" : batch.exchange;
+        DistributionSummary.builder("messaging.publish.batch.size")
+                .description("Messages per published batch")
+                .tag("exchange", exchange)
+                .tag("trigger", trigger)
+                .register(meterRegistry)
+                .record(batch.messages.size());
+        DistributionSummary.builder("messaging.publish.batch.bytes")
+                .baseUnit("bytes")
+                .tag("exchange", exchange)
+                .register(meterRegistry)
+                .record(batch.bytes);
+        Timer.builder("messaging.publish.batch.flush.latency")
+                .description("Time the first message of a batch waited before the batch was flushed")
+                .tag("exchange", exchange)
+                .tag("trigger", trigger)
+                .register(meterRegistry)
+                .record(System.nanoTime() - batch.openedNanos, TimeUnit.NANOSECONDS);
+
+        return new MessageBatch(batch.exchange, batch.routingKey, new Message(buffer.array(), properties));
+    }
+
+    private static boolean hasIdentity(MessageProperties properties) {
+        return properties.getMessageId() != null || properties.getCorrelationId() != null
+                || properties.getTimestamp() != null;
+    }
+
+    // Messages batch together only if the batch's properties are right for each of them
+    private record BatchKey(String exchange, String routingKey, String contentType, String contentEncoding,
+                            MessageDeliveryMode deliveryMode, Integer priority, String expiration, String type, String appId,
+                            String replyTo, Map<String, Object> headers) {
+
+        static BatchKey of(String exchange, String routingKey, MessageProperties properties) {
+            Map<String, Object> headers = new HashMap<>(properties.getHeaders());
+            headers.keySet().removeAll(RoutingHeaders.ALL);
+            return new BatchKey(exchange, routingKey, properties.getContentType(), properties.getContentEncoding(),
+                    properties.getDeliveryMode(), properties.getPriority(), properties.getExpiration(),
+                    properties.getType(), properties.getAppId(), properties.getReplyTo(), headers);
+        }
+    }
+
+    private static class PendingBatch {
+        private final String exchange;
+        private final String routingKey;
+        private long deadline;
+        private final long openedNanos = System.nanoTime();
+        private final List<Message> messages = new ArrayList<>();
+        private int bytes;
+
+        PendingBatch(String exchange, String routingKey, long deadline) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.deadline = deadline;
+        }
+
+        void add(Message message, int bufferUse) {
+            messages.add(message);
+            bytes += bufferUse;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.rabbitmq.messaging;
+
+import com.example.rabbitmq.outbox.Outbox;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Single entry point for all pattern publishers, so delivery options can change without touching the services
+@Component
+public class MessagePublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final BatchingPublisher batchingPublisher;
+    private final ConfirmingPublisher confirmingPublisher;
+    private final Outbox outbox;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public MessagePublisher(RabbitTemplate rabbitTemplate, ObjectProvider<BatchingPublisher> batchingPublisher,
+                            ConfirmingPublisher confirmingPublisher, ObjectProvider<Outbox> outbox,
+                            MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.batchingPublisher = batchingPublisher.getIfAvailable();
+        this.confirmingPublisher = confirmingPublisher;
+        this.outbox = outbox.getIfAvailable();
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void publish(String exchange, String routingKey, Object payload) {
+        String destination = MessagingPatterns.destination(exchange, routingKey);
+        long start = System.nanoTime();
+        String outcome = "failure";
+        try {
+            if (outbox != null) {
+                // Takes precedence over batching: the relay needs a confirm per message to release the log
+                outbox.append(exchange, routingKey,
+                        rabbitTemplate.getMessageConverter().toMessage(payload, new MessageProperties()));
+            } else if (batchingPublisher != null && batchingPublisher.handles(exchange)) {
+                batchingPublisher.publish(exchange, routingKey, payload);
+            } else {
+                rabbitTemplate.convertAndSend(exchange, routingKey, payload);
+            }
+            outcome = "success";
+        } finally {
+            timer(destination, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // With awaitConfirm the future completes once the broker has confirmed; confirmed sends bypass batching and the outbox
+    public CompletableFuture<Void> publish(String exchange, String routingKey, Object payload, boolean awaitConfirm) {
+        if (!awaitConfirm) {
+            publish(exchange, routingKey, payload);
+            return CompletableFuture.completedFuture(null);
+        }
+        return confirmingPublisher.publish(exchange, routingKey, payload);
+    }
+
+    public void publishToQueue(String queueName, Object payload) {
+        publish("", queueName, payload);
+    }
+
+    public CompletableFuture<Void> publishToQueue(String queueName, Object payload, boolean awaitConfirm) {
+        return publish("", queueName, payload, awaitConfirm);
+    }
+
+    private Timer timer(String destination, String outcome) {
+        return timers.computeIfAbsent(destination + ':' + outcome, key -> Timer.builder("messaging.publish.time")
+                .description("Time the caller spends publishing: conversion, post processors and the send")
+                .tag("destination", destination)
+                .tag("pattern", MessagingPatterns.of(destination))
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.rabbitmq.messaging;
+
+import com.example.rabbitmq.config.RabbitConfig;
+
+/**
+ * Maps a queue or exchange name to the communication pattern it belongs to, for use as
+ * a low-cardinality metrics tag. Relies on the naming scheme in {@link RabbitConfig}.
+ */
+public final class MessagingPatterns {
+
+    private MessagingPatterns() {
+    }
+
+    /**
+     * The name publish metrics are tagged with: the exchange, or the queue for
+     * point-to-point sends, which go through the default exchange routed by queue name.
+     */
+    public static String destination(String exchange, String routingKey) {
+        return exchange == null || exchange.isEmpty() ? routingKey : exchange;
+    }
+
+    public static String of(String destination) {
+        if (destination == null || destination.isEmpty()) {
+            return "other";
+        }
+        if (destination.equals(RabbitConfig.ORDER_QUEUE)) {
+            return "point-to-point";
+        }
+        if (destination.startsWith("social.")) {
+            return "publish-subscribe";
+        }
+        if (destination.startsWith("log.")) {
+            return "direct";
+        }
+        if (destination.startsWith("iot.")) {
+            return "topic";
+        }
+        if (destination.startsWith("image.")) {
+            return "work-queue";
+        }
+        if (destination.startsWith("dlx.")) {
+            return "dead-letter";
+        }
+        return "other";
+    }
+}
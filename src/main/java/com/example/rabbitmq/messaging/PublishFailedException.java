@@ -0,0 +1,17 @@
+package com.example.rabbitmq.messaging;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// The broker did not take responsibility for the message (nack, return, timeout or a full confirm window)
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class PublishFailedException extends RuntimeException {
+
+    public PublishFailedException(String message) {
+        super(message);
+    }
+
+    public PublishFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
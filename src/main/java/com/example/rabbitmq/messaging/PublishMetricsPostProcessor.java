@@ -0,0 +1,53 @@
+package com.example.rabbitmq.messaging;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.amqp.core.Correlation;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last publisher stage: records the size of the body as it goes on the wire and stamps
+ * the message with its publish time, which consumers use for queue-to-consume latency.
+ */
+public class PublishMetricsPostProcessor implements MessagePostProcessor {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, DistributionSummary> sizes = new ConcurrentHashMap<>();
+
+    public PublishMetricsPostProcessor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Message postProcessMessage(Message message) {
+        return postProcessMessage(message, null, "", "");
+    }
+
+    @Override
+    public Message postProcessMessage(Message message, Correlation correlation, String exchange, String routingKey) {
+        MessageProperties properties = message.getMessageProperties();
+        if (properties.getTimestamp() == null) {
+            properties.setTimestamp(new Date());
+        }
+        String destination = MessagingPatterns.destination(exchange, routingKey);
+        sizes.computeIfAbsent(destination, this::sizeSummary).record(message.getBody().length);
+        return message;
+    }
+
+    private DistributionSummary sizeSummary(String destination) {
+        return DistributionSummary.builder("messaging.message.size")
+                .description("Message body size on the wire")
+                .baseUnit("bytes")
+                .tag("direction", "publish")
+                .tag("destination", destination)
+                .tag("pattern", MessagingPatterns.of(destination))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.rabbitmq.outbox;
+
+import com.example.rabbitmq.messaging.PublishFailedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local write-ahead outbox in front of the broker. {@link #append} writes the message to
+ * the {@link OutboxLog} and returns once it is on disk, so publishing keeps working while
+ * the broker is down or blocked. A relay thread sends the log to the broker in order, with
+ * up to {@code maxInFlight} messages awaiting confirms, and releases it as confirms come in.
+ * <p>
+ * Delivery is at least once: after a nack, a confirm timeout or a failed send the relay
+ * backs off and resends from the first unconfirmed message, so messages sent after it
+ * may arrive twice. Each message gets a message id when it is appended, which stays the
+ * same across resends and restarts for consumers that deduplicate.
+ */
+public class Outbox implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(Outbox.class);
+    private static final long POLL_MILLIS = 100;
+
+    private final OutboxLog log;
+    private final RabbitTemplate template;
+    private final boolean awaitFlush;
+    private final Duration flushTimeout;
+    private final int maxInFlight;
+    private final Semaphore window;
+    private final Duration confirmTimeout;
+    private final Duration retryBackoff;
+    private final long checkpointIntervalNanos;
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<Long> failed = new ConcurrentSkipListSet<>();
+    private final Thread relay;
+    private final Counter relayed;
+    private final Counter relayFailures;
+    private volatile long nextToSend;
+    private volatile boolean running = true;
+
+    public Outbox(OutboxLog log, RabbitTemplate template, boolean awaitFlush, Duration flushTimeout, int maxInFlight,
+                  Duration confirmTimeout, Duration retryBackoff, Duration checkpointInterval, MeterRegistry meterRegistry) {
+        this.log = log;
+        this.template = template;
+        this.awaitFlush = awaitFlush;
+        this.flushTimeout = flushTimeout;
+        this.maxInFlight = maxInFlight;
+        this.window = new Semaphore(maxInFlight);
+        this.confirmTimeout = confirmTimeout;
+        this.retryBackoff = retryBackoff;
+        this.checkpointIntervalNanos = checkpointInterval.toNanos();
+
+        this.relayed = Counter.builder("messaging.outbox.relayed")
+                .description("Outbox messages confirmed by the broker")
+                .register(meterRegistry);
+        this.relayFailures = Counter.builder("messaging.outbox.relay.failures")
+                .description("Outbox sends that failed, were nacked or timed out and will be resent")
+                .register(meterRegistry);
+
+        this.relay = new Thread(this::relayLoop, "outbox-relay");
+        relay.setDaemon(true);
+        relay.start();
+    }
+
+    // The message is converted already, so resends carry exactly the bytes that were appended
+    public void append(String exchange, String routingKey, Message message) {
+        if (message.getMessageProperties().getMessageId() == null) {
+            message.getMessageProperties().setMessageId(UUID.randomUUID().toString());
+        }
+        long sequence = log.append(OutboxRecord.encode(exchange, routingKey, message));
+        if (awaitFlush) {
+            awaitDurable(sequence);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        relay.join(confirmTimeout.toMillis() + POLL_MILLIS);
+        if (relay.isAlive()) {
+            relay.interrupt();
+            relay.join(POLL_MILLIS);
+        }
+        release();
+        log.close();
+    }
+
+    // The record stays in the log either way, so a publish reported as failed here may still be relayed
+    private void awaitDurable(long sequence) {
+        try {
+            if (!log.awaitDurable(sequence, flushTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new PublishFailedException("Outbox write not synced to disk within " + flushTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PublishFailedException("Interrupted waiting for the outbox write", e);
+        }
+    }
+
+    private void relayLoop() {
+        OutboxLog.Cursor cursor = log.cursor(log.releasedSequence() + 1);
+        nextToSend = cursor.nextSequence();
+        long lastCheckpoint = System.nanoTime();
+        while (running) {
+            try {
+                if (System.nanoTime() - lastCheckpoint >= checkpointIntervalNanos) {
+                    release();
+                    lastCheckpoint = System.nanoTime();
+                }
+                if (!failed.isEmpty()) {
+                    rewind(cursor);
+                    continue;
+                }
+                if (!window.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+                OutboxRecord record = cursor.next();
+                if (record == null) {
+                    window.release();
+                    log.awaitDurable(cursor.nextSequence(), POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                inFlight.add(record.sequence());
+                nextToSend = cursor.nextSequence();
+                send(record);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Outbox relay error: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void send(OutboxRecord record) {
+        CorrelationData correlation = new CorrelationData(record.message().getMessageProperties().getMessageId());
+        try {
+            template.send(record.exchange(), record.routingKey(), record.message(), correlation);
+        } catch (AmqpException e) {
+            settle(record.sequence(), "send failed: " + e.getMessage());
+            return;
+        }
+        correlation.getFuture()
+                .orTimeout(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((confirm, ex) -> {
+                    if (ex != null) {
+                        settle(record.sequence(), "no confirm within " + confirmTimeout.toMillis() + "ms");
+                    } else if (!confirm.isAck()) {
+                        settle(record.sequence(), "nacked: " + confirm.getReason());
+                    } else {
+                        // Returned messages are acked too; resending won't make them routable, so they count
+                        // as relayed once logged
+                        if (correlation.getReturned() != null) {
+                            logger.warn("Outbox message {} returned as unroutable - exchange: {}, routing key: {}, reply: {}",
+                                    correlation.getId(), record.exchange(), record.routingKey(),
+                                    correlation.getReturned().getReplyText());
+                        }
+                        settle(record.sequence(), null);
+                    }
+                });
+    }
+
+    private void settle(long sequence, String failure) {
+        if (failure == null) {
+            relayed.increment();
+        } else {
+            relayFailures.increment();
+            if (failed.isEmpty()) {
+                logger.warn("Outbox relay of message {} failed ({}), resending after {}ms",
+                        sequence, failure, retryBackoff.toMillis());
+            }
+            // Added before leaving inFlight, so confirmedSequence() never skips past a failed message
+            failed.add(sequence);
+        }
+        inFlight.remove(sequence);
+        window.release();
+    }
+
+    // Lets the messages still in flight settle, backs off, then resends from the first failed one
+    private void rewind(OutboxLog.Cursor cursor) throws InterruptedException {
+        window.acquire(maxInFlight);
+        try {
+            long from = failed.first();
+            Thread.sleep(retryBackoff.toMillis());
+            cursor.seek(from);
+            nextToSend = from;
+            failed.clear();
+        } finally {
+            window.release(maxInFlight);
+        }
+    }
+
+    private void release() {
+        log.release(confirmedSequence());
+    }
+
+    // Everything before the first message still in flight, failed or not yet sent has been confirmed
+    private long confirmedSequence() {
+        long confirmed = nextToSend;
+        // ceiling rather than first(): the sets are emptied concurrently
+        Long firstInFlight = inFlight.ceiling(Long.MIN_VALUE);
+        if (firstInFlight != null) {
+            confirmed = Math.min(confirmed, firstInFlight);
+        }
+        Long firstFailed = failed.ceiling(Long.MIN_VALUE);
+        if (firstFailed != null) {
+            confirmed = Math.min(confirmed, firstFailed);
+        }
+        return confirmed - 1;
+    }
+}
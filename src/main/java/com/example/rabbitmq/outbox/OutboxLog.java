@@ -0,0 +1,336 @@
+package com.example.rabbitmq.outbox;
+
+import com.example.rabbitmq.messaging.PublishFailedException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of outgoing messages, kept in memory-mapped segment files. Every message
+ * gets the next sequence number; the relay reads them back in that order through a
+ * {@link Cursor} and reports how far the broker has confirmed with {@link #release(long)},
+ * which deletes fully confirmed segments and checkpoints the position.
+ * <p>
+ * Durability uses group commit: appends only copy into the mapping, and a single flusher
+ * thread syncs everything appended since its previous sync in one go. Callers that need
+ * the message on disk wait in {@link #awaitDurable(long)}, so under load one fsync covers
+ * many publishes instead of each paying for its own.
+ */
+public class OutboxLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxLog.class);
+    private static final String CHECKPOINT_FILE = "relayed.checkpoint";
+
+    private final String name;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final NavigableMap<Long, OutboxSegment> segments = new ConcurrentSkipListMap<>();
+    private final Map<OutboxSegment, Boolean> dirty = new LinkedHashMap<>();
+    private final Thread flusher;
+    private final Timer fsyncTime;
+    private final DistributionSummary fsyncBatch;
+
+    // Guarded by this
+    private OutboxSegment active;
+    private long appended;
+    private boolean closed;
+
+    private volatile long durable;
+    private volatile long released;
+
+    public OutboxLog(Path directory, int segmentSize, int maxSegments, MeterRegistry meterRegistry) {
+        this("outbox", directory, segmentSize, maxSegments, meterRegistry);
+    }
+
+    // name prefixes the meters (messaging.<name>.*) and names the flusher thread, for logs other than the outbox
+    public OutboxLog(String name, Path directory, int segmentSize, int maxSegments, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        recover();
+
+        this.fsyncTime = Timer.builder("messaging." + name + ".fsync.time")
+                .description("Time per group commit of the log to disk")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.fsyncBatch = DistributionSummary.builder("messaging." + name + ".fsync.batch")
+                .description("Messages made durable by one group commit")
+                .register(meterRegistry);
+        Gauge.builder("messaging." + name + ".pending", this, log -> log.appendedSequence() - log.released)
+                .description("Messages in the log that have not been released yet")
+                .register(meterRegistry);
+        Gauge.builder("messaging." + name + ".segments", segments, Map::size)
+                .description("Segment files on disk")
+                .register(meterRegistry);
+
+        this.flusher = new Thread(this::flushLoop, name + "-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Returns the message's sequence number; fails fast when the outbox is full rather than blocking the caller
+    public long append(byte[] payload) {
+        if (OutboxSegment.RECORD_HEADER + payload.length > segmentSize) {
+            throw new PublishFailedException("Message of " + payload.length + " bytes does not fit an outbox segment");
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new PublishFailedException("Outbox is closed");
+            }
+            long sequence = appended + 1;
+            if (!active.append(sequence, payload)) {
+                if (segments.size() >= maxSegments) {
+                    throw new PublishFailedException("Outbox full: " + segments.size() + " segments awaiting relay");
+                }
+                active = OutboxSegment.create(directory, sequence, segmentSize);
+                segments.put(sequence, active);
+                active.append(sequence, payload);
+            }
+            dirty.put(active, Boolean.TRUE);
+            appended = sequence;
+            notifyAll();
+            return sequence;
+        }
+    }
+
+    // Blocks until the message with this sequence number has been synced to disk; close() still syncs
+    // everything appended before it, so waiters are never stranded
+    public void awaitDurable(long sequence) {
+        synchronized (this) {
+            while (durable < sequence) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PublishFailedException("Interrupted waiting for the outbox write", e);
+                }
+            }
+        }
+    }
+
+    // Waits up to timeout for the message with this sequence number to become durable; true if it is
+    boolean awaitDurable(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (durable < sequence && !closed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return durable >= sequence;
+        }
+    }
+
+    public synchronized long appendedSequence() {
+        return appended;
+    }
+
+    // Segments that can still be started before appends fail
+    public int freeSegments() {
+        return maxSegments - segments.size();
+    }
+
+    // Everything up to and including this sequence number has been confirmed by the broker
+    public long releasedSequence() {
+        return released;
+    }
+
+    // Deletes segments whose messages are all confirmed and checkpoints the position for the next start
+    public void release(long sequence) {
+        if (sequence <= released) {
+            return;
+        }
+        released = sequence;
+        // Checkpoint first: a crash before the deletes leaves segments the next start recognises as relayed
+        writeCheckpoint(sequence);
+        List<OutboxSegment> obsolete = new ArrayList<>();
+        synchronized (this) {
+            for (OutboxSegment segment : segments.values()) {
+                if (segment == active || segment.lastSequence() > sequence) {
+                    break;
+                }
+                obsolete.add(segment);
+            }
+            obsolete.forEach(segment -> segments.remove(segment.firstSequence));
+        }
+        obsolete.forEach(OutboxSegment::delete);
+    }
+
+    public Cursor cursor(long sequence) {
+        Cursor cursor = new Cursor();
+        cursor.seek(sequence);
+        return cursor;
+    }
+
+    // Flushes what has been appended, then stops accepting appends
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            Map<OutboxSegment, Integer> ends = new LinkedHashMap<>();
+            synchronized (this) {
+                while (!closed && appended == durable) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (appended == durable) {
+                    return;
+                }
+                target = appended;
+                dirty.keySet().forEach(segment -> ends.put(segment, segment.written()));
+                dirty.clear();
+            }
+            long start = System.nanoTime();
+            try {
+                ends.forEach(OutboxSegment::force);
+            } catch (UncheckedIOException e) {
+                // Writers keep waiting; the same range is synced again on the next round
+                logger.error("Outbox sync failed, retrying: {}", e.getMessage());
+                synchronized (this) {
+                    ends.keySet().forEach(segment -> dirty.put(segment, Boolean.TRUE));
+                }
+                sleepBeforeRetry();
+                continue;
+            }
+            fsyncTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            fsyncBatch.record(target - durable);
+            synchronized (this) {
+                durable = target;
+                notifyAll();
+            }
+        }
+    }
+
+    private void recover() {
+        try {
+            Files.createDirectories(directory);
+            released = readCheckpoint();
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.filter(file -> file.getFileName().toString().endsWith(".outbox")).sorted().toList();
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long firstSequence = Long.parseLong(name.substring(0, name.indexOf('.')));
+                segments.put(firstSequence, OutboxSegment.open(file, firstSequence));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open outbox in " + directory, e);
+        }
+
+        // Segments confirmed before a crash cut their deletion short
+        while (segments.size() > 1 && segments.firstEntry().getValue().lastSequence() <= released) {
+            segments.pollFirstEntry().getValue().delete();
+        }
+        if (segments.isEmpty() || segments.lastEntry().getValue().lastSequence() < released) {
+            segments.values().forEach(OutboxSegment::delete);
+            segments.clear();
+            segments.put(released + 1, OutboxSegment.create(directory, released + 1, segmentSize));
+        }
+        active = segments.lastEntry().getValue();
+        appended = active.isEmpty() ? active.firstSequence - 1 : active.lastSequence();
+        durable = appended;
+        if (appended > released) {
+            logger.info("Log {} in {} holds {} messages not yet released", name, directory, appended - released);
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        return Files.exists(file) ? Long.parseLong(Files.readString(file).trim()) : 0;
+    }
+
+    private void writeCheckpoint(long sequence) {
+        try {
+            // Write-then-rename so a crash mid-write never leaves a truncated checkpoint file
+            Path temp = Files.createTempFile(directory, CHECKPOINT_FILE, ".tmp");
+            Files.writeString(temp, Long.toString(sequence));
+            Files.move(temp, directory.resolve(CHECKPOINT_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The next release retries; at worst a restart relays a few confirmed messages again
+            logger.warn("Could not write outbox checkpoint to {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static void sleepBeforeRetry() {
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Reads durable messages in sequence order; owned by a single thread
+    public class Cursor {
+        private OutboxSegment segment;
+        private int position;
+        private long next;
+
+        // The next durable message, or null when the cursor has caught up
+        public OutboxRecord next() {
+            if (next > durable) {
+                return null;
+            }
+            byte[] payload = segment.payloadAt(position, next);
+            if (payload == null) {
+                // The rest of this segment is unused; the message starts the next one
+                segment = segments.get(next);
+                position = 0;
+                payload = segment.payloadAt(position, next);
+            }
+            position += OutboxSegment.RECORD_HEADER + payload.length;
+            return OutboxRecord.decode(next++, payload);
+        }
+
+        public long nextSequence() {
+            return next;
+        }
+
+        // Positions the cursor on sequence, which must not have been released yet
+        public void seek(long sequence) {
+            segment = segments.floorEntry(sequence).getValue();
+            position = 0;
+            for (long skipped = segment.firstSequence; skipped < sequence; skipped++) {
+                position += OutboxSegment.RECORD_HEADER + segment.payloadAt(position, skipped).length;
+            }
+            next = sequence;
+        }
+    }
+}
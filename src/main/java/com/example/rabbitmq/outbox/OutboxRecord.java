@@ -0,0 +1,195 @@
+package com.example.rabbitmq.outbox;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A message as stored in the outbox: destination, the AMQP properties the converter set, and the body.
+// Strings are length-prefixed UTF-8 of any size. Header values keep their AMQP types - strings, numbers,
+// booleans, dates, byte arrays and nested lists and maps such as x-death; anything else is stored as its toString()
+public record OutboxRecord(long sequence, String exchange, String routingKey, Message message) {
+
+    private static final int HEADER_NULL = 0;
+    private static final int HEADER_STRING = 1;
+    private static final int HEADER_INT = 2;
+    private static final int HEADER_LONG = 3;
+    private static final int HEADER_DOUBLE = 4;
+    private static final int HEADER_BOOLEAN = 5;
+    private static final int HEADER_DATE = 6;
+    private static final int HEADER_BYTES = 7;
+    private static final int HEADER_LIST = 8;
+    private static final int HEADER_MAP = 9;
+
+    public static byte[] encode(String exchange, String routingKey, Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.getBody().length + 256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, exchange);
+            writeString(out, routingKey);
+            writeNullable(out, properties.getContentType());
+            writeNullable(out, properties.getContentEncoding());
+            writeNullable(out, properties.getMessageId());
+            writeNullable(out, properties.getCorrelationId());
+            writeNullable(out, properties.getType());
+            writeNullable(out, properties.getAppId());
+            writeNullable(out, properties.getReplyTo());
+            writeNullable(out, properties.getExpiration());
+            out.writeInt(properties.getPriority() == null ? -1 : properties.getPriority());
+            out.writeBoolean(properties.getDeliveryMode() == MessageDeliveryMode.PERSISTENT);
+            out.writeLong(properties.getTimestamp() == null ? -1 : properties.getTimestamp().getTime());
+            writeHeaderMap(out, properties.getHeaders());
+            writeBytes(out, message.getBody());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static OutboxRecord decode(long sequence, byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            String exchange = readString(in);
+            String routingKey = readString(in);
+            MessageProperties properties = new MessageProperties();
+            properties.setContentType(readNullable(in));
+            properties.setContentEncoding(readNullable(in));
+            properties.setMessageId(readNullable(in));
+            properties.setCorrelationId(readNullable(in));
+            properties.setType(readNullable(in));
+            properties.setAppId(readNullable(in));
+            properties.setReplyTo(readNullable(in));
+            properties.setExpiration(readNullable(in));
+            int priority = in.readInt();
+            properties.setPriority(priority < 0 ? null : priority);
+            properties.setDeliveryMode(in.readBoolean() ? MessageDeliveryMode.PERSISTENT : MessageDeliveryMode.NON_PERSISTENT);
+            long timestamp = in.readLong();
+            properties.setTimestamp(timestamp < 0 ? null : new Date(timestamp));
+            readHeaderMap(in).forEach(properties::setHeader);
+            return new OutboxRecord(sequence, exchange, routingKey, new Message(readBytes(in), properties));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt outbox record " + sequence, e);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeString(out, value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    // writeUTF would cap strings at 64 KB, which a stack trace header easily exceeds
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return value;
+    }
+
+    private static void writeHeaderMap(DataOutputStream out, Map<?, ?> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeString(out, String.valueOf(entry.getKey()));
+            writeHeaderValue(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> readHeaderMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), readHeaderValue(in));
+        }
+        return map;
+    }
+
+    private static void writeHeaderValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(HEADER_NULL);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(HEADER_INT);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(HEADER_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(HEADER_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(HEADER_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Date date) {
+            out.writeByte(HEADER_DATE);
+            out.writeLong(date.getTime());
+        } else if (value instanceof byte[] bytes) {
+            out.writeByte(HEADER_BYTES);
+            writeBytes(out, bytes);
+        } else if (value instanceof List<?> list) {
+            out.writeByte(HEADER_LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeHeaderValue(out, element);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(HEADER_MAP);
+            writeHeaderMap(out, map);
+        } else {
+            out.writeByte(HEADER_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readHeaderValue(DataInputStream in) throws IOException {
+        int tag = in.readByte();
+        return switch (tag) {
+            case HEADER_NULL -> null;
+            case HEADER_STRING -> readString(in);
+            case HEADER_INT -> in.readInt();
+            case HEADER_LONG -> in.readLong();
+            case HEADER_DOUBLE -> in.readDouble();
+            case HEADER_BOOLEAN -> in.readBoolean();
+            case HEADER_DATE -> new Date(in.readLong());
+            case HEADER_BYTES -> readBytes(in);
+            case HEADER_LIST -> readHeaderList(in);
+            case HEADER_MAP -> readHeaderMap(in);
+            default -> throw new IOException("Unknown header value tag " + tag);
+        };
+    }
+
+    private static List<Object> readHeaderList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<Object> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readHeaderValue(in));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.rabbitmq.outbox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * One pre-allocated, memory-mapped file of the outbox. Records are appended back to back as
+ * {@code [length][crc][sequence][payload]}; the file starts zero-filled, so a zero length
+ * marks the end of the written part.
+ * <p>
+ * Appends only copy into the mapping. {@link #force(int)} makes everything appended so far
+ * durable in one call, which is what lets the log commit many appends with one fsync.
+ */
+final class OutboxSegment {
+
+    static final int RECORD_HEADER = 16;
+
+    final Path file;
+    final long firstSequence;
+    private final MappedByteBuffer buffer;
+    private int written;
+    private int flushed;
+    private long lastSequence;
+
+    private OutboxSegment(Path file, long firstSequence, MappedByteBuffer buffer) {
+        this.file = file;
+        this.firstSequence = firstSequence;
+        this.buffer = buffer;
+        this.lastSequence = firstSequence - 1;
+    }
+
+    static OutboxSegment create(Path directory, long firstSequence, int size) {
+        Path file = directory.resolve(fileName(firstSequence));
+        return new OutboxSegment(file, firstSequence, map(file, size));
+    }
+
+    // Re-opens a segment left by a previous run and finds where its valid records end. A torn or
+    // stale record - bad checksum, or not the next sequence - ends the segment; appends resume there
+    static OutboxSegment open(Path file, long firstSequence) {
+        OutboxSegment segment;
+        try {
+            segment = new OutboxSegment(file, firstSequence, map(file, (int) Files.size(file)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open outbox segment " + file, e);
+        }
+        int position = 0;
+        while (true) {
+            byte[] payload = segment.payloadAt(position, segment.lastSequence + 1);
+            if (payload == null) {
+                break;
+            }
+            position += RECORD_HEADER + payload.length;
+            segment.lastSequence++;
+        }
+        segment.written = position;
+        segment.flushed = position;
+        return segment;
+    }
+
+    static String fileName(long firstSequence) {
+        return String.format("%020d.outbox", firstSequence);
+    }
+
+    // False when the record doesn't fit; the caller rolls to a new segment
+    boolean append(long sequence, byte[] payload) {
+        if (buffer.capacity() - written < RECORD_HEADER + payload.length) {
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        ByteBuffer target = buffer.duplicate().position(written);
+        target.putInt(payload.length).putInt((int) crc.getValue()).putLong(sequence).put(payload);
+        written += RECORD_HEADER + payload.length;
+        lastSequence = sequence;
+        return true;
+    }
+
+    int written() {
+        return written;
+    }
+
+    // Syncs what was written since the previous force, up to end; only ever called by the flusher thread
+    void force(int end) {
+        if (end > flushed) {
+            buffer.force(flushed, end - flushed);
+            flushed = end;
+        }
+    }
+
+    // The payload of the record at position, or null when there is no valid record with that sequence
+    byte[] payloadAt(int position, long expectedSequence) {
+        if (buffer.capacity() - position < RECORD_HEADER) {
+            return null;
+        }
+        ByteBuffer source = buffer.duplicate().position(position);
+        int length = source.getInt();
+        int checksum = source.getInt();
+        long sequence = source.getLong();
+        if (length <= 0 || length > source.remaining() || sequence != expectedSequence) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        source.get(payload);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue() == checksum ? payload : null;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    boolean isEmpty() {
+        return lastSequence < firstSequence;
+    }
+
+    void delete() {
+        try {
+            // The mapping stays valid until it's collected; on Linux and macOS the file can go now
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete outbox segment " + file, e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path file, int size) {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map outbox segment " + file, e);
+        }
+    }
+}
@@ -8,12 +8,15 @@ import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/orders")
 @Tag(name = "Point-to-Point Pattern", description = "Order processing using direct queue communication")
 public class OrderController {
 
+    static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
     private final OrderService orderService;
 
     public OrderController(OrderService orderService) {
@@ -22,8 +25,15 @@ public class OrderController {
 
     @PostMapping
     @Operation(summary = "Create a new order", 
-               description = "Creates an order and sends it to the payment processing queue")
-    public ResponseEntity<Order> createOrder(@RequestBody CreateOrderRequest request) {
+               description = "Creates an order and sends it to the payment processing queue. "
+                       + "Retries that repeat the Idempotency-Key header for the same customer are the same order "
+                       + "and are charged once. The key must be 1 to 255 characters")
+    public CompletableFuture<ResponseEntity<Order>> createOrder(@RequestBody CreateOrderRequest request,
+            @RequestParam(defaultValue = "false") boolean awaitConfirm,
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
         List<Order.OrderItem> items = request.getItems().stream()
                 .map(item -> new Order.OrderItem(
                         item.getProductId(),
@@ -32,20 +42,20 @@ public class OrderController {
                         item.getPrice()))
                 .toList();
 
-        Order order = orderService.createOrder(
+        return orderService.createOrder(
+                idempotencyKey,
                 request.getCustomerId(),
                 request.getCustomerEmail(), 
-                items);
-
-        return ResponseEntity.ok(order);
+                items,
+                awaitConfirm).thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/sample")
     @Operation(summary = "Create a sample order", 
                description = "Creates a predefined sample order for demonstration")
-    public ResponseEntity<Order> createSampleOrder() {
-        Order order = orderService.createSampleOrder();
-        return ResponseEntity.ok(order);
+    public CompletableFuture<ResponseEntity<Order>> createSampleOrder(
+            @RequestParam(defaultValue = "false") boolean awaitConfirm) {
+        return orderService.createSampleOrder(awaitConfirm).thenApply(ResponseEntity::ok);
     }
 
     public static class CreateOrderRequest {
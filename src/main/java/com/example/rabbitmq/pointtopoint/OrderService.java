@@ -1,29 +1,37 @@
 package com.example.rabbitmq.pointtopoint;
 
 import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.messaging.MessagePublisher;
 import com.example.rabbitmq.model.Order;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class OrderService {
     
     private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
     
-    private final RabbitTemplate rabbitTemplate;
+    private final MessagePublisher messagePublisher;
 
-    public OrderService(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    public OrderService(MessagePublisher messagePublisher) {
+        this.messagePublisher = messagePublisher;
     }
 
-    public Order createOrder(String customerId, String customerEmail, 
-                           List<Order.OrderItem> items) {
+    public CompletableFuture<Order> createOrder(String customerId, String customerEmail,
+                           List<Order.OrderItem> items, boolean awaitConfirm) {
+        return createOrder(null, customerId, customerEmail, items, awaitConfirm);
+    }
+
+    // A retried request with the same idempotency key is the same order, which the payment consumer charges once
+    public CompletableFuture<Order> createOrder(String idempotencyKey, String customerId, String customerEmail,
+                           List<Order.OrderItem> items, boolean awaitConfirm) {
         
         // Calculate total amount
         BigDecimal totalAmount = items.stream()
@@ -32,7 +40,7 @@ public class OrderService {
 
         // Create order
         Order order = new Order(
-                UUID.randomUUID().toString(),
+                idempotencyKey != null ? orderId(customerId, idempotencyKey) : UUID.randomUUID().toString(),
                 customerId,  
                 customerEmail,
                 items,
@@ -43,22 +51,30 @@ public class OrderService {
 
         // Send order to processing queue (Point-to-Point pattern)
         try {
-            rabbitTemplate.convertAndSend(RabbitConfig.ORDER_QUEUE, order);
-            logger.info("Order {} sent to processing queue", order.getOrderId());
+            return messagePublisher.publishToQueue(RabbitConfig.ORDER_QUEUE, order, awaitConfirm)
+                    .thenApply(sent -> {
+                        logger.info("Order {} sent to processing queue", order.getOrderId());
+                        return order;
+                    });
         } catch (Exception e) {
             logger.error("Failed to send order to queue: {}", e.getMessage());
             throw new RuntimeException("Failed to process order", e);
         }
+    }
 
-        return order;
+    // Name-based, so every instance derives the same orderId for a retry, and customers who happen to pick the same
+    // key get different orders. The customer id is length-prefixed so no two (customer, key) pairs share a name
+    static String orderId(String customerId, String idempotencyKey) {
+        String name = (customerId == null ? -1 : customerId.length()) + ":" + customerId + ":" + idempotencyKey;
+        return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
     }
 
-    public Order createSampleOrder() {
+    public CompletableFuture<Order> createSampleOrder(boolean awaitConfirm) {
         List<Order.OrderItem> items = List.of(
                 new Order.OrderItem("prod-1", "Laptop", 1, new BigDecimal("999.99")),
                 new Order.OrderItem("prod-2", "Mouse", 2, new BigDecimal("29.99"))
         );
 
-        return createOrder("customer-123", "john.doe@example.com", items);
+        return createOrder("customer-123", "john.doe@example.com", items, awaitConfirm);
     }
 }
\ No newline at end of file
@@ -1,10 +1,12 @@
 package com.example.rabbitmq.pointtopoint;
 
 import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.idempotency.IdempotencyGuard;
 import com.example.rabbitmq.model.Order;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
 import java.util.Random;
@@ -14,9 +16,24 @@ public class PaymentService {
     
     private static final Logger logger = LoggerFactory.getLogger(PaymentService.class);
     private final Random random = new Random();
+    private final IdempotencyGuard idempotencyGuard;
 
-    @RabbitListener(queues = RabbitConfig.ORDER_QUEUE)
+    public PaymentService(ObjectProvider<IdempotencyGuard> idempotencyGuard) {
+        this.idempotencyGuard = idempotencyGuard.getIfAvailable();
+    }
+
+    @RabbitListener(queues = RabbitConfig.ORDER_QUEUE,
+            containerFactory = "${app.messaging.listener.factory.payment:rabbitListenerContainerFactory}")
     public void processPayment(Order order) {
+        if (idempotencyGuard == null) {
+            charge(order);
+            return;
+        }
+        // A redelivered or re-submitted order returns without charging again, and is acked
+        idempotencyGuard.runOnce("payment", order.getOrderId(), () -> charge(order));
+    }
+
+    private void charge(Order order) {
         try {
             logger.info("Processing payment for order: {}", order.getOrderId());
             
@@ -14,7 +14,8 @@ public class NotificationService {
     
     private static final Logger logger = LoggerFactory.getLogger(NotificationService.class);
 
-    @RabbitListener(queues = RabbitConfig.NOTIFICATION_QUEUE)
+    @RabbitListener(queues = RabbitConfig.NOTIFICATION_QUEUE,
+            containerFactory = "${app.messaging.listener.factory.notification:rabbitListenerContainerFactory}")
     public void sendNotifications(SocialPost post) {
         try {
             logger.info("Processing notifications for post: {} by user: {}", 
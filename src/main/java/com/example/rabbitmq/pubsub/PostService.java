@@ -1,10 +1,11 @@
 package com.example.rabbitmq.pubsub;
 
 import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.messaging.MessagePublisher;
+import com.example.rabbitmq.messaging.PublishFailedException;
 import com.example.rabbitmq.model.SocialPost;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -15,10 +16,10 @@ public class PostService {
     
     private static final Logger logger = LoggerFactory.getLogger(PostService.class);
     
-    private final RabbitTemplate rabbitTemplate;
+    private final MessagePublisher messagePublisher;
 
-    public PostService(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    public PostService(MessagePublisher messagePublisher) {
+        this.messagePublisher = messagePublisher;
     }
 
     public SocialPost publishPost(String userId, String username, String content, 
@@ -39,11 +40,11 @@ public class PostService {
 
         try {
             // Publish to fanout exchange - all bound queues will receive this message
-            rabbitTemplate.convertAndSend(RabbitConfig.SOCIAL_FANOUT_EXCHANGE, "", post);
+            messagePublisher.publish(RabbitConfig.SOCIAL_FANOUT_EXCHANGE, "", post);
             logger.info("Post {} published to fanout exchange", post.getPostId());
         } catch (Exception e) {
             logger.error("Failed to publish post to exchange: {}", e.getMessage());
-            throw new RuntimeException("Failed to publish post", e);
+            throw new PublishFailedException("Failed to publish post", e);
         }
 
         return post;
@@ -1,12 +1,23 @@
 package com.example.rabbitmq.pubsub;
 
+import com.example.rabbitmq.config.MessagingProperties;
 import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.counter.HeavyHitters;
+import com.example.rabbitmq.counter.KeyCounter;
+import com.example.rabbitmq.listener.ConsumerBatches;
 import com.example.rabbitmq.model.SocialPost;
+import com.rabbitmq.client.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -16,40 +27,37 @@ public class SocialAnalyticsService {
     private static final Logger logger = LoggerFactory.getLogger(SocialAnalyticsService.class);
     
     // In-memory analytics storage (use time-series database like InfluxDB in production)
-    private final ConcurrentHashMap<String, AtomicLong> userPostCounts = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, AtomicLong> hashtagCounts = new ConcurrentHashMap<>();
+    private final KeyCounter userPostCounts;
+    private final KeyCounter hashtagCounts;
     private final ConcurrentHashMap<SocialPost.PostType, AtomicLong> postTypeCounts = new ConcurrentHashMap<>();
     private final AtomicLong totalPosts = new AtomicLong(0);
 
-    @RabbitListener(queues = RabbitConfig.ANALYTICS_QUEUE)
+    public SocialAnalyticsService(MessagingProperties properties) {
+        this.userPostCounts = newCounter(properties.getBoundedCounters());
+        this.hashtagCounts = newCounter(properties.getBoundedCounters());
+    }
+
+    // User ids and hashtags come straight from posts, so with bounded counters enabled memory stays fixed however many there are
+    private static KeyCounter newCounter(MessagingProperties.BoundedCounters bounded) {
+        return bounded.isEnabled()
+                ? new HeavyHitters(bounded.getTopKeys(), bounded.getEpsilon(), bounded.getConfidence())
+                : KeyCounter.exact();
+    }
+
+    @RabbitListener(queues = RabbitConfig.ANALYTICS_QUEUE,
+            containerFactory = "${app.messaging.listener.factory.social-analytics:rabbitListenerContainerFactory}",
+            autoStartup = "#{!${app.messaging.listener.consumer-batch.enabled.social-analytics:false}}")
     public void analyzePost(SocialPost post) {
         try {
             logger.info("Analyzing post: {} by user: {}", post.getPostId(), post.getUsername());
             
-            // Track overall post count
-            totalPosts.incrementAndGet();
-            
-            // Track posts per user
-            userPostCounts.computeIfAbsent(post.getUserId(), k -> new AtomicLong(0))
-                          .incrementAndGet();
-            
-            // Track hashtag usage
-            if (post.getHashtags() != null) {
-                for (String hashtag : post.getHashtags()) {
-                    hashtagCounts.computeIfAbsent(hashtag.toLowerCase(), k -> new AtomicLong(0))
-                               .incrementAndGet();
-                }
-            }
-            
-            // Track post types
-            postTypeCounts.computeIfAbsent(post.getPostType(), k -> new AtomicLong(0))
-                         .incrementAndGet();
+            recordCounts(countPosts(List.of(post)));
             
             // Generate engagement predictions
             generateEngagementPrediction(post);
             
             // Update trending analysis
-            updateTrendingAnalysis(post);
+            updateTrendingAnalysis(post.getHashtags());
             
             // Store detailed analytics
             storeDetailedAnalytics(post);
@@ -64,14 +72,78 @@ public class SocialAnalyticsService {
         }
     }
 
+    // Consumer-batch variant: counters are aggregated per batch and the batch is acked with one multiple-ack
+    @RabbitListener(queues = RabbitConfig.ANALYTICS_QUEUE,
+            containerFactory = "batchRabbitListenerContainerFactory",
+            autoStartup = "${app.messaging.listener.consumer-batch.enabled.social-analytics:false}")
+    public void analyzePosts(List<Message<SocialPost>> messages, Channel channel) {
+        ConsumerBatches.process(messages, channel, this::prepareAnalyzePostBatch, this::analyzePost);
+    }
+
+    // Counts the batch locally; nothing is recorded or stored until the returned step runs
+    private Runnable prepareAnalyzePostBatch(List<SocialPost> posts) {
+        PostCounts counts = countPosts(posts);
+        
+        return () -> {
+            for (SocialPost post : posts) {
+                generateEngagementPrediction(post);
+                storeDetailedAnalytics(post);
+            }
+            
+            recordCounts(counts);
+            
+            // Each hashtag is checked for trending once per batch rather than once per post
+            updateTrendingAnalysis(counts.hashtags().keySet());
+            
+            logger.info("Analytics completed for batch of {} posts. Total posts tracked: {}", 
+                       posts.size(), totalPosts.get());
+        };
+    }
+
+    // Aggregate locally first so each shared counter is updated once per batch
+    private static PostCounts countPosts(List<SocialPost> posts) {
+        Map<String, Long> users = new HashMap<>();
+        Map<String, Long> hashtags = new HashMap<>();
+        Map<SocialPost.PostType, Long> postTypes = new EnumMap<>(SocialPost.PostType.class);
+        for (SocialPost post : posts) {
+            users.merge(post.getUserId(), 1L, Long::sum);
+            if (post.getHashtags() != null) {
+                for (String hashtag : post.getHashtags()) {
+                    hashtags.merge(hashtag.toLowerCase(), 1L, Long::sum);
+                }
+            }
+            postTypes.merge(post.getPostType(), 1L, Long::sum);
+        }
+        return new PostCounts(posts.size(), users, hashtags, postTypes);
+    }
+
+    private void recordCounts(PostCounts counts) {
+        // Track overall post count
+        totalPosts.addAndGet(counts.posts());
+        
+        // Track posts per user
+        counts.users().forEach(userPostCounts::add);
+        
+        // Track hashtag usage
+        counts.hashtags().forEach(hashtagCounts::add);
+        
+        // Track post types
+        counts.postTypes().forEach((postType, count) -> 
+                postTypeCounts.computeIfAbsent(postType, k -> new AtomicLong(0)).addAndGet(count));
+    }
+
+    private record PostCounts(int posts, Map<String, Long> users, Map<String, Long> hashtags,
+                              Map<SocialPost.PostType, Long> postTypes) {
+    }
+
     private void generateEngagementPrediction(SocialPost post) {
         int engagementScore = 0;
         
         // Factor in hashtags (popular hashtags get higher scores)
         if (post.getHashtags() != null) {
             for (String hashtag : post.getHashtags()) {
-                Long count = hashtagCounts.getOrDefault(hashtag.toLowerCase(), new AtomicLong(0)).get();
-                engagementScore += Math.min(count.intValue() * 2, 20); // Cap at 20 per hashtag
+                long count = hashtagCounts.get(hashtag.toLowerCase());
+                engagementScore += (int) Math.min(count * 2, 20); // Cap at 20 per hashtag
             }
         }
         
@@ -98,11 +170,11 @@ public class SocialAnalyticsService {
                    post.getPostId(), engagementScore);
     }
 
-    private void updateTrendingAnalysis(SocialPost post) {
-        if (post.getHashtags() != null) {
-            for (String hashtag : post.getHashtags()) {
-                Long count = hashtagCounts.get(hashtag.toLowerCase()).get();
-                if (count != null && count > 10) { // Trending threshold
+    private void updateTrendingAnalysis(Collection<String> hashtags) {
+        if (hashtags != null) {
+            for (String hashtag : hashtags) {
+                long count = hashtagCounts.get(hashtag.toLowerCase());
+                if (count > 10) { // Trending threshold
                     logger.info("🔥 TRENDING: #{} with {} posts", hashtag, count);
                 }
             }
@@ -122,18 +194,18 @@ public class SocialAnalyticsService {
     }
 
     public long getPostCountForUser(String userId) {
-        return userPostCounts.getOrDefault(userId, new AtomicLong(0)).get();
+        return userPostCounts.get(userId);
     }
 
     public long getHashtagCount(String hashtag) {
-        return hashtagCounts.getOrDefault(hashtag.toLowerCase(), new AtomicLong(0)).get();
+        return hashtagCounts.get(hashtag.toLowerCase());
     }
 
     public long getPostTypeCount(SocialPost.PostType postType) {
         return postTypeCounts.getOrDefault(postType, new AtomicLong(0)).get();
     }
 
-    public ConcurrentHashMap<String, AtomicLong> getTopHashtags() {
-        return new ConcurrentHashMap<>(hashtagCounts);
+    public Map<String, Long> getTopHashtags() {
+        return hashtagCounts.snapshot();
     }
 }
\ No newline at end of file
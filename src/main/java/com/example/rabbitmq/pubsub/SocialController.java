@@ -8,7 +8,6 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
 
 @RestController
 @RequestMapping("/api/social")
@@ -124,7 +123,7 @@ public class SocialController {
         private int totalTimelines;
         private long imagePosts;
         private long textPosts;
-        private Map<String, AtomicLong> topHashtags;
+        private Map<String, Long> topHashtags;
 
         public long getTotalPosts() { return totalPosts; }
         public void setTotalPosts(long totalPosts) { this.totalPosts = totalPosts; }
@@ -138,8 +137,8 @@ public class SocialController {
         public long getTextPosts() { return textPosts; }
         public void setTextPosts(long textPosts) { this.textPosts = textPosts; }
 
-        public Map<String, AtomicLong> getTopHashtags() { return topHashtags; }
-        public void setTopHashtags(Map<String, AtomicLong> topHashtags) { this.topHashtags = topHashtags; }
+        public Map<String, Long> getTopHashtags() { return topHashtags; }
+        public void setTopHashtags(Map<String, Long> topHashtags) { this.topHashtags = topHashtags; }
     }
 
     public static class UserAnalytics {
@@ -19,7 +19,8 @@ public class TimelineService {
     // In-memory storage for demonstration (use database in production)
     private final ConcurrentHashMap<String, List<SocialPost>> userTimelines = new ConcurrentHashMap<>();
 
-    @RabbitListener(queues = RabbitConfig.TIMELINE_QUEUE)
+    @RabbitListener(queues = RabbitConfig.TIMELINE_QUEUE,
+            containerFactory = "${app.messaging.listener.factory.timeline:rabbitListenerContainerFactory}")
     public void updateTimeline(SocialPost post) {
         try {
             logger.info("Updating timeline for post: {} by user: {}", post.getPostId(), post.getUsername());
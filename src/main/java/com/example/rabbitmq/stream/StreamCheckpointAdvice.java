@@ -0,0 +1,115 @@
+package com.example.rabbitmq.stream;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.amqp.core.Message;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Listener advice that records the stream offset of every delivery the listener
+ * finished without throwing. Deliveries from classic queues carry no offset header
+ * and pass straight through.
+ * <p>
+ * Where deliveries complete out of order - on the virtual-thread factory - the advice
+ * returned by {@link #dispatchTracker()} goes in front of the dispatch and notes each
+ * offset as it is handed over, in delivery order. The checkpoint then never moves past
+ * an offset that is still being processed, however far ahead later deliveries finish.
+ */
+public class StreamCheckpointAdvice implements MethodInterceptor {
+
+    static final String OFFSET_HEADER = "x-stream-offset";
+
+    private final StreamOffsetStore store;
+    // Only filled by the dispatch tracker
+    private final Map<String, NavigableSet<Long>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> highestFinished = new ConcurrentHashMap<>();
+
+    public StreamCheckpointAdvice(StreamOffsetStore store) {
+        this.store = store;
+    }
+
+    // Goes before the advice that hands deliveries to other threads
+    public MethodInterceptor dispatchTracker() {
+        return invocation -> {
+            Object[] arguments = invocation.getArguments();
+            if (arguments.length < 2 || !(arguments[1] instanceof Message message) || offset(message) == null) {
+                return invocation.proceed();
+            }
+            String queue = message.getMessageProperties().getConsumerQueue();
+            long offset = offset(message);
+            inFlight.computeIfAbsent(queue, key -> new ConcurrentSkipListSet<>()).add(offset);
+            try {
+                return invocation.proceed();
+            } catch (Throwable e) {
+                // Never handed over
+                inFlight.get(queue).remove(offset);
+                throw e;
+            }
+        };
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        if (arguments.length > 1 && arguments[1] instanceof Message message && isTracked(message)) {
+            return invokeTracked(invocation, message);
+        }
+        Object result = invocation.proceed();
+        if (arguments.length > 1) {
+            if (arguments[1] instanceof Message message) {
+                record(message);
+            } else if (arguments[1] instanceof List<?> batch && !batch.isEmpty()
+                    && batch.get(batch.size() - 1) instanceof Message last) {
+                // A stream delivers in offset order, so the last message of a batch is its checkpoint
+                record(last);
+            }
+        }
+        return result;
+    }
+
+    private Object invokeTracked(MethodInvocation invocation, Message message) throws Throwable {
+        String queue = message.getMessageProperties().getConsumerQueue();
+        long offset = offset(message);
+        NavigableSet<Long> pending = inFlight.get(queue);
+        AtomicLong finished = highestFinished.computeIfAbsent(queue, key -> new AtomicLong(-1));
+        try {
+            Object result = invocation.proceed();
+            finished.accumulateAndGet(offset, Math::max);
+            return result;
+        } finally {
+            pending.remove(offset);
+            // Everything below the oldest delivery still in flight has finished
+            long checkpoint = finished.get();
+            Long oldest = pending.isEmpty() ? null : pending.first();
+            if (oldest != null) {
+                checkpoint = Math.min(checkpoint, oldest - 1);
+            }
+            if (checkpoint >= 0) {
+                store.record(queue, checkpoint);
+            }
+        }
+    }
+
+    private boolean isTracked(Message message) {
+        Long offset = offset(message);
+        NavigableSet<Long> pending = inFlight.get(message.getMessageProperties().getConsumerQueue());
+        return offset != null && pending != null && pending.contains(offset);
+    }
+
+    private void record(Message message) {
+        Long offset = offset(message);
+        if (offset != null) {
+            store.record(message.getMessageProperties().getConsumerQueue(), offset);
+        }
+    }
+
+    private static Long offset(Message message) {
+        return message.getMessageProperties().getHeader(OFFSET_HEADER) instanceof Number number ? number.longValue() : null;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.rabbitmq.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides where listeners on stream queues attach and keeps their checkpoints.
+ * <p>
+ * A container is attached from the configured offset - {@code first}, {@code last},
+ * {@code next}, a numeric offset, an ISO-8601 timestamp or a RabbitMQ interval such as
+ * {@code 1h} - or, when resuming is enabled and a checkpoint exists, from the message
+ * after the checkpoint. Every checkpoint interval the offsets are flushed to disk and
+ * each container's consumer arguments are moved past the last processed message, so a
+ * consumer re-opened after a channel failure continues instead of starting over.
+ */
+public class StreamConsumers implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamConsumers.class);
+
+    private final StreamOffsetStore store;
+    private final Set<String> streamQueues;
+    private final Map<String, String> offsets;
+    private final String defaultOffset;
+    private final boolean resumeFromCheckpoint;
+    private final Map<AbstractMessageListenerContainer, String> containers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stream-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StreamConsumers(StreamOffsetStore store, Set<String> streamQueues, Map<String, String> offsets,
+                           String defaultOffset, boolean resumeFromCheckpoint, Duration checkpointInterval) {
+        this.store = store;
+        this.streamQueues = streamQueues;
+        this.offsets = offsets;
+        this.defaultOffset = defaultOffset;
+        this.resumeFromCheckpoint = resumeFromCheckpoint;
+        long interval = checkpointInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // Container customizer for every listener factory; containers on classic queues are left alone
+    public void attach(AbstractMessageListenerContainer container) {
+        List<String> streams = Arrays.stream(container.getQueueNames()).filter(streamQueues::contains).toList();
+        if (streams.isEmpty()) {
+            return;
+        }
+        if (container.getQueueNames().length > 1) {
+            throw new IllegalStateException("Stream listeners must consume a single queue, got "
+                    + Arrays.toString(container.getQueueNames()));
+        }
+        String queue = streams.get(0);
+        Object offset = startOffset(queue);
+        container.setConsumerArguments(Map.of(StreamCheckpointAdvice.OFFSET_HEADER, offset));
+        containers.put(container, queue);
+        logger.info("Listener {} attaches to stream {} at offset {}", container.getListenerId(), queue, offset);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+        store.flush();
+    }
+
+    private void checkpoint() {
+        try {
+            store.flush();
+            containers.forEach((container, queue) -> {
+                Long processed = store.lastProcessed(queue);
+                if (processed != null) {
+                    container.setConsumerArguments(Map.of(StreamCheckpointAdvice.OFFSET_HEADER, processed + 1));
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Stream checkpoint failed: {}", e.getMessage());
+        }
+    }
+
+    private Object startOffset(String queue) {
+        Long checkpoint = store.checkpoint(queue);
+        if (resumeFromCheckpoint && checkpoint != null) {
+            return checkpoint + 1;
+        }
+        return parseOffset(offsets.getOrDefault(queue, defaultOffset));
+    }
+
+    static Object parseOffset(String offset) {
+        if (!offset.isEmpty() && offset.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(offset);
+        }
+        try {
+            // Sent as an AMQP timestamp: the stream starts at the first chunk at or after this time
+            return Date.from(Instant.parse(offset));
+        } catch (DateTimeParseException e) {
+            // first / last / next or an interval like 30m, 1h, 7D - the broker validates these
+            return offset;
+        }
+    }
+}
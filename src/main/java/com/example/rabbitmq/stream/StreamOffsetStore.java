@@ -0,0 +1,91 @@
+package com.example.rabbitmq.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last processed offset per stream queue, checkpointed to a properties file. Offsets
+ * are recorded in memory on every delivery and only written out by {@link #flush()},
+ * so the cost per message is a map update and a crash replays at most one flush
+ * interval of messages.
+ * <p>
+ * Checkpoints loaded at startup are kept apart from offsets processed in this run:
+ * a consumer that was told to start from {@code first} must not be moved to an old
+ * checkpoint when its channel is re-opened.
+ */
+public class StreamOffsetStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamOffsetStore.class);
+
+    private final Path file;
+    private final Map<String, Long> checkpointed = new ConcurrentHashMap<>();
+    private final Map<String, Long> processed = new ConcurrentHashMap<>();
+
+    public StreamOffsetStore(Path file) {
+        this.file = file;
+        load();
+    }
+
+    public void record(String queue, long offset) {
+        processed.merge(queue, offset, Math::max);
+    }
+
+    // Offset of the last message processed by this instance, or null if none yet
+    public Long lastProcessed(String queue) {
+        return processed.get(queue);
+    }
+
+    // Most recent known position: processed in this run, otherwise the persisted checkpoint
+    public Long checkpoint(String queue) {
+        Long offset = processed.get(queue);
+        return offset != null ? offset : checkpointed.get(queue);
+    }
+
+    public synchronized void flush() {
+        if (processed.isEmpty()) {
+            return;
+        }
+        Properties properties = new Properties();
+        checkpointed.forEach((queue, offset) -> properties.setProperty(queue, Long.toString(offset)));
+        processed.forEach((queue, offset) -> properties.setProperty(queue, Long.toString(offset)));
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            // Write-then-rename so a crash mid-write never leaves a truncated checkpoint file
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                properties.store(writer, "Last processed offset per stream queue");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Keep consuming; the next flush retries and at worst more messages are replayed
+            logger.warn("Could not write stream checkpoints to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read stream checkpoints from " + file, e);
+        }
+        properties.stringPropertyNames().forEach(queue ->
+                checkpointed.put(queue, Long.parseLong(properties.getProperty(queue))));
+        logger.info("Loaded stream checkpoints from {}: {}", file, checkpointed);
+    }
+}
@@ -1,10 +1,13 @@
 package com.example.rabbitmq.topic;
 
+import com.example.rabbitmq.codec.LazyPayload;
+import com.example.rabbitmq.codec.RoutingHeaders;
 import com.example.rabbitmq.config.RabbitConfig;
 import com.example.rabbitmq.model.IoTMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -12,28 +15,44 @@ public class HVACService {
     
     private static final Logger logger = LoggerFactory.getLogger(HVACService.class);
 
-    @RabbitListener(queues = RabbitConfig.HVAC_QUEUE)
+    @RabbitListener(queues = RabbitConfig.HVAC_QUEUE,
+            containerFactory = "${app.messaging.listener.factory.hvac:rabbitListenerContainerFactory}")
+    public void processTemperatureData(@Header(name = RoutingHeaders.LOCATION, required = false) String location,
+                                       @Header(name = RoutingHeaders.VALUE, required = false) Double value,
+                                       LazyPayload<IoTMessage> message) {
+        if (location == null || value == null) {
+            // Published without routing headers; only then is the body decoded
+            processTemperatureData(message.get());
+            return;
+        }
+        adjust(location, value);
+    }
+
     public void processTemperatureData(IoTMessage message) {
+        adjust(message.getLocation(), message.getValue());
+    }
+
+    private void adjust(String location, double value) {
         try {
             logger.info("🌡️ HVAC System processing temperature data from {}: {}°C", 
-                       message.getLocation(), message.getValue());
+                       location, value);
             
             // HVAC decision logic
-            if (message.getValue() > 25.0) {
-                logger.info("   🧊 Temperature too high - Turning on AC for {}", message.getLocation());
-                activateAirConditioning(message.getLocation(), message.getValue());
-            } else if (message.getValue() < 18.0) {
-                logger.info("   🔥 Temperature too low - Turning on heating for {}", message.getLocation());
-                activateHeating(message.getLocation(), message.getValue());
+            if (value > 25.0) {
+                logger.info("   🧊 Temperature too high - Turning on AC for {}", location);
+                activateAirConditioning(location, value);
+            } else if (value < 18.0) {
+                logger.info("   🔥 Temperature too low - Turning on heating for {}", location);
+                activateHeating(location, value);
             } else {
-                logger.info("   ✅ Temperature optimal for {} - No action needed", message.getLocation());
+                logger.info("   ✅ Temperature optimal for {} - No action needed", location);
             }
             
             // Update thermostat settings
-            updateThermostat(message);
+            updateThermostat(location);
             
             // Log energy usage
-            logEnergyUsage(message);
+            logEnergyUsage(location);
             
         } catch (Exception e) {
             logger.error("Error processing temperature data: {}", e.getMessage());
@@ -51,13 +70,13 @@ public class HVACService {
         // Integration with heating control systems
     }
 
-    private void updateThermostat(IoTMessage message) {
-        logger.debug("🎛️ Updating thermostat settings for {}", message.getLocation());
+    private void updateThermostat(String location) {
+        logger.debug("🎛️ Updating thermostat settings for {}", location);
         // Update smart thermostat based on sensor data
     }
 
-    private void logEnergyUsage(IoTMessage message) {
-        logger.debug("⚡ Logging energy usage for HVAC adjustments in {}", message.getLocation());
+    private void logEnergyUsage(String location) {
+        logger.debug("⚡ Logging energy usage for HVAC adjustments in {}", location);
         // Track energy consumption for analytics
     }
 }
\ No newline at end of file
@@ -1,17 +1,18 @@
 package com.example.rabbitmq.topic;
 
 import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.messaging.MessagePublisher;
 import com.example.rabbitmq.model.IoTMessage;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/iot")
@@ -19,15 +20,16 @@ import java.util.UUID;
 public class IoTController {
 
     private static final Logger logger = LoggerFactory.getLogger(IoTController.class);
-    private final RabbitTemplate rabbitTemplate;
+    private final MessagePublisher messagePublisher;
 
-    public IoTController(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    public IoTController(MessagePublisher messagePublisher) {
+        this.messagePublisher = messagePublisher;
     }
 
     @PostMapping("/sensor/temperature")
     @Operation(summary = "Send temperature sensor data")
-    public ResponseEntity<IoTMessage> sendTemperatureData(@RequestBody TemperatureSensorRequest request) {
+    public CompletableFuture<ResponseEntity<IoTMessage>> sendTemperatureData(@RequestBody TemperatureSensorRequest request,
+            @RequestParam(defaultValue = "false") boolean awaitConfirm) {
         IoTMessage message = new IoTMessage(
             UUID.randomUUID().toString(),
             request.getDeviceId(),
@@ -39,15 +41,17 @@ public class IoTController {
         );
 
         String routingKey = message.getRoutingKey();
-        rabbitTemplate.convertAndSend(RabbitConfig.IOT_TOPIC_EXCHANGE, routingKey, message);
-        logger.info("Temperature data sent with routing key: {}", routingKey);
-        
-        return ResponseEntity.ok(message);
+        return messagePublisher.publish(RabbitConfig.IOT_TOPIC_EXCHANGE, routingKey, message, awaitConfirm)
+                .thenApply(sent -> {
+                    logger.info("Temperature data sent with routing key: {}", routingKey);
+                    return ResponseEntity.ok(message);
+                });
     }
 
     @PostMapping("/sensor/motion")
     @Operation(summary = "Send motion sensor data")
-    public ResponseEntity<IoTMessage> sendMotionData(@RequestBody MotionSensorRequest request) {
+    public CompletableFuture<ResponseEntity<IoTMessage>> sendMotionData(@RequestBody MotionSensorRequest request,
+            @RequestParam(defaultValue = "false") boolean awaitConfirm) {
         IoTMessage message = new IoTMessage(
             UUID.randomUUID().toString(),
             request.getDeviceId(),
@@ -59,15 +63,17 @@ public class IoTController {
         );
 
         String routingKey = message.getRoutingKey();
-        rabbitTemplate.convertAndSend(RabbitConfig.IOT_TOPIC_EXCHANGE, routingKey, message);
-        logger.info("Motion data sent with routing key: {}", routingKey);
-        
-        return ResponseEntity.ok(message);
+        return messagePublisher.publish(RabbitConfig.IOT_TOPIC_EXCHANGE, routingKey, message, awaitConfirm)
+                .thenApply(sent -> {
+                    logger.info("Motion data sent with routing key: {}", routingKey);
+                    return ResponseEntity.ok(message);
+                });
     }
 
     @PostMapping("/device/battery")
     @Operation(summary = "Send device battery status")
-    public ResponseEntity<IoTMessage> sendBatteryStatus(@RequestBody BatteryStatusRequest request) {
+    public CompletableFuture<ResponseEntity<IoTMessage>> sendBatteryStatus(@RequestBody BatteryStatusRequest request,
+            @RequestParam(defaultValue = "false") boolean awaitConfirm) {
         IoTMessage message = new IoTMessage(
             UUID.randomUUID().toString(),
             request.getDeviceId(),
@@ -80,20 +86,21 @@ public class IoTController {
         message.setMetadata(Map.of("battery", request.getBatteryLevel(), "charging", request.isCharging()));
 
         String routingKey = message.getRoutingKey();
-        rabbitTemplate.convertAndSend(RabbitConfig.IOT_TOPIC_EXCHANGE, routingKey, message);
-        logger.info("Battery status sent with routing key: {}", routingKey);
-        
-        return ResponseEntity.ok(message);
+        return messagePublisher.publish(RabbitConfig.IOT_TOPIC_EXCHANGE, routingKey, message, awaitConfirm)
+                .thenApply(sent -> {
+                    logger.info("Battery status sent with routing key: {}", routingKey);
+                    return ResponseEntity.ok(message);
+                });
     }
 
     @PostMapping("/sample-data")
     @Operation(summary = "Generate sample IoT data")
     public ResponseEntity<String> generateSampleData() {
         // Generate various sample messages to demonstrate routing
-        sendTemperatureData(new TemperatureSensorRequest("temp-001", "livingroom", 22.5));
-        sendTemperatureData(new TemperatureSensorRequest("temp-002", "bedroom", 20.0));
-        sendMotionData(new MotionSensorRequest("motion-001", "frontdoor", true));
-        sendBatteryStatus(new BatteryStatusRequest("camera-001", "camera", "frontdoor", 85.0, false));
+        sendTemperatureData(new TemperatureSensorRequest("temp-001", "livingroom", 22.5), false);
+        sendTemperatureData(new TemperatureSensorRequest("temp-002", "bedroom", 20.0), false);
+        sendMotionData(new MotionSensorRequest("motion-001", "frontdoor", true), false);
+        sendBatteryStatus(new BatteryStatusRequest("camera-001", "camera", "frontdoor", 85.0, false), false);
         
         return ResponseEntity.ok("Sample IoT data generated successfully");
     }
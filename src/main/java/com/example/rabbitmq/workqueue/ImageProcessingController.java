@@ -1,12 +1,13 @@
 package com.example.rabbitmq.workqueue;
 
+import com.example.rabbitmq.config.MessagingProperties;
 import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.messaging.MessagePublisher;
 import com.example.rabbitmq.model.ImageProcessingTask;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -19,10 +20,12 @@ import java.util.UUID;
 public class ImageProcessingController {
 
     private static final Logger logger = LoggerFactory.getLogger(ImageProcessingController.class);
-    private final RabbitTemplate rabbitTemplate;
+    private final MessagePublisher messagePublisher;
+    private final MessagingProperties.Partitioning partitioning;
 
-    public ImageProcessingController(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    public ImageProcessingController(MessagePublisher messagePublisher, MessagingProperties properties) {
+        this.messagePublisher = messagePublisher;
+        this.partitioning = properties.getPartitioning();
     }
 
     @PostMapping("/process")
@@ -35,7 +38,7 @@ public class ImageProcessingController {
             request.getOperations()
         );
 
-        rabbitTemplate.convertAndSend(RabbitConfig.IMAGE_PROCESSING_QUEUE, task);
+        submit(task);
         logger.info("Image processing task submitted: {} - Operations: {}", 
                    task.getTaskId(), task.getOperations());
         
@@ -53,13 +56,24 @@ public class ImageProcessingController {
                 "user-batch-" + i,
                 List.of("RESIZE", "THUMBNAIL", "WATERMARK")
             );
-            rabbitTemplate.convertAndSend(RabbitConfig.IMAGE_PROCESSING_QUEUE, task);
+            submit(task);
         }
         
         logger.info("Batch of 10 image processing tasks submitted");
         return ResponseEntity.ok("10 image processing tasks submitted successfully");
     }
 
+    private void submit(ImageProcessingTask task) {
+        if (!partitioning.isEnabled()) {
+            messagePublisher.publishToQueue(RabbitConfig.IMAGE_PROCESSING_QUEUE, task);
+            return;
+        }
+        // The consistent-hash exchange maps the key to a partition, so one user's tasks always share a queue
+        String key = "taskId".equals(partitioning.getKey()) || task.getUserId() == null
+                ? task.getTaskId() : task.getUserId();
+        messagePublisher.publish(RabbitConfig.IMAGE_PARTITION_EXCHANGE, key, task);
+    }
+
     public static class ImageProcessingRequest {
         private String imageUrl;
         private String userId;
@@ -17,7 +17,15 @@ public class ImageProcessingWorker {
     private final Random random = new Random();
     private final String workerNodeId = "worker-" + random.nextInt(1000);
 
-    @RabbitListener(queues = RabbitConfig.IMAGE_PROCESSING_QUEUE, concurrency = "3-5")
+    // Consumes the partition queues handed out by PartitionCoordinator; started by it once partitions are assigned
+    public static final String PARTITIONED_LISTENER_ID = "image-processing-partitioned";
+
+    @RabbitListener(queues = RabbitConfig.IMAGE_PROCESSING_QUEUE, concurrency = "${app.messaging.listener.concurrency.image-processing:3}",
+            containerFactory = "${app.messaging.listener.factory.image-processing:rabbitListenerContainerFactory}",
+            autoStartup = "#{!${app.messaging.partitioning.enabled:false}}")
+    @RabbitListener(id = PARTITIONED_LISTENER_ID, concurrency = "${app.messaging.listener.concurrency.image-processing:3}",
+            containerFactory = "${app.messaging.listener.factory.image-processing:rabbitListenerContainerFactory}",
+            autoStartup = "false")
     public void processImage(ImageProcessingTask task) {
         long startTime = System.currentTimeMillis();
         
@@ -0,0 +1,47 @@
+package com.example.rabbitmq.workqueue;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Rendezvous (highest-random-weight) assignment of partitions to members. Every member
+ * computes the same result from the same member list, so no leader is needed, and when
+ * a member joins or leaves only the partitions it gains or owned change hands.
+ */
+final class PartitionAssignment {
+
+    private PartitionAssignment() {
+    }
+
+    static Set<Integer> assign(int partitions, Collection<String> members, String member) {
+        Set<Integer> owned = new TreeSet<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            if (member.equals(owner(partition, members))) {
+                owned.add(partition);
+            }
+        }
+        return owned;
+    }
+
+    static String owner(int partition, Collection<String> members) {
+        String owner = null;
+        long best = Long.MIN_VALUE;
+        for (String candidate : members) {
+            long weight = mix(candidate.hashCode() * 31L + partition);
+            // Ties are broken by name so every member agrees on the owner
+            if (owner == null || weight > best || (weight == best && candidate.compareTo(owner) < 0)) {
+                owner = candidate;
+                best = weight;
+            }
+        }
+        return owner;
+    }
+
+    // SplitMix64 finalizer: spreads the nearly sequential inputs over the whole long range
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.rabbitmq.workqueue;
+
+import com.example.rabbitmq.config.MessagingProperties;
+import com.example.rabbitmq.config.RabbitConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads the image partitions over the running worker instances. Every instance
+ * heartbeats on a fanout exchange and keeps the set of members it heard from within the
+ * member timeout; from that set each one computes its own share with
+ * {@link PartitionAssignment} and moves the partitioned listener container onto exactly
+ * those queues. An instance shutting down announces it, so the others take over its
+ * partitions without waiting for the timeout.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.messaging.partitioning", name = "enabled", havingValue = "true")
+public class PartitionCoordinator implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionCoordinator.class);
+    private static final String EVENT_HEADER = "x-member-event";
+    private static final String HEARTBEAT = "heartbeat";
+    private static final String LEAVE = "leave";
+
+    private final String memberId = "worker-" + UUID.randomUUID().toString().substring(0, 8);
+    private final Map<String, Long> members = new ConcurrentHashMap<>();
+    private final RabbitTemplate rabbitTemplate;
+    private final RabbitListenerEndpointRegistry registry;
+    private final int partitions;
+    private final long memberTimeoutNanos;
+    private final Counter rebalances;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "partition-coordinator");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Set<String> assigned = Set.of();
+
+    public PartitionCoordinator(RabbitTemplate rabbitTemplate, RabbitListenerEndpointRegistry registry,
+                                MessagingProperties properties, MeterRegistry meterRegistry) {
+        MessagingProperties.Partitioning partitioning = properties.getPartitioning();
+        this.rabbitTemplate = rabbitTemplate;
+        this.registry = registry;
+        this.partitions = partitioning.getPartitions();
+        this.memberTimeoutNanos = partitioning.getMemberTimeout().toNanos();
+
+        this.rebalances = Counter.builder("messaging.partition.rebalances")
+                .description("Changes to the image partitions owned by this instance")
+                .register(meterRegistry);
+        Gauge.builder("messaging.partition.assigned", this, c -> c.assigned.size())
+                .description("Image partitions consumed by this instance")
+                .register(meterRegistry);
+        Gauge.builder("messaging.partition.members", members, Map::size)
+                .description("Worker instances seen within the member timeout")
+                .register(meterRegistry);
+
+        // The first assignment waits one interval so heartbeats from running instances have arrived
+        long interval = partitioning.getHeartbeatInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::tick, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @RabbitListener(queues = "#{imageWorkersQueue.name}", containerFactory = "coordinationRabbitListenerContainerFactory")
+    public void onMemberEvent(Message message) {
+        String member = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (LEAVE.equals(message.getMessageProperties().getHeader(EVENT_HEADER))) {
+            if (members.remove(member) != null) {
+                logger.info("Worker {} left, rebalancing image partitions", member);
+                scheduler.execute(this::rebalance);
+            }
+        } else if (members.put(member, System.nanoTime()) == null) {
+            logger.info("Worker {} joined, rebalancing image partitions", member);
+            scheduler.execute(this::rebalance);
+        }
+    }
+
+    public String getMemberId() { return memberId; }
+    public Set<String> getAssignedQueues() { return assigned; }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        announce(LEAVE);
+    }
+
+    private void tick() {
+        try {
+            announce(HEARTBEAT);
+            long now = System.nanoTime();
+            members.entrySet().removeIf(member -> {
+                boolean expired = !member.getKey().equals(memberId) && now - member.getValue() > memberTimeoutNanos;
+                if (expired) {
+                    logger.warn("Worker {} missed its heartbeats, taking over its partitions", member.getKey());
+                }
+                return expired;
+            });
+            rebalance();
+        } catch (RuntimeException e) {
+            logger.warn("Partition coordination failed: {}", e.getMessage());
+        }
+    }
+
+    private void announce(String event) {
+        Message message = MessageBuilder.withBody(memberId.getBytes(StandardCharsets.UTF_8))
+                .setContentType("text/plain")
+                .setHeader(EVENT_HEADER, event)
+                .build();
+        try {
+            rabbitTemplate.send(RabbitConfig.IMAGE_WORKERS_EXCHANGE, "", message);
+        } catch (AmqpException e) {
+            logger.warn("Could not send {} for {}: {}", event, memberId, e.getMessage());
+        }
+    }
+
+    // Only ever called from the scheduler thread, so assignments are applied one at a time
+    private void rebalance() {
+        AbstractMessageListenerContainer container = (AbstractMessageListenerContainer)
+                registry.getListenerContainer(ImageProcessingWorker.PARTITIONED_LISTENER_ID);
+        if (container == null) {
+            return;
+        }
+        Set<String> live = new TreeSet<>(members.keySet());
+        live.add(memberId);
+        Set<String> target = PartitionAssignment.assign(partitions, live, memberId).stream()
+                .map(RabbitConfig::imagePartitionQueue)
+                .collect(Collectors.toCollection(TreeSet::new));
+        if (target.equals(assigned)) {
+            return;
+        }
+
+        if (target.isEmpty()) {
+            // More instances than partitions: this one idles until someone leaves
+            container.stop();
+        } else {
+            // Changing the queues of a running container restarts its consumers once per call; moving a stopped
+            // one means a single restart, and unacked deliveries of dropped partitions are requeued on stop
+            container.stop();
+            container.setQueueNames(target.toArray(String[]::new));
+            container.start();
+        }
+        logger.info("{} now consumes {} of {} image partitions across {} workers: {}",
+                memberId, target.size(), partitions, live.size(), target);
+        assigned = Set.copyOf(target);
+        rebalances.increment();
+    }
+}
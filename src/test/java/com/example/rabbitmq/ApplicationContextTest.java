@@ -1,26 +1,30 @@
 package com.example.rabbitmq;
 
+import com.example.rabbitmq.broker.InMemoryBroker;
+import com.example.rabbitmq.broker.InMemoryBrokerConfiguration;
+import com.example.rabbitmq.config.RabbitConfig;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.test.context.TestPropertySource;
+import org.springframework.context.annotation.Import;
+
+import java.time.Duration;
+
+import static org.awaitility.Awaitility.await;
 
 @SpringBootTest
-@TestPropertySource(properties = {
-    "spring.rabbitmq.host=localhost",
-    "spring.rabbitmq.port=5672", 
-    "spring.rabbitmq.username=guest",
-    "spring.rabbitmq.password=guest"
-})
+@Import(InMemoryBrokerConfiguration.class)
 class ApplicationContextTest {
 
-    @MockBean
-    private RabbitTemplate rabbitTemplate;
+    @Autowired
+    private InMemoryBroker broker;
 
     @Test
     void contextLoads() {
-        // This test verifies that the Spring application context loads successfully
-        // All beans should be created without errors
+        // The context starts against the in-memory broker, so the listener containers come up and
+        // RabbitAdmin declares the whole topology just as it would on RabbitMQ
+        await().atMost(Duration.ofSeconds(10)).until(() -> broker.hasQueue(RabbitConfig.ORDER_QUEUE)
+                && broker.hasQueue(RabbitConfig.IMAGE_PROCESSING_QUEUE)
+                && broker.hasQueue(RabbitConfig.DLX_QUEUE));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,235 @@
+package com.example.rabbitmq;
+
+import com.example.rabbitmq.alert.AlertDispatcher;
+import com.example.rabbitmq.broker.InMemoryBroker;
+import com.example.rabbitmq.classifier.MessageClassifier;
+import com.example.rabbitmq.config.MessagingProperties;
+import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.direct.AlertService;
+import com.example.rabbitmq.direct.LogAnalyticsService;
+import com.example.rabbitmq.direct.MonitoringService;
+import com.example.rabbitmq.fixtures.MessageFixtures;
+import com.example.rabbitmq.model.ImageProcessingTask;
+import com.example.rabbitmq.model.IoTMessage;
+import com.example.rabbitmq.model.LogEntry;
+import com.example.rabbitmq.model.Order;
+import com.example.rabbitmq.model.SocialPost;
+import com.example.rabbitmq.pubsub.NotificationService;
+import com.example.rabbitmq.pubsub.SocialAnalyticsService;
+import com.example.rabbitmq.pubsub.TimelineService;
+import com.example.rabbitmq.topic.HVACService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// End-to-end throughput and publish-to-processed latency for all five patterns, using RabbitConfig's topology,
+// template, converter and default listener container factory on the in-memory broker - no RabbitMQ needed.
+// Only logs its numbers and takes a while, so it runs with -Pbenchmarks rather than in every build
+@Tag("benchmark")
+class PatternThroughputTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatternThroughputTest.class);
+    private static final int MESSAGES = 10_000;
+    private static final String SENT_AT_HEADER = "x-sent-nanos";
+
+    private static InMemoryBroker broker;
+    private static AnnotationConfigApplicationContext context;
+    private static RabbitTemplate template;
+    private static MessageConverter converter;
+    private static SimpleRabbitListenerContainerFactory factory;
+    private static MessageClassifier classifier;
+    private static MessagingProperties properties;
+    private static AlertDispatcher alertDispatcher;
+
+    @BeforeAll
+    static void setUp() {
+        broker = new InMemoryBroker();
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean(CachingConnectionFactory.class, broker::connectionFactory);
+        context.registerBean(RabbitAdmin.class, () -> new RabbitAdmin(context.getBean(ConnectionFactory.class)));
+        context.register(RabbitConfig.class);
+        context.refresh();
+        // Declares every exchange, queue and binding RabbitConfig defines, dead-letter exchange included
+        context.getBean(RabbitAdmin.class).initialize();
+
+        template = context.getBean(RabbitTemplate.class);
+        converter = context.getBean(MessageConverter.class);
+        factory = context.getBean("rabbitListenerContainerFactory", SimpleRabbitListenerContainerFactory.class);
+        classifier = context.getBean(MessageClassifier.class);
+        properties = context.getBean(MessagingProperties.class);
+        alertDispatcher = context.getBean(AlertDispatcher.class);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+        broker.close();
+    }
+
+    @Test
+    void throughputAndLatencyPerPattern() {
+        List<Scenario> scenarios = List.of(
+                // PaymentService and ImageProcessingWorker sleep for seconds per message by design, so their
+                // scenarios measure the messaging path with a listener that only decodes the payload
+                new Scenario("point-to-point", 1,
+                        i -> new Publish("", RabbitConfig.ORDER_QUEUE, MessageFixtures.order(i), 1),
+                        List.of(new Listener<>(RabbitConfig.ORDER_QUEUE, Order.class, order -> { }))),
+                new Scenario("publish-subscribe", 1,
+                        i -> new Publish(RabbitConfig.SOCIAL_FANOUT_EXCHANGE, "", MessageFixtures.socialPost(i), 3),
+                        List.of(new Listener<>(RabbitConfig.TIMELINE_QUEUE, SocialPost.class, new TimelineService()::updateTimeline),
+                                new Listener<>(RabbitConfig.NOTIFICATION_QUEUE, SocialPost.class, new NotificationService()::sendNotifications),
+                                new Listener<>(RabbitConfig.ANALYTICS_QUEUE, SocialPost.class, new SocialAnalyticsService(properties)::analyzePost))),
+                new Scenario("direct", 1,
+                        i -> logPublish(i),
+                        List.of(new Listener<>(RabbitConfig.ERROR_LOG_QUEUE, LogEntry.class, new AlertService(classifier, properties, alertDispatcher)::processErrorLog),
+                                new Listener<>(RabbitConfig.WARNING_LOG_QUEUE, LogEntry.class, new MonitoringService(classifier, properties)::processWarningLog),
+                                new Listener<>(RabbitConfig.INFO_LOG_QUEUE, LogEntry.class, new LogAnalyticsService(classifier, properties)::processInfoLog))),
+                new Scenario("topic", 1,
+                        i -> iotPublish(i),
+                        List.of(new Listener<>(RabbitConfig.HVAC_QUEUE, IoTMessage.class, new HVACService()::processTemperatureData),
+                                new Listener<>(RabbitConfig.SECURITY_QUEUE, IoTMessage.class, message -> { }),
+                                new Listener<>(RabbitConfig.BATTERY_QUEUE, IoTMessage.class, message -> { }),
+                                new Listener<>(RabbitConfig.IOT_ANALYTICS_QUEUE, IoTMessage.class, message -> { }))),
+                // Competing consumers, as the worker's default concurrency of 3 sets them up
+                new Scenario("work-queue", 3,
+                        i -> new Publish("", RabbitConfig.IMAGE_PROCESSING_QUEUE, MessageFixtures.imageTask(i), 1),
+                        List.of(new Listener<>(RabbitConfig.IMAGE_PROCESSING_QUEUE, ImageProcessingTask.class, task -> { }))));
+
+        logger.info(String.format("%-18s %10s %12s %10s %10s %10s", "pattern", "delivered", "msg/s", "p50(ms)", "p99(ms)", "max(ms)"));
+        for (Scenario scenario : scenarios) {
+            Result result = run(scenario);
+            logger.info(String.format("%-18s %10d %12.0f %10.2f %10.2f %10.2f", scenario.name, result.latencies.length,
+                    result.throughput, result.percentile(50), result.percentile(99), result.percentile(100)));
+        }
+    }
+
+    private Result run(Scenario scenario) {
+        List<Publish> publishes = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            publishes.add(scenario.publishes.apply(i));
+        }
+        int deliveries = publishes.stream().mapToInt(Publish::deliveries).sum();
+        Recorder recorder = new Recorder(deliveries);
+        List<SimpleMessageListenerContainer> containers = scenario.listeners.stream()
+                .map(listener -> start(listener, scenario.concurrency, recorder))
+                .toList();
+
+        try {
+            long start = System.nanoTime();
+            for (Publish publish : publishes) {
+                template.convertAndSend(publish.exchange, publish.routingKey, publish.payload, message -> {
+                    message.getMessageProperties().setHeader(SENT_AT_HEADER, System.nanoTime());
+                    return message;
+                });
+            }
+            assertThat(recorder.received.await(2, TimeUnit.MINUTES)).isTrue();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return new Result(deliveries / seconds, recorder.latencies);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            containers.forEach(SimpleMessageListenerContainer::stop);
+        }
+    }
+
+    private <T> SimpleMessageListenerContainer start(Listener<T> listener, int concurrency, Recorder recorder) {
+        SimpleMessageListenerContainer container = factory.createListenerContainer();
+        container.setQueueNames(listener.queue);
+        container.setConcurrentConsumers(concurrency);
+        container.setMessageListener((MessageListener) message -> {
+            long sentAt = message.getMessageProperties().getHeader(SENT_AT_HEADER);
+            message.getMessageProperties().setInferredArgumentType(listener.type);
+            listener.handler.accept(listener.type.cast(converter.fromMessage(message)));
+            recorder.record(System.nanoTime() - sentAt);
+        });
+        container.afterPropertiesSet();
+        container.start();
+        return container;
+    }
+
+    // error, warning and info in turn, each to its own queue
+    private Publish logPublish(int i) {
+        LogEntry.LogLevel level = switch (i % 3) {
+            case 0 -> LogEntry.LogLevel.ERROR;
+            case 1 -> LogEntry.LogLevel.WARNING;
+            default -> LogEntry.LogLevel.INFO;
+        };
+        LogEntry logEntry = MessageFixtures.logEntry(i, level, "Benchmark message " + i);
+        return new Publish(RabbitConfig.LOG_DIRECT_EXCHANGE, level.getRoutingKey(), logEntry, 1);
+    }
+
+    // Temperature and motion readings also match sensor.# on the analytics queue; battery status only matches device.*.battery
+    private Publish iotPublish(int i) {
+        IoTMessage message = switch (i % 3) {
+            case 0 -> MessageFixtures.temperature(i);
+            case 1 -> MessageFixtures.motion(i);
+            default -> MessageFixtures.batteryStatus(i);
+        };
+        return new Publish(RabbitConfig.IOT_TOPIC_EXCHANGE, message.getRoutingKey(), message, i % 3 == 2 ? 1 : 2);
+    }
+
+    // deliveries: how many queues the message is routed to
+    private record Publish(String exchange, String routingKey, Object payload, int deliveries) {
+    }
+
+    private record Listener<T>(String queue, Class<T> type, Consumer<T> handler) {
+    }
+
+    private record Scenario(String name, int concurrency, IntFunction<Publish> publishes, List<Listener<?>> listeners) {
+    }
+
+    private static class Recorder {
+        private final long[] latencies;
+        private final AtomicInteger next = new AtomicInteger();
+        private final CountDownLatch received;
+
+        Recorder(int deliveries) {
+            this.latencies = new long[deliveries];
+            this.received = new CountDownLatch(deliveries);
+        }
+
+        void record(long latency) {
+            int index = next.getAndIncrement();
+            if (index < latencies.length) {
+                latencies[index] = latency;
+            }
+            received.countDown();
+        }
+    }
+
+    private record Result(double throughput, long[] latencies) {
+        double percentile(int percentile) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+            return sorted[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
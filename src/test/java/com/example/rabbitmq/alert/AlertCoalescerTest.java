@@ -0,0 +1,106 @@
+package com.example.rabbitmq.alert;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlertCoalescerTest {
+
+    private final List<AlertCoalescer.Digest<String>> digests = Collections.synchronizedList(new ArrayList<>());
+    private final AlertCoalescer<String> coalescer = new AlertCoalescer<>("alert", 3, 100, digests::add);
+
+    @Test
+    void firstEventGoesOutAndRepeatsAreDigested() {
+        assertThat(coalescer.offer("payment-service:TIMEOUT", "error-0")).isTrue();
+        for (int i = 1; i <= 50_000; i++) {
+            assertThat(coalescer.offer("payment-service:TIMEOUT", "error-" + i)).isFalse();
+        }
+        assertThat(coalescer.offer("auth-service:CONNECTION", "error-x")).isTrue();
+
+        coalescer.flush();
+
+        // The auth key had nothing to fold, so it only produced its immediate alert
+        assertThat(digests).hasSize(1);
+        AlertCoalescer.Digest<String> digest = digests.get(0);
+        assertThat(digest.key()).isEqualTo("payment-service:TIMEOUT");
+        assertThat(digest.count()).isEqualTo(50_000);
+        assertThat(digest.last()).isEqualTo("error-50000");
+        assertThat(digest.exemplars()).hasSize(3).allMatch(exemplar -> exemplar.startsWith("error-"));
+        assertThat(digest.firstSeen()).isBeforeOrEqualTo(digest.lastSeen());
+    }
+
+    @Test
+    void keyQuietForAWholeIntervalAlertsImmediatelyAgain() {
+        assertThat(coalescer.offer("inventory-service:DATABASE", "a")).isTrue();
+        assertThat(coalescer.offer("inventory-service:DATABASE", "b")).isFalse();
+        coalescer.flush();
+        assertThat(coalescer.offer("inventory-service:DATABASE", "c")).isFalse();
+        coalescer.flush();
+        coalescer.flush();
+
+        assertThat(coalescer.trackedKeys()).isZero();
+        assertThat(coalescer.offer("inventory-service:DATABASE", "d")).isTrue();
+        assertThat(digests).extracting(AlertCoalescer.Digest::count).containsExactly(1L, 1L);
+    }
+
+    @Test
+    void keyFirstSeenJustBeforeAFlushFoldsItsRepeatsAfterIt() {
+        assertThat(coalescer.offer("payment-service:TIMEOUT", "a")).isTrue();
+        coalescer.flush();
+        assertThat(coalescer.offer("payment-service:TIMEOUT", "b")).isFalse();
+        coalescer.flush();
+
+        assertThat(digests).extracting(AlertCoalescer.Digest::last).containsExactly("b");
+    }
+
+    @Test
+    void keysBeyondTheLimitShareTheOverflowKey() {
+        AlertCoalescer<String> small = new AlertCoalescer<>("alert", 1, 2, digests::add);
+        int immediate = 0;
+        for (int i = 0; i < 1_000; i++) {
+            if (small.offer("tenant-" + i + ":GENERAL", "error-" + i)) {
+                immediate++;
+            }
+        }
+        small.flush();
+
+        assertThat(immediate).isEqualTo(3);
+        assertThat(digests).hasSize(1);
+        assertThat(digests.get(0).key()).isEqualTo(AlertCoalescer.OVERFLOW_KEY);
+        assertThat(digests.get(0).count()).isEqualTo(997);
+    }
+
+    @Test
+    void concurrentRepeatsLetExactlyOneThrough() throws InterruptedException {
+        AtomicInteger immediate = new AtomicInteger();
+        ExecutorService listeners = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            listeners.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (coalescer.offer("payment-service:TIMEOUT", "error")) {
+                        immediate.incrementAndGet();
+                    }
+                    if (i % 1_000 == 0) {
+                        coalescer.flush();
+                    }
+                }
+            });
+        }
+        listeners.shutdown();
+        assertThat(listeners.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        coalescer.flush();
+
+        long digested = digests.stream().mapToLong(AlertCoalescer.Digest::count).sum();
+        assertThat(immediate.get() + digested).isEqualTo(80_000);
+        // A key is only forgotten by a flush that found no event since the one before, so at most one more per flush
+        assertThat(immediate.get()).isBetween(1, 1 + 8 * 10);
+    }
+}
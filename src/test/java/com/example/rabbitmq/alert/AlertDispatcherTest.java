@@ -0,0 +1,142 @@
+package com.example.rabbitmq.alert;
+
+import com.example.rabbitmq.config.MessagingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlertDispatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MessagingProperties.AlertDispatch settings = new MessagingProperties.AlertDispatch();
+    private final List<List<AlertDispatcher.Notification<String>>> batches = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private AlertDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        if (dispatcher != null) {
+            dispatcher.destroy();
+        }
+    }
+
+    @Test
+    void criticalNotificationsJumpTheQueueAndGoOutInBatches() throws InterruptedException {
+        AlertDispatcher.Channel<String> channel = blockedChannel(100, 4, AlertDispatcher.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 6; i++) {
+            channel.send("order-service:" + i, false, "normal-" + i);
+        }
+        channel.send("payment-service:TIMEOUT", true, "critical-0");
+        channel.send("payment-service:DATABASE", true, "critical-1");
+        assertThat(depth()).isEqualTo(8);
+
+        release.countDown();
+        dispatcher.destroy();
+
+        assertThat(payloads()).containsExactly("first", "critical-0", "critical-1",
+                "normal-0", "normal-1", "normal-2", "normal-3", "normal-4", "normal-5");
+        assertThat(batches).extracting(List::size).containsExactly(1, 4, 4);
+        assertThat(meterRegistry.get("messaging.alerts.dispatch.latency").tag("channel", "slack").timer().count()).isEqualTo(9);
+    }
+
+    @Test
+    void fullQueueDropsTheOldestNormalNotification() throws InterruptedException {
+        AlertDispatcher.Channel<String> channel = blockedChannel(3, 10, AlertDispatcher.OverflowPolicy.DROP_OLDEST);
+        channel.send("payment-service:TIMEOUT", true, "critical");
+        for (int i = 0; i < 4; i++) {
+            channel.send("order-service:" + i, false, "normal-" + i);
+        }
+
+        release.countDown();
+        dispatcher.destroy();
+
+        assertThat(payloads()).containsExactly("first", "critical", "normal-2", "normal-3");
+        assertThat(meterRegistry.get("messaging.alerts.dropped").tag("channel", "slack").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void coalescingMergesRepeatsOfAQueuedKey() throws InterruptedException {
+        AlertDispatcher.Channel<String> channel = blockedChannel(10, 10, AlertDispatcher.OverflowPolicy.COALESCE);
+        for (int i = 0; i < 1_000; i++) {
+            channel.send("order-service:TIMEOUT", false, "timeout-" + i);
+        }
+        channel.send("order-service:DATABASE", false, "database");
+
+        release.countDown();
+        dispatcher.destroy();
+
+        List<AlertDispatcher.Notification<String>> sent = batches.get(1);
+        assertThat(sent).extracting(AlertDispatcher.Notification::payload).containsExactly("timeout-999", "database");
+        assertThat(sent).extracting(AlertDispatcher.Notification::occurrences).containsExactly(1_000, 1);
+        assertThat(meterRegistry.get("messaging.alerts.coalesced").tag("channel", "slack").counter().count()).isEqualTo(999);
+    }
+
+    @Test
+    void criticalRepeatMovesAQueuedNormalNotificationAhead() throws InterruptedException {
+        AlertDispatcher.Channel<String> channel = blockedChannel(10, 10, AlertDispatcher.OverflowPolicy.COALESCE);
+        channel.send("order-service:TIMEOUT", false, "timeout");
+        channel.send("payment-service:DATABASE", false, "database");
+        channel.send("payment-service:DATABASE", true, "database-escalated");
+
+        release.countDown();
+        dispatcher.destroy();
+
+        List<AlertDispatcher.Notification<String>> sent = batches.get(1);
+        assertThat(sent).extracting(AlertDispatcher.Notification::payload).containsExactly("database-escalated", "timeout");
+        assertThat(sent).extracting(AlertDispatcher.Notification::critical).containsExactly(true, false);
+        assertThat(sent.get(0).occurrences()).isEqualTo(2);
+    }
+
+    @Test
+    void disabledDispatcherSendsOnTheCallerThread() {
+        settings.setEnabled(false);
+        dispatcher = new AlertDispatcher(settings, meterRegistry);
+        List<String> threads = new ArrayList<>();
+        AlertDispatcher.Channel<String> channel = dispatcher.channel("email", notifications -> threads.add(Thread.currentThread().getName()));
+
+        channel.send("auth-service:CONNECTION", true, "alert");
+
+        assertThat(threads).containsExactly(Thread.currentThread().getName());
+    }
+
+    // A slack channel with one worker, held in its sender on a first notification until release
+    private AlertDispatcher.Channel<String> blockedChannel(int capacity, int batchSize, AlertDispatcher.OverflowPolicy policy)
+            throws InterruptedException {
+        MessagingProperties.AlertDispatch.Channel config = new MessagingProperties.AlertDispatch.Channel();
+        config.setCapacity(capacity);
+        config.setBatchSize(batchSize);
+        config.setOverflowPolicy(policy);
+        settings.getChannels().put("slack", config);
+        dispatcher = new AlertDispatcher(settings, meterRegistry);
+        AlertDispatcher.Channel<String> channel = dispatcher.channel("slack", notifications -> {
+            batches.add(notifications);
+            blocked.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        channel.send("warmup", false, "first");
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        return channel;
+    }
+
+    private double depth() {
+        return meterRegistry.get("messaging.alerts.queue.depth").tag("channel", "slack").gauge().value();
+    }
+
+    private List<String> payloads() {
+        return batches.stream().flatMap(List::stream).map(AlertDispatcher.Notification::payload).toList();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.rabbitmq.broker;
+
+// A protocol error that closes the channel, with the reply code and failing method a real broker would report
+final class ChannelError extends RuntimeException {
+
+    static final int NOT_FOUND = 404;
+    static final int PRECONDITION_FAILED = 406;
+    static final int COMMAND_INVALID = 503;
+
+    final int replyCode;
+    final int classId;
+    final int methodId;
+
+    ChannelError(int replyCode, String replyText, int classId, int methodId) {
+        super(replyText, null, false, false);
+        this.replyCode = replyCode;
+        this.classId = classId;
+        this.methodId = methodId;
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.rabbitmq.broker;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AddressResolver;
+import com.rabbitmq.client.Connection;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An AMQP 0-9-1 broker that lives in the test JVM, plugged in underneath a regular
+ * {@link CachingConnectionFactory} so {@code RabbitTemplate}, {@code RabbitAdmin},
+ * publisher confirms and returns and both listener containers run unchanged.
+ * <p>
+ * Supports the default, direct, fanout and topic exchanges; classic queues with
+ * per-consumer and global prefetch, requeue, TTL ({@code x-message-ttl} and per-message
+ * expiration), {@code x-max-length} and dead-lettering with {@code x-death} headers;
+ * exclusive and auto-delete queues. Stream and quorum queue types are accepted but
+ * behave as classic queues, and plugin exchange types are refused, as they are on a
+ * broker without the plugin. Nothing is persisted.
+ */
+public class InMemoryBroker implements AutoCloseable {
+
+    private static final long EXPIRY_SWEEP_MILLIS = 50;
+
+    private final Map<String, InMemoryExchange> exchanges = new ConcurrentHashMap<>();
+    private final Map<String, InMemoryQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionIds = new AtomicInteger();
+    private final ScheduledExecutorService expiry = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "in-memory-broker-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public InMemoryBroker() {
+        for (String type : InMemoryExchange.SUPPORTED_TYPES) {
+            exchanges.put("amq." + type, new InMemoryExchange("amq." + type, type, true, false));
+        }
+        expiry.scheduleWithFixedDelay(() -> queues.values().forEach(InMemoryQueue::dispatch),
+                EXPIRY_SWEEP_MILLIS, EXPIRY_SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Confirms and returns are enabled to match spring.rabbitmq.publisher-confirm-type/publisher-returns
+    public CachingConnectionFactory connectionFactory() {
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory(clientConnectionFactory());
+        connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        connectionFactory.setPublisherReturns(true);
+        return connectionFactory;
+    }
+
+    // For code that builds its own Spring connection factory around a client factory
+    public com.rabbitmq.client.ConnectionFactory clientConnectionFactory() {
+        com.rabbitmq.client.ConnectionFactory clientConnectionFactory = new com.rabbitmq.client.ConnectionFactory() {
+            @Override
+            public Connection newConnection(ExecutorService executor, AddressResolver addressResolver,
+                                            String clientProvidedName) {
+                String name = clientProvidedName != null ? clientProvidedName : "connection-" + connectionIds.incrementAndGet();
+                return new InMemoryConnection(InMemoryBroker.this, name).proxy;
+            }
+        };
+        clientConnectionFactory.setAutomaticRecoveryEnabled(false);
+        return clientConnectionFactory;
+    }
+
+    public int messageCount(String queue) {
+        InMemoryQueue target = queues.get(queue);
+        if (target == null) {
+            throw new IllegalArgumentException("No queue " + queue);
+        }
+        return target.messageCount();
+    }
+
+    public boolean hasQueue(String queue) {
+        return queues.containsKey(queue);
+    }
+
+    @Override
+    public void close() {
+        expiry.shutdownNow();
+    }
+
+    InMemoryExchange declareExchange(String name, String type, boolean durable, boolean autoDelete) {
+        if (!InMemoryExchange.SUPPORTED_TYPES.contains(type)) {
+            // What RabbitMQ answers for a plugin exchange type when the plugin isn't enabled
+            throw new ChannelError(ChannelError.COMMAND_INVALID,
+                    "COMMAND_INVALID - invalid exchange type '" + type + "'", 40, 10);
+        }
+        InMemoryExchange exchange = exchanges.computeIfAbsent(name,
+                key -> new InMemoryExchange(name, type, durable, autoDelete));
+        if (!exchange.type.equals(type) || exchange.durable != durable || exchange.autoDelete != autoDelete) {
+            throw new ChannelError(ChannelError.PRECONDITION_FAILED, "PRECONDITION_FAILED - inequivalent arg for exchange '"
+                    + name + "' in vhost '/': received type '" + type + "' but current is '" + exchange.type + "'", 40, 10);
+        }
+        return exchange;
+    }
+
+    InMemoryExchange requireExchange(String name, int methodId) {
+        InMemoryExchange exchange = exchanges.get(name);
+        if (exchange == null) {
+            throw new ChannelError(ChannelError.NOT_FOUND, "NOT_FOUND - no exchange '" + name + "' in vhost '/'", 40, methodId);
+        }
+        return exchange;
+    }
+
+    void deleteExchange(String name) {
+        exchanges.remove(name);
+    }
+
+    InMemoryQueue declareQueue(String name, boolean durable, boolean exclusive, boolean autoDelete,
+                               Map<String, Object> arguments, InMemoryConnection connection) {
+        InMemoryQueue queue = queues.computeIfAbsent(name, key -> new InMemoryQueue(this, name, durable, exclusive,
+                autoDelete, arguments, exclusive ? connection : null));
+        if (!queue.isEquivalent(durable, exclusive, autoDelete, arguments)) {
+            throw new ChannelError(ChannelError.PRECONDITION_FAILED, "PRECONDITION_FAILED - inequivalent arg for queue '"
+                    + name + "' in vhost '/': declared " + arguments + " but current is " + queue.arguments, 50, 10);
+        }
+        return queue;
+    }
+
+    InMemoryQueue requireQueue(String name, int classId, int methodId) {
+        InMemoryQueue queue = queues.get(name);
+        if (queue == null) {
+            throw new ChannelError(ChannelError.NOT_FOUND, "NOT_FOUND - no queue '" + name + "' in vhost '/'", classId, methodId);
+        }
+        return queue;
+    }
+
+    // Returns the number of messages the queue held
+    int deleteQueue(String name) {
+        InMemoryQueue queue = queues.remove(name);
+        if (queue == null) {
+            return 0;
+        }
+        exchanges.values().forEach(exchange -> exchange.unbindQueue(name));
+        int messageCount = queue.messageCount();
+        for (InMemoryConsumer consumer : queue.markDeleted()) {
+            consumer.channel.cancelledByBroker(consumer);
+        }
+        return messageCount;
+    }
+
+    void bind(String queue, String exchange, String routingKey) {
+        requireQueue(queue, 50, 20);
+        requireExchange(exchange, 20).bind(queue, routingKey);
+    }
+
+    void unbind(String queue, String exchange, String routingKey) {
+        requireQueue(queue, 50, 50);
+        requireExchange(exchange, 50).unbind(queue, routingKey);
+    }
+
+    // True when at least one queue took the message
+    boolean publish(String exchangeName, String routingKey, AMQP.BasicProperties properties, byte[] body) {
+        Set<String> targets = new LinkedHashSet<>();
+        if (exchangeName.isEmpty()) {
+            targets.add(routingKey);
+        } else {
+            InMemoryExchange exchange = exchanges.get(exchangeName);
+            if (exchange == null) {
+                throw new ChannelError(ChannelError.NOT_FOUND,
+                        "NOT_FOUND - no exchange '" + exchangeName + "' in vhost '/'", 60, 40);
+            }
+            exchange.route(routingKey, targets);
+        }
+
+        long now = System.currentTimeMillis();
+        Long expiration = properties.getExpiration() == null ? null : Long.parseLong(properties.getExpiration());
+        boolean routed = false;
+        for (String name : targets) {
+            InMemoryQueue queue = queues.get(name);
+            if (queue != null) {
+                queue.enqueue(new StoredMessage(exchangeName, routingKey, properties, body, queue.expiresAt(now, expiration)));
+                routed = true;
+            }
+        }
+        return routed;
+    }
+
+    // Without a dead-letter exchange, or with one that doesn't exist, the messages are dropped - as on RabbitMQ
+    void deadLetter(InMemoryQueue source, List<StoredMessage> messages, String reason) {
+        if (messages.isEmpty() || source.deadLetterExchange == null) {
+            return;
+        }
+        for (StoredMessage message : messages) {
+            String routingKey = source.deadLetterRoutingKey != null ? source.deadLetterRoutingKey : message.routingKey;
+            try {
+                publish(source.deadLetterExchange, routingKey, deathProperties(source, message, reason), message.body);
+            } catch (ChannelError e) {
+                return;
+            }
+        }
+    }
+
+    void connectionClosed(InMemoryConnection connection) {
+        List<String> exclusive = new ArrayList<>();
+        queues.values().stream().filter(queue -> queue.owner == connection).forEach(queue -> exclusive.add(queue.name));
+        exclusive.forEach(this::deleteQueue);
+    }
+
+    // x-death keeps one entry per queue and reason, most recent first; the per-message expiration is dropped
+    @SuppressWarnings("unchecked")
+    private static AMQP.BasicProperties deathProperties(InMemoryQueue queue, StoredMessage message, String reason) {
+        Map<String, Object> headers = message.properties.getHeaders() == null
+                ? new HashMap<>() : new HashMap<>(message.properties.getHeaders());
+        List<Map<String, Object>> deaths = new ArrayList<>();
+        Map<String, Object> death = null;
+        if (headers.get("x-death") instanceof List<?> existing) {
+            for (Object entry : existing) {
+                Map<String, Object> copy = new HashMap<>((Map<String, Object>) entry);
+                if (death == null && queue.name.equals(String.valueOf(copy.get("queue")))
+                        && reason.equals(String.valueOf(copy.get("reason")))) {
+                    death = copy;
+                } else {
+                    deaths.add(copy);
+                }
+            }
+        }
+        if (death == null) {
+            death = new HashMap<>();
+            death.put("queue", queue.name);
+            death.put("reason", reason);
+            death.put("exchange", message.exchange);
+            death.put("routing-keys", List.of(message.routingKey));
+            death.put("count", 0L);
+        }
+        death.put("count", ((Number) death.get("count")).longValue() + 1);
+        death.put("time", new Date());
+        deaths.add(0, death);
+        headers.put("x-death", deaths);
+        headers.putIfAbsent("x-first-death-queue", queue.name);
+        headers.putIfAbsent("x-first-death-reason", reason);
+        headers.putIfAbsent("x-first-death-exchange", message.exchange);
+        return message.properties.builder().headers(headers).expiration(null).build();
+    }
+}
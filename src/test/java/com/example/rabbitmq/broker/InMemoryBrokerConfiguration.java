@@ -0,0 +1,21 @@
+package com.example.rabbitmq.broker;
+
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+// Import into a @SpringBootTest to run the whole application against the in-memory broker; Boot's
+// connection factory backs off because this one is defined
+@TestConfiguration(proxyBeanMethods = false)
+public class InMemoryBrokerConfiguration {
+
+    @Bean
+    public InMemoryBroker inMemoryBroker() {
+        return new InMemoryBroker();
+    }
+
+    @Bean
+    public CachingConnectionFactory rabbitConnectionFactory(InMemoryBroker inMemoryBroker) {
+        return inMemoryBroker.connectionFactory();
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.rabbitmq.broker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class InMemoryBrokerTest {
+
+    private InMemoryBroker broker;
+    private CachingConnectionFactory connectionFactory;
+    private RabbitAdmin admin;
+    private RabbitTemplate template;
+
+    @BeforeEach
+    void setUp() {
+        broker = new InMemoryBroker();
+        connectionFactory = broker.connectionFactory();
+        admin = new RabbitAdmin(connectionFactory);
+        template = new RabbitTemplate(connectionFactory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+        broker.close();
+    }
+
+    @Test
+    void routesThroughDefaultDirectFanoutAndTopicExchanges() {
+        DirectExchange direct = new DirectExchange("logs");
+        FanoutExchange fanout = new FanoutExchange("posts");
+        TopicExchange topic = new TopicExchange("devices");
+        List.of(direct, fanout, topic).forEach(admin::declareExchange);
+        for (String queue : List.of("errors", "timeline", "notifications", "hvac", "all-sensors", "battery")) {
+            admin.declareQueue(new Queue(queue));
+        }
+        List<Binding> bindings = List.of(
+                BindingBuilder.bind(new Queue("errors")).to(direct).with("error"),
+                BindingBuilder.bind(new Queue("timeline")).to(fanout),
+                BindingBuilder.bind(new Queue("notifications")).to(fanout),
+                BindingBuilder.bind(new Queue("hvac")).to(topic).with("sensor.temperature.*"),
+                BindingBuilder.bind(new Queue("all-sensors")).to(topic).with("sensor.#"),
+                BindingBuilder.bind(new Queue("battery")).to(topic).with("device.*.battery"));
+        bindings.forEach(admin::declareBinding);
+
+        template.convertAndSend("", "errors", "point-to-point");
+        template.convertAndSend("logs", "error", "direct");
+        template.convertAndSend("logs", "info", "unrouted");
+        template.convertAndSend("posts", "ignored", "fanout");
+        template.convertAndSend("devices", "sensor.temperature.room1", "temperature");
+        template.convertAndSend("devices", "sensor.motion.hall.north", "motion");
+        template.convertAndSend("devices", "device.sensor-7.battery", "battery");
+        template.convertAndSend("devices", "device.sensor-7.status.battery", "no match");
+
+        assertThat(broker.messageCount("errors")).isEqualTo(2);
+        assertThat(broker.messageCount("timeline")).isEqualTo(1);
+        assertThat(broker.messageCount("notifications")).isEqualTo(1);
+        assertThat(broker.messageCount("hvac")).isEqualTo(1);
+        assertThat(broker.messageCount("all-sensors")).isEqualTo(2);
+        assertThat(broker.messageCount("battery")).isEqualTo(1);
+    }
+
+    @Test
+    void rejectedMessagesAreDeadLetteredWithDeathHeaders() {
+        declareWithDeadLetterQueue(QueueBuilder.durable("orders")
+                .withArgument("x-dead-letter-exchange", "dlx")
+                .withArgument("x-dead-letter-routing-key", "dead")
+                .build());
+
+        SimpleMessageListenerContainer container = container("orders", message -> {
+            throw new AmqpRejectAndDontRequeueException("payment declined");
+        });
+        try {
+            template.convertAndSend("", "orders", "order-1");
+            Message deadLetter = template.receive("dead-letters", 5_000);
+
+            assertThat(deadLetter).isNotNull();
+            Map<String, ?> death = deadLetter.getMessageProperties().getXDeathHeader().get(0);
+            assertThat(death.get("queue")).isEqualTo("orders");
+            assertThat(death.get("reason")).isEqualTo("rejected");
+            assertThat(death.get("count")).isEqualTo(1L);
+        } finally {
+            container.stop();
+        }
+    }
+
+    @Test
+    void expiredMessagesAreDeadLettered() {
+        declareWithDeadLetterQueue(QueueBuilder.durable("images")
+                .withArgument("x-dead-letter-exchange", "dlx")
+                .withArgument("x-dead-letter-routing-key", "dead")
+                .withArgument("x-message-ttl", 50)
+                .build());
+
+        template.convertAndSend("", "images", "task-1");
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> broker.messageCount("dead-letters") == 1);
+        assertThat(broker.messageCount("images")).isZero();
+    }
+
+    @Test
+    void requeuedMessagesAreRedelivered() {
+        admin.declareQueue(new Queue("payments"));
+        List<Boolean> redelivered = new CopyOnWriteArrayList<>();
+        SimpleMessageListenerContainer container = container("payments", message -> {
+            redelivered.add(message.getMessageProperties().isRedelivered());
+            if (redelivered.size() == 1) {
+                throw new IllegalStateException("gateway timeout");
+            }
+        });
+        try {
+            template.convertAndSend("", "payments", "payment-1");
+
+            await().atMost(Duration.ofSeconds(5)).until(() -> redelivered.size() == 2);
+            assertThat(redelivered).containsExactly(false, true);
+        } finally {
+            container.stop();
+        }
+    }
+
+    @Test
+    void unroutableMandatoryMessagesAreReturnedThenConfirmed() throws Exception {
+        template.setMandatory(true);
+        CorrelationData correlation = new CorrelationData("order-1");
+
+        template.convertAndSend("", "no-such-queue", "order-1", correlation);
+
+        assertThat(correlation.getFuture().get(5, TimeUnit.SECONDS).isAck()).isTrue();
+        assertThat(correlation.getReturned()).isNotNull();
+        assertThat(correlation.getReturned().getReplyText()).isEqualTo("NO_ROUTE");
+    }
+
+    private void declareWithDeadLetterQueue(Queue queue) {
+        DirectExchange dlx = new DirectExchange("dlx");
+        Queue deadLetters = new Queue("dead-letters");
+        admin.declareExchange(dlx);
+        admin.declareQueue(deadLetters);
+        admin.declareBinding(BindingBuilder.bind(deadLetters).to(dlx).with("dead"));
+        admin.declareQueue(queue);
+    }
+
+    private SimpleMessageListenerContainer container(String queue, MessageListener listener) {
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(queue);
+        container.setMessageListener(listener);
+        container.setDefaultRequeueRejected(true);
+        container.afterPropertiesSet();
+        container.start();
+        return container;
+    }
+}
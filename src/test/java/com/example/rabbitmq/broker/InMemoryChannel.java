@@ -0,0 +1,514 @@
+package com.example.rabbitmq.broker;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmCallback;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.Return;
+import com.rabbitmq.client.ReturnCallback;
+import com.rabbitmq.client.ReturnListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.impl.AMQImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link Channel} handed to the client, implemented as a dynamic proxy over the
+ * methods Spring AMQP actually calls; anything else fails with
+ * {@link UnsupportedOperationException} rather than silently doing nothing.
+ * <p>
+ * Like the Java client, every callback for a channel - consume-ok, deliveries, returns,
+ * confirms, cancel and shutdown notifications - runs on one thread per channel, in
+ * the order the broker produced them.
+ */
+final class InMemoryChannel implements InvocationHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryChannel.class);
+
+    private static final int REPLY_SUCCESS = 200;
+    private static final int NO_ROUTE = 312;
+
+    final int number;
+    final Channel proxy;
+    private final InMemoryBroker broker;
+    private final InMemoryConnection connection;
+    private final ExecutorService dispatcher;
+
+    private final Map<String, InMemoryConsumer> consumers = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Unacked> unacked = new ConcurrentSkipListMap<>();
+    private final AtomicLong deliveryTags = new AtomicLong();
+    // Unacked consumer deliveries, counted against a global (per-channel) basic.qos
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong publishSeqNo = new AtomicLong(1);
+    private final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+    private final List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<>();
+    private final List<ReturnListener> returnListeners = new CopyOnWriteArrayList<>();
+
+    private volatile int consumerPrefetch;
+    private volatile int globalPrefetch;
+    private volatile boolean confirmMode;
+    private volatile ShutdownSignalException closeReason;
+
+    InMemoryChannel(InMemoryBroker broker, InMemoryConnection connection, int number) {
+        this.broker = broker;
+        this.connection = connection;
+        this.number = number;
+        this.dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "in-memory-" + connection.name + "-" + number);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.proxy = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] {Channel.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        switch (name) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "InMemoryChannel(" + connection.name + "#" + number + ")";
+            case "getChannelNumber":
+                return number;
+            case "getConnection":
+                return connection.proxy;
+            case "isOpen":
+                return closeReason == null;
+            case "getCloseReason":
+                return closeReason;
+            case "addShutdownListener":
+                shutdownListeners.add((ShutdownListener) args[0]);
+                return null;
+            case "removeShutdownListener":
+                shutdownListeners.remove((ShutdownListener) args[0]);
+                return null;
+            case "close", "abort":
+                // Lenient on a closed channel, so cache eviction and container shutdown can race freely
+                if (args != null && args.length >= 2) {
+                    shutdown(signal(false, true, (Integer) args[0], (String) args[1], 0, 0));
+                } else {
+                    shutdown(signal(false, true, REPLY_SUCCESS, "OK", 0, 0));
+                }
+                return null;
+            default:
+                break;
+        }
+
+        ShutdownSignalException closed = closeReason;
+        if (closed != null) {
+            throw new AlreadyClosedException(closed);
+        }
+        try {
+            return invokeOpen(name, args == null ? new Object[0] : args);
+        } catch (ChannelError error) {
+            // Synchronous methods fail with the close reason, exactly as the Java client reports them
+            ShutdownSignalException signal = signal(false, false, error.replyCode, error.getMessage(),
+                    error.classId, error.methodId);
+            shutdown(signal);
+            throw new IOException(signal);
+        }
+    }
+
+    private Object invokeOpen(String name, Object[] args) throws IOException {
+        return switch (name) {
+            case "basicQos" -> basicQos(args);
+            case "basicPublish" -> basicPublish(args);
+            case "basicConsume" -> basicConsume(args);
+            case "basicCancel" -> basicCancel((String) args[0]);
+            case "basicGet" -> basicGet((String) args[0], (Boolean) args[1]);
+            case "basicAck" -> settle((Long) args[0], (Boolean) args[1], Outcome.ACK, 80);
+            case "basicNack" -> settle((Long) args[0], (Boolean) args[1],
+                    (Boolean) args[2] ? Outcome.REQUEUE : Outcome.DEAD_LETTER, 120);
+            case "basicReject" -> settle((Long) args[0], false,
+                    (Boolean) args[1] ? Outcome.REQUEUE : Outcome.DEAD_LETTER, 90);
+            case "exchangeDeclare" -> exchangeDeclare(args);
+            case "exchangeDeclarePassive" -> {
+                broker.requireExchange((String) args[0], 10);
+                yield new AMQImpl.Exchange.DeclareOk();
+            }
+            case "exchangeDelete" -> {
+                broker.deleteExchange((String) args[0]);
+                yield new AMQImpl.Exchange.DeleteOk();
+            }
+            case "queueDeclare" -> queueDeclare(args);
+            case "queueDeclarePassive" -> {
+                InMemoryQueue queue = broker.requireQueue((String) args[0], 50, 10);
+                yield new AMQImpl.Queue.DeclareOk(queue.name, queue.messageCount(), queue.consumerCount());
+            }
+            // Deleting a queue that doesn't exist succeeds, as it does on RabbitMQ 3.x and later
+            case "queueDelete" -> new AMQImpl.Queue.DeleteOk(broker.deleteQueue((String) args[0]));
+            case "queuePurge" -> new AMQImpl.Queue.PurgeOk(broker.requireQueue((String) args[0], 50, 30).purge());
+            case "queueBind" -> {
+                broker.bind((String) args[0], (String) args[1], (String) args[2]);
+                yield new AMQImpl.Queue.BindOk();
+            }
+            case "queueUnbind" -> {
+                broker.unbind((String) args[0], (String) args[1], (String) args[2]);
+                yield new AMQImpl.Queue.UnbindOk();
+            }
+            case "messageCount" -> (long) broker.requireQueue((String) args[0], 50, 10).messageCount();
+            case "consumerCount" -> (long) broker.requireQueue((String) args[0], 50, 10).consumerCount();
+            case "confirmSelect" -> {
+                confirmMode = true;
+                yield new AMQImpl.Confirm.SelectOk();
+            }
+            case "getNextPublishSeqNo" -> confirmMode ? publishSeqNo.get() : 0L;
+            // Confirms are issued as soon as a message is routed, so there is never anything to wait for
+            case "waitForConfirms" -> true;
+            case "waitForConfirmsOrDie" -> null;
+            case "addConfirmListener" -> addConfirmListener(args);
+            case "removeConfirmListener" -> confirmListeners.remove((ConfirmListener) args[0]);
+            case "clearConfirmListeners" -> {
+                confirmListeners.clear();
+                yield null;
+            }
+            case "addReturnListener" -> addReturnListener(args[0]);
+            case "removeReturnListener" -> returnListeners.remove((ReturnListener) args[0]);
+            case "clearReturnListeners" -> {
+                returnListeners.clear();
+                yield null;
+            }
+            default -> throw new UnsupportedOperationException("Channel." + name + " is not supported by the in-memory broker");
+        };
+    }
+
+    // basic.qos without global applies to consumers started afterwards; with global it caps the whole channel
+    private Object basicQos(Object[] args) {
+        int prefetch = (Integer) args[args.length == 3 ? 1 : 0];
+        boolean global = args.length > 1 && (Boolean) args[args.length - 1];
+        if (global) {
+            globalPrefetch = prefetch;
+            redispatch(Set.of());
+        } else {
+            consumerPrefetch = prefetch;
+        }
+        return null;
+    }
+
+    private Object basicPublish(Object[] args) {
+        String exchange = (String) args[0];
+        String routingKey = (String) args[1];
+        boolean mandatory = args.length >= 5 && (Boolean) args[2];
+        AMQP.BasicProperties properties = (AMQP.BasicProperties) args[args.length - 2];
+        if (properties == null) {
+            properties = new AMQP.BasicProperties.Builder().build();
+        }
+        // The client may reuse its buffer once basicPublish returns
+        byte[] body = ((byte[]) args[args.length - 1]).clone();
+        long seqNo = confirmMode ? publishSeqNo.getAndIncrement() : 0;
+
+        boolean routed;
+        try {
+            routed = broker.publish(exchange, routingKey, properties, body);
+        } catch (ChannelError error) {
+            // basic.publish has no reply; the broker closes the channel and pending confirms are nacked by the client
+            shutdown(signal(false, false, error.replyCode, error.getMessage(), error.classId, error.methodId));
+            return null;
+        }
+        if (!routed && mandatory) {
+            AMQP.BasicProperties returnedProperties = properties;
+            callback(() -> {
+                for (ReturnListener listener : returnListeners) {
+                    listener.handleReturn(NO_ROUTE, "NO_ROUTE", exchange, routingKey, returnedProperties, body);
+                }
+            });
+        }
+        if (confirmMode) {
+            // basic.return always precedes the confirm for the same message
+            callback(() -> {
+                for (ConfirmListener listener : confirmListeners) {
+                    listener.handleAck(seqNo, false);
+                }
+            });
+        }
+        return null;
+    }
+
+    private String basicConsume(Object[] args) {
+        if (!(args[args.length - 1] instanceof Consumer callback)) {
+            throw new UnsupportedOperationException("basicConsume is only supported with a Consumer callback");
+        }
+        InMemoryQueue queue = broker.requireQueue((String) args[0], 60, 20);
+        boolean autoAck = args.length > 2 && (Boolean) args[1];
+        String tag = args.length > 3 && args[2] instanceof String requested && !requested.isEmpty()
+                ? requested : "amq.ctag-" + UUID.randomUUID();
+        InMemoryConsumer consumer = new InMemoryConsumer(tag, this, queue, callback, autoAck, consumerPrefetch);
+        consumers.put(tag, consumer);
+        callback(() -> callback.handleConsumeOk(tag));
+        queue.addConsumer(consumer);
+        return tag;
+    }
+
+    // Deliveries already sent to the consumer stay unacked until the application settles them
+    private Object basicCancel(String tag) {
+        InMemoryConsumer consumer = consumers.remove(tag);
+        if (consumer == null) {
+            logger.warn("Tried to cancel consumer with unknown tag {}", tag);
+            return null;
+        }
+        detach(consumer);
+        callback(() -> consumer.callback.handleCancelOk(tag));
+        return null;
+    }
+
+    private GetResponse basicGet(String queueName, boolean autoAck) {
+        InMemoryQueue queue = broker.requireQueue(queueName, 60, 70);
+        StoredMessage message = queue.poll();
+        if (message == null) {
+            return null;
+        }
+        long deliveryTag = deliveryTags.incrementAndGet();
+        if (!autoAck) {
+            unacked.put(deliveryTag, new Unacked(null, queue, message));
+        }
+        Envelope envelope = new Envelope(deliveryTag, message.redelivered, message.exchange, message.routingKey);
+        return new GetResponse(envelope, message.properties, message.body, queue.messageCount());
+    }
+
+    private Object settle(long deliveryTag, boolean multiple, Outcome outcome, int methodId) {
+        List<Unacked> settled = new ArrayList<>();
+        if (multiple) {
+            // Tag 0 with multiple set covers everything outstanding on the channel
+            Map.Entry<Long, Unacked> entry;
+            while ((entry = unacked.firstEntry()) != null && (deliveryTag == 0 || entry.getKey() <= deliveryTag)) {
+                // Acks can arrive from many threads; whoever removes an entry settles it
+                if (unacked.remove(entry.getKey(), entry.getValue())) {
+                    settled.add(entry.getValue());
+                }
+            }
+        } else {
+            Unacked entry = unacked.remove(deliveryTag);
+            if (entry == null) {
+                throw new ChannelError(ChannelError.PRECONDITION_FAILED,
+                        "PRECONDITION_FAILED - unknown delivery tag " + deliveryTag, 60, methodId);
+            }
+            settled.add(entry);
+        }
+
+        Map<InMemoryQueue, List<StoredMessage>> byQueue = new LinkedHashMap<>();
+        for (Unacked entry : settled) {
+            if (entry.consumer != null) {
+                entry.consumer.release();
+            }
+            byQueue.computeIfAbsent(entry.queue, queue -> new ArrayList<>()).add(entry.message);
+        }
+        byQueue.forEach((queue, messages) -> {
+            switch (outcome) {
+                case REQUEUE -> queue.requeue(messages);
+                case DEAD_LETTER -> broker.deadLetter(queue, messages, "rejected");
+                case ACK -> { }
+            }
+        });
+        redispatch(byQueue.keySet());
+        return null;
+    }
+
+    private Object exchangeDeclare(Object[] args) {
+        String type = args[1] instanceof BuiltinExchangeType builtin ? builtin.getType() : (String) args[1];
+        boolean durable = args.length > 2 && (Boolean) args[2];
+        boolean autoDelete = args.length > 3 && (Boolean) args[3];
+        broker.declareExchange((String) args[0], type, durable, autoDelete);
+        return new AMQImpl.Exchange.DeclareOk();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object queueDeclare(Object[] args) {
+        InMemoryQueue queue;
+        if (args.length == 0) {
+            // Server-named queues are exclusive, auto-delete and transient
+            queue = broker.declareQueue("amq.gen-" + UUID.randomUUID(), false, true, true, Map.of(), connection);
+        } else {
+            Map<String, Object> arguments = args[4] == null ? Map.of() : (Map<String, Object>) args[4];
+            queue = broker.declareQueue((String) args[0], (Boolean) args[1], (Boolean) args[2], (Boolean) args[3],
+                    arguments, connection);
+        }
+        return new AMQImpl.Queue.DeclareOk(queue.name, queue.messageCount(), queue.consumerCount());
+    }
+
+    private Object addConfirmListener(Object[] args) {
+        if (args.length == 1) {
+            confirmListeners.add((ConfirmListener) args[0]);
+            return null;
+        }
+        ConfirmCallback ack = (ConfirmCallback) args[0];
+        ConfirmCallback nack = (ConfirmCallback) args[1];
+        ConfirmListener listener = new ConfirmListener() {
+            @Override
+            public void handleAck(long deliveryTag, boolean multiple) throws IOException {
+                ack.handle(deliveryTag, multiple);
+            }
+
+            @Override
+            public void handleNack(long deliveryTag, boolean multiple) throws IOException {
+                nack.handle(deliveryTag, multiple);
+            }
+        };
+        confirmListeners.add(listener);
+        return listener;
+    }
+
+    private Object addReturnListener(Object listener) {
+        if (listener instanceof ReturnListener returnListener) {
+            returnListeners.add(returnListener);
+            return null;
+        }
+        ReturnCallback callback = (ReturnCallback) listener;
+        ReturnListener returnListener = (replyCode, replyText, exchange, routingKey, properties, body) ->
+                callback.handle(new Return(replyCode, replyText, exchange, routingKey, properties, body));
+        returnListeners.add(returnListener);
+        return returnListener;
+    }
+
+    // Called by a queue, under its lock, once the consumer's credit has been reserved
+    void deliver(InMemoryConsumer consumer, StoredMessage message) {
+        long deliveryTag = deliveryTags.incrementAndGet();
+        if (!consumer.autoAck) {
+            unacked.put(deliveryTag, new Unacked(consumer, consumer.queue, message));
+        }
+        Envelope envelope = new Envelope(deliveryTag, message.redelivered, message.exchange, message.routingKey);
+        callback(() -> {
+            // Skipped once the channel is closed: the message has been requeued by then
+            if (closeReason == null) {
+                consumer.callback.handleDelivery(consumer.tag, envelope, message.properties, message.body);
+            }
+        });
+    }
+
+    boolean reserve() {
+        int limit = globalPrefetch;
+        if (limit == 0) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    // The queue was deleted under the consumer
+    void cancelledByBroker(InMemoryConsumer consumer) {
+        if (consumers.remove(consumer.tag, consumer)) {
+            callback(() -> consumer.callback.handleCancel(consumer.tag));
+        }
+    }
+
+    void shutdown(ShutdownSignalException signal) {
+        synchronized (this) {
+            if (closeReason != null) {
+                return;
+            }
+            closeReason = signal;
+        }
+        List<InMemoryConsumer> active = new ArrayList<>(consumers.values());
+        consumers.clear();
+        active.forEach(this::detach);
+
+        // Whatever was delivered but not acked goes back to its queue marked as redelivered
+        Map<InMemoryQueue, List<StoredMessage>> requeued = new LinkedHashMap<>();
+        Map.Entry<Long, Unacked> entry;
+        while ((entry = unacked.pollFirstEntry()) != null) {
+            Unacked delivery = entry.getValue();
+            if (delivery.consumer != null) {
+                delivery.consumer.release();
+            }
+            requeued.computeIfAbsent(delivery.queue, queue -> new ArrayList<>()).add(delivery.message);
+        }
+        requeued.forEach(InMemoryQueue::requeue);
+
+        connection.channelClosed(this);
+        callback(() -> {
+            for (InMemoryConsumer consumer : active) {
+                consumer.callback.handleShutdownSignal(consumer.tag, signal);
+            }
+            for (ShutdownListener listener : shutdownListeners) {
+                listener.shutdownCompleted(signal);
+            }
+        });
+        dispatcher.shutdown();
+    }
+
+    private void detach(InMemoryConsumer consumer) {
+        if (consumer.queue.removeConsumer(consumer)) {
+            broker.deleteQueue(consumer.queue.name);
+        }
+    }
+
+    // Freed channel credit can unblock any queue this channel consumes from, not just the ones settled
+    private void redispatch(Set<InMemoryQueue> settled) {
+        Set<InMemoryQueue> queues = new HashSet<>(settled);
+        if (globalPrefetch > 0) {
+            consumers.values().forEach(consumer -> queues.add(consumer.queue));
+        }
+        queues.forEach(InMemoryQueue::dispatch);
+    }
+
+    private ShutdownSignalException signal(boolean hardError, boolean initiatedByApplication, int replyCode,
+                                           String replyText, int classId, int methodId) {
+        return new ShutdownSignalException(hardError, initiatedByApplication,
+                new AMQImpl.Channel.Close(replyCode, replyText, classId, methodId), proxy);
+    }
+
+    private void callback(Callback callback) {
+        try {
+            dispatcher.execute(() -> {
+                try {
+                    callback.run();
+                } catch (Throwable e) {
+                    // The Java client's default exception handler closes the channel when a consumer throws
+                    logger.error("Callback on {} failed, closing the channel", proxy, e);
+                    shutdown(signal(false, false, REPLY_SUCCESS, "Closed due to exception from Consumer", 0, 0));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The channel closed concurrently; its unacked messages have already been requeued
+        }
+    }
+
+    private enum Outcome { ACK, REQUEUE, DEAD_LETTER }
+
+    private record Unacked(InMemoryConsumer consumer, InMemoryQueue queue, StoredMessage message) {
+    }
+
+    @FunctionalInterface
+    private interface Callback {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.rabbitmq.broker;
+
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.impl.AMQImpl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The Connection handed to the client; closing it closes its channels and deletes its exclusive queues
+final class InMemoryConnection implements InvocationHandler {
+
+    private static final int CHANNEL_MAX = 2047;
+
+    final String name;
+    final Connection proxy;
+    private final InMemoryBroker broker;
+    private final Map<Integer, InMemoryChannel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger channelNumbers = new AtomicInteger();
+    private final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+    private volatile ShutdownSignalException closeReason;
+    private volatile String id;
+
+    InMemoryConnection(InMemoryBroker broker, String name) {
+        this.broker = broker;
+        this.name = name;
+        this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "toString" -> "InMemoryConnection(" + name + ")";
+            case "createChannel" -> createChannel();
+            case "isOpen" -> closeReason == null;
+            case "getCloseReason" -> closeReason;
+            case "close", "abort" -> {
+                close();
+                yield null;
+            }
+            case "addShutdownListener" -> {
+                shutdownListeners.add((ShutdownListener) args[0]);
+                yield null;
+            }
+            case "removeShutdownListener" -> {
+                shutdownListeners.remove((ShutdownListener) args[0]);
+                yield null;
+            }
+            // The in-memory broker never runs short of resources, so there is nothing to report
+            case "addBlockedListener", "clearBlockedListeners" -> null;
+            case "removeBlockedListener" -> true;
+            case "getServerProperties" -> Map.of("product", "In-memory AMQP broker", "version", "4.0.0");
+            case "getClientProperties" -> Map.of();
+            case "getClientProvidedName" -> name;
+            case "getAddress" -> InetAddress.getLoopbackAddress();
+            case "getPort" -> 5672;
+            case "getChannelMax" -> CHANNEL_MAX;
+            case "getFrameMax", "getHeartbeat" -> 0;
+            case "getId" -> id;
+            case "setId" -> {
+                id = (String) args[0];
+                yield null;
+            }
+            default -> throw new UnsupportedOperationException(
+                    "Connection." + method.getName() + " is not supported by the in-memory broker");
+        };
+    }
+
+    void channelClosed(InMemoryChannel channel) {
+        channels.remove(channel.number, channel);
+    }
+
+    private Object createChannel() {
+        if (closeReason != null) {
+            throw new AlreadyClosedException(closeReason);
+        }
+        if (channels.size() >= CHANNEL_MAX) {
+            // What the Java client returns when no channel number is free
+            return null;
+        }
+        InMemoryChannel channel = new InMemoryChannel(broker, this, channelNumbers.incrementAndGet());
+        channels.put(channel.number, channel);
+        return channel.proxy;
+    }
+
+    private void close() {
+        synchronized (this) {
+            if (closeReason != null) {
+                return;
+            }
+            closeReason = new ShutdownSignalException(true, true, new AMQImpl.Connection.Close(200, "OK", 0, 0), proxy);
+        }
+        for (InMemoryChannel channel : new ArrayList<>(channels.values())) {
+            channel.shutdown(closeReason);
+        }
+        broker.connectionClosed(this);
+        for (ShutdownListener listener : shutdownListeners) {
+            listener.shutdownCompleted(closeReason);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.rabbitmq.broker;
+
+import com.rabbitmq.client.Consumer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A basic.consume registration: credit is taken per delivery and returned when the delivery is settled
+final class InMemoryConsumer {
+
+    final String tag;
+    final InMemoryChannel channel;
+    final InMemoryQueue queue;
+    final Consumer callback;
+    final boolean autoAck;
+    private final int prefetch;
+    private final AtomicInteger unacked = new AtomicInteger();
+
+    InMemoryConsumer(String tag, InMemoryChannel channel, InMemoryQueue queue, Consumer callback,
+                     boolean autoAck, int prefetch) {
+        this.tag = tag;
+        this.channel = channel;
+        this.queue = queue;
+        this.callback = callback;
+        this.autoAck = autoAck;
+        this.prefetch = prefetch;
+    }
+
+    // Only called under the queue's lock, so the check against the consumer's own limit can't race
+    boolean reserve() {
+        if (autoAck) {
+            return true;
+        }
+        if (prefetch > 0 && unacked.get() >= prefetch) {
+            return false;
+        }
+        if (!channel.reserve()) {
+            return false;
+        }
+        unacked.incrementAndGet();
+        return true;
+    }
+
+    void release() {
+        unacked.decrementAndGet();
+        channel.release();
+    }
+}
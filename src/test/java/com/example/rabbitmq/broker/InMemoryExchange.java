@@ -0,0 +1,100 @@
+package com.example.rabbitmq.broker;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Direct, fanout and topic routing. Bindings are copied on write so publishes never
+ * take a lock; topic patterns are split into words once, at bind time.
+ */
+final class InMemoryExchange {
+
+    static final Set<String> SUPPORTED_TYPES = Set.of("direct", "fanout", "topic");
+
+    final String name;
+    final String type;
+    final boolean durable;
+    final boolean autoDelete;
+    private final List<Binding> bindings = new CopyOnWriteArrayList<>();
+
+    InMemoryExchange(String name, String type, boolean durable, boolean autoDelete) {
+        this.name = name;
+        this.type = type;
+        this.durable = durable;
+        this.autoDelete = autoDelete;
+    }
+
+    void bind(String queue, String routingKey) {
+        Binding binding = new Binding(queue, routingKey, routingKey.split("\\.", -1));
+        if (!bindings.contains(binding)) {
+            bindings.add(binding);
+        }
+    }
+
+    void unbind(String queue, String routingKey) {
+        bindings.removeIf(binding -> binding.queue.equals(queue) && binding.routingKey.equals(routingKey));
+    }
+
+    void unbindQueue(String queue) {
+        bindings.removeIf(binding -> binding.queue.equals(queue));
+    }
+
+    // Names of the bound queues the routing key matches; a queue bound twice is only returned once
+    void route(String routingKey, Set<String> matches) {
+        String[] words = null;
+        for (Binding binding : bindings) {
+            boolean match = switch (type) {
+                case "fanout" -> true;
+                case "direct" -> binding.routingKey.equals(routingKey);
+                default -> {
+                    if (words == null) {
+                        words = routingKey.split("\\.", -1);
+                    }
+                    yield topicMatches(binding.words, 0, words, 0);
+                }
+            };
+            if (match) {
+                matches.add(binding.queue);
+            }
+        }
+    }
+
+    // '*' matches exactly one word, '#' matches zero or more
+    static boolean topicMatches(String[] pattern, int p, String[] words, int w) {
+        while (p < pattern.length) {
+            if (pattern[p].equals("#")) {
+                if (p == pattern.length - 1) {
+                    return true;
+                }
+                for (int skip = w; skip <= words.length; skip++) {
+                    if (topicMatches(pattern, p + 1, words, skip)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (w == words.length || (!pattern[p].equals("*") && !pattern[p].equals(words[w]))) {
+                return false;
+            }
+            p++;
+            w++;
+        }
+        return w == words.length;
+    }
+
+    private record Binding(String queue, String routingKey, String[] words) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Binding binding
+                    && queue.equals(binding.queue) && routingKey.equals(binding.routingKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(queue, routingKey);
+        }
+    }
+}
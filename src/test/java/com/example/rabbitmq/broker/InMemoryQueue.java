@@ -0,0 +1,212 @@
+package com.example.rabbitmq.broker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classic-queue semantics: FIFO, round-robin over consumers with free credit, requeued
+ * messages go back to the head. Messages past their TTL are dead-lettered once they
+ * reach the head, and {@code x-max-length} drops from the head, as RabbitMQ does.
+ * <p>
+ * Dead-lettering republishes into another queue, so it always happens after this
+ * queue's lock has been released.
+ */
+final class InMemoryQueue {
+
+    final String name;
+    final boolean durable;
+    final boolean exclusive;
+    final boolean autoDelete;
+    final Map<String, Object> arguments;
+    final InMemoryConnection owner;
+    final String deadLetterExchange;
+    final String deadLetterRoutingKey;
+    private final Long messageTtl;
+    private final Long maxLength;
+    private final InMemoryBroker broker;
+
+    private final Deque<StoredMessage> messages = new ArrayDeque<>();
+    private final List<InMemoryConsumer> consumers = new ArrayList<>();
+    private int nextConsumer;
+    private boolean hadConsumers;
+    private boolean deleted;
+
+    InMemoryQueue(InMemoryBroker broker, String name, boolean durable, boolean exclusive, boolean autoDelete,
+                  Map<String, Object> arguments, InMemoryConnection owner) {
+        this.broker = broker;
+        this.name = name;
+        this.durable = durable;
+        this.exclusive = exclusive;
+        this.autoDelete = autoDelete;
+        this.arguments = Collections.unmodifiableMap(new HashMap<>(arguments));
+        this.owner = owner;
+        this.deadLetterExchange = stringArgument("x-dead-letter-exchange");
+        this.deadLetterRoutingKey = stringArgument("x-dead-letter-routing-key");
+        this.messageTtl = longArgument("x-message-ttl");
+        this.maxLength = longArgument("x-max-length");
+    }
+
+    // Queue TTL and per-message expiration both apply; the lower one wins
+    long expiresAt(long now, Long expiration) {
+        Long ttl = messageTtl == null ? expiration : expiration == null ? messageTtl : Math.min(messageTtl, expiration);
+        return ttl == null ? Long.MAX_VALUE : now + ttl;
+    }
+
+    void enqueue(StoredMessage message) {
+        List<StoredMessage> expired;
+        List<StoredMessage> overflow = List.of();
+        synchronized (this) {
+            if (deleted) {
+                return;
+            }
+            messages.addLast(message);
+            if (maxLength != null && messages.size() > maxLength) {
+                overflow = new ArrayList<>();
+                while (messages.size() > maxLength) {
+                    overflow.add(messages.pollFirst());
+                }
+            }
+            expired = dispatchLocked();
+        }
+        broker.deadLetter(this, overflow, "maxlen");
+        broker.deadLetter(this, expired, "expired");
+    }
+
+    // Also run periodically by the broker so messages expire on queues nobody consumes from
+    void dispatch() {
+        List<StoredMessage> expired;
+        synchronized (this) {
+            if (deleted) {
+                return;
+            }
+            expired = dispatchLocked();
+        }
+        broker.deadLetter(this, expired, "expired");
+    }
+
+    // Messages in delivery-tag order; they go back to the head without changing their relative order
+    void requeue(List<StoredMessage> requeued) {
+        List<StoredMessage> expired;
+        synchronized (this) {
+            if (deleted) {
+                return;
+            }
+            for (int i = requeued.size() - 1; i >= 0; i--) {
+                StoredMessage message = requeued.get(i);
+                message.redelivered = true;
+                messages.addFirst(message);
+            }
+            expired = dispatchLocked();
+        }
+        broker.deadLetter(this, expired, "expired");
+    }
+
+    // basic.get
+    StoredMessage poll() {
+        List<StoredMessage> expired = new ArrayList<>();
+        StoredMessage message;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            while ((message = messages.pollFirst()) != null && message.isExpired(now)) {
+                expired.add(message);
+            }
+        }
+        broker.deadLetter(this, expired, "expired");
+        return message;
+    }
+
+    void addConsumer(InMemoryConsumer consumer) {
+        synchronized (this) {
+            consumers.add(consumer);
+            hadConsumers = true;
+        }
+        dispatch();
+    }
+
+    // True when this was the last consumer of an auto-delete queue, which the caller then deletes
+    synchronized boolean removeConsumer(InMemoryConsumer consumer) {
+        consumers.remove(consumer);
+        return autoDelete && hadConsumers && consumers.isEmpty() && !deleted;
+    }
+
+    synchronized int messageCount() {
+        return messages.size();
+    }
+
+    synchronized int consumerCount() {
+        return consumers.size();
+    }
+
+    synchronized int purge() {
+        int purged = messages.size();
+        messages.clear();
+        return purged;
+    }
+
+    // Consumers still attached are cancelled by the broker
+    synchronized List<InMemoryConsumer> markDeleted() {
+        deleted = true;
+        messages.clear();
+        List<InMemoryConsumer> cancelled = new ArrayList<>(consumers);
+        consumers.clear();
+        return cancelled;
+    }
+
+    boolean isEquivalent(boolean durable, boolean exclusive, boolean autoDelete, Map<String, Object> arguments) {
+        return this.durable == durable && this.exclusive == exclusive && this.autoDelete == autoDelete
+                && this.arguments.equals(arguments);
+    }
+
+    private List<StoredMessage> dispatchLocked() {
+        List<StoredMessage> expired = List.of();
+        long now = System.currentTimeMillis();
+        StoredMessage head;
+        while ((head = messages.peekFirst()) != null) {
+            if (head.isExpired(now)) {
+                if (expired.isEmpty()) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(messages.pollFirst());
+                continue;
+            }
+            InMemoryConsumer consumer = nextConsumerWithCredit();
+            if (consumer == null) {
+                break;
+            }
+            messages.pollFirst();
+            consumer.channel.deliver(consumer, head);
+        }
+        return expired;
+    }
+
+    private InMemoryConsumer nextConsumerWithCredit() {
+        int size = consumers.size();
+        for (int i = 0; i < size; i++) {
+            int index = (nextConsumer + i) % size;
+            InMemoryConsumer consumer = consumers.get(index);
+            if (consumer.reserve()) {
+                nextConsumer = index + 1;
+                return consumer;
+            }
+        }
+        return null;
+    }
+
+    private String stringArgument(String name) {
+        Object value = arguments.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    private Long longArgument(String name) {
+        Object value = arguments.get(name);
+        if (value == null) {
+            return null;
+        }
+        return value instanceof Number number ? number.longValue() : Long.parseLong(value.toString());
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.rabbitmq.broker;
+
+import com.rabbitmq.client.AMQP;
+
+// One copy of a published message as held by a single queue
+final class StoredMessage {
+
+    final String exchange;
+    final String routingKey;
+    final AMQP.BasicProperties properties;
+    final byte[] body;
+    // Epoch millis after which the message is dead-lettered, Long.MAX_VALUE when it never expires
+    final long expiresAt;
+    boolean redelivered;
+
+    StoredMessage(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body, long expiresAt) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.properties = properties;
+        this.body = body;
+        this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.rabbitmq.classifier;
+
+import com.example.rabbitmq.fixtures.ConfigurationFixtures;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageClassifierTest {
+
+    @Test
+    void oneScanAnswersEveryCategoryIgnoringCase() {
+        MessageClassifier classifier = new MessageClassifier(ConfigurationFixtures.messagingProperties().getClassifier().getRules());
+
+        MessageTags tags = classifier.classify("SLOW response: Database CONNECTION timeout after 30000ms");
+
+        // Earlier tags in a category win, as the contains() chains they replace did
+        assertThat(tags.first("error-type", "GENERAL")).isEqualTo("TIMEOUT");
+        assertThat(tags.first("warning-type", "GENERAL")).isEqualTo("PERFORMANCE");
+        assertThat(tags.has("performance", "SLOW")).isTrue();
+        assertThat(tags.has("performance", "TIMEOUT")).isTrue();
+        assertThat(tags.has("performance", "MEMORY")).isFalse();
+        assertThat(tags.any("optimization")).isFalse();
+
+        // Overlapping keywords are all reported: "db" inside "feedback", "auth" inside "authentication"
+        MessageTags overlapping = classifier.classify("Feedback service authentication failed");
+        assertThat(overlapping.has("warning-type", "DATABASE")).isTrue();
+        assertThat(overlapping.has("warning-type", "AUTH")).isTrue();
+        assertThat(overlapping.first("warning-type", "GENERAL")).isEqualTo("AUTH");
+
+        assertThat(classifier.classify("Something went wrong").first("error-type", "GENERAL")).isEqualTo("GENERAL");
+        assertThat(classifier.classify(null).any("error-type")).isFalse();
+    }
+
+    @Test
+    void categoriesComeFromConfiguration() {
+        Map<String, Map<String, List<String>>> rules = new LinkedHashMap<>();
+        rules.put("region", new LinkedHashMap<>(Map.of("EU", List.of("eu-west-1", "eu-central-1"))));
+        rules.put("language", new LinkedHashMap<>(Map.of("GERMAN", List.of("Straße", "Fehler"))));
+        MessageClassifier classifier = new MessageClassifier(rules);
+
+        MessageTags tags = classifier.classify("FEHLER in Hauptstraße, replica EU-CENTRAL-1");
+
+        assertThat(tags.has("region", "EU")).isTrue();
+        assertThat(tags.has("language", "GERMAN")).isTrue();
+        assertThat(tags.any("error-type")).isFalse();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.rabbitmq.codec;
+
+import com.example.rabbitmq.model.ImageProcessingTask;
+import com.example.rabbitmq.model.IoTMessage;
+import com.example.rabbitmq.model.LogEntry;
+import com.example.rabbitmq.model.Order;
+import com.example.rabbitmq.model.SocialPost;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Encode/decode timings per codec are in MessageConverterBenchmark
+class CompactBinaryMessageConverterTest {
+
+    private final MessageConverter json = new Jackson2JsonMessageConverter();
+    private final CompactBinaryMessageConverter binary = new CompactBinaryMessageConverter();
+    private final CodecRegistry registry = new CodecRegistry(MessageProperties.CONTENT_TYPE_JSON, json)
+            .register(CompactBinaryMessageConverter.CONTENT_TYPE, binary, binary::supports);
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void compactBinaryRoundTripsAndIsSmallerForEveryModel() {
+        List<Object> samples = List.of(sampleLogEntry(), sampleIoTMessage(), sampleSocialPost(), sampleOrder(), sampleImageTask());
+
+        for (Object sample : samples) {
+            Message jsonMessage = encode(json, sample);
+            Message binaryMessage = encode(binary, sample);
+
+            assertThat(mapper.valueToTree(decode(binary, binaryMessage, sample.getClass())))
+                    .isEqualTo(mapper.valueToTree(sample));
+            assertThat(binaryMessage.getBody().length).isLessThan(jsonMessage.getBody().length);
+        }
+    }
+
+    @Test
+    void metadataValuesKeepTheirTypes() {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("ratio", 0.25f);
+        metadata.put("amount", new BigDecimal("1059.970"));
+        metadata.put("retries", 3);
+        metadata.put("offset", 1L << 40);
+        metadata.put("battery", 85.0);
+        metadata.put("nested", Map.of("tags", List.of("a", 2, false)));
+        LogEntry logEntry = sampleLogEntry();
+        logEntry.setMetadata(metadata);
+
+        LogEntry decoded = (LogEntry) decode(binary, encode(binary, logEntry), LogEntry.class);
+
+        assertThat(decoded.getMetadata()).isEqualTo(metadata);
+        assertThat(decoded.getMetadata().get("ratio")).isInstanceOf(Float.class);
+        assertThat(decoded.getMetadata().get("amount")).isInstanceOf(BigDecimal.class);
+    }
+
+    @Test
+    void unsupportedMetadataValuesAreRefusedAndSentAsJson() {
+        LogEntry logEntry = sampleLogEntry();
+        logEntry.setMetadata(Map.of("seenAt", LocalDateTime.now()));
+
+        assertThatThrownBy(() -> encode(binary, logEntry)).isInstanceOf(MessageConversionException.class);
+
+        registry.setPublishContentType(CompactBinaryMessageConverter.CONTENT_TYPE);
+        Message message = registry.toMessage(logEntry, new MessageProperties());
+        assertThat(message.getMessageProperties().getContentType()).isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+    }
+
+    @Test
+    void registryNegotiatesCodecFromContentTypeHeader() {
+        LogEntry logEntry = sampleLogEntry();
+
+        Message jsonMessage = registry.toMessage(logEntry, new MessageProperties());
+        assertThat(jsonMessage.getMessageProperties().getContentType()).isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+
+        registry.setPublishContentType(CompactBinaryMessageConverter.CONTENT_TYPE);
+        Message binaryMessage = registry.toMessage(logEntry, new MessageProperties());
+        assertThat(binaryMessage.getMessageProperties().getContentType()).isEqualTo(CompactBinaryMessageConverter.CONTENT_TYPE);
+
+        // A consumer decodes either format, so mixed fleets keep working
+        jsonMessage.getMessageProperties().setInferredArgumentType(LogEntry.class);
+        assertThat(((LogEntry) registry.fromMessage(jsonMessage)).getLogId()).isEqualTo(logEntry.getLogId());
+        assertThat(((LogEntry) registry.fromMessage(binaryMessage)).getLogId()).isEqualTo(logEntry.getLogId());
+
+        // Types the binary codec doesn't know fall back to JSON
+        Message fallback = registry.toMessage(Map.of("key", "value"), new MessageProperties());
+        assertThat(fallback.getMessageProperties().getContentType()).isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+    }
+
+    private Message encode(MessageConverter converter, Object payload) {
+        return converter.toMessage(payload, new MessageProperties());
+    }
+
+    private Object decode(MessageConverter converter, Message message, Class<?> type) {
+        message.getMessageProperties().setInferredArgumentType(type);
+        return converter.fromMessage(message);
+    }
+
+    private LogEntry sampleLogEntry() {
+        LogEntry logEntry = new LogEntry("log-1", "payment-service", LogEntry.LogLevel.ERROR,
+                "Payment processing failed for order #12345", "PaymentProcessor.java:142", "http-nio-8080-exec-1");
+        logEntry.setException("java.net.ConnectException: Connection timeout");
+        logEntry.setMetadata(Map.of("severity", "high", "requiresAttention", true, "retries", 3));
+        return logEntry;
+    }
+
+    private IoTMessage sampleIoTMessage() {
+        IoTMessage message = new IoTMessage("msg-1", "camera-001", "camera", "frontdoor", null, 85.0, "percentage");
+        message.setMetadata(Map.of("battery", 85.0, "charging", false));
+        return message;
+    }
+
+    private SocialPost sampleSocialPost() {
+        return new SocialPost("post-1", "user-456", "jane_photographer",
+                "Just captured this amazing sunset! #photography #nature #beautiful",
+                List.of("https://example.com/sunset1.jpg", "https://example.com/sunset2.jpg"),
+                List.of("photography", "nature", "beautiful"),
+                List.of("john_doe", "nature_lover"));
+    }
+
+    private Order sampleOrder() {
+        return new Order("order-1", "customer-123", "john.doe@example.com",
+                List.of(new Order.OrderItem("prod-1", "Laptop", 1, new BigDecimal("999.99")),
+                        new Order.OrderItem("prod-2", "Mouse", 2, new BigDecimal("29.99"))),
+                new BigDecimal("1059.97"));
+    }
+
+    private ImageProcessingTask sampleImageTask() {
+        ImageProcessingTask task = new ImageProcessingTask("task-1", "https://example.com/image1.jpg", "user-batch-1",
+                List.of("RESIZE", "THUMBNAIL", "WATERMARK"));
+        task.setProcessedAt(LocalDateTime.now());
+        task.setWorkerNode("worker-42");
+        task.setProcessingTimeMs(4321);
+        return task;
+    }
+}
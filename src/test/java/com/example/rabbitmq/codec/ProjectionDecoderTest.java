@@ -0,0 +1,87 @@
+package com.example.rabbitmq.codec;
+
+import com.example.rabbitmq.config.MessagingProperties;
+import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.direct.AlertService;
+import com.example.rabbitmq.model.LogEntry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProjectionDecoderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MessageConverter converter =
+            new RabbitConfig(new MessagingProperties(), meterRegistry).messageConverter();
+
+    @Test
+    void projectionSkipsUnprojectedFieldsAndBindsTheEntryOnDemand() {
+        LogEntry logEntry = new LogEntry("log-1", "payment-service", LogEntry.LogLevel.ERROR,
+                "Database connection failed", "PaymentRepository.java:88", "exec-1");
+        logEntry.setException("java.sql.SQLException: timeout\n\tat Repo.charge(Repo.java:88)\n".repeat(100));
+        logEntry.setMetadata(Map.of("orderId", "order-9", "attempt", 3));
+        Message message = converter.toMessage(logEntry, new MessageProperties());
+
+        message.getMessageProperties().setInferredArgumentType(AlertService.ErrorLog.class);
+        AlertService.ErrorLog errorLog = (AlertService.ErrorLog) converter.fromMessage(message);
+
+        assertThat(errorLog.logId()).isEqualTo("log-1");
+        assertThat(errorLog.applicationName()).isEqualTo("payment-service");
+        assertThat(errorLog.message()).isEqualTo("Database connection failed");
+        assertThat(errorLog.timestamp()).isEqualTo(logEntry.getTimestamp());
+        assertThat(errorLog.hasException()).isTrue();
+        assertThat(errorLog.entry().isDecoded()).isFalse();
+        assertThat(deserializations()).isZero();
+
+        LogEntry full = errorLog.entry().get();
+        assertThat(full.getException()).isEqualTo(logEntry.getException());
+        assertThat(full.getMetadata()).containsEntry("orderId", "order-9");
+        assertThat(deserializations()).isEqualTo(1);
+    }
+
+    @Test
+    void absentFieldIsReportedWithoutAnException() {
+        LogEntry logEntry = new LogEntry("log-2", "inventory-service", LogEntry.LogLevel.ERROR,
+                "Stock reservation rejected", "InventoryService.java:41", "exec-2");
+        Message message = converter.toMessage(logEntry, new MessageProperties());
+
+        message.getMessageProperties().setInferredArgumentType(AlertService.ErrorLog.class);
+        AlertService.ErrorLog errorLog = (AlertService.ErrorLog) converter.fromMessage(message);
+
+        assertThat(errorLog.hasException()).isFalse();
+        assertThat(errorLog.source()).isEqualTo("InventoryService.java:41");
+    }
+
+    @Test
+    void repeatedFieldDoesNotEndParsingEarly() {
+        String json = "{\"logId\":\"log-3\",\"logId\":\"log-3\",\"applicationName\":\"billing-service\","
+                + "\"message\":\"Invoice rejected\",\"source\":\"InvoiceService.java:17\","
+                + "\"exception\":\"java.lang.IllegalStateException\",\"timestamp\":\"2026-01-01T10:00:00\"}";
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setInferredArgumentType(AlertService.ErrorLog.class);
+
+        AlertService.ErrorLog errorLog = (AlertService.ErrorLog) converter.fromMessage(
+                new Message(json.getBytes(StandardCharsets.UTF_8), properties));
+
+        assertThat(errorLog.logId()).isEqualTo("log-3");
+        assertThat(errorLog.hasException()).isTrue();
+        assertThat(errorLog.timestamp()).isEqualTo(LocalDateTime.of(2026, 1, 1, 10, 0));
+    }
+
+    private long deserializations() {
+        var timer = meterRegistry.find("messaging.serialization.time")
+                .tag("operation", "deserialize")
+                .tag("type", "LogEntry")
+                .timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
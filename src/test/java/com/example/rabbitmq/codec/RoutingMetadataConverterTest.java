@@ -0,0 +1,57 @@
+package com.example.rabbitmq.codec;
+
+import com.example.rabbitmq.config.MessagingProperties;
+import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.model.IoTMessage;
+import com.example.rabbitmq.topic.HVACService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.lang.reflect.Type;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoutingMetadataConverterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MessageConverter converter =
+            new RabbitConfig(new MessagingProperties(), meterRegistry).messageConverter();
+
+    @Test
+    void lazyPayloadIsOnlyDecodedWhenTheListenerAsksForIt() throws Exception {
+        IoTMessage reading = new IoTMessage("msg-1", "thermo-7", "thermostat", "office-3", "temperature", 27.5, "C");
+        Message message = converter.toMessage(reading, new MessageProperties());
+
+        MessageProperties properties = message.getMessageProperties();
+        assertThat(properties.<Object>getHeader(RoutingHeaders.LOCATION)).isEqualTo("office-3");
+        assertThat(properties.<Object>getHeader(RoutingHeaders.VALUE)).isEqualTo(27.5);
+        assertThat(properties.<Object>getHeader(RoutingHeaders.DEVICE_ID)).isEqualTo("thermo-7");
+
+        // The type the container infers from HVACService's listener signature
+        Type lazyType = HVACService.class
+                .getMethod("processTemperatureData", String.class, Double.class, LazyPayload.class)
+                .getGenericParameterTypes()[2];
+        properties.setInferredArgumentType(lazyType);
+        LazyPayload<?> payload = (LazyPayload<?>) converter.fromMessage(message);
+
+        assertThat(payload.isDecoded()).isFalse();
+        assertThat(deserializations()).isZero();
+
+        IoTMessage decoded = (IoTMessage) payload.get();
+        assertThat(decoded.getLocation()).isEqualTo("office-3");
+        assertThat(decoded.getValue()).isEqualTo(27.5);
+        assertThat(payload.get()).isSameAs(decoded);
+        assertThat(deserializations()).isEqualTo(1);
+    }
+
+    private long deserializations() {
+        var timer = meterRegistry.find("messaging.serialization.time")
+                .tag("operation", "deserialize")
+                .tag("type", "IoTMessage")
+                .timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.rabbitmq.compression;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompressionPostProcessorTest {
+
+    private static final String ORDER_TYPE = "order.created";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CompressionDictionaries dictionaries = new CompressionDictionaries(Map.of(), false);
+    private final CompressionPostProcessor compressor = new CompressionPostProcessor(256, 6, 0.1, dictionaries, meterRegistry);
+    private final DecompressionPostProcessor decompressor = new DecompressionPostProcessor(dictionaries, 1 << 20, meterRegistry);
+
+    @Test
+    void roundTripsABodyWithoutADictionary() {
+        byte[] body = orders(50);
+
+        Message compressed = compressor.postProcessMessage(message(body, ORDER_TYPE), null, "", "orders");
+
+        assertThat(compressed.getMessageProperties().getContentEncoding()).isEqualTo(CompressionPostProcessor.ENCODING);
+        assertThat(compressed.getMessageProperties().getHeaders())
+                .containsEntry(CompressionPostProcessor.UNCOMPRESSED_LENGTH_HEADER, body.length);
+        assertThat(compressed.getBody().length).isLessThan(body.length);
+        assertThat(hasDictionary(compressed.getBody())).isFalse();
+
+        Message restored = decompressor.postProcessMessage(compressed);
+        assertThat(restored.getBody()).isEqualTo(body);
+        assertThat(restored.getMessageProperties().getContentEncoding()).isNull();
+        assertThat(restored.getMessageProperties().getHeaders())
+                .doesNotContainKey(CompressionPostProcessor.UNCOMPRESSED_LENGTH_HEADER);
+    }
+
+    @Test
+    void roundTripsABodyPrimedWithTheDictionaryForItsType() {
+        byte[] dictionary = orders(4);
+        dictionaries.register(ORDER_TYPE, dictionary);
+        byte[] body = orders(3);
+
+        Message compressed = compressor.postProcessMessage(message(body, ORDER_TYPE), null, "", "orders");
+
+        assertThat(compressed.getMessageProperties().getContentEncoding()).isEqualTo(CompressionPostProcessor.ENCODING);
+        assertThat(hasDictionary(compressed.getBody())).isTrue();
+        assertThat(dictionaryId(compressed.getBody())).isEqualTo(CompressionDictionaries.idOf(dictionary));
+        assertThat(decompressor.postProcessMessage(compressed).getBody()).isEqualTo(body);
+    }
+
+    @Test
+    void leavesSmallAndAlreadyEncodedBodiesAlone() {
+        Message small = message("{\"orderId\":1}".getBytes(StandardCharsets.UTF_8), ORDER_TYPE);
+        assertThat(compressor.postProcessMessage(small, null, "", "orders")).isSameAs(small);
+
+        Message gzipped = message(orders(50), ORDER_TYPE);
+        gzipped.getMessageProperties().setContentEncoding("gzip");
+        assertThat(compressor.postProcessMessage(gzipped, null, "", "orders")).isSameAs(gzipped);
+    }
+
+    @Test
+    void onlyProbesADestinationOccasionallyAfterRepeatedNoGainCompressions() {
+        Random random = new Random(42);
+        for (int i = 0; i < 8; i++) {
+            Message incompressible = message(randomBytes(random), "image.uploaded");
+            assertThat(compressor.postProcessMessage(incompressible, null, "", "images")).isSameAs(incompressible);
+        }
+        assertThat(compressionAttempts("images")).isEqualTo(8);
+
+        for (int i = 0; i < 63; i++) {
+            compressor.postProcessMessage(message(randomBytes(random), "image.uploaded"), null, "", "images");
+        }
+        assertThat(compressionAttempts("images")).isEqualTo(8);
+
+        compressor.postProcessMessage(message(randomBytes(random), "image.uploaded"), null, "", "images");
+        assertThat(compressionAttempts("images")).isEqualTo(9);
+
+        // The streak is kept per destination, so compressible traffic elsewhere is unaffected
+        Message order = compressor.postProcessMessage(message(orders(50), ORDER_TYPE), null, "", "orders");
+        assertThat(order.getMessageProperties().getContentEncoding()).isEqualTo(CompressionPostProcessor.ENCODING);
+    }
+
+    private long compressionAttempts(String destination) {
+        return meterRegistry.get("messaging.compression.ratio")
+                .tag("destination", destination)
+                .tag("side", "publish")
+                .summary()
+                .count();
+    }
+
+    static Message message(byte[] body, String type) {
+        MessageProperties properties = new MessageProperties();
+        properties.setType(type);
+        properties.setConsumerQueue("orders");
+        return new Message(body, properties);
+    }
+
+    static byte[] orders(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"orderId\":").append(1000 + i)
+                    .append(",\"customerId\":\"customer-").append(i % 7)
+                    .append("\",\"status\":\"CREATED\",\"currency\":\"EUR\",\"amount\":").append(i * 3 + 10)
+                    .append("}");
+        }
+        return json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] randomBytes(Random random) {
+        byte[] body = new byte[1024];
+        random.nextBytes(body);
+        return body;
+    }
+
+    // zlib header: FDICT is bit 5 of the flag byte, and the dictionary's Adler-32 follows it big-endian
+    private static boolean hasDictionary(byte[] stream) {
+        return (stream[1] & 0x20) != 0;
+    }
+
+    private static int dictionaryId(byte[] stream) {
+        return (stream[2] & 0xff) << 24 | (stream[3] & 0xff) << 16 | (stream[4] & 0xff) << 8 | (stream[5] & 0xff);
+    }
+}
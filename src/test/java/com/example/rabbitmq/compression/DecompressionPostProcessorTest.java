@@ -0,0 +1,125 @@
+package com.example.rabbitmq.compression;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static com.example.rabbitmq.compression.CompressionPostProcessorTest.message;
+import static com.example.rabbitmq.compression.CompressionPostProcessorTest.orders;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DecompressionPostProcessorTest {
+
+    private static final int LIMIT = 64 * 1024;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CompressionDictionaries dictionaries = new CompressionDictionaries(Map.of(), false);
+    private final DecompressionPostProcessor decompressor = new DecompressionPostProcessor(dictionaries, LIMIT, meterRegistry);
+
+    @Test
+    void rejectsABodyThatInflatesPastTheLimit() {
+        // A megabyte of zeros deflates to about a kilobyte
+        Message bomb = compressed(deflate(new byte[1 << 20], null), null);
+        assertThat(bomb.getBody().length).isLessThan(LIMIT);
+
+        assertThatThrownBy(() -> decompressor.postProcessMessage(bomb))
+                .isInstanceOf(AmqpRejectAndDontRequeueException.class)
+                .hasMessageContaining("exceeds the " + LIMIT + " byte limit");
+    }
+
+    @Test
+    void doesNotTrustAForgedUncompressedLengthHeader() {
+        Message understated = compressed(deflate(new byte[1 << 20], null), 100);
+        assertThatThrownBy(() -> decompressor.postProcessMessage(understated))
+                .isInstanceOf(AmqpRejectAndDontRequeueException.class)
+                .hasMessageContaining("Inflated body exceeds");
+
+        Message overstated = compressed(deflate(orders(10), null), Integer.MAX_VALUE);
+        assertThatThrownBy(() -> decompressor.postProcessMessage(overstated))
+                .isInstanceOf(AmqpRejectAndDontRequeueException.class)
+                .hasMessageContaining("Uncompressed length");
+
+        // Within the limit the header is only a sizing hint, so a wrong value still inflates correctly
+        byte[] body = orders(200);
+        Message misleading = compressed(deflate(body, null), 16);
+        assertThat(decompressor.postProcessMessage(misleading).getBody()).isEqualTo(body);
+    }
+
+    @Test
+    void resolvesThePresetDictionaryByItsAdlerId() {
+        byte[] dictionary = orders(4);
+        // Registered under another type than the publisher used - consumers only go by the id in the stream
+        dictionaries.register("order.legacy", dictionary);
+        byte[] body = orders(3);
+
+        Message message = compressed(deflate(body, dictionary), body.length);
+
+        assertThat(decompressor.postProcessMessage(message).getBody()).isEqualTo(body);
+    }
+
+    @Test
+    void rejectsAStreamPrimedWithAnUnknownDictionary() {
+        byte[] dictionary = orders(4);
+        Message message = compressed(deflate(orders(3), dictionary), null);
+
+        assertThatThrownBy(() -> decompressor.postProcessMessage(message))
+                .isInstanceOf(AmqpRejectAndDontRequeueException.class)
+                .hasMessageContaining("Unknown compression dictionary "
+                        + Integer.toHexString(CompressionDictionaries.idOf(dictionary)));
+    }
+
+    @Test
+    void rejectsTruncatedAndCorruptBodies() {
+        byte[] stream = deflate(orders(50), null);
+
+        Message truncated = compressed(Arrays.copyOf(stream, stream.length / 2), null);
+        assertThatThrownBy(() -> decompressor.postProcessMessage(truncated))
+                .isInstanceOf(AmqpRejectAndDontRequeueException.class)
+                .hasMessageContaining("Truncated");
+
+        Message corrupt = compressed(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, null);
+        assertThatThrownBy(() -> decompressor.postProcessMessage(corrupt))
+                .isInstanceOf(AmqpRejectAndDontRequeueException.class)
+                .hasMessageContaining("Cannot inflate");
+    }
+
+    @Test
+    void passesThroughBodiesWithoutDeflateEncoding() {
+        Message plain = message(orders(3), "order.created");
+        assertThat(decompressor.postProcessMessage(plain)).isSameAs(plain);
+    }
+
+    private static Message compressed(byte[] stream, Integer uncompressedLength) {
+        Message message = message(stream, "order.created");
+        message.getMessageProperties().setContentEncoding(CompressionPostProcessor.ENCODING);
+        if (uncompressedLength != null) {
+            message.getMessageProperties().setHeader(CompressionPostProcessor.UNCOMPRESSED_LENGTH_HEADER, uncompressedLength);
+        }
+        return message;
+    }
+
+    private static byte[] deflate(byte[] body, byte[] dictionary) {
+        Deflater deflater = new Deflater();
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(body);
+            deflater.finish();
+            byte[] buffer = new byte[body.length + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.rabbitmq.config;
+
+import com.example.rabbitmq.alert.AlertDispatcher;
+import com.example.rabbitmq.broker.InMemoryBroker;
+import com.example.rabbitmq.classifier.MessageClassifier;
+import com.example.rabbitmq.direct.AlertService;
+import com.example.rabbitmq.direct.LogAnalyticsService;
+import com.example.rabbitmq.direct.MonitoringService;
+import com.example.rabbitmq.fixtures.MessageFixtures;
+import com.example.rabbitmq.model.IoTMessage;
+import com.example.rabbitmq.model.LogEntry;
+import com.example.rabbitmq.model.SocialPost;
+import com.example.rabbitmq.pubsub.SocialAnalyticsService;
+import com.example.rabbitmq.pubsub.TimelineService;
+import com.example.rabbitmq.topic.HVACService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.config.AbstractRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.DirectRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Switching a listener between the simple and direct container factories must not change what it computes: each
+// fast listener consumes the same messages under both, on the in-memory broker, and ends up in the same state.
+// Throughput per pattern is measured by PatternThroughputTest
+class ListenerFactoryComparisonTest {
+
+    private static final int MESSAGES = 2_000;
+
+    private static InMemoryBroker broker;
+    private static AnnotationConfigApplicationContext context;
+    private static RabbitAdmin admin;
+    private static RabbitTemplate template;
+    private static MessageConverter converter;
+    private static MessageClassifier classifier;
+    private static MessagingProperties properties;
+    private static AlertDispatcher alertDispatcher;
+
+    @BeforeAll
+    static void setUp() {
+        broker = new InMemoryBroker();
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean(CachingConnectionFactory.class, broker::connectionFactory);
+        context.registerBean(RabbitAdmin.class, () -> new RabbitAdmin(context.getBean(ConnectionFactory.class)));
+        context.register(RabbitConfig.class);
+        context.refresh();
+
+        admin = context.getBean(RabbitAdmin.class);
+        template = context.getBean(RabbitTemplate.class);
+        converter = context.getBean(MessageConverter.class);
+        classifier = context.getBean(MessageClassifier.class);
+        properties = context.getBean(MessagingProperties.class);
+        alertDispatcher = context.getBean(AlertDispatcher.class);
+    }
+
+    // Closing the context also shuts down the alert dispatcher's channel threads
+    @AfterAll
+    static void tearDown() {
+        context.close();
+        broker.close();
+    }
+
+    @Test
+    void everyListenerEndsInTheSameStateUnderBothFactories() {
+        List<Scenario<?, ?>> scenarios = List.of(
+                new Scenario<>("TimelineService", SocialPost.class, MessageFixtures::socialPost,
+                        TimelineService::new, TimelineService::updateTimeline, TimelineService::getTimelineCount),
+                new Scenario<>("SocialAnalyticsService", SocialPost.class, MessageFixtures::socialPost,
+                        () -> new SocialAnalyticsService(properties), SocialAnalyticsService::analyzePost,
+                        service -> List.of(service.getTotalPosts(), service.getTopHashtags())),
+                new Scenario<>("AlertService", LogEntry.class, i -> logEntry(i, LogEntry.LogLevel.ERROR),
+                        () -> new AlertService(classifier, properties, alertDispatcher), AlertService::processErrorLog,
+                        AlertService::getErrorCounts),
+                new Scenario<>("MonitoringService", LogEntry.class, i -> logEntry(i, LogEntry.LogLevel.WARNING),
+                        () -> new MonitoringService(classifier, properties), MonitoringService::processWarningLog,
+                        MonitoringService::getWarningCounts),
+                new Scenario<>("LogAnalyticsService", LogEntry.class, i -> logEntry(i, LogEntry.LogLevel.INFO),
+                        () -> new LogAnalyticsService(classifier, properties), LogAnalyticsService::processInfoLog,
+                        service -> List.of(service.getTotalInfoLogs(), service.getAllServiceLogs())),
+                // HVACService keeps no state, so only delivery is compared
+                new Scenario<>("HVACService", IoTMessage.class, MessageFixtures::temperature,
+                        HVACService::new, HVACService::processTemperatureData, service -> MESSAGES));
+
+        SimpleRabbitListenerContainerFactory simpleFactory =
+                context.getBean("rabbitListenerContainerFactory", SimpleRabbitListenerContainerFactory.class);
+        DirectRabbitListenerContainerFactory directFactory = context.getBean(DirectRabbitListenerContainerFactory.class);
+        for (Scenario<?, ?> scenario : scenarios) {
+            Object simple = run(scenario, simpleFactory);
+            Object direct = run(scenario, directFactory);
+
+            assertThat(simple).as(scenario.name + " under the simple factory").isNotEqualTo(Map.of());
+            assertThat(direct).as(scenario.name + " under the direct factory").isEqualTo(simple);
+        }
+    }
+
+    // Returns the listener's state once every message has been processed and the container has stopped
+    private <S, T> Object run(Scenario<S, T> scenario, AbstractRabbitListenerContainerFactory<?> factory) {
+        String queue = admin.declareQueue(new AnonymousQueue());
+        S service = scenario.service.get();
+        CountDownLatch processed = new CountDownLatch(MESSAGES);
+
+        AbstractMessageListenerContainer container = factory.createListenerContainer();
+        container.setQueueNames(queue);
+        container.setMessageListener((MessageListener) message -> {
+            message.getMessageProperties().setInferredArgumentType(scenario.type);
+            scenario.handler.accept(service, scenario.type.cast(converter.fromMessage(message)));
+            processed.countDown();
+        });
+        container.afterPropertiesSet();
+        container.start();
+
+        try {
+            for (int i = 0; i < MESSAGES; i++) {
+                template.convertAndSend("", queue, scenario.payloads.apply(i));
+            }
+            assertThat(processed.await(1, TimeUnit.MINUTES)).as(scenario.name + " processed every message").isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            container.stop();
+            admin.deleteQueue(queue);
+        }
+
+        try {
+            return scenario.state.apply(service);
+        } finally {
+            if (service instanceof DisposableBean disposable) {
+                try {
+                    disposable.destroy();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    private static LogEntry logEntry(int i, LogEntry.LogLevel level) {
+        return MessageFixtures.logEntry(i, level, "Comparison message " + i);
+    }
+
+    // state: what the listener has computed, compared across factories
+    private record Scenario<S, T>(String name, Class<T> type, IntFunction<T> payloads, Supplier<S> service,
+                                 BiConsumer<S, T> handler, Function<S, Object> state) {
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.rabbitmq.counter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeavyHittersTest {
+
+    private static final double EPSILON = 0.001;
+
+    @Test
+    void heavyKeysSurviveAFloodOfDistinctKeys() throws InterruptedException {
+        HeavyHitters counter = new HeavyHitters(10, EPSILON, 0.99);
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            writers.execute(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    counter.add("noise-" + thread + "-" + i, 1);
+                    if (i % 10 == 0) {
+                        counter.add("tenant-" + i / 10 % 5, 1);
+                    }
+                }
+            });
+        }
+        writers.shutdown();
+        assertThat(writers.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        long total = 4 * 50_000 + 4 * 5_000;
+        Map<String, Long> snapshot = counter.snapshot();
+        assertThat(snapshot).hasSizeLessThanOrEqualTo(10);
+        assertThat(snapshot).containsKeys("tenant-0", "tenant-1", "tenant-2", "tenant-3", "tenant-4");
+        for (int tenant = 0; tenant < 5; tenant++) {
+            assertThat(counter.get("tenant-" + tenant)).isBetween(4_000L, 4_000 + (long) (EPSILON * total));
+        }
+        assertThat(counter.get("noise-0-7")).isBetween(1L, 1 + (long) (EPSILON * total));
+    }
+
+    @Test
+    void estimatesNeverUndercountAndRarelyExceedTheBound() {
+        HeavyHitters counter = new HeavyHitters(50, EPSILON, 0.99);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        long total = 0;
+        for (int i = 0; i < 200_000; i++) {
+            // Skewed: a few keys take most of the stream, thousands share the rest
+            String key = "user-" + (int) Math.pow(random.nextInt(10_000), 2) / 10_000;
+            long count = 1 + random.nextInt(3);
+            counter.add(key, count);
+            exact.merge(key, count, Long::sum);
+            total += count;
+        }
+
+        long bound = (long) (EPSILON * total);
+        long outside = exact.entrySet().stream()
+                .filter(entry -> counter.get(entry.getKey()) > entry.getValue() + bound)
+                .count();
+        exact.forEach((key, count) -> assertThat(counter.get(key)).isGreaterThanOrEqualTo(count));
+        assertThat(outside).isLessThanOrEqualTo(exact.size() / 100);
+    }
+
+    @Test
+    void boundedRateCountersKeepWindowsForTrackedKeysOnly() {
+        RateCounters counters = new RateCounters(Duration.ofMinutes(5), 2, EPSILON, 0.99, () -> 1_700_000_000_000L);
+        for (int i = 0; i < 100; i++) {
+            counters.add("payment-service:TIMEOUT", 1, Duration.ofMinutes(1));
+            counters.add("auth-service:CONNECTION", 1, Duration.ofMinutes(1));
+        }
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(counters.add("spam-" + i + ":UNKNOWN", 1, Duration.ofMinutes(1))).isZero();
+        }
+
+        assertThat(counters.totals()).containsOnlyKeys("payment-service:TIMEOUT", "auth-service:CONNECTION");
+        assertThat(counters.count("payment-service:TIMEOUT", Duration.ofMinutes(1))).isEqualTo(100);
+        assertThat(counters.total("spam-3:UNKNOWN")).isGreaterThanOrEqualTo(1);
+
+        // A key that keeps coming displaces the smallest tracked one and starts a window of its own
+        long count = 0;
+        for (int i = 0; i < 150; i++) {
+            count = counters.add("inventory-service:DATABASE", 1, Duration.ofMinutes(1));
+        }
+        assertThat(counters.totals()).containsKey("inventory-service:DATABASE").hasSize(2);
+        assertThat(count).isPositive();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.rabbitmq.counter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateCountersTest {
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+    private final RateCounters counters = new RateCounters(Duration.ofMinutes(5), clock::get);
+
+    @Test
+    void windowSlidesWhileTotalKeepsCounting() {
+        for (int second = 0; second < 90; second++) {
+            counters.add("payment-service:TIMEOUT", 2, Duration.ofMinutes(1));
+            clock.addAndGet(1000);
+        }
+        clock.addAndGet(-1000);
+
+        assertThat(counters.count("payment-service:TIMEOUT", Duration.ofMinutes(1))).isEqualTo(120);
+        assertThat(counters.count("payment-service:TIMEOUT", Duration.ofMinutes(5))).isEqualTo(180);
+        assertThat(counters.total("payment-service:TIMEOUT")).isEqualTo(180);
+
+        // Past the horizon every bucket is stale; the ring slots are reused for the new lap
+        clock.addAndGet(Duration.ofMinutes(10).toMillis());
+        assertThat(counters.count("payment-service:TIMEOUT", Duration.ofMinutes(5))).isZero();
+        assertThat(counters.add("payment-service:TIMEOUT", 1, Duration.ofMinutes(1))).isEqualTo(1);
+        assertThat(counters.total("payment-service:TIMEOUT")).isEqualTo(181);
+    }
+
+    @Test
+    void boundedModeLetsANewBurstDisplaceKeysThatWentQuiet() {
+        RateCounters bounded = new RateCounters(Duration.ofMinutes(5), 2, 0.001, 0.99, clock::get);
+        bounded.add("payment-service:TIMEOUT", 10_000, Duration.ofMinutes(1));
+        bounded.add("auth-service:CONNECTION", 10_000, Duration.ofMinutes(1));
+        // While both are busy, a handful of new errors is not enough to take a window
+        assertThat(bounded.add("inventory-service:DATABASE", 5, Duration.ofMinutes(1))).isZero();
+
+        // Both go quiet for longer than the horizon; their lifetime totals still dwarf any new key
+        clock.addAndGet(Duration.ofMinutes(10).toMillis());
+        long burst = 0;
+        for (int i = 0; i < 50; i++) {
+            burst = bounded.add("inventory-service:DATABASE", 1, Duration.ofMinutes(1));
+        }
+
+        assertThat(burst).isEqualTo(50);
+        assertThat(bounded.total("inventory-service:DATABASE")).isGreaterThanOrEqualTo(55);
+        assertThat(bounded.total("payment-service:TIMEOUT")).isGreaterThanOrEqualTo(10_000);
+        assertThat(bounded.total("auth-service:CONNECTION")).isGreaterThanOrEqualTo(10_000);
+    }
+
+    @Test
+    void boundedModeCountsTheBurstThatAdmittedANewKey() {
+        RateCounters bounded = new RateCounters(Duration.ofMinutes(5), 2, 0.001, 0.99, clock::get);
+        bounded.add("payment-service:TIMEOUT", 100, Duration.ofMinutes(1));
+        bounded.add("auth-service:CONNECTION", 100, Duration.ofMinutes(1));
+
+        long admitted = 0;
+        long burst = 0;
+        for (int i = 0; i < 150; i++) {
+            burst = bounded.add("inventory-service:DATABASE", 1, Duration.ofMinutes(1));
+            if (admitted == 0) {
+                admitted = burst;
+            }
+        }
+
+        // The first count reported after admission already covers the errors seen while the key was untracked,
+        // so an escalation threshold well below the tracked keys' counts is crossed
+        assertThat(admitted).isGreaterThan(100);
+        assertThat(burst).isGreaterThanOrEqualTo(150);
+        assertThat(bounded.count("inventory-service:DATABASE", Duration.ofMinutes(1))).isEqualTo(burst);
+    }
+
+    @Test
+    void ratesAreFilteredByPrefixAndSkipQuietKeys() throws InterruptedException {
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            writers.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    counters.add("auth-service:CONNECTION", 1, Duration.ofMinutes(1));
+                }
+            });
+        }
+        writers.shutdown();
+        assertThat(writers.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        counters.add("inventory-service:DATABASE", 3, Duration.ofMinutes(1));
+        clock.addAndGet(Duration.ofMinutes(2).toMillis());
+        counters.add("auth-service:MEMORY", 6, Duration.ofMinutes(1));
+
+        var lastMinute = counters.rates("auth-service:", Duration.ofMinutes(1));
+        assertThat(lastMinute).containsOnlyKeys("auth-service:MEMORY");
+        assertThat(lastMinute.get("auth-service:MEMORY").perSecond()).isEqualTo(0.1);
+
+        var lastFive = counters.rates("auth-service:", Duration.ofMinutes(5));
+        assertThat(lastFive.get("auth-service:CONNECTION").count()).isEqualTo(40_000);
+        assertThat(counters.rates(null, Duration.ofMinutes(5))).hasSize(3);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.rabbitmq.deadletter;
+
+import com.example.rabbitmq.broker.InMemoryBroker;
+import com.example.rabbitmq.listener.DelayedRetryAdvice;
+import com.example.rabbitmq.outbox.OutboxLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.awaitility.Awaitility.await;
+
+class DeadLetterStoreTest {
+
+    private static final DeadLetterQuery ALL = new DeadLetterQuery(null, null, null, null, 0, Integer.MAX_VALUE);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rebuildsTheIndexWithoutRemovedMessagesAfterARestart() {
+        DeadLetterStore store = store();
+        for (int i = 1; i <= 3; i++) {
+            store.add(failedOrder(i));
+        }
+        MessageProperties expired = new MessageProperties();
+        expired.setHeader("x-first-death-queue", "images");
+        expired.setHeader("x-first-death-reason", "expired");
+        store.add(new Message("image-1".getBytes(StandardCharsets.UTF_8), expired));
+        store.remove(List.of(2L));
+        store.close();
+
+        DeadLetterStore restarted = store();
+        List<DeadLetter> orders = restarted.query(new DeadLetterQuery("orders", null, null, null, 0, 10));
+        assertThat(orders).extracting(DeadLetter::id).containsExactly(1L, 3L);
+        assertThat(orders.get(0).exceptionClass()).isEqualTo("java.lang.IllegalStateException");
+        assertThat(orders.get(0).exceptionMessage()).isEqualTo("gateway timeout");
+        assertThat(restarted.summary(ALL)).extracting(DeadLetterStore.GroupCount::exceptionClass, DeadLetterStore.GroupCount::count)
+                .containsExactlyInAnyOrder(
+                        tuple("java.lang.IllegalStateException", 2),
+                        tuple("expired", 1));
+        try (DeadLetterStore.Reader reader = restarted.reader()) {
+            assertThat(new String(reader.read(3).getBody(), StandardCharsets.UTF_8)).isEqualTo("order-3");
+            assertThat(reader.read(2)).isNull();
+        }
+        restarted.close();
+    }
+
+    @Test
+    void oversizedAndUnencodableHeadersDoNotKeepAMessageOutOfTheStore() {
+        DeadLetterStore store = store();
+        // Longer than the 64KB segments on its own, as from a deep recursion
+        Message deepTrace = failedOrder(1);
+        deepTrace.getMessageProperties().setHeader("x-exception-stacktrace", "java.lang.StackOverflowError: null\n"
+                + "\tat com.example.Parser.parse(Parser.java:42)\n".repeat(5_000));
+        Message unencodable = failedOrder(2);
+        unencodable.getMessageProperties().setHeader("x-trace-context", new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalArgumentException("not printable");
+            }
+        });
+
+        DeadLetter truncated = store.add(deepTrace);
+        DeadLetter stripped = store.add(unencodable);
+
+        assertThat(truncated.exceptionClass()).isEqualTo("java.lang.StackOverflowError");
+        assertThat(stripped.exceptionClass()).isEqualTo("java.lang.IllegalStateException");
+        try (DeadLetterStore.Reader reader = store.reader()) {
+            assertThat(reader.read(truncated.id()).getMessageProperties().<String>getHeader("x-exception-stacktrace"))
+                    .hasSizeLessThan(4200)
+                    .endsWith("chars truncated]");
+            MessageProperties kept = reader.read(stripped.id()).getMessageProperties();
+            assertThat(kept.getHeaders()).doesNotContainKeys("x-trace-context", DelayedRetryAdvice.ATTEMPT_HEADER);
+            assertThat(kept.<Object>getHeader(DelayedRetryAdvice.ORIGINAL_QUEUE_HEADER)).isEqualTo("orders");
+        }
+        store.close();
+    }
+
+    @Test
+    void replayPausesWhileTheOriginQueueIsBackedUp() throws Exception {
+        InMemoryBroker broker = new InMemoryBroker();
+        CachingConnectionFactory connectionFactory = broker.connectionFactory();
+        RabbitAdmin admin = new RabbitAdmin(connectionFactory);
+        admin.declareQueue(new Queue("orders"));
+        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        template.setMandatory(true);
+        DeadLetterStore store = store();
+        for (int i = 1; i <= 50; i++) {
+            store.add(failedOrder(i));
+        }
+        DeadLetterReplayer replayer = new DeadLetterReplayer(store, template, admin, 8, 20,
+                Duration.ofMillis(50), Duration.ofSeconds(5), new SimpleMeterRegistry());
+        try {
+            DeadLetterReplayer.ReplayJob job = replayer.replay(ALL, 1000);
+
+            await().atMost(Duration.ofSeconds(5)).until(() -> job.getStatus() == DeadLetterReplayer.Status.THROTTLED);
+            assertThat(broker.messageCount("orders")).isLessThanOrEqualTo(20);
+
+            // The consumer catches up and the replay follows it
+            List<Message> replayed = new ArrayList<>();
+            while (replayed.size() < 50) {
+                Message message = template.receive("orders", 5_000);
+                assertThat(message).isNotNull();
+                replayed.add(message);
+            }
+            await().atMost(Duration.ofSeconds(5)).until(() -> job.getStatus() == DeadLetterReplayer.Status.COMPLETED);
+            assertThat(job.getConfirmed()).isEqualTo(50);
+            assertThat(store.size()).isZero();
+
+            MessageProperties first = replayed.get(0).getMessageProperties();
+            assertThat(new String(replayed.get(0).getBody(), StandardCharsets.UTF_8)).isEqualTo("order-1");
+            assertThat(first.<Object>getHeader(DeadLetterReplayer.REPLAY_COUNT_HEADER)).isEqualTo(1);
+            assertThat(first.getHeaders()).doesNotContainKeys(
+                    DelayedRetryAdvice.ATTEMPT_HEADER, DelayedRetryAdvice.EXCEPTION_HEADER);
+        } finally {
+            replayer.destroy();
+            store.close();
+            connectionFactory.destroy();
+            broker.close();
+        }
+    }
+
+    private DeadLetterStore store() {
+        OutboxLog log = new OutboxLog("dead.letters.log", dir, 64 * 1024, 16, new SimpleMeterRegistry());
+        return new DeadLetterStore(log, 1000, 4096, Duration.ofHours(1), new SimpleMeterRegistry());
+    }
+
+    // As DelayedRetryAdvice dead-letters it once the retries are used up
+    private static Message failedOrder(int n) {
+        MessageProperties properties = new MessageProperties();
+        properties.setHeader(DelayedRetryAdvice.ATTEMPT_HEADER, 3);
+        properties.setHeader(DelayedRetryAdvice.ORIGINAL_QUEUE_HEADER, "orders");
+        properties.setHeader(DelayedRetryAdvice.EXCEPTION_HEADER, "java.lang.IllegalStateException: gateway timeout");
+        return new Message(("order-" + n).getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
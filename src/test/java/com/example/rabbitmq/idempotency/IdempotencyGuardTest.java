@@ -0,0 +1,90 @@
+package com.example.rabbitmq.idempotency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyGuardTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void runsEachKeyOnceAndRetriesAfterAFailure() throws Exception {
+        IdempotencyGuard guard = guard(null);
+        AtomicInteger charges = new AtomicInteger();
+        try {
+            assertThat(guard.runOnce("payment", "order-1", charges::incrementAndGet)).isTrue();
+            assertThat(guard.runOnce("payment", "order-1", charges::incrementAndGet)).isFalse();
+            // Scopes don't share keys
+            assertThat(guard.runOnce("refund", "order-1", charges::incrementAndGet)).isTrue();
+
+            assertThatThrownBy(() -> guard.runOnce("payment", "order-2", () -> {
+                throw new IllegalStateException("gateway timeout");
+            })).isInstanceOf(IllegalStateException.class);
+            assertThat(guard.runOnce("payment", "order-2", charges::incrementAndGet)).isTrue();
+
+            // A second delivery while the first is still charging
+            CountDownLatch charging = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Thread first = new Thread(() -> guard.runOnce("payment", "order-3", () -> {
+                charging.countDown();
+                awaitQuietly(release);
+            }));
+            first.start();
+            assertThat(charging.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThatThrownBy(() -> guard.runOnce("payment", "order-3", charges::incrementAndGet))
+                    .isInstanceOf(DuplicateInProgressException.class);
+            release.countDown();
+            first.join();
+
+            assertThat(guard.runOnce("payment", "order-3", charges::incrementAndGet)).isFalse();
+            assertThat(charges).hasValue(3);
+            assertThat(guard.size()).isEqualTo(4);
+        } finally {
+            guard.destroy();
+        }
+    }
+
+    @Test
+    void keepsCompletedKeysOverARestartWithASnapshot() {
+        Path snapshot = dir.resolve("idempotency.snapshot");
+        IdempotencyGuard guard = guard(snapshot);
+        guard.runOnce("payment", "order-1", () -> { });
+        guard.runOnce("payment", "order-2", () -> { });
+        // Too long for the snapshot format: left out, without losing the other keys
+        guard.runOnce("payment", "x".repeat(70_000), () -> { });
+        guard.destroy();
+
+        IdempotencyGuard restarted = guard(snapshot);
+        try {
+            assertThat(restarted.size()).isEqualTo(2);
+            assertThat(restarted.runOnce("payment", "order-2", () -> { })).isFalse();
+            assertThat(restarted.runOnce("payment", "order-3", () -> { })).isTrue();
+        } finally {
+            restarted.destroy();
+        }
+    }
+
+    private static IdempotencyGuard guard(Path snapshot) {
+        return new IdempotencyGuard(Duration.ofHours(1), 1000, 0.01, snapshot, Duration.ofHours(1),
+                new SimpleMeterRegistry());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
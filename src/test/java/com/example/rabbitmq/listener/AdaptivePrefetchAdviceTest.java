@@ -0,0 +1,96 @@
+package com.example.rabbitmq.listener;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptivePrefetchAdviceTest {
+
+    // min 1, max 500, initial 10, 200 ms of buffered work, no smoothing unless a test asks for it
+    private AdaptivePrefetchAdvice advice = advice(1.0);
+
+    @AfterEach
+    void tearDown() {
+        advice.destroy();
+    }
+
+    @Test
+    void prefetchIsTargetLatencyOverTimePerMessage() {
+        record("payments", 10, 40);
+
+        advice.adjust();
+
+        assertThat(advice.prefetch("payments")).isEqualTo(5);
+    }
+
+    @Test
+    void prefetchIsClampedToTheBounds() {
+        record("fast", 1_000, 0.01);
+        record("slow", 2, 3_000);
+
+        advice.adjust();
+
+        assertThat(advice.prefetch("fast")).isEqualTo(500);
+        assertThat(advice.prefetch("slow")).isEqualTo(1);
+    }
+
+    @Test
+    void smallChangesAreIgnored() {
+        // 200 / 18 rounds to 11, within 20% of the initial 10
+        record("orders", 10, 18);
+
+        advice.adjust();
+
+        assertThat(advice.prefetch("orders")).isEqualTo(10);
+    }
+
+    @Test
+    void idleIntervalKeepsTheCurrentValue() {
+        record("payments", 10, 40);
+        advice.adjust();
+
+        advice.adjust();
+
+        assertThat(advice.prefetch("payments")).isEqualTo(5);
+    }
+
+    @Test
+    void timePerMessageIsSmoothedAcrossIntervals() {
+        advice.destroy();
+        advice = advice(0.5);
+        record("payments", 10, 40);
+        advice.adjust();
+
+        // Smoothed to (40 + 4) / 2 = 22 ms rather than jumping to 4 ms
+        record("payments", 10, 4);
+        advice.adjust();
+
+        assertThat(advice.prefetch("payments")).isEqualTo(9);
+    }
+
+    @Test
+    void queuesAreSizedIndependently() {
+        record("image.processing.queue.0", 10, 100);
+        record("image.processing.queue.1", 10, 1);
+
+        advice.adjust();
+
+        assertThat(advice.prefetch("image.processing.queue.0")).isEqualTo(2);
+        assertThat(advice.prefetch("image.processing.queue.1")).isEqualTo(200);
+    }
+
+    private void record(String queue, int deliveries, double millisPerMessage) {
+        advice.record(queue, deliveries, (long) (deliveries * millisPerMessage * TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+
+    // The interval only drives the scheduler; the tests call adjust() themselves
+    private static AdaptivePrefetchAdvice advice(double smoothing) {
+        return new AdaptivePrefetchAdvice(1, 500, 10, Duration.ofMillis(200), smoothing, Duration.ofHours(1),
+                new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.rabbitmq.listener;
+
+import com.example.rabbitmq.classifier.MessageClassifier;
+import com.example.rabbitmq.classifier.MessageTags;
+import com.example.rabbitmq.config.MessagingProperties;
+import com.example.rabbitmq.direct.LogAnalyticsService;
+import com.example.rabbitmq.direct.MonitoringService;
+import com.example.rabbitmq.model.LogEntry;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsumerBatchesTest {
+
+    private static final Map<String, Map<String, List<String>>> RULES = rules();
+
+    private final List<String> channelCalls = new ArrayList<>();
+    private final Channel channel = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(),
+            new Class<?>[] {Channel.class}, (proxy, method, args) -> {
+                channelCalls.add(method.getName() + " " + Arrays.toString(args));
+                return null;
+            });
+
+    @Test
+    void aMixedWarningBatchCountsEveryWarningAsTheSingleMessagePathDoes() {
+        List<LogEntry> warnings = List.of(
+                warning("checkout", "SLOW response from payment gateway"),
+                warning("checkout", "Database connection pool nearly exhausted"),
+                warning("search", "Database replica lagging"),
+                warning("checkout", "Request TIMEOUT calling inventory"),
+                warning("checkout", "Disk usage above 80%"),
+                warning("checkout", "Slow query on orders table"));
+
+        MonitoringService batched = new MonitoringService(classifier(), new MessagingProperties());
+        batched.processWarningLogs(batch(warnings), channel);
+
+        MonitoringService single = new MonitoringService(classifier(), new MessagingProperties());
+        warnings.forEach(single::processWarningLog);
+
+        assertThat(batched.getWarningCounts()).isEqualTo(Map.of(
+                "checkout:PERFORMANCE", 3L,
+                "checkout:DATABASE", 1L,
+                "checkout:GENERAL", 1L,
+                "search:DATABASE", 1L));
+        assertThat(batched.getWarningCounts()).isEqualTo(single.getWarningCounts());
+        // One multiple-ack on the last delivery tag covers the whole batch
+        assertThat(channelCalls).containsExactly("basicAck [6, true]");
+    }
+
+    @Test
+    void aFailedWarningBatchIsRetriedPerMessageWithoutCountingAnythingTwice() {
+        List<LogEntry> warnings = List.of(
+                warning("checkout", "SLOW response from payment gateway"),
+                warning("checkout", "Database connection pool nearly exhausted"),
+                warning("checkout", "corrupt \u0000\u0000 line"),
+                warning("search", "Database replica lagging"));
+
+        MonitoringService service = new MonitoringService(classifier(), new MessagingProperties());
+        service.processWarningLogs(batch(warnings), channel);
+
+        // Preparing got as far as the corrupt line before failing; had it counted anything, these would be doubled
+        assertThat(service.getWarningCounts()).isEqualTo(Map.of(
+                "checkout:PERFORMANCE", 1L,
+                "checkout:DATABASE", 1L,
+                "search:DATABASE", 1L));
+        assertThat(channelCalls).containsExactly(
+                "basicAck [1, false]",
+                "basicAck [2, false]",
+                "basicNack [3, false, true]",
+                "basicAck [4, false]");
+    }
+
+    @Test
+    void aFailedInfoLogBatchIsRetriedPerMessageWithoutCountingAnythingTwice() {
+        List<LogEntry> infoLogs = List.of(
+                info("checkout", "Order 1001 created"),
+                info("search", "Processed 200 records in 35ms"),
+                info("checkout", "corrupt \u0000\u0000 line"),
+                info("checkout", "User signed up"));
+
+        LogAnalyticsService service = new LogAnalyticsService(classifier(), new MessagingProperties());
+        service.processInfoLogs(batch(infoLogs), channel);
+
+        assertThat(service.getTotalInfoLogs()).isEqualTo(3);
+        assertThat(service.getAllServiceLogs()).isEqualTo(Map.of("checkout", 2L, "search", 1L));
+        assertThat(channelCalls).containsExactly(
+                "basicAck [1, false]",
+                "basicAck [2, false]",
+                "basicNack [3, false, true]",
+                "basicAck [4, false]");
+
+        channelCalls.clear();
+        service.processInfoLogs(batch(List.of(
+                info("checkout", "Order 1002 created"),
+                info("search", "Index refreshed"))), channel);
+
+        assertThat(service.getTotalInfoLogs()).isEqualTo(5);
+        assertThat(service.getAllServiceLogs()).isEqualTo(Map.of("checkout", 3L, "search", 2L));
+        assertThat(channelCalls).containsExactly("basicAck [2, true]");
+    }
+
+    // Classifies as configured, but can't read the corrupt lines - neither in a batch nor on its own
+    private static MessageClassifier classifier() {
+        return new MessageClassifier(RULES) {
+            @Override
+            public MessageTags classify(CharSequence message) {
+                if (message != null && message.toString().startsWith("corrupt")) {
+                    throw new IllegalArgumentException("Unreadable log line");
+                }
+                return super.classify(message);
+            }
+        };
+    }
+
+    private static Map<String, Map<String, List<String>>> rules() {
+        Map<String, List<String>> warningTypes = new LinkedHashMap<>();
+        warningTypes.put("PERFORMANCE", List.of("slow", "timeout"));
+        warningTypes.put("DATABASE", List.of("database"));
+        Map<String, List<String>> performance = new LinkedHashMap<>();
+        performance.put("SLOW", List.of("slow"));
+        performance.put("TIMEOUT", List.of("timeout"));
+        Map<String, Map<String, List<String>>> rules = new LinkedHashMap<>();
+        rules.put("warning-type", warningTypes);
+        rules.put("performance", performance);
+        rules.put("business-event", Map.of("ORDER_CREATED", List.of("order")));
+        return rules;
+    }
+
+    private static List<Message<LogEntry>> batch(List<LogEntry> entries) {
+        List<Message<LogEntry>> batch = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            batch.add(MessageBuilder.withPayload(entries.get(i))
+                    .setHeader(AmqpHeaders.DELIVERY_TAG, i + 1L)
+                    .build());
+        }
+        return batch;
+    }
+
+    private static LogEntry warning(String application, String message) {
+        return new LogEntry("log-" + message.hashCode(), application, LogEntry.LogLevel.WARNING, message, "test", "main");
+    }
+
+    private static LogEntry info(String application, String message) {
+        return new LogEntry("log-" + message.hashCode(), application, LogEntry.LogLevel.INFO, message, "test", "main");
+    }
+}
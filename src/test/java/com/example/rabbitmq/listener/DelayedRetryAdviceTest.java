@@ -0,0 +1,171 @@
+package com.example.rabbitmq.listener;
+
+import com.example.rabbitmq.broker.InMemoryBroker;
+import com.example.rabbitmq.config.ErrorHandlingConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class DelayedRetryAdviceTest {
+
+    private static final List<Duration> TIERS = List.of(Duration.ofMillis(50), Duration.ofMillis(100));
+
+    private InMemoryBroker broker;
+    private CachingConnectionFactory connectionFactory;
+    private RabbitTemplate template;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        broker = new InMemoryBroker();
+        connectionFactory = broker.connectionFactory();
+        template = new RabbitTemplate(connectionFactory);
+        meterRegistry = new SimpleMeterRegistry();
+
+        RabbitAdmin admin = new RabbitAdmin(connectionFactory);
+        admin.declareQueue(new Queue("orders"));
+        DirectExchange dlx = new DirectExchange("dlx.exchange");
+        Queue deadLetters = new Queue("dlx.queue");
+        admin.declareExchange(dlx);
+        admin.declareQueue(deadLetters);
+        admin.declareBinding(BindingBuilder.bind(deadLetters).to(dlx).with("dlx"));
+        for (Duration delay : TIERS) {
+            FanoutExchange exchange = new FanoutExchange(DelayedRetryAdvice.delayQueue(delay));
+            Queue queue = QueueBuilder.durable(exchange.getName())
+                    .withArgument("x-message-ttl", delay.toMillis())
+                    .withArgument("x-dead-letter-exchange", "")
+                    .build();
+            admin.declareExchange(exchange);
+            admin.declareQueue(queue);
+            admin.declareBinding(BindingBuilder.bind(queue).to(exchange));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+        broker.close();
+    }
+
+    @Test
+    void retriesThroughEachTierBackToTheOriginQueue() {
+        List<Object> attempts = new CopyOnWriteArrayList<>();
+        SimpleMessageListenerContainer container = container(message -> {
+            attempts.add(message.getMessageProperties().getHeader(DelayedRetryAdvice.ATTEMPT_HEADER));
+            if (attempts.size() < 3) {
+                throw new IllegalStateException("gateway timeout");
+            }
+        });
+        try {
+            template.convertAndSend("", "orders", "order-1");
+
+            await().atMost(Duration.ofSeconds(5)).until(() -> attempts.size() == 3);
+            assertThat(attempts).containsExactly(null, 1, 2);
+            assertThat(scheduled("retry.delay.50ms")).isEqualTo(1);
+            assertThat(scheduled("retry.delay.100ms")).isEqualTo(1);
+            assertThat(broker.messageCount("dlx.queue")).isZero();
+        } finally {
+            container.stop();
+        }
+    }
+
+    @Test
+    void deadLettersOnceTheTiersAreExhausted() {
+        SimpleMessageListenerContainer container = container(message -> {
+            throw new IllegalStateException("gateway timeout");
+        });
+        try {
+            template.convertAndSend("", "orders", "order-1");
+            Message deadLetter = template.receive("dlx.queue", 5_000);
+
+            assertThat(deadLetter).isNotNull();
+            assertThat(deadLetter.getMessageProperties().<Object>getHeader(DelayedRetryAdvice.ATTEMPT_HEADER)).isEqualTo(2);
+            assertThat(deadLetter.getMessageProperties().<Object>getHeader(DelayedRetryAdvice.ORIGINAL_QUEUE_HEADER))
+                    .isEqualTo("orders");
+            assertThat(deadLetter.getMessageProperties().<String>getHeader(DelayedRetryAdvice.EXCEPTION_HEADER))
+                    .contains("gateway timeout");
+            assertThat(meterRegistry.get("messaging.retry.dead.lettered").tag("reason", "exhausted").counter().count())
+                    .isEqualTo(1);
+        } finally {
+            container.stop();
+        }
+    }
+
+    @Test
+    void fatalFailuresSkipTheTiers() {
+        SimpleMessageListenerContainer container = container(message -> {
+            throw new IllegalArgumentException("unknown currency");
+        });
+        try {
+            template.convertAndSend("", "orders", "order-1");
+
+            assertThat(template.receive("dlx.queue", 5_000)).isNotNull();
+            assertThat(scheduled("retry.delay.50ms")).isZero();
+            assertThat(meterRegistry.get("messaging.retry.dead.lettered").tag("reason", "fatal").counter().count())
+                    .isEqualTo(1);
+        } finally {
+            container.stop();
+        }
+    }
+
+    @Test
+    void unroutableCopiesLeaveTheDeliveryOnItsQueue() {
+        List<Object> attempts = new CopyOnWriteArrayList<>();
+        SimpleMessageListenerContainer container = container(message -> {
+            attempts.add(message.getMessageProperties().getHeader(DelayedRetryAdvice.ATTEMPT_HEADER));
+            throw new IllegalArgumentException("unknown currency");
+        }, "unbound");
+        try {
+            template.convertAndSend("", "orders", "order-1");
+
+            // The copy comes back as a return, so the delivery is requeued rather than acked and lost
+            await().atMost(Duration.ofSeconds(5)).until(() -> attempts.size() >= 2);
+            assertThat(attempts).containsOnlyNulls();
+            assertThat(broker.messageCount("dlx.queue")).isZero();
+            assertThat(meterRegistry.find("messaging.retry.dead.lettered").counter()).isNull();
+        } finally {
+            container.stop();
+        }
+    }
+
+    private double scheduled(String tier) {
+        return meterRegistry.get("messaging.retry.scheduled").tag("tier", tier).counter().count();
+    }
+
+    private SimpleMessageListenerContainer container(MessageListener listener) {
+        return container(listener, "dlx");
+    }
+
+    private SimpleMessageListenerContainer container(MessageListener listener, String deadLetterRoutingKey) {
+        RabbitTemplate retryTemplate = new RabbitTemplate(connectionFactory);
+        retryTemplate.setMandatory(true);
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames("orders");
+        container.setMessageListener(listener);
+        container.setAdviceChain(new DelayedRetryAdvice(retryTemplate, Duration.ofSeconds(5), TIERS, Set.of("orders"),
+                "dlx.exchange", deadLetterRoutingKey, new ErrorHandlingConfig.CustomFatalExceptionStrategy(), meterRegistry));
+        container.afterPropertiesSet();
+        container.start();
+        return container;
+    }
+}
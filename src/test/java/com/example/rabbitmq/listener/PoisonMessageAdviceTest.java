@@ -0,0 +1,170 @@
+package com.example.rabbitmq.listener;
+
+import com.example.rabbitmq.broker.InMemoryBroker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class PoisonMessageAdviceTest {
+
+    private InMemoryBroker broker;
+    private CachingConnectionFactory connectionFactory;
+    private RabbitTemplate template;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        broker = new InMemoryBroker();
+        connectionFactory = broker.connectionFactory();
+        template = new RabbitTemplate(connectionFactory);
+        meterRegistry = new SimpleMeterRegistry();
+
+        RabbitAdmin admin = new RabbitAdmin(connectionFactory);
+        admin.declareQueue(new Queue("iot"));
+        admin.declareQueue(new Queue("quarantine.queue"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+        broker.close();
+    }
+
+    @Test
+    void quarantinesARequeuedMessageOnceItReachesTheThreshold() {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean fixed = new AtomicBoolean();
+        SimpleMessageListenerContainer container = container(message -> {
+            calls.incrementAndGet();
+            if (!fixed.get()) {
+                throw new IllegalStateException("malformed reading");
+            }
+        });
+        try {
+            template.convertAndSend("", "iot", "{\"deviceId\":");
+            Message quarantined = template.receive("quarantine.queue", 5_000);
+
+            assertThat(quarantined).isNotNull();
+            assertThat(calls).hasValue(3);
+            assertThat(quarantined.getMessageProperties().<Object>getHeader(PoisonMessageAdvice.FAILURES_HEADER)).isEqualTo(3);
+            assertThat(quarantined.getMessageProperties().<Object>getHeader(DelayedRetryAdvice.ORIGINAL_QUEUE_HEADER))
+                    .isEqualTo("iot");
+
+            // Replayed once the listener is fixed, the same payload is processed rather than quarantined again
+            fixed.set(true);
+            template.convertAndSend("", "iot", "{\"deviceId\":");
+            await().atMost(Duration.ofSeconds(5)).until(() -> calls.get() == 4);
+            assertThat(meterRegistry.get("messaging.quarantine.quarantined").counter().count()).isEqualTo(1);
+            assertThat(meterRegistry.get("messaging.quarantine.lookups").tag("result", "hit").counter().count())
+                    .isEqualTo(2);
+        } finally {
+            container.stop();
+        }
+        assertThat(broker.messageCount("iot")).isZero();
+        assertThat(broker.messageCount("quarantine.queue")).isZero();
+    }
+
+    @Test
+    void outagesAreNotCountedAsFailures() {
+        AtomicInteger calls = new AtomicInteger();
+        SimpleMessageListenerContainer container = container(message -> {
+            if (calls.incrementAndGet() <= 6) {
+                throw new UncheckedIOException(new ConnectException("Connection refused"));
+            }
+        });
+        try {
+            template.convertAndSend("", "iot", "{\"deviceId\":\"temp-1\"}");
+
+            await().atMost(Duration.ofSeconds(5)).until(() -> calls.get() == 7);
+            assertThat(broker.messageCount("quarantine.queue")).isZero();
+            assertThat(meterRegistry.get("messaging.quarantine.quarantined").counter().count()).isZero();
+        } finally {
+            container.stop();
+        }
+    }
+
+    @Test
+    void anUnroutableQuarantineCopyLeavesTheDeliveryOnItsQueue() {
+        AtomicInteger calls = new AtomicInteger();
+        SimpleMessageListenerContainer container = container(message -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("malformed reading");
+        }, "missing.quarantine.queue");
+        try {
+            template.convertAndSend("", "iot", "{\"deviceId\":");
+
+            // The copy comes back as a return, so the delivery is requeued rather than acked and lost
+            await().atMost(Duration.ofSeconds(5)).until(() -> calls.get() >= 5);
+            assertThat(meterRegistry.get("messaging.quarantine.quarantined").counter().count()).isZero();
+        } finally {
+            container.stop();
+        }
+        assertThat(broker.messageCount("iot")).isEqualTo(1);
+    }
+
+    @Test
+    void fullSetsEvictTheFewestFailuresFirst() {
+        FingerprintCache cache = new FingerprintCache(4);
+        long poison = FingerprintCache.fingerprint(message("poison", null));
+        cache.recordFailure(poison);
+        cache.recordFailure(poison);
+        for (int i = 0; i < 100; i++) {
+            cache.recordFailure(FingerprintCache.fingerprint(message("reading-" + i, null)));
+        }
+
+        assertThat(cache.failures(poison)).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(4);
+        // Same body, different message id: a different message
+        assertThat(cache.failures(FingerprintCache.fingerprint(message("poison", "id-1")))).isZero();
+
+        cache.clear(poison);
+        assertThat(cache.failures(poison)).isZero();
+        assertThat(cache.size()).isEqualTo(3);
+    }
+
+    private SimpleMessageListenerContainer container(MessageListener listener) {
+        return container(listener, "quarantine.queue");
+    }
+
+    private SimpleMessageListenerContainer container(MessageListener listener, String quarantineQueue) {
+        RabbitTemplate quarantineTemplate = new RabbitTemplate(connectionFactory);
+        quarantineTemplate.setMandatory(true);
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames("iot");
+        container.setMessageListener(listener);
+        container.setAdviceChain(new PoisonMessageAdvice(quarantineTemplate, Duration.ofSeconds(5), 1024, 5,
+                Map.of("iot", 3), Set.of("dlx.queue"), List.of(IOException.class), quarantineQueue, meterRegistry));
+        container.afterPropertiesSet();
+        container.start();
+        return container;
+    }
+
+    private static Message message(String body, String messageId) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(messageId);
+        return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.rabbitmq.listener;
+
+import com.example.rabbitmq.broker.InMemoryBroker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.ConditionalRejectingErrorHandler;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class VirtualThreadDispatchAdviceTest {
+
+    private InMemoryBroker broker;
+    private CachingConnectionFactory connectionFactory;
+    private RabbitTemplate template;
+    private SimpleMeterRegistry meterRegistry;
+    private List<Throwable> handled;
+    private VirtualThreadDispatchAdvice advice;
+
+    @BeforeEach
+    void setUp() {
+        broker = new InMemoryBroker();
+        connectionFactory = broker.connectionFactory();
+        template = new RabbitTemplate(connectionFactory);
+        meterRegistry = new SimpleMeterRegistry();
+
+        RabbitAdmin admin = new RabbitAdmin(connectionFactory);
+        admin.declareQueue(QueueBuilder.nonDurable("payments")
+                .deadLetterExchange("")
+                .deadLetterRoutingKey("payments.dlq")
+                .build());
+        admin.declareQueue(new Queue("payments.dlq", false));
+        admin.declareQueue(new Queue("images", false));
+
+        // Records what reaches the container's error handler, then decides like the application's one
+        handled = new CopyOnWriteArrayList<>();
+        ConditionalRejectingErrorHandler errorHandler = new ConditionalRejectingErrorHandler();
+        advice = new VirtualThreadDispatchAdvice(Map.of("payments", 3), 8, failure -> {
+            handled.add(failure);
+            errorHandler.handleError(failure);
+        }, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        advice.shutdown();
+        connectionFactory.destroy();
+        broker.close();
+    }
+
+    @Test
+    void aSaturatedQueueHoldsItsConsumerAtTheLimit() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        // Prefetch above the limit, so the semaphore rather than the broker is what holds deliveries back
+        SimpleMessageListenerContainer payments = container("payments", 20, message -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            done.incrementAndGet();
+        });
+        AtomicInteger images = new AtomicInteger();
+        SimpleMessageListenerContainer imageContainer = container("images", 20, message -> images.incrementAndGet());
+        try {
+            for (int i = 0; i < 10; i++) {
+                template.convertAndSend("", "payments", "payment-" + i);
+            }
+            await().atMost(Duration.ofSeconds(5)).until(() -> running.get() == 3);
+            assertThat(meterRegistry.get("messaging.listener.in.flight").tag("queue", "payments").gauge().value())
+                    .isEqualTo(3);
+
+            // Another queue has permits of its own and keeps flowing
+            for (int i = 0; i < 5; i++) {
+                template.convertAndSend("", "images", "image-" + i);
+            }
+            await().atMost(Duration.ofSeconds(5)).until(() -> images.get() == 5);
+            assertThat(running).hasValue(3);
+            assertThat(done).hasValue(0);
+
+            release.countDown();
+            await().atMost(Duration.ofSeconds(5)).until(() -> done.get() == 10);
+            assertThat(peak).hasValue(3);
+        } finally {
+            payments.stop();
+            imageContainer.stop();
+        }
+        // Every delivery was acked once its listener returned
+        assertThat(broker.messageCount("payments")).isZero();
+        assertThat(broker.messageCount("images")).isZero();
+        assertThat(meterRegistry.get("messaging.listener.in.flight").tag("queue", "payments").gauge().value()).isZero();
+    }
+
+    @Test
+    void failuresGoThroughTheErrorHandlerBeforeTheDeliveryIsSettled() {
+        AtomicInteger attempts = new AtomicInteger();
+        SimpleMessageListenerContainer container = container("payments", 3, message -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (body.contains("malformed")) {
+                throw new MessageConversionException("cannot read " + body);
+            }
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("gateway timeout");
+            }
+        });
+        try {
+            template.convertAndSend("", "payments", "malformed-payment");
+            await().atMost(Duration.ofSeconds(5)).until(() -> broker.messageCount("payments.dlq") == 1);
+
+            template.convertAndSend("", "payments", "payment-1");
+            await().atMost(Duration.ofSeconds(5)).until(() -> attempts.get() == 2);
+        } finally {
+            container.stop();
+        }
+
+        assertThat(handled).hasSize(2);
+        assertThat(handled).allMatch(ListenerExecutionFailedException.class::isInstance);
+        // Fatal: rejected by the handler and dead-lettered
+        assertThat(handled.get(0)).hasRootCauseInstanceOf(MessageConversionException.class);
+        assertThat(((ListenerExecutionFailedException) handled.get(0)).getFailedMessage().getBody())
+                .isEqualTo("malformed-payment".getBytes(StandardCharsets.UTF_8));
+        // Transient: requeued and redelivered, then acked on the second attempt
+        assertThat(handled.get(1)).hasRootCauseMessage("gateway timeout");
+        assertThat(broker.messageCount("payments")).isZero();
+        assertThat(broker.messageCount("payments.dlq")).isEqualTo(1);
+    }
+
+    private SimpleMessageListenerContainer container(String queue, int prefetch, MessageListener listener) {
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(queue);
+        container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        container.setPrefetchCount(prefetch);
+        container.setMessageListener(listener);
+        container.setAdviceChain(advice);
+        container.afterPropertiesSet();
+        container.start();
+        return container;
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.rabbitmq.messaging;
+
+import com.example.rabbitmq.broker.InMemoryBroker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class ConfirmingPublisherTest {
+
+    private final InMemoryBroker broker = new InMemoryBroker();
+    private final CachingConnectionFactory connectionFactory = broker.connectionFactory();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<ConfirmingPublisher> publishers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (ConfirmingPublisher publisher : publishers) {
+            publisher.destroy();
+        }
+        connectionFactory.destroy();
+        broker.close();
+    }
+
+    @Test
+    void keepsAtMostMaxInFlightMessagesUnconfirmed() {
+        HeldConfirmsTemplate template = new HeldConfirmsTemplate(connectionFactory);
+        ConfirmingPublisher publisher = publisher(template, 2, 10, 0, Duration.ofSeconds(5));
+
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(publisher.publish("", "orders", "order-" + i));
+        }
+        assertThat(template.sent).hasSize(2);
+        assertThat(meterRegistry.get("messaging.publish.confirm.in.flight").gauge().value()).isEqualTo(2);
+        assertThat(meterRegistry.get("messaging.publish.confirm.waiting").gauge().value()).isEqualTo(3);
+
+        // Each confirm frees one slot, which the next waiting message takes
+        template.confirmNext(true);
+        await().atMost(Duration.ofSeconds(5)).until(() -> template.sent.size() == 2 && results.get(0).isDone());
+        assertThat(results.get(0)).isCompleted();
+        assertThat(results.subList(1, 5)).noneMatch(CompletableFuture::isDone);
+
+        for (int i = 0; i < 4; i++) {
+            await().atMost(Duration.ofSeconds(5)).until(() -> !template.sent.isEmpty());
+            template.confirmNext(true);
+        }
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).orTimeout(5, TimeUnit.SECONDS).join();
+        assertThat(template.messages).hasSize(5);
+    }
+
+    @Test
+    void failsFastOnceTheWaitQueueIsFull() {
+        HeldConfirmsTemplate template = new HeldConfirmsTemplate(connectionFactory);
+        ConfirmingPublisher publisher = publisher(template, 1, 2, 0, Duration.ofSeconds(1));
+
+        publisher.publish("", "orders", "order-1");
+        publisher.publish("", "orders", "order-2");
+        publisher.publish("", "orders", "order-3");
+        CompletableFuture<Void> refused = publisher.publish("", "orders", "order-4");
+
+        assertThat(refused).isCompletedExceptionally();
+        assertThatThrownBy(refused::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(PublishFailedException.class)
+                .hasMessageContaining("Confirm window full");
+        assertThat(meterRegistry.get("messaging.publish.rejected").counter().count()).isEqualTo(1);
+        assertThat(template.sent).hasSize(1);
+    }
+
+    @Test
+    void resendsTheSameBytesAfterANack() throws Exception {
+        HeldConfirmsTemplate template = new HeldConfirmsTemplate(connectionFactory);
+        ConfirmingPublisher publisher = publisher(template, 1, 10, 2, Duration.ofSeconds(5));
+
+        CompletableFuture<Void> result = publisher.publish("", "orders", "order-1");
+        template.confirmNext(false);
+        await().atMost(Duration.ofSeconds(5)).until(() -> template.sent.size() == 1);
+        template.confirmNext(true);
+
+        result.get(5, TimeUnit.SECONDS);
+        assertThat(template.messages).hasSize(2);
+        assertThat(template.messages.get(1).getBody()).isEqualTo(template.messages.get(0).getBody());
+        assertThat(meterRegistry.get("messaging.publish.retried").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void failsAMessageStillNackedAfterMaxRetries() {
+        HeldConfirmsTemplate template = new HeldConfirmsTemplate(connectionFactory);
+        ConfirmingPublisher publisher = publisher(template, 1, 10, 2, Duration.ofSeconds(5));
+
+        CompletableFuture<Void> result = publisher.publish("", "orders", "order-1");
+        CompletableFuture<Void> next = publisher.publish("", "orders", "order-2");
+        for (int attempt = 0; attempt < 3; attempt++) {
+            await().atMost(Duration.ofSeconds(5)).until(() -> !template.sent.isEmpty());
+            template.confirmNext(false);
+        }
+
+        assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(PublishFailedException.class)
+                .hasMessageContaining("not confirmed by broker: disk alarm");
+        assertThat(meterRegistry.get("messaging.publish.retried").counter().count()).isEqualTo(2);
+        // The failed message gave its slot back
+        await().atMost(Duration.ofSeconds(5)).until(() -> template.sent.size() == 1);
+        assertThat(next).isNotDone();
+    }
+
+    @Test
+    void failsUnroutableMessagesWithoutRetrying() throws Exception {
+        new RabbitAdmin(connectionFactory).declareQueue(new Queue("orders", false));
+        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        template.setMandatory(true);
+        ConfirmingPublisher publisher = publisher(template, 4, 10, 2, Duration.ofSeconds(5));
+
+        publisher.publish("", "orders", "order-1").get(5, TimeUnit.SECONDS);
+        CompletableFuture<Void> unroutable = publisher.publish("", "no-such-queue", "order-2");
+
+        assertThatThrownBy(() -> unroutable.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(PublishFailedException.class)
+                .hasMessageContaining("returned as unroutable: NO_ROUTE");
+        assertThat(broker.messageCount("orders")).isEqualTo(1);
+        assertThat(meterRegistry.get("messaging.publish.returned").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("messaging.publish.retried").counter().count()).isZero();
+    }
+
+    @Test
+    void shutdownCompletesEveryOutstandingFuture() throws InterruptedException {
+        HeldConfirmsTemplate template = new HeldConfirmsTemplate(connectionFactory);
+        ConfirmingPublisher publisher = publisher(template, 1, 10, 3, Duration.ofMillis(200));
+
+        List<CompletableFuture<Void>> results = List.of(
+                publisher.publish("", "orders", "order-1"),
+                publisher.publish("", "orders", "order-2"),
+                publisher.publish("", "orders", "order-3"));
+        publisher.destroy();
+
+        assertThat(results).allMatch(CompletableFuture::isCompletedExceptionally);
+        // Neither resent nor sent from the wait queue while shutting down
+        assertThat(template.messages).hasSize(1);
+        assertThat(publisher.publish("", "orders", "order-4")).isCompletedExceptionally();
+    }
+
+    private ConfirmingPublisher publisher(RabbitTemplate template, int maxInFlight, int maxWaiting, int maxRetries,
+                                          Duration timeout) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.initialize();
+        ConfirmingPublisher publisher = new ConfirmingPublisher(template, executor, maxInFlight, maxWaiting,
+                maxRetries, timeout, meterRegistry);
+        publishers.add(publisher);
+        return publisher;
+    }
+
+    // Holds on to sends so each test decides when, and how, the broker confirms them
+    private static class HeldConfirmsTemplate extends RabbitTemplate {
+        private final BlockingQueue<CorrelationData> sent = new LinkedBlockingQueue<>();
+        private final List<Message> messages = new CopyOnWriteArrayList<>();
+
+        HeldConfirmsTemplate(ConnectionFactory connectionFactory) {
+            super(connectionFactory);
+        }
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            messages.add(message);
+            sent.add(correlationData);
+        }
+
+        void confirmNext(boolean ack) {
+            CorrelationData correlation = sent.poll();
+            assertThat(correlation).isNotNull();
+            correlation.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "disk alarm"));
+        }
+    }
+}
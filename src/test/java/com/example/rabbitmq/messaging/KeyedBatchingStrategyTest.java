@@ -0,0 +1,106 @@
+package com.example.rabbitmq.messaging;
+
+import com.example.rabbitmq.codec.RoutingHeaders;
+import com.example.rabbitmq.codec.RoutingMetadataConverter;
+import com.example.rabbitmq.model.IoTMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.batch.MessageBatch;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyedBatchingStrategyTest {
+
+    private final KeyedBatchingStrategy strategy = new KeyedBatchingStrategy(3, 1024, 60_000, new SimpleMeterRegistry());
+
+    @Test
+    void messagesWithDifferentHeadersAreNotBatchedTogether() {
+        assertThat(strategy.addToBatch("logs", "error", message("a", "billing"))).isNull();
+        assertThat(strategy.addToBatch("logs", "error", message("b", "orders"))).isNull();
+        assertThat(strategy.addToBatch("logs", "error", message("c", "billing"))).isNull();
+        MessageBatch billing = strategy.addToBatch("logs", "error", message("d", "billing"));
+
+        assertThat(billing).isNotNull();
+        List<Message> fragments = debatch(billing);
+        assertThat(fragments).extracting(KeyedBatchingStrategyTest::body).containsExactly("a", "c", "d");
+        assertThat(fragments).allMatch(fragment -> "billing".equals(fragment.getMessageProperties().getHeader("x-tenant")));
+
+        List<Message> orders = debatch(strategy.releaseBatches().iterator().next());
+        assertThat(orders).extracting(KeyedBatchingStrategyTest::body).containsExactly("b");
+        assertThat(orders.get(0).getMessageProperties().<Object>getHeader("x-tenant")).isEqualTo("orders");
+    }
+
+    @Test
+    void routingHeadersDoNotSplitBatchesOrLeakAcrossFragments() {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        MessageConverter converter = new RoutingMetadataConverter(new Jackson2JsonMessageConverter(mapper), mapper);
+        List<String> locations = List.of("room1", "room2", "room3");
+        MessageBatch batch = null;
+        for (int i = 0; i < locations.size(); i++) {
+            IoTMessage reading = new IoTMessage(null, "temp-" + i, "temperature_sensor", locations.get(i),
+                    "temperature", 20.0 + i, "celsius");
+            batch = strategy.addToBatch("iot", "sensor.temperature", converter.toMessage(reading, new MessageProperties()));
+        }
+
+        assertThat(batch).isNotNull();
+        List<Message> fragments = debatch(batch);
+        assertThat(fragments).hasSize(3);
+        for (int i = 0; i < fragments.size(); i++) {
+            MessageProperties properties = fragments.get(i).getMessageProperties();
+            assertThat(properties.getHeaders()).doesNotContainKeys(RoutingHeaders.LOCATION, RoutingHeaders.VALUE);
+            properties.setInferredArgumentType(IoTMessage.class);
+            IoTMessage decoded = (IoTMessage) converter.fromMessage(fragments.get(i));
+            assertThat(decoded.getLocation()).isEqualTo(locations.get(i));
+            assertThat(decoded.getValue()).isEqualTo(20.0 + i);
+        }
+    }
+
+    @Test
+    void messageWithItsOwnIdIsSentAlone() {
+        strategy.addToBatch("logs", "error", message("a", "billing"));
+        Message identified = message("b", "billing");
+        identified.getMessageProperties().setMessageId("msg-42");
+
+        MessageBatch batch = strategy.addToBatch("logs", "error", identified);
+
+        List<Message> fragments = debatch(batch);
+        assertThat(fragments).extracting(KeyedBatchingStrategyTest::body).containsExactly("b");
+        assertThat(fragments.get(0).getMessageProperties().getMessageId()).isEqualTo("msg-42");
+    }
+
+    @Test
+    void batchFilledRightAfterAByteOverflowIsDueAtOnce() {
+        KeyedBatchingStrategy small = new KeyedBatchingStrategy(2, 12, 60_000, new SimpleMeterRegistry());
+        assertThat(small.addToBatch("logs", "error", message("aaaa", "billing"))).isNull();
+        // 8 + 12 bytes overflows the budget: the first batch ships, and the second already fills it on its own
+        assertThat(small.addToBatch("logs", "error", message("bbbbbbbb", "billing"))).isNotNull();
+        assertThat(small.nextRelease().getTime()).isLessThanOrEqualTo(System.currentTimeMillis());
+    }
+
+    private List<Message> debatch(MessageBatch batch) {
+        assertThat(strategy.canDebatch(batch.message().getMessageProperties())).isTrue();
+        List<Message> fragments = new ArrayList<>();
+        strategy.deBatch(batch.message(), fragments::add);
+        return fragments;
+    }
+
+    private static Message message(String body, String tenant) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setHeader("x-tenant", tenant);
+        return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    private static String body(Message message) {
+        return new String(message.getBody(), StandardCharsets.UTF_8);
+    }
+}
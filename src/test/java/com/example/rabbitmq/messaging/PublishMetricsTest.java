@@ -0,0 +1,89 @@
+package com.example.rabbitmq.messaging;
+
+import com.example.rabbitmq.broker.InMemoryBroker;
+import com.example.rabbitmq.config.RabbitConfig;
+import com.example.rabbitmq.model.IoTMessage;
+import com.example.rabbitmq.model.Order;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Dashboards and alerts select on these names and tags, so renaming one is a breaking change
+class PublishMetricsTest {
+
+    private InMemoryBroker broker;
+    private AnnotationConfigApplicationContext context;
+    private MessagePublisher publisher;
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        broker = new InMemoryBroker();
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean(CachingConnectionFactory.class, broker::connectionFactory);
+        context.registerBean(RabbitAdmin.class, () -> new RabbitAdmin(context.getBean(ConnectionFactory.class)));
+        context.register(RabbitConfig.class, MessagePublisher.class);
+        context.refresh();
+
+        publisher = context.getBean(MessagePublisher.class);
+        meterRegistry = context.getBean(MeterRegistry.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+        broker.close();
+    }
+
+    @Test
+    void pointToPointSendsAreTaggedWithTheQueue() {
+        publisher.publishToQueue(RabbitConfig.ORDER_QUEUE, new Order("order-1", "customer-1", "customer@example.com",
+                List.of(new Order.OrderItem("prod-1", "Laptop", 1, new BigDecimal("999.99"))), new BigDecimal("999.99")));
+
+        assertThat(meterRegistry.get("messaging.publish.time")
+                .tag("destination", RabbitConfig.ORDER_QUEUE)
+                .tag("pattern", "point-to-point")
+                .tag("outcome", "success")
+                .timer().count()).isEqualTo(1);
+        DistributionSummary size = meterRegistry.get("messaging.message.size")
+                .tag("direction", "publish")
+                .tag("destination", RabbitConfig.ORDER_QUEUE)
+                .tag("pattern", "point-to-point")
+                .summary();
+        assertThat(size.count()).isEqualTo(1);
+        assertThat(size.totalAmount()).isPositive();
+    }
+
+    @Test
+    void exchangeSendsAreTaggedWithTheExchange() {
+        IoTMessage reading = new IoTMessage("msg-1", "temp-1", "temperature_sensor", "room1", "temperature", 21.5, "celsius");
+        publisher.publish(RabbitConfig.IOT_TOPIC_EXCHANGE, reading.getRoutingKey(), reading);
+
+        assertThat(meterRegistry.get("messaging.publish.time")
+                .tag("destination", RabbitConfig.IOT_TOPIC_EXCHANGE)
+                .tag("pattern", "topic")
+                .tag("outcome", "success")
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("messaging.message.size")
+                .tag("direction", "publish")
+                .tag("destination", RabbitConfig.IOT_TOPIC_EXCHANGE)
+                .tag("pattern", "topic")
+                .summary().count()).isEqualTo(1);
+        // The routing key never becomes a tag: it would make one series per device
+        assertThat(meterRegistry.find("messaging.publish.time").tag("destination", reading.getRoutingKey()).timer())
+                .isNull();
+    }
+}
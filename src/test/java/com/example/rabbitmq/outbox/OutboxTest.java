@@ -0,0 +1,121 @@
+package com.example.rabbitmq.outbox;
+
+import com.example.rabbitmq.broker.InMemoryBroker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class OutboxTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoversAfterARestartAndDropsATornRecord() throws IOException {
+        OutboxLog log = new OutboxLog(dir, 64 * 1024, 4, new SimpleMeterRegistry());
+        for (int i = 1; i <= 3; i++) {
+            log.awaitDurable(log.append(encode("order-" + i)));
+        }
+        log.close();
+
+        // A crash halfway through the fourth append: header written, payload and checksum not
+        Path segment = dir.resolve(OutboxSegment.fileName(1));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            int end = 3 * (OutboxSegment.RECORD_HEADER + encode("order-1").length);
+            channel.write(ByteBuffer.allocate(OutboxSegment.RECORD_HEADER).putInt(100).putInt(0).putLong(4).flip(), end);
+        }
+
+        OutboxLog restarted = new OutboxLog(dir, 64 * 1024, 4, new SimpleMeterRegistry());
+        assertThat(restarted.appendedSequence()).isEqualTo(3);
+        restarted.awaitDurable(restarted.append(encode("order-4")));
+
+        OutboxLog.Cursor cursor = restarted.cursor(1);
+        for (int i = 1; i <= 4; i++) {
+            OutboxRecord record = cursor.next();
+            assertThat(record.sequence()).isEqualTo(i);
+            assertThat(new String(record.message().getBody(), StandardCharsets.UTF_8)).isEqualTo("order-" + i);
+            assertThat(record.message().getMessageProperties().getHeader("x-attempt")).isEqualTo(1);
+        }
+        assertThat(cursor.next()).isNull();
+        restarted.close();
+    }
+
+    @Test
+    void relaysToTheBrokerAndDeletesConfirmedSegments() throws Exception {
+        InMemoryBroker broker = new InMemoryBroker();
+        CachingConnectionFactory connectionFactory = broker.connectionFactory();
+        new RabbitAdmin(connectionFactory).declareQueue(new Queue("orders"));
+        // Small segments so the 200 messages span several files
+        OutboxLog log = new OutboxLog(dir, 4 * 1024, 100, new SimpleMeterRegistry());
+        Outbox outbox = new Outbox(log, new RabbitTemplate(connectionFactory), true, Duration.ofSeconds(5), 16,
+                Duration.ofSeconds(5), Duration.ofMillis(100), Duration.ofMillis(10), new SimpleMeterRegistry());
+        try {
+            for (int i = 1; i <= 200; i++) {
+                outbox.append("", "orders", message("order-" + i));
+            }
+
+            await().atMost(Duration.ofSeconds(10)).until(() -> broker.messageCount("orders") == 200);
+            await().atMost(Duration.ofSeconds(10)).until(() -> log.releasedSequence() == 200);
+            try (Stream<Path> files = Files.list(dir)) {
+                assertThat(files.filter(file -> file.toString().endsWith(".outbox")).count()).isEqualTo(1);
+            }
+        } finally {
+            outbox.destroy();
+            connectionFactory.destroy();
+            broker.close();
+        }
+    }
+
+    @Test
+    void headersKeepTheirTypesAndSize() {
+        Message message = message("order-1");
+        Map<String, Object> death = new LinkedHashMap<>();
+        death.put("count", 2L);
+        death.put("reason", "rejected");
+        death.put("queue", "orders");
+        death.put("time", new Date(1_700_000_000_000L));
+        death.put("routing-keys", List.of("orders"));
+        message.getMessageProperties().setHeader("x-death", List.of(death));
+        String stackTrace = "at com.example.Handler.invoke(Handler.java:42)\n".repeat(5_000);
+        message.getMessageProperties().setHeader("x-exception-stacktrace", stackTrace);
+
+        OutboxRecord record = OutboxRecord.decode(1, OutboxRecord.encode("", "orders", message));
+
+        assertThat(record.message().getMessageProperties().<Object>getHeader("x-death")).isEqualTo(List.of(death));
+        assertThat(record.message().getMessageProperties().<Object>getHeader("x-exception-stacktrace")).isEqualTo(stackTrace);
+    }
+
+    private static byte[] encode(String body) {
+        return OutboxRecord.encode("", "orders", message(body));
+    }
+
+    private static Message message(String body) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+        properties.setHeader("x-attempt", 1);
+        return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
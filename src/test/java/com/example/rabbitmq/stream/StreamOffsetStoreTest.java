@@ -0,0 +1,100 @@
+package com.example.rabbitmq.stream;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamOffsetStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void checkpointsSurviveARestart() {
+        Path file = dir.resolve("offsets.properties");
+        StreamOffsetStore store = new StreamOffsetStore(file);
+        store.record("log.info.queue", 41);
+        store.record("log.info.queue", 42);
+        store.record("log.info.queue", 40);
+        store.flush();
+
+        StreamOffsetStore restarted = new StreamOffsetStore(file);
+        assertThat(restarted.checkpoint("log.info.queue")).isEqualTo(42L);
+        // Only offsets processed in this run move a re-opened consumer
+        assertThat(restarted.lastProcessed("log.info.queue")).isNull();
+    }
+
+    @Test
+    void checkpointStaysBelowDeliveriesStillInFlight() throws Throwable {
+        StreamOffsetStore store = new StreamOffsetStore(dir.resolve("offsets.properties"));
+        StreamCheckpointAdvice advice = new StreamCheckpointAdvice(store);
+        MethodInterceptor tracker = advice.dispatchTracker();
+        for (long offset = 10; offset <= 12; offset++) {
+            tracker.invoke(invocation(delivery(offset)));
+        }
+
+        // 11 and 12 finish first; 10 is still being processed, so a restart must begin there
+        advice.invoke(invocation(delivery(12)));
+        advice.invoke(invocation(delivery(11)));
+        assertThat(store.lastProcessed("log.info.queue")).isEqualTo(9L);
+
+        advice.invoke(invocation(delivery(10)));
+        assertThat(store.lastProcessed("log.info.queue")).isEqualTo(12L);
+    }
+
+    @Test
+    void parsesOffsetSpecifications() {
+        assertThat(StreamConsumers.parseOffset("first")).isEqualTo("first");
+        assertThat(StreamConsumers.parseOffset("1h")).isEqualTo("1h");
+        assertThat(StreamConsumers.parseOffset("1500")).isEqualTo(1500L);
+        assertThat(StreamConsumers.parseOffset("2026-10-01T00:00:00Z")).isInstanceOf(Date.class);
+    }
+
+    private static Message delivery(long offset) {
+        MessageProperties properties = new MessageProperties();
+        properties.setConsumerQueue("log.info.queue");
+        properties.setHeader(StreamCheckpointAdvice.OFFSET_HEADER, offset);
+        return new Message(new byte[0], properties);
+    }
+
+    // Stands in for the rest of the chain and a listener that succeeds
+    private static MethodInvocation invocation(Message message) {
+        Object[] arguments = {null, message};
+        return new MethodInvocation() {
+            @Override
+            public Method getMethod() {
+                return null;
+            }
+
+            @Override
+            public Object[] getArguments() {
+                return arguments;
+            }
+
+            @Override
+            public Object proceed() {
+                return null;
+            }
+
+            @Override
+            public Object getThis() {
+                return null;
+            }
+
+            @Override
+            public AccessibleObject getStaticPart() {
+                return null;
+            }
+        };
+    }
+}
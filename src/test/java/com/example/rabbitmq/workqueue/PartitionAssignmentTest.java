@@ -0,0 +1,32 @@
+package com.example.rabbitmq.workqueue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionAssignmentTest {
+
+    @Test
+    void everyPartitionHasExactlyOneOwner() {
+        List<String> members = List.of("worker-a", "worker-b", "worker-c");
+        int owned = members.stream()
+                .mapToInt(member -> PartitionAssignment.assign(16, members, member).size())
+                .sum();
+        assertThat(owned).isEqualTo(16);
+    }
+
+    @Test
+    void joiningMemberOnlyTakesPartitionsOver() {
+        List<String> before = List.of("worker-a", "worker-b");
+        List<String> after = List.of("worker-a", "worker-b", "worker-c");
+        IntStream.range(0, 64).forEach(partition -> {
+            String owner = PartitionAssignment.owner(partition, after);
+            if (!owner.equals("worker-c")) {
+                assertThat(owner).isEqualTo(PartitionAssignment.owner(partition, before));
+            }
+        });
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.rabbitmq.workqueue;
+
+import com.example.rabbitmq.broker.InMemoryBroker;
+import com.example.rabbitmq.config.MessagingProperties;
+import com.example.rabbitmq.config.RabbitConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class PartitionCoordinatorTest {
+
+    private InMemoryBroker broker;
+    private CachingConnectionFactory connectionFactory;
+    private RabbitAdmin admin;
+    private final List<Worker> workers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        broker = new InMemoryBroker();
+        connectionFactory = broker.connectionFactory();
+        admin = new RabbitAdmin(connectionFactory);
+        admin.declareExchange(new FanoutExchange(RabbitConfig.IMAGE_WORKERS_EXCHANGE));
+    }
+
+    @AfterEach
+    void tearDown() {
+        workers.forEach(Worker::stop);
+        connectionFactory.destroy();
+        broker.close();
+    }
+
+    @Test
+    void partitionsMoveToTheRemainingWorkerWhenOneLeaves() {
+        declarePartitions(4);
+        Worker first = worker(4);
+        Worker second = worker(4);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> first.queues().size() + second.queues().size() == 4
+                && !first.queues().isEmpty() && !second.queues().isEmpty());
+        Set<String> all = new HashSet<>(first.queues());
+        all.addAll(second.queues());
+        assertThat(all).isEqualTo(partitionQueues(4));
+        assertThat(first.coordinator.getAssignedQueues()).isEqualTo(first.queues());
+        assertThat(second.coordinator.getAssignedQueues()).isEqualTo(second.queues());
+
+        // Announced on shutdown, so the takeover doesn't wait for the member timeout
+        second.stop();
+        await().atMost(Duration.ofMillis(900)).until(() -> first.queues().equals(partitionQueues(4)));
+        assertThat(first.partitioned.isRunning()).isTrue();
+    }
+
+    @Test
+    void aWorkerLeftWithoutPartitionsStopsItsContainer() {
+        declarePartitions(1);
+        Worker first = worker(1);
+        await().atMost(Duration.ofSeconds(5)).until(first.partitioned::isRunning);
+        assertThat(first.queues()).containsExactly(RabbitConfig.imagePartitionQueue(0));
+
+        // Member ids are random: bring in a second worker that the single partition hashes to
+        Worker second = worker(1);
+        while (!PartitionAssignment.owner(0, List.of(first.coordinator.getMemberId(), second.coordinator.getMemberId()))
+                .equals(second.coordinator.getMemberId())) {
+            second.stop();
+            second = worker(1);
+        }
+        Worker newOwner = second;
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> !first.partitioned.isRunning() && newOwner.partitioned.isRunning());
+        assertThat(first.coordinator.getAssignedQueues()).isEmpty();
+        assertThat(newOwner.queues()).containsExactly(RabbitConfig.imagePartitionQueue(0));
+    }
+
+    @Test
+    void aWorkerThatStopsHeartbeatingLosesItsPartitionsAfterTheMemberTimeout() {
+        declarePartitions(4);
+        Worker first = worker(4);
+        Worker second = worker(4);
+        await().atMost(Duration.ofSeconds(5)).until(() -> first.queues().size() + second.queues().size() == 4
+                && !first.queues().isEmpty() && !second.queues().isEmpty());
+
+        // Cut off from the broker: no heartbeats and no leave announcement
+        second.template.down = true;
+        await().atMost(Duration.ofSeconds(5)).until(() -> first.queues().equals(partitionQueues(4)));
+        assertThat(first.coordinator.getAssignedQueues()).hasSize(4);
+    }
+
+    private Worker worker(int partitions) {
+        MessagingProperties properties = new MessagingProperties();
+        properties.getPartitioning().setPartitions(partitions);
+        properties.getPartitioning().setHeartbeatInterval(Duration.ofMillis(100));
+        properties.getPartitioning().setMemberTimeout(Duration.ofMillis(1000));
+        Worker worker = new Worker(connectionFactory, admin, properties);
+        workers.add(worker);
+        return worker;
+    }
+
+    private void declarePartitions(int partitions) {
+        partitionQueues(partitions).forEach(queue -> admin.declareQueue(new Queue(queue, false)));
+    }
+
+    private static Set<String> partitionQueues(int partitions) {
+        Set<String> queues = new HashSet<>();
+        IntStream.range(0, partitions).forEach(partition -> queues.add(RabbitConfig.imagePartitionQueue(partition)));
+        return queues;
+    }
+
+    // One application instance: its coordinator, the partitioned container it moves, and its member-event listener
+    private static class Worker {
+        private final SwitchableTemplate template;
+        private final SimpleMessageListenerContainer partitioned;
+        private final SimpleMessageListenerContainer memberEvents;
+        private final PartitionCoordinator coordinator;
+        private boolean stopped;
+
+        Worker(ConnectionFactory connectionFactory, RabbitAdmin admin, MessagingProperties properties) {
+            template = new SwitchableTemplate(connectionFactory);
+            partitioned = new SimpleMessageListenerContainer(connectionFactory);
+            partitioned.setMessageListener(message -> { });
+            RabbitListenerEndpointRegistry registry = new RabbitListenerEndpointRegistry() {
+                @Override
+                public MessageListenerContainer getListenerContainer(String id) {
+                    return ImageProcessingWorker.PARTITIONED_LISTENER_ID.equals(id) ? partitioned : null;
+                }
+            };
+            coordinator = new PartitionCoordinator(template, registry, properties, new SimpleMeterRegistry());
+
+            AnonymousQueue events = new AnonymousQueue();
+            admin.declareQueue(events);
+            admin.declareBinding(BindingBuilder.bind(events).to(new FanoutExchange(RabbitConfig.IMAGE_WORKERS_EXCHANGE)));
+            memberEvents = new SimpleMessageListenerContainer(connectionFactory);
+            memberEvents.setQueueNames(events.getName());
+            memberEvents.setMessageListener(coordinator::onMemberEvent);
+            memberEvents.afterPropertiesSet();
+            memberEvents.start();
+        }
+
+        Set<String> queues() {
+            return partitioned.isRunning() ? Set.of(partitioned.getQueueNames()) : Set.of();
+        }
+
+        void stop() {
+            if (!stopped) {
+                stopped = true;
+                coordinator.destroy();
+                memberEvents.stop();
+                partitioned.stop();
+            }
+        }
+    }
+
+    private static class SwitchableTemplate extends RabbitTemplate {
+        private volatile boolean down;
+
+        SwitchableTemplate(ConnectionFactory connectionFactory) {
+            super(connectionFactory);
+        }
+
+        @Override
+        public void send(String exchange, String routingKey, Message message) {
+            if (down) {
+                throw new AmqpConnectException(new ConnectException("Connection refused"));
+            }
+            super.send(exchange, routingKey, message);
+        }
+    }
+}
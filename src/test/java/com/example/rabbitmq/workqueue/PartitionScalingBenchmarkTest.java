@@ -0,0 +1,120 @@
+package com.example.rabbitmq.workqueue;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.CustomExchange;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.junit.RabbitAvailable;
+import org.springframework.amqp.rabbit.listener.DirectMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Publishes through a consistent-hash exchange into 1..8 partitions against a local broker with the
+// rabbitmq_consistent_hash_exchange plugin enabled; skipped when either is missing. The in-memory broker has no
+// consistent-hash exchange, so this only runs with -Pbenchmarks
+@Tag("benchmark")
+@RabbitAvailable
+class PartitionScalingBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionScalingBenchmarkTest.class);
+    private static final int MESSAGES = 100_000;
+    private static final int PUBLISHERS = 4;
+
+    private static CachingConnectionFactory connectionFactory;
+    private static RabbitAdmin admin;
+
+    @BeforeAll
+    static void setUp() {
+        connectionFactory = new CachingConnectionFactory("localhost");
+        connectionFactory.setChannelCacheSize(PUBLISHERS * 2);
+        admin = new RabbitAdmin(connectionFactory);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void throughputScalesWithPartitionCount() {
+        logger.info(String.format("%-12s %12s", "partitions", "msg/s"));
+        for (int partitions : new int[] {1, 2, 4, 8}) {
+            double throughput = run(partitions);
+            logger.info(String.format("%-12d %12.0f", partitions, throughput));
+        }
+    }
+
+    private double run(int partitions) {
+        Exchange exchange = new CustomExchange("bench.hash." + UUID.randomUUID(), "x-consistent-hash", false, true);
+        try {
+            admin.declareExchange(exchange);
+        } catch (AmqpException e) {
+            Assumptions.abort("rabbitmq_consistent_hash_exchange plugin is not enabled");
+        }
+        List<String> queues = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            Queue queue = new AnonymousQueue();
+            admin.declareQueue(queue);
+            admin.declareBinding(BindingBuilder.bind(queue).to(exchange).with("20").noargs());
+            queues.add(queue.getName());
+        }
+
+        CountDownLatch received = new CountDownLatch(MESSAGES);
+        // One consumer per partition, as each worker instance would own one
+        DirectMessageListenerContainer container = new DirectMessageListenerContainer(connectionFactory);
+        container.setQueueNames(queues.toArray(String[]::new));
+        container.setConsumersPerQueue(1);
+        container.setPrefetchCount(250);
+        container.setMessageListener((MessageListener) message -> received.countDown());
+        container.afterPropertiesSet();
+        container.start();
+
+        ExecutorService publishers = Executors.newFixedThreadPool(PUBLISHERS);
+        try {
+            long start = System.nanoTime();
+            for (int p = 0; p < PUBLISHERS; p++) {
+                publishers.execute(() -> {
+                    RabbitTemplate template = new RabbitTemplate(connectionFactory);
+                    byte[] body = "{\"taskId\":\"bench\",\"operations\":[\"RESIZE\"]}".getBytes(StandardCharsets.UTF_8);
+                    for (int i = 0; i < MESSAGES / PUBLISHERS; i++) {
+                        template.send(exchange.getName(), UUID.randomUUID().toString(),
+                                new Message(body));
+                    }
+                });
+            }
+            assertThat(received.await(5, TimeUnit.MINUTES)).isTrue();
+            return MESSAGES / ((System.nanoTime() - start) / 1e9);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            publishers.shutdownNow();
+            container.stop();
+            queues.forEach(admin::deleteQueue);
+            admin.deleteExchange(exchange.getName());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.rabbitmq.fixtures;
+
+import com.example.rabbitmq.config.MessagingProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// MessagingProperties as bound from application.yml, for code that needs the shipped defaults (the classifier
+// rules live only there) without starting a Spring Boot application
+public final class ConfigurationFixtures {
+
+    private ConfigurationFixtures() {
+    }
+
+    public static MessagingProperties messagingProperties() {
+        try {
+            var sources = new YamlPropertySourceLoader().load("application.yml", new ClassPathResource("application.yml"));
+            return new Binder(ConfigurationPropertySources.from(sources))
+                    .bindOrCreate("app.messaging", MessagingProperties.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
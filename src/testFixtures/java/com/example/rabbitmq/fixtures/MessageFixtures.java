@@ -0,0 +1,88 @@
+package com.example.rabbitmq.fixtures;
+
+import com.example.rabbitmq.model.ImageProcessingTask;
+import com.example.rabbitmq.model.IoTMessage;
+import com.example.rabbitmq.model.LogEntry;
+import com.example.rabbitmq.model.Order;
+import com.example.rabbitmq.model.SocialPost;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Representative payloads, shaped like what the controllers publish; shared by the tests and the JMH benchmarks
+public final class MessageFixtures {
+
+    private MessageFixtures() {
+    }
+
+    public static Order order(int i) {
+        List<Order.OrderItem> items = List.of(
+                new Order.OrderItem("prod-1", "Laptop", 1, new BigDecimal("999.99")),
+                new Order.OrderItem("prod-2", "Mouse", 2, new BigDecimal("29.99")));
+        return new Order("order-" + i, "customer-" + (i % 100), "customer" + (i % 100) + "@example.com",
+                items, new BigDecimal("1059.97"));
+    }
+
+    public static SocialPost socialPost(int i) {
+        return new SocialPost("post-" + i, "user-" + (i % 50), "user_" + (i % 50),
+                "Benchmark post " + i + " #performance #rabbitmq",
+                List.of("https://example.com/image" + i + ".jpg"),
+                List.of("performance", "rabbitmq"),
+                List.of("user-" + ((i + 1) % 50)));
+    }
+
+    public static LogEntry logEntry(int i, LogEntry.LogLevel level, String message) {
+        LogEntry logEntry = new LogEntry("log-" + i, "service-" + (i % 10), level,
+                message, "Benchmark.java:" + i, "bench-thread");
+        logEntry.setMetadata(Map.of("iteration", i, "region", "eu-west-1"));
+        return logEntry;
+    }
+
+    // An ERROR entry as a failing service logs it: a stack trace of the given depth and a context map of the given size
+    public static LogEntry errorLog(int i, int stackFrames, int metadataEntries) {
+        LogEntry logEntry = new LogEntry("log-" + i, "payment-service", LogEntry.LogLevel.ERROR,
+                "Database connection failed while charging order-" + i, "PaymentRepository.java:" + (100 + i % 50),
+                "http-nio-8080-exec-" + (i % 20));
+        if (stackFrames > 0) {
+            StringBuilder trace = new StringBuilder("java.sql.SQLTransientConnectionException: HikariPool-1 - "
+                    + "Connection is not available, request timed out after 30000ms.");
+            for (int frame = 0; frame < stackFrames; frame++) {
+                trace.append("\n\tat com.example.payments.layer").append(frame % 7).append(".Handler")
+                        .append(frame).append(".invoke(Handler").append(frame).append(".java:").append(40 + frame)
+                        .append(')');
+            }
+            logEntry.setException(trace.toString());
+        }
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        for (int entry = 0; entry < metadataEntries; entry++) {
+            metadata.put("context." + entry, entry % 3 == 0 ? List.of("value-" + entry, entry) : "value-" + entry);
+        }
+        logEntry.setMetadata(metadata);
+        return logEntry;
+    }
+
+    public static IoTMessage temperature(int i) {
+        return new IoTMessage("msg-" + i, "temp-" + (i % 20), "temperature_sensor", "room" + (i % 5),
+                "temperature", 18.0 + (i % 10), "celsius");
+    }
+
+    public static IoTMessage motion(int i) {
+        return new IoTMessage("msg-" + i, "motion-" + (i % 20), "motion_sensor", "room" + (i % 5),
+                "motion", i % 2, "boolean");
+    }
+
+    // Battery status carries no sensor type, so it routes as device.<type>.battery
+    public static IoTMessage batteryStatus(int i) {
+        IoTMessage battery = new IoTMessage("msg-" + i, "lock-" + (i % 20), "smart_lock", "room" + (i % 5),
+                null, i % 100, "percentage");
+        battery.setMetadata(Map.of("battery", i % 100, "charging", false));
+        return battery;
+    }
+
+    public static ImageProcessingTask imageTask(int i) {
+        return new ImageProcessingTask("task-" + i, "https://example.com/image" + i + ".jpg",
+                "user-" + (i % 50), List.of("RESIZE", "THUMBNAIL", "WATERMARK"));
+    }
+}